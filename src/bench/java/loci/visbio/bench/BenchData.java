@@ -0,0 +1,128 @@
+/*
+ * #%L
+ * VisBio application for visualization of multidimensional biological
+ * image data.
+ * %%
+ * Copyright (C) 2002 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.visbio.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.rmi.RemoteException;
+import java.util.Random;
+
+import loci.visbio.data.Dataset;
+import loci.visbio.util.DataUtil;
+import visad.FlatField;
+import visad.FunctionType;
+import visad.Integer2DSet;
+import visad.RealTupleType;
+import visad.RealType;
+import visad.VisADException;
+
+/**
+ * Generates the synthetic inputs shared by the benchmarks: Bio-Formats "fake"
+ * datasets, whose pixels are computed rather than read from disk, and seeded
+ * random fields, so that results are reproducible on any machine.
+ */
+public final class BenchData {
+
+	// -- Constants --
+
+	/** Seed for all generated random data. */
+	public static final long SEED = 1234;
+
+	// -- Static fields --
+
+	/** Scratch directory holding the fake files and cache files. */
+	private static File dir;
+
+	// -- Constructor --
+
+	private BenchData() {}
+
+	// -- Utility methods --
+
+	/**
+	 * Gets an empty file in the scratch directory with the given name, which is
+	 * deleted when the JVM exits.
+	 */
+	public static synchronized File makeFile(final String name)
+		throws IOException
+	{
+		if (dir == null) {
+			dir = File.createTempFile("visbio-bench", "");
+			dir.delete();
+			dir.mkdir();
+			dir.deleteOnExit();
+		}
+		final File file = new File(dir, name);
+		file.delete();
+		file.createNewFile();
+		file.deleteOnExit();
+		return file;
+	}
+
+	/**
+	 * Opens a dataset backed by a Bio-Formats fake file with the given
+	 * parameters, e.g. "sizeX=512&amp;sizeY=512&amp;sizeZ=16".
+	 */
+	public static Dataset openDataset(final String params) throws IOException {
+		final File file = makeFile("bench&" + params + ".fake");
+		return new Dataset("bench", file.getPath());
+	}
+
+	/**
+	 * Creates a field of the given size with seeded random samples in [0, 256),
+	 * over an integer domain with the given number of range components.
+	 */
+	public static FlatField makeField(final String name, final int width,
+		final int height, final int channels, final long seed)
+		throws VisADException, RemoteException
+	{
+		final RealTupleType domain =
+			new RealTupleType(DataUtil.getRealType(name + "_X"), DataUtil
+				.getRealType(name + "_Y"));
+		final RealTupleType range = new RealTupleType(makeTypes(name, channels));
+		final FlatField ff =
+			new FlatField(new FunctionType(domain, range), new Integer2DSet(domain,
+				width, height));
+		final Random r = new Random(seed);
+		final float[][] samples = new float[channels][width * height];
+		for (int c = 0; c < channels; c++) {
+			for (int i = 0; i < samples[c].length; i++) {
+				samples[c][i] = 256 * r.nextFloat();
+			}
+		}
+		ff.setSamples(samples, false);
+		return ff;
+	}
+
+	/** Gets range types named after the given prefix. */
+	public static RealType[] makeTypes(final String name, final int count) {
+		final RealType[] types = new RealType[count];
+		for (int i = 0; i < count; i++) {
+			types[i] = DataUtil.getRealType(name + "_range" + (i + 1));
+		}
+		return types;
+	}
+
+}
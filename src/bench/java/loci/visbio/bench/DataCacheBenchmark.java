@@ -0,0 +1,106 @@
+/*
+ * #%L
+ * VisBio application for visualization of multidimensional biological
+ * image data.
+ * %%
+ * Copyright (C) 2002 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.visbio.bench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import loci.visbio.data.DataCache;
+import loci.visbio.data.Dataset;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import visad.Data;
+
+/**
+ * Measures {@link DataCache} lookups that hit, and lookups that miss and so
+ * read the plane from a fake dataset.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DataCacheBenchmark {
+
+	// -- Parameters --
+
+	/** Width and height of each plane. */
+	@Param({ "256", "1024" })
+	public int size;
+
+	// -- Fields --
+
+	/** Fake dataset supplying the planes. */
+	protected Dataset dataset;
+
+	/** Cache under test. */
+	protected DataCache cache;
+
+	/** Position (time, slice, channel) that is always cached. */
+	protected final int[] hitPos = { 0, 0, 0 };
+
+	/** Position (time, slice, channel) that is evicted before each lookup. */
+	protected final int[] missPos = { 0, 1, 0 };
+
+	// -- Setup --
+
+	/** Opens the dataset and primes the cache. */
+	@Setup
+	public void setup() throws IOException {
+		dataset =
+			BenchData.openDataset("sizeX=" + size + "&sizeY=" + size +
+				"&sizeZ=2&pixelType=uint16");
+		cache = new DataCache();
+		cache.getData(dataset, hitPos, null, 2);
+	}
+
+	// -- Benchmarks --
+
+	/** Looks up a cached plane. */
+	@Benchmark
+	public Data hit() {
+		return cache.getData(dataset, hitPos, null, 2);
+	}
+
+	/** Looks up an evicted plane, reading it from the dataset. */
+	@Benchmark
+	public Data miss() {
+		cache.dump(dataset, missPos, null);
+		return cache.getData(dataset, missPos, null, 2);
+	}
+
+}
@@ -0,0 +1,271 @@
+/*
+ * #%L
+ * VisBio application for visualization of multidimensional biological
+ * image data.
+ * %%
+ * Copyright (C) 2002 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.visbio.bench;
+
+import java.awt.Color;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Random;
+import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+
+import loci.visbio.data.DataTransform;
+import loci.visbio.overlays.OverlayBox;
+import loci.visbio.overlays.OverlayFreeform;
+import loci.visbio.overlays.OverlayIO;
+import loci.visbio.overlays.OverlayIndex;
+import loci.visbio.overlays.OverlayLine;
+import loci.visbio.overlays.OverlayMarker;
+import loci.visbio.overlays.OverlayObject;
+import loci.visbio.overlays.OverlayPolyline;
+import loci.visbio.overlays.OverlayStore;
+import loci.visbio.overlays.OverlayStreamIO;
+import loci.visbio.utests.overlays.DummyImageTransform;
+import loci.visbio.utests.overlays.DummyOverlayTransform;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures saving and loading overlays with {@link OverlayIO} and the
+ * streaming text and binary formats of {@link OverlayStreamIO}, and hit-testing
+ * them through an {@link OverlayIndex}, using a seeded synthetic overlay set.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class OverlayBenchmark {
+
+	// -- Constants --
+
+	/** Number of dimensional positions holding overlays. */
+	protected static final int POSITIONS = 10;
+
+	/** Number of nodes of each freeform and polyline. */
+	protected static final int NODES = 200;
+
+	/** Width and height of the region holding the overlays. */
+	protected static final float EXTENT = 1000;
+
+	/** Radius within which hit-tests look for an overlay. */
+	protected static final double RADIUS = 5;
+
+	// -- Parameters --
+
+	/** Number of overlays at each position. */
+	@Param({ "100", "1000" })
+	public int perPosition;
+
+	// -- Fields --
+
+	/** Overlay transform holding the overlays. */
+	protected BenchOverlayTransform ot;
+
+	/** Overlays saved in the text format. */
+	protected String text;
+
+	/** Overlays saved in the streaming text format. */
+	protected String streamText;
+
+	/** Overlays saved in the binary format. */
+	protected byte[] binary;
+
+	/** Spatial index of the overlays at the first position. */
+	protected OverlayIndex index;
+
+	/** Source of hit-test points. */
+	protected Random random;
+
+	// -- Setup --
+
+	/** Generates the overlays, their saved form and their index. */
+	@Setup
+	public void setup() throws IOException {
+		final DummyImageTransform it = new BenchImageTransform();
+		ot = new BenchOverlayTransform(it);
+		ot.setAll(makeOverlays(ot, perPosition));
+		text = save();
+		streamText = saveStream();
+		binary = saveBinary();
+		index = new OverlayIndex(0, 0, EXTENT, EXTENT, 32);
+		final Vector objs = ot.getAll().get(0);
+		for (int i = 0; i < objs.size(); i++) {
+			index.add((OverlayObject) objs.elementAt(i));
+		}
+		random = new Random(BenchData.SEED);
+	}
+
+	// -- Benchmarks --
+
+	/** Saves all overlays in the text format. */
+	@Benchmark
+	public String save() {
+		final StringWriter sw = new StringWriter();
+		OverlayIO.saveOverlays(new PrintWriter(sw), ot);
+		return sw.toString();
+	}
+
+	/** Loads all overlays from the text format. */
+	@Benchmark
+	public OverlayStore load() throws IOException {
+		return OverlayIO.loadOverlays(new BufferedReader(new StringReader(text)),
+			ot);
+	}
+
+	/** Saves all overlays in the streaming text format. */
+	@Benchmark
+	public String saveStream() throws IOException {
+		final StringWriter sw = new StringWriter();
+		OverlayStreamIO.writeText(sw, ot);
+		return sw.toString();
+	}
+
+	/** Loads all overlays from the streaming text format. */
+	@Benchmark
+	public OverlayStore loadStream() throws IOException {
+		return OverlayStreamIO.readText(new StringReader(streamText), ot);
+	}
+
+	/** Saves all overlays in the binary format. */
+	@Benchmark
+	public byte[] saveBinary() throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		OverlayStreamIO.writeBinary(out, ot);
+		return out.toByteArray();
+	}
+
+	/** Loads all overlays from the binary format. */
+	@Benchmark
+	public OverlayStore loadBinary() throws IOException {
+		return OverlayStreamIO.readBinary(new ByteArrayInputStream(binary), ot);
+	}
+
+	/** Finds the overlay nearest a random point. */
+	@Benchmark
+	public OverlayObject hitTest() {
+		return index.getNearest(EXTENT * random.nextFloat(), EXTENT *
+			random.nextFloat(), RADIUS);
+	}
+
+	// -- Helper methods --
+
+	/** Builds a synthetic overlay set with a mix of overlay types. */
+	protected static OverlayStore makeOverlays(final BenchOverlayTransform ot,
+		final int perPosition)
+	{
+		final Random r = new Random(BenchData.SEED);
+		final OverlayStore v = new OverlayStore(POSITIONS);
+		for (int p = 0; p < POSITIONS; p++) {
+			for (int i = 0; i < perPosition; i++) {
+				final float x = EXTENT * r.nextFloat(), y = EXTENT * r.nextFloat();
+				OverlayObject obj;
+				switch (i % 5) {
+					case 0:
+						obj = new OverlayLine(ot, x, y, x + 10, y + 20);
+						break;
+					case 1:
+						obj = new OverlayBox(ot, x, y, x + 30, y + 15);
+						break;
+					case 2:
+						obj = new OverlayMarker(ot, x, y);
+						break;
+					default:
+						final float[][] nodes = new float[2][NODES];
+						for (int n = 0; n < NODES; n++) {
+							nodes[0][n] = x + 20 * (float) Math.cos(n * 0.03);
+							nodes[1][n] = y + 20 * (float) Math.sin(n * 0.03);
+						}
+						obj =
+							i % 5 == 3 ? (OverlayObject) new OverlayFreeform(ot, nodes)
+								: new OverlayPolyline(ot, nodes);
+				}
+				obj.setColor(Color.yellow);
+				obj.setGroup("Group " + i % 3);
+				obj.setNotes("");
+				v.getOrCreate(p).add(obj);
+			}
+		}
+		return v;
+	}
+
+	// -- Helper classes --
+
+	/** Image transform with a Time axis holding the overlay positions. */
+	protected static class BenchImageTransform extends DummyImageTransform {
+
+		/** Creates the image transform. */
+		public BenchImageTransform() {
+			super(null, "image");
+		}
+
+		@Override
+		public int[] getLengths() {
+			return new int[] { POSITIONS };
+		}
+
+		@Override
+		public String[] getDimTypes() {
+			return new String[] { "Time" };
+		}
+	}
+
+	/** Overlay transform exposing its overlay store. */
+	protected static class BenchOverlayTransform extends DummyOverlayTransform {
+
+		/** Creates an overlay transform over the given image transform. */
+		public BenchOverlayTransform(final DataTransform parent) {
+			super(parent, "overlays");
+		}
+
+		/** Gets all overlays. */
+		public OverlayStore getAll() {
+			return overlays;
+		}
+
+		/** Replaces all overlays. */
+		public void setAll(final OverlayStore v) {
+			overlays = v;
+			lengths = new int[] { v.getLength() };
+		}
+	}
+
+}
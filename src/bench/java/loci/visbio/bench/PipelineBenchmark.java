@@ -0,0 +1,146 @@
+/*
+ * #%L
+ * VisBio application for visualization of multidimensional biological
+ * image data.
+ * %%
+ * Copyright (C) 2002 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.visbio.bench;
+
+import java.rmi.RemoteException;
+import java.util.concurrent.TimeUnit;
+
+import loci.visbio.data.ProjectionTransform;
+import loci.visbio.data.SpectralTransform;
+import loci.visbio.util.DataUtil;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import visad.FlatField;
+import visad.FunctionType;
+import visad.RealTupleType;
+import visad.RealType;
+import visad.VisADException;
+
+/**
+ * Measures the per-plane data operations of the transform pipeline: resampling
+ * to thumbnail resolution, MathType switching, maximum intensity projection and
+ * weighted spectral mapping.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PipelineBenchmark {
+
+	// -- Constants --
+
+	/** Number of planes in each projected stack. */
+	protected static final int STACK_SIZE = 16;
+
+	/** Number of range components of each plane. */
+	protected static final int CHANNELS = 3;
+
+	/** Resolution of resampled planes. */
+	protected static final int[] THUMB_RES = { 96, 96 };
+
+	// -- Parameters --
+
+	/** Width and height of each plane. */
+	@Param({ "256", "1024" })
+	public int size;
+
+	// -- Fields --
+
+	/** Stack of planes to project. */
+	protected FlatField[] stack;
+
+	/** MathType with the same structure as the planes but different types. */
+	protected FunctionType switchedType;
+
+	/** Output types of the spectral mapping. */
+	protected RealType[] spectralTypes;
+
+	/** Weights of the spectral mapping, per output per input component. */
+	protected double[][] weights;
+
+	// -- Setup --
+
+	/** Generates the synthetic planes. */
+	@Setup
+	public void setup() throws VisADException, RemoteException {
+		stack = new FlatField[STACK_SIZE];
+		for (int i = 0; i < STACK_SIZE; i++) {
+			stack[i] =
+				BenchData.makeField("plane", size, size, CHANNELS, BenchData.SEED + i);
+		}
+		switchedType =
+			new FunctionType(new RealTupleType(DataUtil.getRealType("switched_X"),
+				DataUtil.getRealType("switched_Y")), new RealTupleType(BenchData
+				.makeTypes("switched", CHANNELS)));
+		spectralTypes = BenchData.makeTypes("spectral", 2);
+		weights = new double[spectralTypes.length][CHANNELS];
+		for (int r = 0; r < weights.length; r++) {
+			for (int c = 0; c < CHANNELS; c++) {
+				weights[r][c] = (r + c + 1) / (double) CHANNELS;
+			}
+		}
+	}
+
+	// -- Benchmarks --
+
+	/** Resamples a plane to thumbnail resolution. */
+	@Benchmark
+	public FlatField resample() throws VisADException, RemoteException {
+		return DataUtil.resample(stack[0], THUMB_RES, null);
+	}
+
+	/** Converts a plane to another MathType. */
+	@Benchmark
+	public FlatField switchType() throws VisADException, RemoteException {
+		return DataUtil.switchType(stack[0], switchedType);
+	}
+
+	/** Computes the maximum intensity projection of the stack. */
+	@Benchmark
+	public FlatField project() {
+		return ProjectionTransform.project(stack);
+	}
+
+	/** Applies a weighted spectral mapping to a plane. */
+	@Benchmark
+	public FlatField spectralMapping() {
+		return SpectralTransform.doWeightedMapping(stack[0], spectralTypes,
+			weights);
+	}
+
+}
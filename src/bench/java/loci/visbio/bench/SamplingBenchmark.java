@@ -0,0 +1,118 @@
+/*
+ * #%L
+ * VisBio application for visualization of multidimensional biological
+ * image data.
+ * %%
+ * Copyright (C) 2002 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+
+package loci.visbio.bench;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import loci.visbio.data.DataSampling;
+import loci.visbio.data.Dataset;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link DataSampling} reads of a fake dataset subsampled 2x in XY,
+ * over the whole plane and over a cropped quarter of it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SamplingBenchmark {
+
+	// -- Parameters --
+
+	/** Width and height of each plane. */
+	@Param({ "1024", "4096" })
+	public int size;
+
+	// -- Fields --
+
+	/** Sampling of the whole plane. */
+	protected DataSampling full;
+
+	/** Sampling of the plane's central quarter. */
+	protected DataSampling cropped;
+
+	/** Position (time, slice, channel) read by each benchmark. */
+	protected int[] pos;
+
+	// -- Setup --
+
+	/** Opens the dataset and creates its samplings. */
+	@Setup
+	public void setup() throws IOException {
+		final Dataset dataset =
+			BenchData.openDataset("sizeX=" + size + "&sizeY=" + size +
+				"&pixelType=uint16");
+		final int[] len = dataset.getLengths();
+		final int[] min = new int[len.length];
+		final int[] step = new int[len.length];
+		for (int i = 0; i < len.length; i++) {
+			min[i] = 1;
+			step[i] = 1;
+		}
+		final boolean[] range = new boolean[dataset.getRangeCount()];
+		for (int i = 0; i < range.length; i++)
+			range[i] = true;
+		pos = new int[len.length];
+		full =
+			new DataSampling(dataset, "full", min, len, step, size / 2, size / 2,
+				range);
+		cropped =
+			new DataSampling(dataset, "cropped", min, len, step, size / 4,
+				size / 4, range);
+		cropped.setCrop(new int[] { size / 4, size / 4, size / 2, size / 2 });
+	}
+
+	// -- Benchmarks --
+
+	/** Reads and decimates the whole plane. */
+	@Benchmark
+	public BufferedImage full() {
+		return full.getImage(pos);
+	}
+
+	/** Reads and decimates the plane's central quarter. */
+	@Benchmark
+	public BufferedImage cropped() {
+		return cropped.getImage(pos);
+	}
+
+}
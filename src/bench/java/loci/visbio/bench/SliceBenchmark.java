@@ -0,0 +1,98 @@
+/*
+ * #%L
+ * VisBio application for visualization of multidimensional biological
+ * image data.
+ * %%
+ * Copyright (C) 2002 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.visbio.bench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import loci.visbio.data.ArbitrarySlice;
+import loci.visbio.data.DataCache;
+import loci.visbio.data.Dataset;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import visad.Data;
+
+/**
+ * Measures the tri-linear interpolation of an oblique {@link ArbitrarySlice}
+ * through a fake image stack, with the stack's planes already cached.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SliceBenchmark {
+
+	// -- Parameters --
+
+	/** Width and height of the interpolated slice. */
+	@Param({ "64", "256" })
+	public int res;
+
+	// -- Fields --
+
+	/** Slice under test. */
+	protected ArbitrarySlice slice;
+
+	/** Cache holding the stack's planes. */
+	protected DataCache cache;
+
+	/** Position (time, channel) of the slice. */
+	protected final int[] pos = { 0, 0 };
+
+	// -- Setup --
+
+	/** Opens a fake stack and configures an oblique slice across its Z axis. */
+	@Setup
+	public void setup() throws IOException {
+		final Dataset dataset =
+			BenchData.openDataset("sizeX=256&sizeY=256&sizeZ=32&pixelType=uint8");
+		slice = new ArbitrarySlice(dataset, "slice");
+		slice.setParameters(1, 30, 60, 50, res, false, true);
+		cache = new DataCache();
+		slice.getData(null, pos, 3, cache);
+	}
+
+	// -- Benchmarks --
+
+	/** Computes the slice. */
+	@Benchmark
+	public Data interpolate() {
+		return slice.getData(null, pos, 3, cache);
+	}
+
+}
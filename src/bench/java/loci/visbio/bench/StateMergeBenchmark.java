@@ -0,0 +1,164 @@
+/*
+ * #%L
+ * VisBio application for visualization of multidimensional biological
+ * image data.
+ * %%
+ * Copyright (C) 2002 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.visbio.bench;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+
+import loci.visbio.state.Dynamic;
+import loci.visbio.state.StateManager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link StateManager#mergeStates} on lists of synthetic dynamic
+ * objects, as when restoring a state that differs slightly from the current
+ * one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StateMergeBenchmark {
+
+	// -- Constants --
+
+	/** Fraction of restored objects whose state differs from the current one. */
+	protected static final double CHANGED = 0.1;
+
+	// -- Parameters --
+
+	/** Number of objects in each list. */
+	@Param({ "1000", "20000" })
+	public int count;
+
+	// -- Fields --
+
+	/** Current objects. */
+	protected Vector oldList;
+
+	/** Restored objects, in shuffled order. */
+	protected Vector newList;
+
+	// -- Setup --
+
+	/** Builds fresh lists, since merging modifies them. */
+	@Setup(Level.Invocation)
+	public void setup() {
+		oldList = makeList(count, 0);
+		newList = makeList(count, BenchData.SEED);
+	}
+
+	// -- Benchmarks --
+
+	/** Merges the restored objects into the current ones. */
+	@Benchmark
+	public Vector merge() {
+		StateManager.mergeStates(oldList, newList);
+		return newList;
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Builds a list of objects in shuffled order. When the seed is nonzero, a
+	 * fraction of the objects have a changed value, as in a restored state.
+	 */
+	protected static Vector makeList(final int count, final long seed) {
+		final BenchDynamic[] objs = new BenchDynamic[count];
+		final Random r = new Random(seed);
+		for (int i = 0; i < count; i++) {
+			final boolean changed = seed != 0 && r.nextDouble() < CHANGED;
+			objs[i] = new BenchDynamic("object " + i, changed ? i + 1 : i);
+		}
+		if (seed != 0) {
+			for (int i = count - 1; i > 0; i--) {
+				final int j = r.nextInt(i + 1);
+				final BenchDynamic tmp = objs[i];
+				objs[i] = objs[j];
+				objs[j] = tmp;
+			}
+		}
+		return new Vector(Arrays.asList(objs));
+	}
+
+	// -- Helper classes --
+
+	/** Dynamic object with a name and a value. */
+	protected static class BenchDynamic implements Dynamic {
+
+		protected String name;
+		protected int value;
+
+		public BenchDynamic(final String name, final int value) {
+			this.name = name;
+			this.value = value;
+		}
+
+		@Override
+		public boolean matches(final Dynamic dyn) {
+			if (!isCompatible(dyn)) return false;
+			final BenchDynamic obj = (BenchDynamic) dyn;
+			return name.equals(obj.name) && value == obj.value;
+		}
+
+		@Override
+		public Object getMatchKey() {
+			return name;
+		}
+
+		@Override
+		public boolean isCompatible(final Dynamic dyn) {
+			return dyn instanceof BenchDynamic;
+		}
+
+		@Override
+		public void initState(final Dynamic dyn) {
+			if (dyn == null) return;
+			final BenchDynamic obj = (BenchDynamic) dyn;
+			name = obj.name;
+			value = obj.value;
+		}
+
+		@Override
+		public void discard() {}
+	}
+
+}
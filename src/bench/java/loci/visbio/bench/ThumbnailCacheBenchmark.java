@@ -0,0 +1,121 @@
+/*
+ * #%L
+ * VisBio application for visualization of multidimensional biological
+ * image data.
+ * %%
+ * Copyright (C) 2002 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.visbio.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.rmi.RemoteException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import loci.visbio.data.ThumbnailCache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import visad.FlatField;
+import visad.VisADException;
+
+/**
+ * Measures opening a populated {@link ThumbnailCache} file, which indexes
+ * every entry, and retrieving random thumbnails from it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ThumbnailCacheBenchmark {
+
+	// -- Constants --
+
+	/** Width and height of each thumbnail. */
+	protected static final int THUMB_SIZE = 96;
+
+	// -- Parameters --
+
+	/** Number of thumbnails in the cache file. */
+	@Param({ "100", "1000" })
+	public int count;
+
+	// -- Fields --
+
+	/** Cache file holding the thumbnails. */
+	protected File file;
+
+	/** Cache under test. */
+	protected ThumbnailCache cache;
+
+	/** Source of thumbnail indices to retrieve. */
+	protected Random random;
+
+	// -- Setup --
+
+	/** Fills a fresh cache file with synthetic thumbnails. */
+	@Setup
+	public void setup() throws IOException, VisADException, RemoteException {
+		file = BenchData.makeFile("thumbs-" + count + ".visbio");
+		cache = new ThumbnailCache(file.getPath());
+		for (int i = 0; i < count; i++) {
+			final FlatField thumb =
+				BenchData.makeField("thumb", THUMB_SIZE, THUMB_SIZE, 3,
+					BenchData.SEED + i);
+			cache.store(getId(i), thumb);
+		}
+		random = new Random(BenchData.SEED);
+	}
+
+	// -- Benchmarks --
+
+	/** Opens the cache file, reading its index. */
+	@Benchmark
+	public ThumbnailCache open() {
+		return new ThumbnailCache(file.getPath());
+	}
+
+	/** Retrieves a random thumbnail. */
+	@Benchmark
+	public FlatField retrieve() {
+		return cache.retrieve(getId(random.nextInt(count)));
+	}
+
+	// -- Helper methods --
+
+	/** Gets the cache id of the given thumbnail. */
+	protected static String getId(final int i) {
+		return "bench&sizeX=1024&sizeY=1024.fake/thumb" + i;
+	}
+
+}
@@ -94,6 +94,15 @@ public class BioDropHandler extends TransferHandler {
 			if (sm == null) return false;
 			sm.restoreState(file);
 		}
+		else if (files.size() > 1 || file.isDirectory()) {
+			// assume files are parts of one or more datasets
+			final DataManager dm = (DataManager) bio.getManager(DataManager.class);
+			if (dm == null) return false;
+			final String[] ids = new String[files.size()];
+			for (int i = 0; i < ids.length; i++)
+				ids[i] = ((File) files.get(i)).getPath();
+			dm.importDatasets(ids);
+		}
 		else {
 			// assume file is part of a dataset
 			final DataManager dm = (DataManager) bio.getManager(DataManager.class);
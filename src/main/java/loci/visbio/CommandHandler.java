@@ -0,0 +1,380 @@
+/*
+ * #%L
+ * VisBio application for visualization of multidimensional biological
+ * image data.
+ * %%
+ * Copyright (C) 2002 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.visbio;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Vector;
+
+import javax.swing.SwingUtilities;
+
+import loci.formats.FormatException;
+import loci.visbio.data.DataManager;
+import loci.visbio.data.DataTransform;
+import loci.visbio.data.Dataset;
+import loci.visbio.data.ImageTransform;
+import loci.visbio.data.ThumbnailHandler;
+import loci.visbio.util.CommandEvent;
+import loci.visbio.util.CommandListener;
+import loci.visbio.util.Histogram;
+import loci.visbio.view.BioSlideWidget;
+import loci.visbio.view.DisplayManager;
+import loci.visbio.view.DisplayWindow;
+import loci.visbio.view.TransformHandler;
+
+/**
+ * CommandHandler executes the commands local clients send to VisBio's instance
+ * server, letting scripts open datasets, move display sliders, export data,
+ * capture snapshots and query statistics of a running instance:
+ * <dl>
+ * <dt>list</dt>
+ * <dd>lists the names of the data objects and displays</dd>
+ * <dt>open <i>pattern</i> [<i>name</i>]</dt>
+ * <dd>opens a dataset from a file or file pattern</dd>
+ * <dt>pos <i>display</i> [<i>axis</i>=<i>value</i> ...]</dt>
+ * <dd>sets and reports a display's one-based slider positions</dd>
+ * <dt>export <i>data</i> <i>file</i> [<i>compression</i>]</dt>
+ * <dd>exports all planes of a data object to a file</dd>
+ * <dt>snapshot <i>display</i> <i>file</i></dt>
+ * <dd>saves a snapshot of a display to a TIFF or JPEG file</dd>
+ * <dt>stats [<i>data</i>]</dt>
+ * <dd>reports cache and thread telemetry, or per-channel range and mean of a
+ * data object's thumbnails</dd>
+ * </dl>
+ * <p>
+ * Since export and snapshot write files, they are only accepted in a session
+ * authenticated with the token VisBio writes to {@link VisBio#TOKEN_FILE}.
+ */
+public class CommandHandler implements CommandListener {
+
+	// -- Fields --
+
+	/** VisBio frame whose data and displays the commands act upon. */
+	protected VisBioFrame bio;
+
+	// -- Constructor --
+
+	/** Constructs a command handler for the given VisBio frame. */
+	public CommandHandler(final VisBioFrame bio) {
+		this.bio = bio;
+	}
+
+	// -- CommandListener API methods --
+
+	/** Executes a command received by the instance server. */
+	@Override
+	public String commandReceived(final CommandEvent e) {
+		final String cmd = e.getCommand();
+		if (cmd.equals("list")) return list();
+		if (cmd.equals("open")) {
+			checkArguments(e, 1, "open pattern [name]");
+			final String pattern = e.getArgument(0);
+			final String name =
+				e.getArgumentCount() > 1 ? e.getArgument(1) : new File(pattern)
+					.getName();
+			return open(pattern, name);
+		}
+		if (cmd.equals("pos")) {
+			checkArguments(e, 1, "pos display [axis=value ...]");
+			final String[] args = e.getArguments();
+			final String[] axes = new String[args.length - 1];
+			System.arraycopy(args, 1, axes, 0, axes.length);
+			return pos(e.getArgument(0), axes);
+		}
+		if (cmd.equals("export")) {
+			checkArguments(e, 2, "export data file [compression]");
+			checkAuthenticated(e);
+			final String compression =
+				e.getArgumentCount() > 2 ? e.getArgument(2) : "";
+			return export(e.getArgument(0), e.getArgument(1), compression);
+		}
+		if (cmd.equals("snapshot")) {
+			checkArguments(e, 2, "snapshot display file");
+			checkAuthenticated(e);
+			return snapshot(e.getArgument(0), e.getArgument(1));
+		}
+		if (cmd.equals("stats")) {
+			return stats(e.getArgumentCount() > 0 ? e.getArgument(0) : null);
+		}
+		return null;
+	}
+
+	// -- Helper methods --
+
+	/** Lists the names of the data objects and displays. */
+	protected String list() {
+		final Vector<DataTransform> data = getDataList();
+		final StringBuffer sb = new StringBuffer("data:");
+		for (int i = 0; i < data.size(); i++) {
+			sb.append(i == 0 ? " " : ", ");
+			sb.append(data.elementAt(i).getName());
+		}
+		final DisplayWindow[] displays = getDisplays();
+		sb.append("; displays:");
+		for (int i = 0; i < displays.length; i++) {
+			sb.append(i == 0 ? " " : ", ");
+			sb.append(displays[i].getName());
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Opens a dataset, returning its name once it has been added. The dataset is
+	 * opened on the calling thread, but added on the event dispatch thread.
+	 */
+	protected String open(final String pattern, final String name) {
+		final Dataset data = new Dataset(name, pattern, null, getLazyOpen());
+		if (!data.isValid()) {
+			try {
+				data.close();
+			}
+			catch (final FormatException exc) {}
+			catch (final IOException exc) {}
+			throw new IllegalArgumentException("Cannot open dataset: " + pattern);
+		}
+		addData(data);
+		return name;
+	}
+
+	/**
+	 * Sets the given display's sliders to the one-based positions of the given
+	 * axis=value pairs, reporting the resulting positions.
+	 */
+	protected String pos(final String display, final String[] axes) {
+		final TransformHandler th = getDisplay(display).getTransformHandler();
+		final int[] values = new int[axes.length];
+		final BioSlideWidget[] sliders = new BioSlideWidget[axes.length];
+		for (int i = 0; i < axes.length; i++) {
+			final int eq = axes[i].indexOf("=");
+			if (eq < 0) {
+				throw new IllegalArgumentException("Invalid position: " + axes[i]);
+			}
+			final String axis = axes[i].substring(0, eq);
+			for (int s = 0; sliders[i] == null && th.getSlider(s) != null; s++) {
+				final BioSlideWidget bsw = th.getSlider(s);
+				if (bsw.getName().equalsIgnoreCase(axis)) sliders[i] = bsw;
+			}
+			if (sliders[i] == null) {
+				throw new IllegalArgumentException("No such axis: " + axis);
+			}
+			try {
+				values[i] = Integer.parseInt(axes[i].substring(eq + 1)) - 1;
+			}
+			catch (final NumberFormatException exc) {
+				throw new IllegalArgumentException("Invalid position: " + axes[i]);
+			}
+			final int max = sliders[i].getSlider().getMaximum();
+			if (values[i] < 0 || values[i] > max) {
+				throw new IllegalArgumentException("Position out of range: " +
+					axes[i] + " (1-" + (max + 1) + ")");
+			}
+		}
+
+		// sliders are Swing components, so update them on the event thread
+		final StringBuffer sb = new StringBuffer();
+		invokeAndWait(new Runnable() {
+
+			@Override
+			public void run() {
+				for (int i = 0; i < sliders.length; i++) {
+					sliders[i].setValue(values[i]);
+				}
+				for (int s = 0; th.getSlider(s) != null; s++) {
+					final BioSlideWidget bsw = th.getSlider(s);
+					if (s > 0) sb.append(" ");
+					sb.append(bsw.getName() + "=" + (bsw.getValue() + 1));
+				}
+			}
+		});
+		return sb.toString();
+	}
+
+	/** Exports all planes of the given data object to a file. */
+	protected String export(final String data, final String file,
+		final String compression)
+	{
+		final DataTransform trans = getData(data);
+		if (!(trans instanceof ImageTransform)) {
+			throw new IllegalArgumentException("Not an image: " + data);
+		}
+		final int[] lengths = trans.getLengths();
+		int count = 1;
+		for (int i = 0; i < lengths.length; i++)
+			count *= lengths[i];
+		try {
+			VisBioBatch.exportPlanes((ImageTransform) trans, 0, count, file,
+				compression);
+		}
+		catch (final FormatException exc) {
+			throw new IllegalArgumentException(exc.getMessage());
+		}
+		catch (final IOException exc) {
+			throw new IllegalArgumentException(exc.getMessage());
+		}
+		return count + " planes";
+	}
+
+	/** Saves a snapshot of the given display to a file. */
+	protected String snapshot(final String display, final String file) {
+		try {
+			getDisplay(display).getCaptureHandler().saveSnapshot(file);
+		}
+		catch (final FormatException exc) {
+			throw new IllegalArgumentException(exc.getMessage());
+		}
+		catch (final IOException exc) {
+			throw new IllegalArgumentException(exc.getMessage());
+		}
+		return file;
+	}
+
+	/**
+	 * Reports cache and thread telemetry, or the thumbnail statistics of the
+	 * given data object if one is named.
+	 */
+	protected String stats(final String data) {
+		if (data == null) {
+			final Telemetry t = getTelemetry();
+			return t.getDataCacheSummary() + "; " + t.getReadSummary() + "; " +
+				t.getThreadSummary();
+		}
+		final ThumbnailHandler th = getData(data).getThumbHandler();
+		final Histogram h = th == null ? null : th.getGlobalStats();
+		if (h == null) return "no statistics";
+		final StringBuffer sb = new StringBuffer();
+		for (int c = 0; c < h.getChannelCount(); c++) {
+			if (c > 0) sb.append("; ");
+			sb.append("channel " + (c + 1) + ": min=" + h.getMin(c) + " max=" +
+				h.getMax(c) + " mean=" + h.getMean(c));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Checks that the given command has at least the given number of arguments.
+	 * 
+	 * @throws IllegalArgumentException with the given usage if it does not
+	 */
+	protected void checkArguments(final CommandEvent e, final int min,
+		final String usage)
+	{
+		if (e.getArgumentCount() < min) {
+			throw new IllegalArgumentException("Usage: " + usage);
+		}
+	}
+
+	/**
+	 * Checks that the given command was sent by an authenticated session.
+	 * 
+	 * @throws IllegalArgumentException if it was not
+	 */
+	protected void checkAuthenticated(final CommandEvent e) {
+		if (!e.isAuthenticated()) {
+			throw new IllegalArgumentException(e.getCommand() +
+				" requires a session authenticated with the token in " +
+				VisBio.TOKEN_FILE);
+		}
+	}
+
+	/** Gets the data object with the given name. */
+	protected DataTransform getData(final String name) {
+		final Vector<DataTransform> data = getDataList();
+		for (int i = 0; i < data.size(); i++) {
+			final DataTransform trans = data.elementAt(i);
+			if (trans.getName().equals(name)) return trans;
+		}
+		throw new IllegalArgumentException("No such data: " + name);
+	}
+
+	/** Gets the display with the given name. */
+	protected DisplayWindow getDisplay(final String name) {
+		final DisplayWindow[] displays = getDisplays();
+		for (int i = 0; i < displays.length; i++) {
+			if (displays[i].getName().equals(name)) return displays[i];
+		}
+		throw new IllegalArgumentException("No such display: " + name);
+	}
+
+	/** Gets VisBio's data objects. */
+	protected Vector<DataTransform> getDataList() {
+		return getDataManager().getDataList();
+	}
+
+	/** Gets VisBio's displays. */
+	protected DisplayWindow[] getDisplays() {
+		return getDisplayManager().getDisplays();
+	}
+
+	/** Gets whether datasets should be opened lazily. */
+	protected boolean getLazyOpen() {
+		return getDataManager().getLazyOpen();
+	}
+
+	/** Adds a data object to VisBio, on the event dispatch thread. */
+	protected void addData(final DataTransform data) {
+		invokeAndWait(new Runnable() {
+
+			@Override
+			public void run() {
+				getDataManager().addData(data);
+			}
+		});
+	}
+
+	/** Gets VisBio's telemetry. */
+	protected Telemetry getTelemetry() {
+		return ((SystemManager) bio.getManager(SystemManager.class))
+			.getTelemetry();
+	}
+
+	/** Gets VisBio's data manager. */
+	protected DataManager getDataManager() {
+		return (DataManager) bio.getManager(DataManager.class);
+	}
+
+	/** Gets VisBio's display manager. */
+	protected DisplayManager getDisplayManager() {
+		return (DisplayManager) bio.getManager(DisplayManager.class);
+	}
+
+	/** Runs the given code on the event dispatch thread, waiting for it. */
+	protected void invokeAndWait(final Runnable r) {
+		if (SwingUtilities.isEventDispatchThread()) {
+			r.run();
+			return;
+		}
+		try {
+			SwingUtilities.invokeAndWait(r);
+		}
+		catch (final InterruptedException exc) {
+			Thread.currentThread().interrupt();
+		}
+		catch (final InvocationTargetException exc) {
+			throw new IllegalArgumentException(exc.getCause().getMessage());
+		}
+	}
+
+}
@@ -56,6 +56,15 @@ public class LogicManager implements Saveable {
 		return bio;
 	}
 
+	/**
+	 * Performs any initialization needing neither the GUI nor other logic
+	 * managers, such as loading classes or probing the file system. Called on a
+	 * background thread before this logic manager is added to VisBio, possibly
+	 * concurrently with other managers' preparation. The default implementation
+	 * does nothing.
+	 */
+	public void prepare() {}
+
 	/** Gets the number of tasks required to initialize this logic manager. */
 	public int getTasks() {
 		return 0;
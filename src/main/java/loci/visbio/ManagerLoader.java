@@ -0,0 +1,302 @@
+/*
+ * #%L
+ * VisBio application for visualization of multidimensional biological
+ * image data.
+ * %%
+ * Copyright (C) 2002 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+
+package loci.visbio;
+
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Vector;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * ManagerLoader orchestrates the startup of VisBio's logic managers.
+ * <p>
+ * Each manager is declared along with the managers it depends upon, which
+ * must be declared before it. Loading happens in two overlapping phases:
+ * <ol>
+ * <li>Each manager's {@link LogicManager#prepare()} method runs on a pool of
+ * worker threads, as soon as the managers it depends upon have been prepared,
+ * so that independent managers load their classes and probe the file system
+ * concurrently.
+ * <li>Meanwhile, managers are added to VisBio one at a time on the event
+ * dispatch thread, in declaration order, each once it has been prepared.
+ * Adding a manager builds its GUI components, which must happen sequentially
+ * since Swing menus and other managers' state are shared, and some managers
+ * rely on the order of LOGIC_ADDED events.
+ * </ol>
+ * Preparation and addition times are recorded per manager, and can be printed
+ * to help diagnose slow startups.
+ */
+public class ManagerLoader {
+
+	// -- Fields --
+
+	/** VisBio frame to which managers are added. */
+	protected VisBioFrame bio;
+
+	/** Declared managers, in declaration order. */
+	protected Vector<Entry> entries = new Vector<Entry>();
+
+	/** Time at which loading began. */
+	private long startTime;
+
+	/** Time at which the last manager was added. */
+	private long endTime;
+
+	// -- Constructor --
+
+	/** Constructs a manager loader for the given VisBio frame. */
+	public ManagerLoader(final VisBioFrame bio) {
+		this.bio = bio;
+	}
+
+	// -- ManagerLoader API methods --
+
+	/**
+	 * Declares a logic manager, which depends on the managers of the given
+	 * classes.
+	 * 
+	 * @throws IllegalArgumentException if a dependency has not been declared
+	 */
+	public void add(final LogicManager lm, final Class<?>[] deps) {
+		final Entry e = new Entry(lm, deps == null ? 0 : deps.length);
+		for (int d = 0; d < e.deps.length; d++) {
+			e.deps[d] = getEntry(deps[d]);
+			if (e.deps[d] == null) {
+				throw new IllegalArgumentException(deps[d].getName() +
+					" must be declared before " + lm.getClass().getName());
+			}
+		}
+		entries.add(e);
+	}
+
+	/** Gets the declared managers, in declaration order. */
+	public LogicManager[] getManagers() {
+		final LogicManager[] lm = new LogicManager[entries.size()];
+		for (int i = 0; i < lm.length; i++)
+			lm[i] = entries.elementAt(i).manager;
+		return lm;
+	}
+
+	/**
+	 * Prepares all declared managers concurrently, while adding them to VisBio
+	 * in declaration order on the event dispatch thread.
+	 * 
+	 * @throws RuntimeException if a manager could not be prepared or added
+	 */
+	public void load() {
+		startTime = System.currentTimeMillis();
+		int numThreads = Runtime.getRuntime().availableProcessors();
+		if (numThreads > entries.size()) numThreads = entries.size();
+		final Runnable worker = new Runnable() {
+
+			@Override
+			public void run() {
+				while (true) {
+					final Entry e = nextEntry();
+					if (e == null) break;
+					e.prepare();
+					synchronized (ManagerLoader.this) {
+						e.prepared = true;
+						ManagerLoader.this.notifyAll();
+					}
+				}
+			}
+		};
+		for (int t = 0; t < numThreads; t++) {
+			final Thread thread =
+				new Thread(worker, "VisBio-ManagerLoaderThread-" + t);
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		for (int i = 0; i < entries.size(); i++) {
+			final Entry e = entries.elementAt(i);
+			final long start = System.currentTimeMillis();
+			waitPrepared(e);
+			e.waitTime = System.currentTimeMillis() - start;
+			if (e.error != null) {
+				throw new RuntimeException("Could not prepare " +
+					e.manager.getClass().getName(), e.error);
+			}
+			invokeAndWait(new Runnable() {
+
+				@Override
+				public void run() {
+					final long addStart = System.currentTimeMillis();
+					install(e.manager);
+					e.addTime = System.currentTimeMillis() - addStart;
+				}
+			});
+		}
+		endTime = System.currentTimeMillis();
+	}
+
+	/** Prints preparation, waiting and addition times of each manager. */
+	public void printTimings(final PrintStream out) {
+		out.println("Logic manager startup times (prepare/wait/add):");
+		long prepare = 0, wait = 0, add = 0;
+		for (int i = 0; i < entries.size(); i++) {
+			final Entry e = entries.elementAt(i);
+			out.println("  " + e.manager.getClass().getName() + ": " +
+				e.prepareTime + "/" + e.waitTime + "/" + e.addTime + " ms");
+			prepare += e.prepareTime;
+			wait += e.waitTime;
+			add += e.addTime;
+		}
+		out.println("  total: " + prepare + "/" + wait + "/" + add + " ms; " +
+			(endTime - startTime) + " ms elapsed");
+	}
+
+	// -- Internal ManagerLoader API methods --
+
+	/**
+	 * Adds the given prepared manager to VisBio. Called on the event dispatch
+	 * thread.
+	 */
+	protected void install(final LogicManager lm) {
+		bio.addManager(lm);
+	}
+
+	// -- Helper methods --
+
+	/** Gets the declared manager entry of the given class, or null if none. */
+	private Entry getEntry(final Class<?> c) {
+		for (int i = 0; i < entries.size(); i++) {
+			final Entry e = entries.elementAt(i);
+			if (e.manager.getClass().equals(c)) return e;
+		}
+		return null;
+	}
+
+	/**
+	 * Gets the next manager whose dependencies have all been prepared, waiting
+	 * if necessary, or null if every manager has been started.
+	 */
+	private synchronized Entry nextEntry() {
+		while (true) {
+			boolean pending = false;
+			for (int i = 0; i < entries.size(); i++) {
+				final Entry e = entries.elementAt(i);
+				if (e.started) continue;
+				pending = true;
+				boolean ready = true;
+				for (int d = 0; d < e.deps.length && ready; d++) {
+					ready = e.deps[d].prepared;
+				}
+				if (ready) {
+					e.started = true;
+					return e;
+				}
+			}
+			if (!pending) return null;
+			try {
+				wait();
+			}
+			catch (final InterruptedException exc) {
+				return null;
+			}
+		}
+	}
+
+	/** Waits until the given manager has been prepared. */
+	private synchronized void waitPrepared(final Entry e) {
+		boolean interrupted = false;
+		while (!e.prepared) {
+			try {
+				wait();
+			}
+			catch (final InterruptedException exc) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) Thread.currentThread().interrupt();
+	}
+
+	/** Runs the given code on the event dispatch thread, waiting for it. */
+	private void invokeAndWait(final Runnable r) {
+		if (SwingUtilities.isEventDispatchThread()) {
+			r.run();
+			return;
+		}
+		try {
+			SwingUtilities.invokeAndWait(r);
+		}
+		catch (final InterruptedException exc) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while adding logic managers");
+		}
+		catch (final InvocationTargetException exc) {
+			final Throwable cause = exc.getCause();
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if (cause instanceof Error) throw (Error) cause;
+			throw new RuntimeException(cause);
+		}
+	}
+
+	// -- Helper classes --
+
+	/** A declared logic manager, with its dependencies and timings. */
+	protected static class Entry {
+
+		/** The logic manager. */
+		protected LogicManager manager;
+
+		/** Entries of the managers this one depends upon. */
+		protected Entry[] deps;
+
+		/** Whether a worker thread has started preparing the manager. */
+		protected boolean started;
+
+		/** Whether the manager has finished preparing. */
+		protected boolean prepared;
+
+		/** Error thrown while preparing the manager, or null. */
+		protected Throwable error;
+
+		/** Time spent preparing, waiting for and adding the manager. */
+		protected long prepareTime, waitTime, addTime;
+
+		/** Constructs an entry with room for the given number of dependencies. */
+		public Entry(final LogicManager manager, final int numDeps) {
+			this.manager = manager;
+			deps = new Entry[numDeps];
+		}
+
+		/** Prepares the manager, recording any error. */
+		public void prepare() {
+			final long start = System.currentTimeMillis();
+			try {
+				manager.prepare();
+			}
+			catch (final Throwable t) {
+				error = t;
+			}
+			prepareTime = System.currentTimeMillis() - start;
+		}
+	}
+
+}
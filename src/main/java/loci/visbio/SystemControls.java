@@ -36,6 +36,7 @@ import java.util.Enumeration;
 import java.util.Properties;
 
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
 import javax.swing.JOptionPane;
 import javax.swing.JTextField;
 import javax.swing.SwingUtilities;
@@ -60,6 +61,21 @@ public class SystemControls extends ControlPanel implements ActionListener {
 	/** Memory usage text field. */
 	private final JTextField memField;
 
+	/** Memory pool usage text field. */
+	private final JTextField poolField;
+
+	/** Full-resolution data cache text field. */
+	private final JTextField cacheField;
+
+	/** Thumbnail cache text field. */
+	private final JTextField thumbField;
+
+	/** Image read and burn-in latency text field. */
+	private final JTextField readField;
+
+	/** Thread count text field. */
+	private final JTextField threadField;
+
 	/** Look &amp; Feel text field. */
 	private final JTextField lafField;
 
@@ -112,6 +128,52 @@ public class SystemControls extends ControlPanel implements ActionListener {
 			new JTextField(sm.getMaximumMemory() + " MB maximum");
 		heapField.setEditable(false);
 
+		// memory pool usage text field
+		poolField = new JTextField();
+		poolField.setEditable(false);
+		poolField.setToolTipText("Used/committed/maximum megabytes of "
+			+ "each memory pool");
+
+		// data cache text field
+		cacheField = new JTextField();
+		cacheField.setEditable(false);
+
+		// cache flushing button
+		final JButton flush = new JButton("Flush");
+		if (!LAFUtil.isMacLookAndFeel()) flush.setMnemonic('f');
+		flush.setToolTipText("Discards full-resolution data cached in memory");
+		flush.setActionCommand("flush");
+		flush.addActionListener(this);
+
+		// thumbnail cache text field
+		thumbField = new JTextField();
+		thumbField.setEditable(false);
+
+		// image read text field
+		readField = new JTextField();
+		readField.setEditable(false);
+
+		// thread count text field
+		threadField = new JTextField();
+		threadField.setEditable(false);
+
+		// profiling toggle
+		final JCheckBox profile = new JCheckBox("Record stage latencies");
+		if (!LAFUtil.isMacLookAndFeel()) profile.setMnemonic('k');
+		profile.setSelected(sm.isProfiling());
+		profile.setToolTipText("Toggles timing of image reads, transform "
+			+ "computation and burn-in for each transform chain");
+		profile.setActionCommand("profile");
+		profile.addActionListener(this);
+
+		// profile dumping button
+		final JButton dumpProfile = new JButton("Dump");
+		if (!LAFUtil.isMacLookAndFeel()) dumpProfile.setMnemonic('b');
+		dumpProfile.setToolTipText("Dumps latency breakdowns of each transform "
+			+ "chain to the output console");
+		dumpProfile.setActionCommand("dumpProfile");
+		dumpProfile.addActionListener(this);
+
 		// memory maximum alteration button
 		final JButton heap = new JButton("Change...");
 		if (!LAFUtil.isMacLookAndFeel()) heap.setMnemonic('a');
@@ -185,7 +247,9 @@ public class SystemControls extends ControlPanel implements ActionListener {
 		// lay out components
 		final FormLayout layout =
 			new FormLayout("right:pref, 3dlu, pref:grow, 3dlu, pref",
-				"pref, 3dlu, pref, 3dlu, pref, 3dlu, pref, 3dlu, pref, 9dlu, "
+				"pref, 3dlu, pref, 3dlu, pref, 3dlu, pref, 3dlu, pref, 3dlu, "
+					+ "pref, 3dlu, pref, 3dlu, pref, 3dlu, pref, 3dlu, pref, 3dlu, "
+					+ "pref, 9dlu, "
 					+ "pref, 3dlu, pref, 3dlu, pref, 3dlu, pref, 3dlu, pref, 9dlu, "
 					+ "pref, 3dlu, pref, 3dlu, pref, 3dlu, pref");
 		final PanelBuilder builder = new PanelBuilder(layout);
@@ -210,6 +274,27 @@ public class SystemControls extends ControlPanel implements ActionListener {
 		builder.add(heapField, cc.xy(3, row));
 		builder.add(heap, cc.xy(5, row));
 		row += 2;
+		builder.addLabel("Memor&y pools", cc.xy(1, row)).setLabelFor(poolField);
+		builder.add(poolField, cc.xyw(3, row, 3));
+		row += 2;
+		builder.addLabel("Data cach&e", cc.xy(1, row)).setLabelFor(cacheField);
+		builder.add(cacheField, cc.xy(3, row));
+		builder.add(flush, cc.xy(5, row));
+		row += 2;
+		builder.addLabel("&Thumbnail cache", cc.xy(1, row))
+			.setLabelFor(thumbField);
+		builder.add(thumbField, cc.xyw(3, row, 3));
+		row += 2;
+		builder.addLabel("&Image reads", cc.xy(1, row)).setLabelFor(readField);
+		builder.add(readField, cc.xyw(3, row, 3));
+		row += 2;
+		builder.addLabel("T&hreads", cc.xy(1, row)).setLabelFor(threadField);
+		builder.add(threadField, cc.xyw(3, row, 3));
+		row += 2;
+		builder.addLabel("Profiling", cc.xy(1, row));
+		builder.add(profile, cc.xy(3, row));
+		builder.add(dumpProfile, cc.xy(5, row));
+		row += 2;
 		builder.addSeparator("Libraries", cc.xyw(1, row, 5));
 		row += 2;
 		builder.addLabel("Java&3D", cc.xy(1, row)).setLabelFor(java3dField);
@@ -264,6 +349,11 @@ public class SystemControls extends ControlPanel implements ActionListener {
 			}
 		}
 		else if ("clean".equals(cmd)) sm.cleanMemory();
+		else if ("flush".equals(cmd)) sm.flushCaches();
+		else if ("profile".equals(cmd)) {
+			sm.setProfiling(((JCheckBox) e.getSource()).isSelected());
+		}
+		else if ("dumpProfile".equals(cmd)) sm.dumpProfile();
 		else if ("heap".equals(cmd)) {
 			final String max = "" + sm.getMaximumMemory();
 			final String heapSize =
@@ -356,14 +446,34 @@ public class SystemControls extends ControlPanel implements ActionListener {
 		else {
 			// update system information
 			if (!lm.getVisBio().isVisible()) return;
-			final String mem = ((SystemManager) lm).getMemoryUsage();
+			final String mem = sm.getMemoryUsage();
 			if (!mem.equals(memUsage)) {
 				memUsage = mem;
 				memField.setText(mem);
 			}
+			final Telemetry telemetry = sm.getTelemetry();
+			final String[] pools = telemetry.getMemoryPools();
+			final StringBuffer sb = new StringBuffer();
+			for (int i = 0; i < pools.length; i++) {
+				if (i > 0) sb.append("; ");
+				sb.append(pools[i]);
+			}
+			setText(poolField, sb.toString());
+			setText(cacheField, telemetry.getDataCacheSummary());
+			setText(thumbField, (telemetry.getThumbnailCacheBytes() >> 20) +
+				" MB on disk");
+			setText(readField, telemetry.getReadSummary());
+			setText(threadField, telemetry.getThreadSummary());
 		}
 	}
 
+	// -- Helper methods --
+
+	/** Updates the given field's text, if it has changed. */
+	private static void setText(final JTextField field, final String text) {
+		if (!text.equals(field.getText())) field.setText(text);
+	}
+
 	// -- Utility methods --
 
 	/** Gets version information for the specified class. */
@@ -26,31 +26,43 @@ package loci.visbio;
 
 import com.jgoodies.looks.LookUtils;
 
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
 import java.util.Vector;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import javax.swing.JFrame;
 import javax.swing.JMenuItem;
 import javax.swing.KeyStroke;
-import javax.swing.Timer;
 
 import loci.visbio.help.HelpManager;
+import loci.visbio.util.Profiler;
+import loci.visbio.view.DisplayManager;
+import loci.visbio.view.DisplayWindow;
 import visad.util.Util;
 
 /**
  * SystemManager is the manager encapsulating VisBio's system information report
  * logic.
  */
-public class SystemManager extends LogicManager implements ActionListener,
-	Runnable
-{
+public class SystemManager extends LogicManager implements Runnable {
+
+	// -- Constants --
+
+	/** Number of recent profiled spans printed by {@link #dumpProfile}. */
+	public static final int RECENT_SPANS = 50;
+
+	// -- Fields --
+
+	/** Live memory, cache and thread counters. */
+	private final Telemetry telemetry;
 
 	// -- Control panel --
 
@@ -65,21 +77,23 @@ public class SystemManager extends LogicManager implements ActionListener,
 	/** Constructs a system manager. */
 	public SystemManager(final VisBioFrame bio) {
 		super(bio);
+		telemetry = new Telemetry(bio);
 	}
 
 	// -- SystemManager API methods --
 
 	/** Gets a string detailing current memory usage. */
 	public String getMemoryUsage() {
-		final Runtime runtime = Runtime.getRuntime();
-		final long total = runtime.totalMemory();
-		final long free = runtime.freeMemory();
-		final long used = total - free;
-		final long memUsed = used >> 20;
-		final long memTotal = total >> 20;
+		final long memUsed = telemetry.getHeapUsed() >> 20;
+		final long memTotal = telemetry.getHeapCommitted() >> 20;
 		return memUsed + " MB used (" + memTotal + " MB reserved)";
 	}
 
+	/** Gets VisBio's live memory, cache and thread counters. */
+	public Telemetry getTelemetry() {
+		return telemetry;
+	}
+
 	/** Gets maximum amount of memory available to VisBio in megabytes. */
 	public int getMaximumMemory() {
 		return (int) (Runtime.getRuntime().maxMemory() / 1048376);
@@ -90,6 +104,41 @@ public class SystemManager extends LogicManager implements ActionListener,
 		Util.invoke(false, this);
 	}
 
+	/**
+	 * Discards the full-resolution data cached by every display, then frees the
+	 * memory it occupied. Displayed data is reloaded as needed.
+	 */
+	public void flushCaches() {
+		final DisplayManager dm =
+			(DisplayManager) bio.getManager(DisplayManager.class);
+		if (dm != null) {
+			final DisplayWindow[] windows = dm.getDisplays();
+			for (int i = 0; i < windows.length; i++) {
+				windows[i].getTransformHandler().getCache().dumpAll();
+			}
+		}
+		cleanMemory();
+	}
+
+	/** Switches hot-path latency profiling on or off. */
+	public void setProfiling(final boolean on) {
+		Profiler.setEnabled(on);
+	}
+
+	/** Gets whether hot-path latency profiling is on. */
+	public boolean isProfiling() {
+		return Profiler.isEnabled();
+	}
+
+	/**
+	 * Prints the latency breakdown of each profiled transform chain, followed by
+	 * the most recent profiled spans, to the output console.
+	 */
+	public void dumpProfile() {
+		Profiler.dump(System.out);
+		Profiler.dumpRecent(System.out, RECENT_SPANS);
+	}
+
 	/**
 	 * Updates the VisBio launch parameters to specify the given maximum heap and
 	 * look and feel settings.
@@ -240,18 +289,16 @@ public class SystemManager extends LogicManager implements ActionListener,
 		}
 	}
 
-	/** Gets the number of tasks required to initialize this logic manager. */
+	/** Publishes telemetry, since starting the MBean server takes a while. */
 	@Override
-	public int getTasks() {
-		return 2;
+	public void prepare() {
+		registerTelemetry();
 	}
 
-	// -- ActionListener API methods --
-
-	/** Outputs current RAM usage to console. */
+	/** Gets the number of tasks required to initialize this logic manager. */
 	@Override
-	public void actionPerformed(final ActionEvent e) {
-		System.out.println(System.currentTimeMillis() + ": " + getMemoryUsage());
+	public int getTasks() {
+		return 2;
 	}
 
 	// -- Runnable API methods --
@@ -286,9 +333,24 @@ public class SystemManager extends LogicManager implements ActionListener,
 		hm.addHelpTopic(s + "/Changing the memory limit", "memory_limit.html");
 		hm.addHelpTopic(s + "/Changing VisBio's appearance", "look_and_feel.html");
 		hm.addHelpTopic(s + "/Changing the renderer", "renderer.html");
+	}
 
-		// RAM usage debugging output
-		if (VisBioFrame.DEBUG) new Timer(500, this).start();
+	/**
+	 * Publishes telemetry for JMX clients such as JConsole, starting the platform
+	 * MBean server if necessary.
+	 */
+	private void registerTelemetry() {
+		try {
+			final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			final ObjectName name = new ObjectName(Telemetry.OBJECT_NAME);
+			if (!server.isRegistered(name)) server.registerMBean(telemetry, name);
+		}
+		catch (final JMException exc) {
+			if (VisBioFrame.DEBUG) exc.printStackTrace();
+		}
+		catch (final SecurityException exc) {
+			if (VisBioFrame.DEBUG) exc.printStackTrace();
+		}
 	}
 
 	// -- Utility methods --
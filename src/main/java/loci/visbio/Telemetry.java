@@ -0,0 +1,381 @@
+/*
+ * #%L
+ * VisBio application for visualization of multidimensional biological
+ * image data.
+ * %%
+ * Copyright (C) 2002 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.visbio;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Vector;
+
+import loci.visbio.data.DataManager;
+import loci.visbio.data.DataTransform;
+import loci.visbio.data.ThumbnailCache;
+import loci.visbio.data.ThumbnailHandler;
+
+/**
+ * Telemetry gathers live counters describing VisBio's memory, caches, image
+ * reads, burn-in latency and threads. Instrumented code reports events through
+ * the static recording methods; an instance publishes the counters through the
+ * System panel and, once registered, as a JMX MBean.
+ */
+public class Telemetry implements TelemetryMBean {
+
+	// -- Constants --
+
+	/** JMX object name under which VisBio's telemetry is registered. */
+	public static final String OBJECT_NAME = "loci.visbio:type=Telemetry";
+
+	/** Number of recent burn-in latencies kept for computing percentiles. */
+	public static final int LATENCY_SAMPLES = 1024;
+
+	/** Prefix shared by the names of threads VisBio starts. */
+	protected static final String THREAD_PREFIX = "VisBio-";
+
+	// -- Static fields --
+
+	/** Lock guarding the static counters. */
+	private static final Object LOCK = new Object();
+
+	/** Approximate bytes and number of planes in full-resolution data caches. */
+	private static long cacheBytes, cacheEntries;
+
+	/** Full-resolution data cache hits and misses. */
+	private static long cacheHits, cacheMisses;
+
+	/** Number of image reads in progress. */
+	private static int readsInFlight;
+
+	/** Number of burn-ins performed. */
+	private static long burnIns;
+
+	/** Ring buffer of recent burn-in latencies in milliseconds. */
+	private static final long[] latencies = new long[LATENCY_SAMPLES];
+
+	// -- Fields --
+
+	/** VisBio frame whose datasets are examined for thumbnail caches. */
+	protected VisBioFrame bio;
+
+	// -- Constructor --
+
+	/** Constructs a telemetry publisher for the given VisBio frame. */
+	public Telemetry(final VisBioFrame bio) {
+		this.bio = bio;
+	}
+
+	// -- Telemetry API methods --
+
+	/** Records a full-resolution data request satisfied by a cache. */
+	public static void cacheHit() {
+		synchronized (LOCK) {
+			cacheHits++;
+		}
+	}
+
+	/** Records a full-resolution data request a cache could not satisfy. */
+	public static void cacheMiss() {
+		synchronized (LOCK) {
+			cacheMisses++;
+		}
+	}
+
+	/**
+	 * Records a change to the contents of a full-resolution data cache.
+	 *
+	 * @param entries Number of planes added (or removed, if negative)
+	 * @param bytes Approximate bytes added (or removed, if negative)
+	 */
+	public static void cacheChanged(final long entries, final long bytes) {
+		synchronized (LOCK) {
+			cacheEntries += entries;
+			cacheBytes += bytes;
+		}
+	}
+
+	/** Records the start of an image read. */
+	public static void readStarted() {
+		synchronized (LOCK) {
+			readsInFlight++;
+		}
+	}
+
+	/** Records the end of an image read, successful or not. */
+	public static void readFinished() {
+		synchronized (LOCK) {
+			readsInFlight--;
+		}
+	}
+
+	/** Records a full-resolution burn-in taking the given time. */
+	public static void burnedIn(final long millis) {
+		synchronized (LOCK) {
+			latencies[(int) (burnIns % LATENCY_SAMPLES)] = millis;
+			burnIns++;
+		}
+	}
+
+	/**
+	 * Gets the given percentile of the recent burn-in latencies, in
+	 * milliseconds, or -1 if there have been no burn-ins.
+	 */
+	public static long getBurnInLatency(final double percent) {
+		long[] recent;
+		synchronized (LOCK) {
+			final int count =
+				(int) (burnIns < LATENCY_SAMPLES ? burnIns : LATENCY_SAMPLES);
+			recent = new long[count];
+			System.arraycopy(latencies, 0, recent, 0, count);
+		}
+		return getPercentile(recent, percent);
+	}
+
+	/**
+	 * Gets the given percentile of the specified values using the nearest-rank
+	 * method, or -1 if there are none. The array is sorted in place.
+	 */
+	public static long getPercentile(final long[] values, final double percent)
+	{
+		if (values.length == 0) return -1;
+		Arrays.sort(values);
+		int rank = (int) Math.ceil(percent / 100 * values.length) - 1;
+		if (rank < 0) rank = 0;
+		if (rank >= values.length) rank = values.length - 1;
+		return values[rank];
+	}
+
+	/** Gets a one-line summary of the full-resolution data caches. */
+	public String getDataCacheSummary() {
+		final double ratio = getDataCacheHitRatio();
+		return (getDataCacheBytes() >> 20) + " MB in " + getDataCacheEntries() +
+			" planes (" + (ratio < 0 ? "no requests" : Math.round(100 * ratio) +
+			"% hits") + ")";
+	}
+
+	/** Gets a one-line summary of image reads and burn-in latency. */
+	public String getReadSummary() {
+		final long count = getBurnInCount();
+		return getReadsInFlight() + " reads in flight; " + (count == 0
+			? "no burn-ins" : "burn-in " + getBurnInLatency50() + "/" +
+				getBurnInLatency90() + "/" + getBurnInLatency99() + " ms (50/90/99%)");
+	}
+
+	/** Gets a one-line summary of the live threads. */
+	public String getThreadSummary() {
+		return getThreadCount() + " live (" + getVisBioThreadCount() +
+			" VisBio), " + getPeakThreadCount() + " peak";
+	}
+
+	// -- TelemetryMBean API methods --
+
+	/** Gets heap memory in use, in bytes. */
+	@Override
+	public long getHeapUsed() {
+		return getHeapUsage().getUsed();
+	}
+
+	/** Gets heap memory reserved from the operating system, in bytes. */
+	@Override
+	public long getHeapCommitted() {
+		return getHeapUsage().getCommitted();
+	}
+
+	/** Gets the maximum heap size, in bytes. */
+	@Override
+	public long getHeapMax() {
+		return getHeapUsage().getMax();
+	}
+
+	/** Gets usage of each memory pool, one "name: used/committed/max" each. */
+	@Override
+	public String[] getMemoryPools() {
+		final List pools = ManagementFactory.getMemoryPoolMXBeans();
+		final String[] s = new String[pools.size()];
+		for (int i = 0; i < s.length; i++) {
+			final MemoryPoolMXBean pool = (MemoryPoolMXBean) pools.get(i);
+			final MemoryUsage usage = pool.getUsage();
+			s[i] =
+				pool.getName() + ": " + (usage.getUsed() >> 20) + "/" +
+					(usage.getCommitted() >> 20) + "/" +
+					(usage.getMax() < 0 ? "?" : "" + (usage.getMax() >> 20)) + " MB";
+		}
+		return s;
+	}
+
+	/** Gets the approximate size of full-resolution data cached in memory. */
+	@Override
+	public long getDataCacheBytes() {
+		synchronized (LOCK) {
+			return cacheBytes;
+		}
+	}
+
+	/** Gets the number of full-resolution planes cached in memory. */
+	@Override
+	public long getDataCacheEntries() {
+		synchronized (LOCK) {
+			return cacheEntries;
+		}
+	}
+
+	/** Gets the number of full-resolution data requests the cache satisfied. */
+	@Override
+	public long getDataCacheHits() {
+		synchronized (LOCK) {
+			return cacheHits;
+		}
+	}
+
+	/** Gets the number of full-resolution data requests the cache missed. */
+	@Override
+	public long getDataCacheMisses() {
+		synchronized (LOCK) {
+			return cacheMisses;
+		}
+	}
+
+	/**
+	 * Gets the fraction of full-resolution data requests the cache satisfied,
+	 * or -1 if there have been no requests.
+	 */
+	@Override
+	public double getDataCacheHitRatio() {
+		synchronized (LOCK) {
+			final long total = cacheHits + cacheMisses;
+			return total == 0 ? -1 : (double) cacheHits / total;
+		}
+	}
+
+	/** Gets the total size of the thumbnail cache files on disk, in bytes. */
+	@Override
+	public long getThumbnailCacheBytes() {
+		final DataManager dm = (DataManager) bio.getManager(DataManager.class);
+		if (dm == null) return 0;
+		final Vector list = dm.getDataList();
+		final Hashtable files = new Hashtable();
+		long bytes = 0;
+		for (int i = 0; i < list.size(); i++) {
+			final DataTransform data = (DataTransform) list.elementAt(i);
+			final ThumbnailHandler th = data.getThumbHandler();
+			final ThumbnailCache cache = th == null ? null : th.getCache();
+			if (cache == null) continue;
+			final File file = cache.getCacheFile();
+			if (files.containsKey(file)) continue; // cache shared with a parent
+			files.put(file, file);
+			bytes += cache.getUsage();
+		}
+		return bytes;
+	}
+
+	/** Gets the number of image reads currently in progress. */
+	@Override
+	public int getReadsInFlight() {
+		synchronized (LOCK) {
+			return readsInFlight;
+		}
+	}
+
+	/** Gets the number of full-resolution burn-ins performed. */
+	@Override
+	public long getBurnInCount() {
+		synchronized (LOCK) {
+			return burnIns;
+		}
+	}
+
+	/** Gets the median latency of recent burn-ins, in milliseconds. */
+	@Override
+	public long getBurnInLatency50() {
+		return getBurnInLatency(50);
+	}
+
+	/** Gets the 90th percentile latency of recent burn-ins, in milliseconds. */
+	@Override
+	public long getBurnInLatency90() {
+		return getBurnInLatency(90);
+	}
+
+	/** Gets the 99th percentile latency of recent burn-ins, in milliseconds. */
+	@Override
+	public long getBurnInLatency99() {
+		return getBurnInLatency(99);
+	}
+
+	/** Gets the number of live threads. */
+	@Override
+	public int getThreadCount() {
+		return getThreadBean().getThreadCount();
+	}
+
+	/** Gets the peak number of live threads. */
+	@Override
+	public int getPeakThreadCount() {
+		return getThreadBean().getPeakThreadCount();
+	}
+
+	/** Gets the number of live threads started by VisBio. */
+	@Override
+	public int getVisBioThreadCount() {
+		ThreadGroup group = Thread.currentThread().getThreadGroup();
+		while (group.getParent() != null)
+			group = group.getParent();
+		final Thread[] threads = new Thread[2 * group.activeCount() + 1];
+		final int count = group.enumerate(threads, true);
+		int visbio = 0;
+		for (int i = 0; i < count; i++) {
+			if (threads[i].getName().startsWith(THREAD_PREFIX)) visbio++;
+		}
+		return visbio;
+	}
+
+	/** Resets the cache hit, miss and burn-in counters. */
+	@Override
+	public void resetCounters() {
+		synchronized (LOCK) {
+			cacheHits = cacheMisses = 0;
+			burnIns = 0;
+		}
+		getThreadBean().resetPeakThreadCount();
+	}
+
+	// -- Helper methods --
+
+	/** Gets current heap usage from the platform memory bean. */
+	private static MemoryUsage getHeapUsage() {
+		final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		return memory.getHeapMemoryUsage();
+	}
+
+	/** Gets the platform thread bean. */
+	private static ThreadMXBean getThreadBean() {
+		return ManagementFactory.getThreadMXBean();
+	}
+
+}
@@ -0,0 +1,101 @@
+/*
+ * #%L
+ * VisBio application for visualization of multidimensional biological
+ * image data.
+ * %%
+ * Copyright (C) 2002 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.visbio;
+
+/**
+ * Management interface exposing VisBio's live memory, cache, I/O and thread
+ * counters over JMX, so long sessions can be watched with tools such as
+ * JConsole.
+ */
+public interface TelemetryMBean {
+
+	// -- Memory --
+
+	/** Gets heap memory in use, in bytes. */
+	long getHeapUsed();
+
+	/** Gets heap memory reserved from the operating system, in bytes. */
+	long getHeapCommitted();
+
+	/** Gets the maximum heap size, in bytes. */
+	long getHeapMax();
+
+	/** Gets usage of each memory pool, one "name: used/committed/max" each. */
+	String[] getMemoryPools();
+
+	// -- Caches --
+
+	/** Gets the approximate size of full-resolution data cached in memory. */
+	long getDataCacheBytes();
+
+	/** Gets the number of full-resolution planes cached in memory. */
+	long getDataCacheEntries();
+
+	/** Gets the number of full-resolution data requests the cache satisfied. */
+	long getDataCacheHits();
+
+	/** Gets the number of full-resolution data requests the cache missed. */
+	long getDataCacheMisses();
+
+	/** Gets the fraction of full-resolution data requests the cache satisfied. */
+	double getDataCacheHitRatio();
+
+	/** Gets the total size of the thumbnail cache files on disk, in bytes. */
+	long getThumbnailCacheBytes();
+
+	// -- I/O and rendering --
+
+	/** Gets the number of image reads currently in progress. */
+	int getReadsInFlight();
+
+	/** Gets the number of full-resolution burn-ins performed. */
+	long getBurnInCount();
+
+	/** Gets the median latency of recent burn-ins, in milliseconds. */
+	long getBurnInLatency50();
+
+	/** Gets the 90th percentile latency of recent burn-ins, in milliseconds. */
+	long getBurnInLatency90();
+
+	/** Gets the 99th percentile latency of recent burn-ins, in milliseconds. */
+	long getBurnInLatency99();
+
+	// -- Threads --
+
+	/** Gets the number of live threads. */
+	int getThreadCount();
+
+	/** Gets the peak number of live threads. */
+	int getPeakThreadCount();
+
+	/** Gets the number of live threads started by VisBio. */
+	int getVisBioThreadCount();
+
+	// -- Operations --
+
+	/** Resets the cache hit, miss and burn-in counters. */
+	void resetCounters();
+
+}
@@ -25,6 +25,7 @@
 package loci.visbio;
 
 import java.awt.Color;
+import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
@@ -63,6 +64,13 @@ public final class VisBio extends Thread {
 	/** Port to use for communicating between application instances. */
 	public static final int INSTANCE_PORT = 0xabcd;
 
+	/**
+	 * File, readable only by the user, holding the token that authenticates
+	 * command sessions with the instance server.
+	 */
+	public static final File TOKEN_FILE = new File(System
+		.getProperty("user.home"), ".visbio-token");
+
 	// -- Constructor --
 
 	/** Ensure this class can't be externally instantiated. */
@@ -129,11 +137,24 @@ public final class VisBio extends Thread {
 
 	// -- Main --
 
-	/** Launches the VisBio GUI. */
+	/**
+	 * Launches the VisBio GUI, or runs a batch job without a display if the
+	 * first argument is "-batch".
+	 */
 	public static void main(final String[] args) throws ClassNotFoundException,
 		IllegalAccessException, InstantiationException, InvocationTargetException,
 		NoSuchMethodException
 	{
+		if (args.length > 0 && args[0].equals("-batch")) {
+			// must be set before any AWT class is loaded
+			System.setProperty("java.awt.headless", "true");
+			final String[] batchArgs = new String[args.length - 1];
+			System.arraycopy(args, 1, batchArgs, 0, batchArgs.length);
+			final Class<?> vb = Class.forName("loci.visbio.VisBioBatch");
+			final Method m = vb.getMethod("main", new Class[] { String[].class });
+			m.invoke(null, new Object[] { batchArgs });
+			return;
+		}
 		System.setProperty("apple.laf.useScreenMenuBar", "true");
 		final Object o = launch(args);
 		if (o == null) System.out.println("VisBio is already running.");
@@ -0,0 +1,535 @@
+/*
+ * #%L
+ * VisBio application for visualization of multidimensional biological
+ * image data.
+ * %%
+ * Copyright (C) 2002 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.visbio;
+
+import java.awt.Image;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Vector;
+
+import loci.formats.FormatException;
+import loci.formats.FormatTools;
+import loci.formats.gui.AWTImageTools;
+import loci.formats.gui.BufferedImageWriter;
+import loci.visbio.data.DataManager;
+import loci.visbio.data.DataTransform;
+import loci.visbio.data.Dataset;
+import loci.visbio.data.ImageTransform;
+import loci.visbio.data.ThumbnailHandler;
+import loci.visbio.overlays.OverlayStreamIO;
+import loci.visbio.overlays.OverlayTransform;
+import loci.visbio.state.SaveException;
+import loci.visbio.util.XMLUtil;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import visad.FlatField;
+import visad.ImageFlatField;
+import visad.util.DataUtility;
+
+/**
+ * VisBioBatch runs VisBio jobs without a display, for unattended processing on
+ * machines without a screen. It restores the data transforms of a saved state
+ * file, without any GUI controls, then precomputes thumbnails, exports image
+ * planes to disk and measures overlays, dividing the work among a pool of
+ * worker threads.
+ * <p>
+ * A job is described by a small XML file such as:
+ * 
+ * <pre>
+ * &lt;VisBioBatch state="session.xml" threads="8"&gt;
+ *   &lt;Thumbnails transform="Projection" resolution="128x128"/&gt;
+ *   &lt;Export transform="Spectral mapping" file="out/map_*.tif"
+ *     compression="LZW"/&gt;
+ *   &lt;Measure transform="Nuclei" overlays="nuclei.txt"
+ *     file="nuclei.csv"/&gt;
+ * &lt;/VisBioBatch&gt;
+ * </pre>
+ * 
+ * A Thumbnails or Export step without a transform attribute applies to every
+ * transform. Since saved states do not include overlays, a Measure step may
+ * name an overlay file to load first. An asterisk in an export filename is
+ * replaced by each plane's dimensional position, giving one file per plane;
+ * otherwise all planes are written to a single file. Relative paths are
+ * resolved against the job file's directory. A saved state file may also be
+ * given in place of a job file, in which case thumbnails are computed for all
+ * of its transforms.
+ * <p>
+ * Usage: java -Djava.awt.headless=true loci.visbio.VisBioBatch job.xml
+ * <br>
+ * or: java loci.visbio.VisBio -batch job.xml
+ */
+public class VisBioBatch {
+
+	// -- Constants --
+
+	/** Root element of a job file. */
+	public static final String JOB_ROOT = "VisBioBatch";
+
+	/** Root element of a saved state file. */
+	public static final String STATE_ROOT = "VisBio";
+
+	// -- Fields --
+
+	/** Directory against which relative paths are resolved. */
+	protected File dir;
+
+	/** Job description ("VisBioBatch"). */
+	protected Element job;
+
+	/** Saved program state ("VisBio"). */
+	protected Element state;
+
+	/** Number of worker threads. */
+	protected int numThreads;
+
+	/** Restored data transforms, parents before their children. */
+	protected Vector<DataTransform> transforms;
+
+	/** Number of steps that have failed. */
+	protected int failures;
+
+	// -- Constructor --
+
+	/** Constructs a batch run from the given job or saved state file. */
+	public VisBioBatch(final File file) throws IOException {
+		final Document doc = XMLUtil.parseXML(file);
+		if (doc == null) throw new IOException("Cannot parse " + file);
+		dir = file.getAbsoluteFile().getParentFile();
+		final Element root = doc.getDocumentElement();
+		if (root.getTagName().equals(STATE_ROOT)) {
+			state = root;
+			job = XMLUtil.createDocument(JOB_ROOT).getDocumentElement();
+			XMLUtil.createChild(job, "Thumbnails");
+		}
+		else if (root.getTagName().equals(JOB_ROOT)) {
+			job = root;
+			final String stateFile = job.getAttribute("state");
+			if (stateFile.equals("")) {
+				throw new IOException("No state file given in " + file);
+			}
+			final Document stateDoc = XMLUtil.parseXML(resolve(stateFile));
+			if (stateDoc == null) {
+				throw new IOException("Cannot parse state file " + stateFile);
+			}
+			state = stateDoc.getDocumentElement();
+		}
+		else throw new IOException("Not a VisBio job or state file: " + file);
+
+		numThreads = Runtime.getRuntime().availableProcessors();
+		final String threads = job.getAttribute("threads");
+		if (!threads.equals("")) numThreads = Integer.parseInt(threads);
+		if (numThreads < 1) numThreads = 1;
+	}
+
+	// -- VisBioBatch API methods --
+
+	/**
+	 * Restores the data transforms of the saved state, opening datasets in
+	 * parallel.
+	 *
+	 * @throws SaveException if the state cannot be read or a dataset cannot be
+	 *           opened
+	 */
+	public void restore() throws SaveException {
+		transforms = DataManager.readTransforms(state);
+		final Vector<Step> steps = new Vector<Step>();
+		final Vector<String> failed = new Vector<String>();
+		for (int i = 0; i < transforms.size(); i++) {
+			final DataTransform data = transforms.elementAt(i);
+			if (!(data instanceof Dataset)) continue;
+			steps.add(new Step("Open " + data.getName()) {
+
+				@Override
+				public void run() {
+					if (!((Dataset) data).prepare()) failed.add(data.getName());
+				}
+			});
+		}
+		execute(steps);
+		if (!failed.isEmpty()) {
+			throw new SaveException("Cannot open datasets: " + failed);
+		}
+
+		// initialize in order, since transforms depend on their parents
+		for (int i = 0; i < transforms.size(); i++) {
+			transforms.elementAt(i).initState(null);
+		}
+	}
+
+	/** Gets the restored data transforms. */
+	public Vector<DataTransform> getTransforms() {
+		return transforms;
+	}
+
+	/** Gets the restored data transform with the given name, or null if none. */
+	public DataTransform getTransform(final String name) {
+		for (int i = 0; i < transforms.size(); i++) {
+			final DataTransform data = transforms.elementAt(i);
+			if (data.getName().equals(name)) return data;
+		}
+		return null;
+	}
+
+	/**
+	 * Runs every step of the job, restoring the saved state first if necessary.
+	 * 
+	 * @return the number of steps that failed
+	 */
+	public int run() throws SaveException {
+		if (transforms == null) restore();
+		final Element[] els = XMLUtil.getChildren(job, null);
+		for (int i = 0; i < els.length; i++) {
+			final String tag = els[i].getTagName();
+			final Vector<Step> steps = new Vector<Step>();
+			if (tag.equals("Thumbnails")) addThumbnailSteps(els[i], steps);
+			else if (tag.equals("Export")) addExportSteps(els[i], steps);
+			else if (tag.equals("Measure")) addMeasureSteps(els[i], steps);
+			else {
+				System.err.println("Unknown batch step: " + tag);
+				failures++;
+				continue;
+			}
+			System.out.println(tag + ": " + steps.size() + " steps on " +
+				numThreads + " threads");
+			execute(steps);
+		}
+		return failures;
+	}
+
+	// -- Helper methods --
+
+	/** Queues generation of every thumbnail of the selected transforms. */
+	protected void addThumbnailSteps(final Element el, final Vector<Step> steps)
+	{
+		final Vector<DataTransform> targets = getTargets(el);
+		int[] res = null;
+		final String resolution = el.getAttribute("resolution");
+		if (!resolution.equals("")) {
+			final int x = resolution.indexOf("x");
+			res =
+				new int[] { Integer.parseInt(resolution.substring(0, x)),
+					Integer.parseInt(resolution.substring(x + 1)) };
+		}
+		for (int i = 0; i < targets.size(); i++) {
+			final DataTransform data = targets.elementAt(i);
+			final ThumbnailHandler th = data.getThumbHandler();
+			if (th == null) continue;
+			if (res != null) th.setResolution(res);
+			final int count = th.getThumbCount();
+			for (int j = 0; j < count; j++) {
+				final int ndx = j;
+				steps.add(new Step("Thumbnail " + (j + 1) + "/" + count + " of " +
+					data.getName())
+				{
+
+					@Override
+					public void run() {
+						th.generate(ndx);
+					}
+				});
+			}
+		}
+	}
+
+	/** Queues export of the planes of the selected image transforms. */
+	protected void addExportSteps(final Element el, final Vector<Step> steps) {
+		final Vector<DataTransform> targets = getTargets(el);
+		final String file = resolve(el.getAttribute("file")).getPath();
+		final String compression = el.getAttribute("compression");
+		for (int i = 0; i < targets.size(); i++) {
+			if (!(targets.elementAt(i) instanceof ImageTransform)) continue;
+			final ImageTransform data = (ImageTransform) targets.elementAt(i);
+			final int[] lengths = data.getLengths();
+			final int count = FormatTools.getRasterLength(lengths);
+			String name = file;
+			if (targets.size() > 1) name = insertName(name, data.getName());
+			final int s = name.indexOf("*");
+			if (s < 0) {
+				// write all planes to a single file
+				final String id = name;
+				steps.add(new Step("Export " + data.getName() + " to " + id) {
+
+					@Override
+					public void run() throws FormatException, IOException {
+						exportPlanes(data, 0, count, id, compression);
+					}
+				});
+				continue;
+			}
+			// write each plane to its own file
+			for (int j = 0; j < count; j++) {
+				final int ndx = j;
+				final String id =
+					name.substring(0, s) + getPositionLabel(lengths, j) +
+						name.substring(s + 1);
+				steps.add(new Step("Export " + data.getName() + " to " + id) {
+
+					@Override
+					public void run() throws FormatException, IOException {
+						exportPlanes(data, ndx, 1, id, compression);
+					}
+				});
+			}
+		}
+	}
+
+	/** Queues measurement of the selected overlay transforms. */
+	protected void addMeasureSteps(final Element el, final Vector<Step> steps) {
+		final Vector<DataTransform> targets = getTargets(el);
+		final File file = resolve(el.getAttribute("file"));
+		final String overlays = el.getAttribute("overlays");
+		final File in = overlays.equals("") ? null : resolve(overlays);
+		for (int i = 0; i < targets.size(); i++) {
+			if (!(targets.elementAt(i) instanceof OverlayTransform)) continue;
+			final OverlayTransform data = (OverlayTransform) targets.elementAt(i);
+			final File out =
+				targets.size() > 1 ? new File(insertName(file.getPath(), data
+					.getName())) : file;
+			// the measurer divides the positions among its own worker threads
+			steps.add(new Step("Measure " + data.getName() + " to " + out) {
+
+				@Override
+				public void run() throws IOException {
+					if (in != null) loadOverlays(data, in);
+					data.measureAllPositions(out, null);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Loads overlays saved in the text or binary overlay format into the given
+	 * overlay transform, since saved states do not include overlays.
+	 */
+	protected void loadOverlays(final OverlayTransform data, final File file)
+		throws IOException
+	{
+		if (file.getName().toLowerCase().endsWith(
+			"." + OverlayStreamIO.BINARY_EXTENSION))
+		{
+			final InputStream in = new FileInputStream(file);
+			try {
+				data.loadOverlaysBinary(in);
+			}
+			finally {
+				in.close();
+			}
+		}
+		else {
+			final BufferedReader in = new BufferedReader(new FileReader(file));
+			try {
+				data.loadOverlays(in);
+			}
+			finally {
+				in.close();
+			}
+		}
+	}
+
+	/**
+	 * Gets the transforms named by the given step's transform attribute, or all
+	 * transforms if there is none.
+	 */
+	protected Vector<DataTransform> getTargets(final Element el) {
+		final String name = el.getAttribute("transform");
+		if (name.equals("")) return transforms;
+		final Vector<DataTransform> v = new Vector<DataTransform>();
+		final DataTransform data = getTransform(name);
+		if (data == null) {
+			System.err.println("No such transform: " + name);
+			failures++;
+		}
+		else v.add(data);
+		return v;
+	}
+
+	/** Resolves the given path against the job file's directory. */
+	protected File resolve(final String path) {
+		final File file = new File(path);
+		return file.isAbsolute() ? file : new File(dir, path);
+	}
+
+	/**
+	 * Executes the given steps on the worker threads, waiting for them all to
+	 * finish. Failed steps are reported and counted.
+	 */
+	protected void execute(final Vector<Step> steps) {
+		final int total = steps.size();
+		if (total == 0) return;
+		final int[] done = { 0 };
+		final Runnable worker = new Runnable() {
+
+			@Override
+			public void run() {
+				while (true) {
+					final Step step;
+					synchronized (steps) {
+						if (steps.isEmpty()) break;
+						step = steps.remove(0);
+					}
+					final long start = System.currentTimeMillis();
+					String result = "done";
+					boolean failed = false;
+					try {
+						step.run();
+					}
+					catch (final Exception exc) {
+						exc.printStackTrace();
+						result = "FAILED: " + exc.getMessage();
+						failed = true;
+					}
+					final long time = System.currentTimeMillis() - start;
+					synchronized (done) {
+						if (failed) failures++;
+						done[0]++;
+						System.out.println("[" + done[0] + "/" + total + "] " +
+							step.label + ": " + result + " (" + time + " ms)");
+					}
+				}
+			}
+		};
+		final int n = numThreads < total ? numThreads : total;
+		final Thread[] threads = new Thread[n];
+		for (int t = 0; t < n; t++) {
+			threads[t] = new Thread(worker, "VisBio-BatchThread-" + t);
+			threads[t].start();
+		}
+		for (int t = 0; t < n; t++) {
+			try {
+				threads[t].join();
+			}
+			catch (final InterruptedException exc) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	// -- Utility methods --
+
+	/**
+	 * Writes the given range of planes, by raster index, of an image transform
+	 * to the specified file.
+	 */
+	public static void exportPlanes(final ImageTransform data, final int start,
+		final int count, final String id, final String compression)
+		throws FormatException, IOException
+	{
+		final File parent = new File(id).getParentFile();
+		if (parent != null) parent.mkdirs();
+		final BufferedImageWriter saver = new BufferedImageWriter();
+		try {
+			saver.setId(id);
+			if (!compression.equals("")) saver.setCompression(compression);
+			final int[] lengths = data.getLengths();
+			for (int i = 0; i < count; i++) {
+				final int[] pos = FormatTools.rasterToPosition(lengths, start + i);
+				final FlatField ff = (FlatField) data.getData(null, pos, 2, null);
+				if (ff == null) {
+					throw new FormatException("No data at position " +
+						getPositionLabel(lengths, start + i));
+				}
+				final Image image =
+					ff instanceof ImageFlatField ? ((ImageFlatField) ff).getImage()
+						: DataUtility.extractImage(ff, false);
+				saver.savePlane(i, AWTImageTools.makeBuffered(image));
+			}
+		}
+		finally {
+			saver.close();
+		}
+	}
+
+	/**
+	 * Gets a label for the dimensional position at the given raster index, made
+	 * of its one-based coordinates zero-padded to the length of each axis and
+	 * joined by underscores.
+	 */
+	public static String getPositionLabel(final int[] lengths, final int ndx) {
+		final int[] pos = FormatTools.rasterToPosition(lengths, ndx);
+		final StringBuffer sb = new StringBuffer();
+		for (int i = 0; i < pos.length; i++) {
+			if (i > 0) sb.append("_");
+			final String p = "" + (pos[i] + 1);
+			for (int k = p.length(); k < ("" + lengths[i]).length(); k++) {
+				sb.append("0");
+			}
+			sb.append(p);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Inserts the given transform name before the extension of a filename, so
+	 * that steps applying to several transforms write distinct files.
+	 */
+	public static String insertName(final String file, final String name) {
+		final String safe = name.replaceAll("[^A-Za-z0-9_.-]", "_");
+		final int slash = file.lastIndexOf(File.separator);
+		final int dot = file.lastIndexOf(".");
+		if (dot <= slash) return file + "_" + safe;
+		return file.substring(0, dot) + "_" + safe + file.substring(dot);
+	}
+
+	// -- Helper classes --
+
+	/** A unit of batch work, executed by one worker thread. */
+	protected abstract static class Step {
+
+		/** Description of the step, for progress reports. */
+		protected String label;
+
+		/** Creates a step with the given description. */
+		public Step(final String label) {
+			this.label = label;
+		}
+
+		/** Performs the step. */
+		public abstract void run() throws Exception;
+	}
+
+	// -- Main method --
+
+	/** Runs the batch job described by the given file. */
+	public static void main(final String[] args) throws Exception {
+		if (args.length != 1) {
+			System.out.println("Usage: java -Djava.awt.headless=true " +
+				"loci.visbio.VisBioBatch job.xml");
+			System.exit(2);
+		}
+		final long start = System.currentTimeMillis();
+		final int failed = new VisBioBatch(new File(args[0])).run();
+		final long time = System.currentTimeMillis() - start;
+		System.out.println("Batch finished in " + time + " ms" +
+			(failed == 0 ? "" : " with " + failed + " failures"));
+		System.exit(failed == 0 ? 0 : 1);
+	}
+
+}
@@ -117,6 +117,16 @@ public class VisBioFrame extends GUIFrame implements Runnable, SpawnListener {
 			try {
 				instanceServer = new InstanceServer(VisBio.INSTANCE_PORT);
 				instanceServer.addSpawnListener(this);
+				instanceServer.addCommandListener(new CommandHandler(this));
+				try {
+					instanceServer.writeToken(VisBio.TOKEN_FILE);
+				}
+				catch (final IOException exc) {
+					System.err.println("Warning: could not write command token to " +
+						VisBio.TOKEN_FILE + ". Scripts will not be able to export data " +
+						"or save snapshots. Details follow:");
+					exc.printStackTrace();
+				}
 			}
 			catch (final IOException exc) {
 				System.err.println("Warning: could not initialize instance server " +
@@ -151,24 +161,35 @@ public class VisBioFrame extends GUIFrame implements Runnable, SpawnListener {
 			final StateManager sm = new StateManager(this);
 			final WindowManager wm = new WindowManager(this);
 			sm.setRestoring(true);
-			final LogicManager[] lm =
-				{
-					sm, // StateManager
-					om, // OptionManager
-					wm, // WindowManager
-					new HelpManager(this), new PanelManager(this), new DataManager(this),
-					new ExtManager(this), new DisplayManager(this),
-					new OverlayManager(this), new TaskManager(this),
-					new SystemManager(this), new ConsoleManager(this),
-					new ExitManager(this) };
+			final ManagerLoader loader = new ManagerLoader(this);
+			loader.add(sm, null);
+			loader.add(om, null);
+			loader.add(wm, new Class[] { OptionManager.class });
+			loader.add(new HelpManager(this), new Class[] { OptionManager.class });
+			loader.add(new PanelManager(this), new Class[] { HelpManager.class });
+			loader.add(new DataManager(this), new Class[] { HelpManager.class,
+				OptionManager.class, PanelManager.class });
+			loader.add(new ExtManager(this), new Class[] { DataManager.class,
+				HelpManager.class });
+			loader.add(new DisplayManager(this), new Class[] { HelpManager.class,
+				OptionManager.class, PanelManager.class, WindowManager.class });
+			loader.add(new OverlayManager(this), new Class[] { DataManager.class,
+				HelpManager.class, OptionManager.class });
+			loader.add(new TaskManager(this), new Class[] { HelpManager.class,
+				PanelManager.class });
+			loader.add(new SystemManager(this), new Class[] { HelpManager.class,
+				WindowManager.class });
+			loader.add(new ConsoleManager(this), new Class[] { OptionManager.class,
+				WindowManager.class });
+			loader.add(new ExitManager(this), null);
+			final LogicManager[] lm = loader.getManagers();
 			int tasks = 1;
 			for (int i = 0; i < lm.length; i++)
 				tasks += lm[i].getTasks();
 			if (splash != null) splash.setTaskCount(tasks);
 
-			// add logic managers
-			for (int i = 0; i < lm.length; i++)
-				addManager(lm[i]);
+			// prepare logic managers concurrently, adding them on the event thread
+			loader.load();
 			setSplashStatus("Finishing");
 
 			// read configuration file
@@ -189,6 +210,7 @@ public class VisBioFrame extends GUIFrame implements Runnable, SpawnListener {
 			SwingUtil.pack(this);
 			Util.centerWindow(this);
 			setVisible(true);
+			if (DEBUG) loader.printTimings(System.out);
 
 			// hide splash screen
 			if (splash != null) {
@@ -32,6 +32,7 @@ import javax.swing.JOptionPane;
 import loci.visbio.state.Dynamic;
 import loci.visbio.state.SaveException;
 import loci.visbio.util.DataUtil;
+import loci.visbio.util.Profiler;
 import loci.visbio.util.XMLUtil;
 import loci.visbio.view.TransformLink;
 
@@ -134,7 +135,7 @@ public class ArbitrarySlice extends DataTransform implements TransformListener {
 		this.res = res;
 		this.showLine = showLine;
 		this.compute = compute;
-		controls.refreshWidget();
+		if (controls != null) controls.refreshWidget();
 		notifyListeners(new TransformEvent(this));
 	}
 
@@ -368,7 +369,9 @@ public class ArbitrarySlice extends DataTransform implements TransformListener {
 			final FlatField[] fields = new FlatField[n];
 			for (int i = 0; i < n; i++) {
 				npos[axis] = i;
+				final long t = Profiler.start();
 				final Data data = parent.getData(link, npos, 2, cache);
+				if (t != 0) Profiler.end(t, "getData", parent.getChainName());
 				if (data == null || !(data instanceof FlatField)) {
 					System.err.println(name + ": parent image plane #" + (i + 1) +
 						" is not valid");
@@ -622,7 +625,7 @@ public class ArbitrarySlice extends DataTransform implements TransformListener {
 		}
 
 		computeLengths();
-		controls = new SliceWidget(this);
+		if (!isHeadless()) controls = new SliceWidget(this);
 	}
 
 	// -- Saveable API methods --
@@ -31,6 +31,7 @@ import javax.swing.JOptionPane;
 
 import loci.visbio.state.Dynamic;
 import loci.visbio.state.SaveException;
+import loci.visbio.util.Profiler;
 import loci.visbio.util.XMLUtil;
 import loci.visbio.view.TransformLink;
 
@@ -160,7 +161,9 @@ public class CollapseTransform extends ImageTransform {
 		final int[] npos = getParentPos(pos);
 		for (int i = 0; i < len; i++) {
 			npos[axis] = i;
+			final long t = Profiler.start();
 			final Data data = parent.getData(link, npos, dim, cache);
+			if (t != 0) Profiler.end(t, "getData", parent.getChainName());
 			if (data == null || !(data instanceof FlatField)) return null;
 			fields[i] = (FlatField) data;
 		}
@@ -232,7 +235,7 @@ public class CollapseTransform extends ImageTransform {
 
 		computeLengths();
 
-		controls = new CollapseWidget(this);
+		if (!isHeadless()) controls = new CollapseWidget(this);
 		thumbs = new ThumbnailHandler(this, getCacheFilename());
 	}
 
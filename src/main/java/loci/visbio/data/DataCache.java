@@ -24,10 +24,18 @@
 
 package loci.visbio.data;
 
+import java.rmi.RemoteException;
+import java.util.Enumeration;
 import java.util.Hashtable;
 
 import loci.formats.FormatTools;
+import loci.visbio.Telemetry;
+import loci.visbio.util.Profiler;
 import visad.Data;
+import visad.FieldImpl;
+import visad.FlatField;
+import visad.FunctionType;
+import visad.VisADException;
 
 /**
  * Provides a simple caching mechanism for full-resolution data in memory.
@@ -44,11 +52,15 @@ public class DataCache {
 	/** Hashtable backing this cache of full-resolution data. */
 	protected Hashtable hash;
 
+	/** Approximate size in bytes of each cached data object, by key. */
+	protected Hashtable sizes;
+
 	// -- Constructor --
 
 	/** Constructs a cache for managing full-resolution data in memory. */
 	public DataCache() {
 		hash = new Hashtable();
+		sizes = new Hashtable();
 	}
 
 	// -- DataCache API methods --
@@ -57,17 +69,25 @@ public class DataCache {
 	public synchronized Data getData(final DataTransform trans, final int[] pos,
 		final String append, final int dim)
 	{
+		final long t = Profiler.start();
 		final String key = getKey(trans, pos, append);
 		Data d = getCachedData(key);
 		if (d == null) { // do not compute for non-null append
 			if (append == null || append.equals("")) {
 				// compute automatically for null append string
+				final long tt = Profiler.start();
 				d = trans.getData(null, pos, dim, null);
+				if (tt != 0) Profiler.end(tt, "getData", trans.getChainName());
 				putCachedData(key, d);
 			}
 			if (DEBUG) System.out.println("DataCache: cache miss for " + key);
+			Telemetry.cacheMiss();
+		}
+		else {
+			if (DEBUG) System.out.println("DataCache: cache hit for " + key);
+			Telemetry.cacheHit();
 		}
-		else if (DEBUG) System.out.println("DataCache: cache hit for " + key);
+		if (t != 0) Profiler.end(t, "cache.getData", trans.getChainName());
 		return d;
 	}
 
@@ -117,7 +137,12 @@ public class DataCache {
 
 	/** Removes everything from the cache. */
 	public synchronized void dumpAll() {
-		hash.clear();
+		final String[] keys = new String[hash.size()];
+		final Enumeration e = hash.keys();
+		for (int i = 0; i < keys.length; i++)
+			keys[i] = (String) e.nextElement();
+		for (int i = 0; i < keys.length; i++)
+			dump(keys[i]);
 	}
 
 	// -- Internal DataCache API methods --
@@ -132,13 +157,19 @@ public class DataCache {
 
 	/** Sets the data in the cache at the specified key. */
 	protected void putCachedData(final String key, final Data d) {
-		if (key != null && d != null) hash.put(key, d);
+		if (key == null || d == null) return;
+		dump(key);
+		final long size = getSize(d);
+		hash.put(key, d);
+		sizes.put(key, new Long(size));
+		Telemetry.cacheChanged(1, size);
 	}
 
 	/** Removes the data object at the specified key from the cache. */
 	protected void dump(final String key) {
-		if (key != null) {
-			hash.remove(key);
+		if (key != null && hash.remove(key) != null) {
+			final Long size = (Long) sizes.remove(key);
+			Telemetry.cacheChanged(-1, size == null ? 0 : -size.longValue());
 			if (DEBUG) System.out.println("DataCache: dumped " + key);
 		}
 	}
@@ -158,4 +189,34 @@ public class DataCache {
 		return id + append;
 	}
 
+	/**
+	 * Estimates the memory used by the given data object, counting four bytes
+	 * per range sample of each field it contains.
+	 */
+	protected static long getSize(final Data d) {
+		try {
+			if (d instanceof FlatField) {
+				final FlatField ff = (FlatField) d;
+				final int dim =
+					((FunctionType) ff.getType()).getFlatRange().getDimension();
+				return 4L * dim * ff.getDomainSet().getLength();
+			}
+			if (d instanceof FieldImpl) {
+				final FieldImpl field = (FieldImpl) d;
+				final int len = field.getDomainSet().getLength();
+				long size = 0;
+				for (int i = 0; i < len; i++)
+					size += getSize(field.getSample(i));
+				return size;
+			}
+		}
+		catch (final VisADException exc) {
+			exc.printStackTrace();
+		}
+		catch (final RemoteException exc) {
+			exc.printStackTrace();
+		}
+		return 0;
+	}
+
 }
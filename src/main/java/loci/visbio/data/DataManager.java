@@ -30,15 +30,18 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.URL;
+import java.util.HashMap;
 import java.util.Vector;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
+import javax.swing.SwingUtilities;
 import javax.swing.tree.DefaultMutableTreeNode;
 
 import loci.common.StatusEvent;
 import loci.common.StatusListener;
 import loci.formats.FilePattern;
+import loci.formats.ImageReader;
 import loci.visbio.BioTask;
 import loci.visbio.LogicManager;
 import loci.visbio.PanelManager;
@@ -75,6 +78,9 @@ public class DataManager extends LogicManager {
 	/** String for thumbnail resolution option. */
 	public static final String THUMB_RES = "Thumbnail resolution";
 
+	/** String for lazy dataset opening option. */
+	public static final String LAZY_OPEN = "Defer metadata parsing";
+
 	// -- Control panel --
 
 	/** Datasets control panel. */
@@ -180,6 +186,48 @@ public class DataManager extends LogicManager {
 		if (dt != null) addData(dt);
 	}
 
+	/**
+	 * Imports datasets from the given files, directories and file patterns,
+	 * grouping the files into patterns and opening the datasets concurrently,
+	 * with the combined progress shown as a single task.
+	 */
+	public void importDatasets(final String[] ids) {
+		final TaskManager tm = (TaskManager) bio.getManager(TaskManager.class);
+		final BioTask task = tm.createTask("Import data");
+		task.setStoppable(true);
+		final Vector<DataTransform> list = getDataList();
+		final String[] usedNames = new String[list.size()];
+		for (int i = 0; i < usedNames.length; i++) {
+			usedNames[i] = list.elementAt(i).getName();
+		}
+		final DatasetImporter importer = new DatasetImporter(getLazyOpen()) {
+
+			@Override
+			protected void opened(final Dataset data) {
+				SwingUtilities.invokeLater(new Runnable() {
+
+					@Override
+					public void run() {
+						addData(data);
+					}
+				});
+			}
+
+			@Override
+			protected String[] getUsedNames() {
+				return usedNames;
+			}
+		};
+		new Thread("VisBio-ImportThread") {
+
+			@Override
+			public void run() {
+				importer.importDatasets(ids, task);
+				task.setCompleted();
+			}
+		}.start();
+	}
+
 	/** Exports the selected data object to disk. */
 	public void exportData() {
 		final DataTransform data = dataControls.getSelectedData();
@@ -316,7 +364,7 @@ public class DataManager extends LogicManager {
 				task.setStatus(val, max, msg);
 			}
 		};
-		final Dataset dataset = new Dataset(name, pattern, sl);
+		final Dataset dataset = new Dataset(name, pattern, sl, getLazyOpen());
 		task.setCompleted();
 		addData(dataset);
 	}
@@ -332,6 +380,17 @@ public class DataManager extends LogicManager {
 		return opt.getValue();
 	}
 
+	/**
+	 * Gets whether new datasets should defer parsing of their metadata until
+	 * first needed, from VisBio options.
+	 */
+	public boolean getLazyOpen() {
+		final OptionManager om =
+			(OptionManager) bio.getManager(OptionManager.class);
+		final BooleanOption opt = (BooleanOption) om.getOption(LAZY_OPEN);
+		return opt.getValue();
+	}
+
 	/** Gets resolution of low-resolution thumbnails from VisBio options. */
 	public int[] getThumbnailResolution() {
 		final OptionManager om =
@@ -357,6 +416,16 @@ public class DataManager extends LogicManager {
 		}
 	}
 
+	/**
+	 * Loads the Bio-Formats reader classes ahead of the first import, which is
+	 * slow when VisBio runs from a shared file system.
+	 */
+	@Override
+	public void prepare() {
+		// constructing an image reader instantiates every reader class
+		new ImageReader();
+	}
+
 	/** Gets the number of tasks required to initialize this logic manager. */
 	@Override
 	public int getTasks() {
@@ -380,9 +449,43 @@ public class DataManager extends LogicManager {
 	/** Restores the current state from the given DOM element ("VisBio"). */
 	@Override
 	public void restoreState(final Element el) throws SaveException {
+		final Vector<DataTransform> vn = readTransforms(el);
+		final int nlen = vn.size();
+
+		// merge old and new transform lists
+		final Vector<DataTransform> vo = getDataList();
+		prepareDatasets(vo, vn);
+		StateManager.mergeStates(vo, vn);
+
+		// add new transforms to tree structure
+		for (int i = 0; i < nlen; i++) {
+			final DataTransform data = vn.elementAt(i);
+			if (!vo.contains(data)) addData(data);
+		}
+
+		// purge old transforms from tree structure
+		final int olen = vo.size();
+		for (int i = 0; i < olen; i++) {
+			final DataTransform data = vo.elementAt(i);
+			if (!vn.contains(data)) removeData(data);
+		}
+	}
+
+	// -- Utility methods --
+
+	/**
+	 * Reads the data transforms saved in the given DOM element ("VisBio"),
+	 * restoring their states and parent references but not initializing them.
+	 * Transforms are returned in the order they were saved, with parents before
+	 * their children.
+	 */
+	public static Vector<DataTransform> readTransforms(final Element el)
+		throws SaveException
+	{
 		final Element child = XMLUtil.getFirstChild(el, "DataTransforms");
 		final Element[] els = XMLUtil.getChildren(child, null);
 		final Vector<DataTransform> vn = new Vector<DataTransform>();
+		final Vector<Element> ve = new Vector<Element>();
 		for (int i = 0; i < els.length; i++) {
 			// read transform class name
 			final String className = els[i].getAttribute("class");
@@ -429,13 +532,14 @@ public class DataManager extends LogicManager {
 			final DataTransform data = (DataTransform) o;
 			data.restoreState(els[i]);
 			vn.add(data);
+			ve.add(els[i]);
 		}
 
 		// restore parent transform references
 		final int nlen = vn.size();
 		for (int i = 0; i < nlen; i++) {
 			final DataTransform data = vn.elementAt(i);
-			final String parentId = els[i].getAttribute("parent");
+			final String parentId = ve.elementAt(i).getAttribute("parent");
 			if (parentId == null || parentId.equals("")) data.parent = null;
 			else {
 				int pid = -1;
@@ -456,26 +560,78 @@ public class DataManager extends LogicManager {
 				}
 			}
 		}
+		return vn;
+	}
 
-		// merge old and new transform lists
-		final Vector<DataTransform> vo = getDataList();
-		StateManager.mergeStates(vo, vn);
+	// -- Helper methods --
 
-		// add new transforms to tree structure
-		for (int i = 0; i < nlen; i++) {
-			final DataTransform data = vn.elementAt(i);
-			if (!vo.contains(data)) addData(data);
+	/**
+	 * Opens readers concurrently for those restored datasets that do not match
+	 * an existing dataset, so that merging the transform lists does not open
+	 * them one after another.
+	 */
+	private void prepareDatasets(final Vector<DataTransform> vo,
+		final Vector<DataTransform> vn)
+	{
+		// index existing transforms by match key
+		final HashMap<Object, Vector<DataTransform>> oldByKey =
+			new HashMap<Object, Vector<DataTransform>>();
+		for (int o = 0; o < vo.size(); o++) {
+			final DataTransform oldData = vo.elementAt(o);
+			Vector<DataTransform> list = oldByKey.get(oldData.getMatchKey());
+			if (list == null) {
+				list = new Vector<DataTransform>();
+				oldByKey.put(oldData.getMatchKey(), list);
+			}
+			list.add(oldData);
 		}
 
-		// purge old transforms from tree structure
-		final int olen = vo.size();
-		for (int i = 0; i < olen; i++) {
-			final DataTransform data = vo.elementAt(i);
-			if (!vn.contains(data)) removeData(data);
+		final Vector<Dataset> pending = new Vector<Dataset>();
+		for (int n = 0; n < vn.size(); n++) {
+			final DataTransform newData = vn.elementAt(n);
+			if (!(newData instanceof Dataset)) continue;
+			final Vector<DataTransform> candidates =
+				oldByKey.get(newData.getMatchKey());
+			boolean match = false;
+			if (candidates != null) {
+				for (int o = 0; o < candidates.size() && !match; o++) {
+					match = newData.matches(candidates.elementAt(o));
+				}
+			}
+			if (!match) pending.add((Dataset) newData);
 		}
-	}
+		if (pending.size() < 2) return; // nothing to gain
 
-	// -- Helper methods --
+		int numThreads = Runtime.getRuntime().availableProcessors();
+		if (numThreads > pending.size()) numThreads = pending.size();
+		final Runnable worker = new Runnable() {
+
+			@Override
+			public void run() {
+				while (true) {
+					final Dataset data;
+					synchronized (pending) {
+						if (pending.isEmpty()) break;
+						data = pending.remove(0);
+					}
+					data.prepare();
+				}
+			}
+		};
+		final Thread[] threads = new Thread[numThreads];
+		for (int t = 0; t < numThreads; t++) {
+			threads[t] = new Thread(worker, "VisBio-DatasetRestoreThread-" + t);
+			threads[t].start();
+		}
+		for (int t = 0; t < numThreads; t++) {
+			try {
+				threads[t].join();
+			}
+			catch (final InterruptedException exc) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
 
 	/** Adds data-related GUI components to VisBio. */
 	private void doGUI() {
@@ -519,6 +675,9 @@ public class DataManager extends LogicManager {
 		final int thumbRes = DEFAULT_THUMBNAIL_RESOLUTION;
 		om.addOption("Thumbnails", new ResolutionOption(THUMB_RES,
 			"Adjusts resolution of low-resolution thumbnails", thumbRes, thumbRes));
+		om.addBooleanOption("Data", LAZY_OPEN, 'm',
+			"Toggles whether datasets are shown before their metadata is parsed",
+			false);
 
 		// help window
 		bio.setSplashStatus(null);
@@ -25,6 +25,9 @@
 package loci.visbio.data;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
 import java.math.BigInteger;
 
 import javax.swing.JComponent;
@@ -40,7 +43,10 @@ import loci.visbio.util.XMLUtil;
 import org.w3c.dom.Element;
 
 /**
- * DataSampling is a resampling of another transform.
+ * DataSampling is a resampling of another transform. Each image is cropped to
+ * an optional XY region, which is read directly from the parent, and then
+ * resampled to the target resolution, by decimation in a single pass over its
+ * samples when the resolution divides the region evenly.
  */
 public class DataSampling extends ImageTransform {
 
@@ -55,6 +61,9 @@ public class DataSampling extends ImageTransform {
 	/** Index step value for each dimension. */
 	protected int[] step;
 
+	/** XY region of each parent image to sample, or null for the whole image. */
+	protected int[] crop;
+
 	/** Width of each image. */
 	protected int resX;
 
@@ -142,6 +151,51 @@ public class DataSampling extends ImageTransform {
 		return range;
 	}
 
+	/**
+	 * Restricts sampling to the given XY region of each parent image, in pixels,
+	 * scaling the physical image dimensions to match. A null region samples the
+	 * whole image.
+	 */
+	public void setCrop(final int[] crop) {
+		final ImageTransform it = (ImageTransform) parent;
+		final int w = it.getImageWidth(), h = it.getImageHeight();
+		if (crop != null &&
+			(crop.length != 4 || crop[0] < 0 || crop[1] < 0 || crop[2] < 1 ||
+				crop[3] < 1 || crop[0] + crop[2] > w || crop[1] + crop[3] > h))
+		{
+			throw new IllegalArgumentException("Invalid crop region: " +
+				ObjectUtil.arrayToString(crop));
+		}
+		this.crop = crop;
+		final int[] r = getRegion();
+		micronWidth = it.getMicronWidth() * r[2] / w;
+		micronHeight = it.getMicronHeight() * r[3] / h;
+
+		// signal parameter change to listeners
+		notifyListeners(new TransformEvent(this));
+	}
+
+	/** Gets the XY region of each parent image to sample, or null if none. */
+	public int[] getCrop() {
+		return crop;
+	}
+
+	/** Gets whether sampling is restricted to an XY region. */
+	public boolean isCropped() {
+		return crop != null;
+	}
+
+	/**
+	 * Gets the parent's dimensional position corresponding to the given
+	 * position of this sampling.
+	 */
+	public int[] getSourcePos(final int[] pos) {
+		final int[] p = new int[pos.length];
+		for (int i = 0; i < p.length; i++)
+			p[i] = min[i] + step[i] * pos[i] - 1;
+		return p;
+	}
+
 	// -- ImageTransform API methods --
 
 	/** Gets width of each image. */
@@ -165,15 +219,14 @@ public class DataSampling extends ImageTransform {
 	/** Obtains an image from the source(s) at the given dimensional position. */
 	@Override
 	public BufferedImage getImage(final int[] pos) {
-		final int[] p = new int[pos.length];
-		for (int i = 0; i < p.length; i++)
-			p[i] = min[i] + step[i] * pos[i] - 1;
+		final int[] r = getRegion();
 		final ImageTransform it = (ImageTransform) parent;
-		final BufferedImage img = it.getImage(p);
+		final BufferedImage img =
+			it.getImage(getSourcePos(pos), r[0], r[1], r[2], r[3]);
 		if (img == null) return null;
 		final int w = resX > 0 ? resX : img.getWidth();
 		final int h = resY > 0 ? resY : img.getHeight();
-		return AWTImageTools.scale(img, w, h, false);
+		return decimate(img, w, h);
 	}
 
 	/**
@@ -247,11 +300,11 @@ public class DataSampling extends ImageTransform {
 	 */
 	@Override
 	public String getCacheId(final int[] pos, final boolean global) {
-		final StringBuffer sb = new StringBuffer(parent.getCacheId(pos, global));
+		// key on the parent's position, so samplings share full-resolution planes
+		final StringBuffer sb =
+			new StringBuffer(parent.getCacheId(getSourcePos(pos), global));
 		sb.append("{");
-		appendArray(sb, "min", min, true);
-		appendArray(sb, "max", max, true);
-		appendArray(sb, "step", step, true);
+		appendArray(sb, "crop", getRegion(), true);
 		sb.append("x=" + resX + ";");
 		sb.append("y=" + resY + ";");
 		final int[] r = new int[range.length];
@@ -315,6 +368,17 @@ public class DataSampling extends ImageTransform {
 		sb.append(height);
 		sb.append(" pixel");
 		if (width * height != 1) sb.append("s");
+		if (crop != null) {
+			sb.append(" from ");
+			sb.append(crop[2]);
+			sb.append(" x ");
+			sb.append(crop[3]);
+			sb.append(" at (");
+			sb.append(crop[0]);
+			sb.append(", ");
+			sb.append(crop[1]);
+			sb.append(")");
+		}
 
 		// physical width and height in microns
 		if (micronWidth == micronWidth && micronHeight == micronHeight) {
@@ -383,7 +447,8 @@ public class DataSampling extends ImageTransform {
 
 		return ObjectUtil.arraysEqual(min, data.min) &&
 			ObjectUtil.arraysEqual(max, data.max) &&
-			ObjectUtil.arraysEqual(step, data.step) && resX == data.resX &&
+			ObjectUtil.arraysEqual(step, data.step) &&
+			ObjectUtil.arraysEqual(crop, data.crop) && resX == data.resX &&
 			resY == data.resY && ObjectUtil.arraysEqual(range, data.range);
 	}
 
@@ -411,6 +476,7 @@ public class DataSampling extends ImageTransform {
 			min = data.min;
 			max = data.max;
 			step = data.step;
+			crop = data.crop;
 			resX = data.resX;
 			resY = data.resY;
 			range = data.range;
@@ -421,7 +487,7 @@ public class DataSampling extends ImageTransform {
 
 		setParameters(min, max, step, resX, resY, range);
 
-		controls = new SamplingWidget(this);
+		if (!isHeadless()) controls = new SamplingWidget(this);
 		thumbs = makeThumbnailHandler();
 	}
 
@@ -435,6 +501,9 @@ public class DataSampling extends ImageTransform {
 		child.setAttribute("min", ObjectUtil.arrayToString(min));
 		child.setAttribute("max", ObjectUtil.arrayToString(max));
 		child.setAttribute("step", ObjectUtil.arrayToString(step));
+		if (crop != null) {
+			child.setAttribute("crop", ObjectUtil.arrayToString(crop));
+		}
 		child.setAttribute("resX", "" + resX);
 		child.setAttribute("resY", "" + resY);
 		child.setAttribute("range", ObjectUtil.arrayToString(range));
@@ -449,13 +518,73 @@ public class DataSampling extends ImageTransform {
 		min = ObjectUtil.stringToIntArray(el.getAttribute("min"));
 		max = ObjectUtil.stringToIntArray(el.getAttribute("max"));
 		step = ObjectUtil.stringToIntArray(el.getAttribute("step"));
+		final String c = el.getAttribute("crop");
+		crop = c.equals("") ? null : ObjectUtil.stringToIntArray(c);
 		resX = Integer.parseInt(el.getAttribute("resX"));
 		resY = Integer.parseInt(el.getAttribute("resY"));
 		range = ObjectUtil.stringToBooleanArray(el.getAttribute("range"));
 	}
 
+	// -- Utility methods --
+
+	/**
+	 * Resamples the given image to the specified resolution. When the image
+	 * dimensions are whole multiples of the target resolution, every n-th
+	 * sample is copied one row at a time; otherwise the image is scaled with
+	 * {@link AWTImageTools#scale}.
+	 */
+	public static BufferedImage decimate(final BufferedImage img, final int w,
+		final int h)
+	{
+		final Raster in = img.getRaster();
+		final int srcW = in.getWidth(), srcH = in.getHeight();
+		if (w == srcW && h == srcH) return img;
+		if (w <= 0 || h <= 0 || srcW % w != 0 || srcH % h != 0) {
+			return AWTImageTools.scale(img, w, h, false);
+		}
+		final int minX = in.getMinX(), minY = in.getMinY();
+		final int bands = in.getNumBands();
+
+		// source column for each target column
+		final int stepX = srcW / w, stepY = srcH / h;
+		final int[] cols = new int[w];
+		for (int i = 0; i < w; i++)
+			cols[i] = i * stepX * bands;
+
+		final WritableRaster out = in.createCompatibleWritableRaster(w, h);
+		final int type = in.getTransferType();
+		final boolean fp =
+			type == DataBuffer.TYPE_FLOAT || type == DataBuffer.TYPE_DOUBLE;
+		final int[] srcInt = fp ? null : new int[srcW * bands];
+		final int[] dstInt = fp ? null : new int[w * bands];
+		final double[] srcDouble = fp ? new double[srcW * bands] : null;
+		final double[] dstDouble = fp ? new double[w * bands] : null;
+		final Object src = fp ? (Object) srcDouble : srcInt;
+		final Object dst = fp ? (Object) dstDouble : dstInt;
+		for (int j = 0; j < h; j++) {
+			// gather the samples of the next source row
+			final int row = j * stepY;
+			if (fp) in.getPixels(minX, minY + row, srcW, 1, srcDouble);
+			else in.getPixels(minX, minY + row, srcW, 1, srcInt);
+			for (int i = 0; i < w; i++) {
+				System.arraycopy(src, cols[i], dst, i * bands, bands);
+			}
+			if (fp) out.setPixels(0, j, w, 1, dstDouble);
+			else out.setPixels(0, j, w, 1, dstInt);
+		}
+		return new BufferedImage(img.getColorModel(), out, img
+			.isAlphaPremultiplied(), null);
+	}
+
 	// -- Helper methods --
 
+	/** Gets the XY region of each parent image to sample, as {x, y, w, h}. */
+	private int[] getRegion() {
+		if (crop != null) return crop;
+		final ImageTransform it = (ImageTransform) parent;
+		return new int[] { 0, 0, it.getImageWidth(), it.getImageHeight() };
+	}
+
 	/** Creates custom handler for data sampling's thumbnails. */
 	private ThumbnailHandler makeThumbnailHandler() {
 		return new SamplingThumbHandler(this, getCacheFilename());
@@ -25,6 +25,7 @@
 package loci.visbio.data;
 
 import java.awt.Font;
+import java.awt.GraphicsEnvironment;
 import java.math.BigInteger;
 import java.util.Vector;
 
@@ -157,6 +158,15 @@ public abstract class DataTransform implements Dynamic, Saveable {
 		return name == null ? "Untitled" : name;
 	}
 
+	/**
+	 * Gets a name identifying this transform's chain of ancestors, such as
+	 * "dataset > projection > spectral", for attributing profiled spans.
+	 */
+	public String getChainName() {
+		return parent == null ? getName() : parent.getChainName() + " > " +
+			getName();
+	}
+
 	/** Gets the data transform ID. */
 	public int getTransformId() {
 		return transformId;
@@ -313,6 +323,12 @@ public abstract class DataTransform implements Dynamic, Saveable {
 			ObjectUtil.arraysEqual(dims, data.dims);
 	}
 
+	/** Gets a key identifying this object for matching purposes: its name. */
+	@Override
+	public Object getMatchKey() {
+		return name;
+	}
+
 	/**
 	 * Tests whether the given dynamic object can be used as an argument to
 	 * initState, for initializing this dynamic object.
@@ -380,6 +396,14 @@ public abstract class DataTransform implements Dynamic, Saveable {
 
 	// -- Utility methods --
 
+	/**
+	 * Gets whether VisBio is running without a display, as in batch mode. Data
+	 * transforms do not construct their GUI controls when headless.
+	 */
+	public static boolean isHeadless() {
+		return GraphicsEnvironment.isHeadless();
+	}
+
 	/**
 	 * Gets the unit description for a dimensional type. For example, for
 	 * dimensional type "Slice" the unit would be "focal plane," and for type
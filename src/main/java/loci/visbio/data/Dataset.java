@@ -48,16 +48,21 @@ import loci.formats.FileStitcher;
 import loci.formats.FormatException;
 import loci.formats.FormatTools;
 import loci.formats.IFormatReader;
+import loci.formats.Memoizer;
 import loci.formats.Modulo;
 import loci.formats.gui.BufferedImageReader;
 import loci.formats.gui.GUITools;
+import loci.formats.in.DefaultMetadataOptions;
+import loci.formats.in.MetadataLevel;
 import loci.formats.meta.MetadataStore;
 import loci.formats.services.OMEXMLService;
+import loci.visbio.Telemetry;
 import loci.visbio.VisBioFrame;
 import loci.visbio.state.Dynamic;
 import loci.visbio.state.SaveException;
 import loci.visbio.util.MathUtil;
 import loci.visbio.util.ObjectUtil;
+import loci.visbio.util.Profiler;
 import loci.visbio.util.XMLUtil;
 import ome.xml.model.OME;
 
@@ -92,9 +97,25 @@ import visad.VisADException;
  * application, and just loads data as necessary to return whatever the
  * application requests, according to the DataTransform API.
  * </p>
+ * <p>
+ * A dataset opened lazily parses only the minimum metadata needed for its
+ * dimensions and pixel type, so that it is ready quickly. Its original and
+ * OME-XML metadata are parsed by a second reader the first time they are
+ * requested, typically from a background thread when its controls are shown.
+ * </p>
  */
 public class Dataset extends ImageTransform {
 
+	// -- Constants --
+
+	/**
+	 * Minimum time in milliseconds that initializing a reader must take for its
+	 * state to be memoized. Memo files are stored alongside the dataset's files,
+	 * next to its thumbnail cache, so that reopening the dataset later (e.g.,
+	 * when restoring a saved session) skips rescanning and reparsing metadata.
+	 */
+	public static final long MEMO_MIN_ELAPSED = 100;
+
 	// -- Data fields --
 
 	/** A string pattern describing this dataset. */
@@ -103,11 +124,26 @@ public class Dataset extends ImageTransform {
 	/** Optional listener for constructor progress. */
 	protected StatusListener listener;
 
+	/** Whether metadata parsing is deferred until first needed. */
+	protected boolean lazy;
+
 	// -- Computed fields --
 
 	/** Data reader. */
 	protected BufferedImageReader reader;
 
+	/** Reader with fully parsed metadata, for datasets opened lazily. */
+	protected volatile BufferedImageReader metaReader;
+
+	/** Lock guarding the opening of the metadata reader. */
+	private final Object metaLock = new Object();
+
+	/** Reader opened ahead of initialization by {@link #prepare()}. */
+	protected BufferedImageReader preparedReader;
+
+	/** First image read ahead of initialization by {@link #prepare()}. */
+	protected BufferedImage preparedImage;
+
 	/** Controls for this dataset. */
 	protected DatasetWidget controls;
 
@@ -141,10 +177,25 @@ public class Dataset extends ImageTransform {
 	 */
 	public Dataset(final String name, final String pattern,
 		final StatusListener listener)
+	{
+		this(name, pattern, listener, false);
+	}
+
+	/**
+	 * Constructs a new multidimensional data object from the given file pattern.
+	 * 
+	 * @param name Label for the dataset.
+	 * @param pattern File pattern identifying the dataset.
+	 * @param listener Listener object to be informed of construction progress.
+	 * @param lazy Whether to defer parsing of metadata until first needed.
+	 */
+	public Dataset(final String name, final String pattern,
+		final StatusListener listener, final boolean lazy)
 	{
 		super(null, name);
 		this.pattern = pattern;
 		this.listener = listener;
+		this.lazy = lazy;
 		initState(null);
 	}
 
@@ -152,7 +203,31 @@ public class Dataset extends ImageTransform {
 
 	/** Close all open ids. */
 	public void close() throws FormatException, IOException {
-		reader.close();
+		if (reader != null) reader.close();
+		synchronized (metaLock) {
+			if (metaReader != null && metaReader != reader) metaReader.close();
+			metaReader = null;
+		}
+	}
+
+	/**
+	 * Opens the data reader and reads the first image, ahead of initialization.
+	 * This method may be called from a background thread, so that several
+	 * datasets can be opened concurrently; the next call to initState then
+	 * reuses the opened reader rather than opening it again.
+	 *
+	 * @return true if the reader was opened successfully
+	 */
+	public boolean prepare() {
+		status(1, 4, "Initializing dataset");
+		final BufferedImageReader r = openReader(!lazy);
+		if (r == null) return false;
+		final BufferedImage img = readFirstImage(r);
+		synchronized (this) {
+			preparedReader = r;
+			preparedImage = img;
+		}
+		return true;
 	}
 
 	/** Gets the string pattern describing this dataset. */
@@ -160,6 +235,27 @@ public class Dataset extends ImageTransform {
 		return pattern;
 	}
 
+	/**
+	 * Gets whether this dataset was opened successfully, and so can provide
+	 * images.
+	 */
+	public boolean isValid() {
+		return color != null;
+	}
+
+	/** Gets whether this dataset defers parsing of metadata. */
+	public boolean isLazy() {
+		return lazy;
+	}
+
+	/**
+	 * Gets whether this dataset's metadata has been parsed, so that requesting
+	 * it does not block.
+	 */
+	public boolean isMetadataLoaded() {
+		return !lazy || metaReader != null;
+	}
+
 	/** Gets filenames of all files in dataset. */
 	public String[] getFilenames() {
 		return reader.getUsedFiles();
@@ -172,18 +268,18 @@ public class Dataset extends ImageTransform {
 
 	/** Gets metadata associated with the dataset. */
 	public Hashtable getMetadata() {
-		return reader.getGlobalMetadata();
+		return getMetadataReader().getGlobalMetadata();
 	}
 
 	/** Gets an OME-XML root for the dataset. */
 	public OME getOMEXMLRoot() {
-		final MetadataStore store = reader.getMetadataStore();
+		final MetadataStore store = getMetadataReader().getMetadataStore();
 		return (OME) store.getRoot();
 	}
 
 	/** Gets an OME-XML string for the dataset. */
 	public String getOMEXML() {
-		final MetadataStore store = reader.getMetadataStore();
+		final MetadataStore store = getMetadataReader().getMetadataStore();
 		try {
 			final ServiceFactory serviceFactory = new ServiceFactory();
 			final OMEXMLService omexmlService =
@@ -204,10 +300,26 @@ public class Dataset extends ImageTransform {
 	/** Obtains an image from the source(s) at the given dimensional position. */
 	@Override
 	public BufferedImage getImage(final int[] pos) {
+		return getImage(pos, 0, 0, getImageWidth(), getImageHeight());
+	}
+
+	/**
+	 * Obtains the given rectangular region of the image at the given dimensional
+	 * position, reading only that region from disk.
+	 */
+	@Override
+	public BufferedImage getImage(final int[] pos, final int x, final int y,
+		final int w, final int h)
+	{
 		final int index = posToIndex(pos);
 		BufferedImage img = null;
+		final long t = Profiler.start();
+		Telemetry.readStarted();
 		try {
-			img = reader.openImage(index);
+			// readers are not thread-safe; batch workers may share this dataset
+			synchronized (reader) {
+				img = reader.openImage(index, x, y, w, h);
+			}
 		}
 		catch (final IOException exc) {
 			if (VisBioFrame.DEBUG) exc.printStackTrace();
@@ -215,6 +327,10 @@ public class Dataset extends ImageTransform {
 		catch (final FormatException exc) {
 			if (VisBioFrame.DEBUG) exc.printStackTrace();
 		}
+		finally {
+			Telemetry.readFinished();
+			if (t != 0) Profiler.end(t, "getImage", getChainName());
+		}
 		if (img == null) {
 			System.err.println("Could not read image at index #" + index);
 			return null;
@@ -249,6 +365,8 @@ public class Dataset extends ImageTransform {
 
 	/**
 	 * Creates a new dataset, with user interaction, with the given default file.
+	 * If several files are chosen, they are imported together as one or more
+	 * datasets, in the background.
 	 */
 	public static DataTransform makeTransform(final DataManager dm, File file,
 		final Component parent)
@@ -257,9 +375,18 @@ public class Dataset extends ImageTransform {
 			// prompt for file to open
 			final IFormatReader reader = new ChannelSeparator();
 			final JFileChooser fc = GUITools.buildFileChooser(reader);
+			fc.setMultiSelectionEnabled(true);
 			final int rval = fc.showOpenDialog(parent);
 			if (rval != JFileChooser.APPROVE_OPTION) return null;
-			file = fc.getSelectedFile();
+			final File[] files = fc.getSelectedFiles();
+			if (files.length > 1) {
+				final String[] ids = new String[files.length];
+				for (int i = 0; i < ids.length; i++)
+					ids[i] = files[i].getPath();
+				dm.importDatasets(ids);
+				return null;
+			}
+			file = files.length == 1 ? files[0] : fc.getSelectedFile();
 		}
 
 		final FilePattern fp = new FilePattern(new Location(file));
@@ -400,9 +527,17 @@ public class Dataset extends ImageTransform {
 		return sb.toString();
 	}
 
-	/** Gets associated GUI controls for this transform. */
+	/**
+	 * Gets associated GUI controls for this transform. The controls are created
+	 * on first request, so that datasets opened by worker threads never build
+	 * Swing components off the event dispatch thread; those of a lazily opened
+	 * dataset load its metadata in the background.
+	 */
 	@Override
 	public JComponent getControls() {
+		if (controls == null && reader != null && !isHeadless()) {
+			controls = new DatasetWidget(this);
+		}
 		return controls;
 	}
 
@@ -435,43 +570,25 @@ public class Dataset extends ImageTransform {
 
 		if (data != null) {
 			pattern = data.pattern;
+			lazy = data.lazy;
 		}
 
 		final int numTasks = 4;
 
-		// initialize data reader
-		reader =
-			new BufferedImageReader(new ChannelSeparator(new FileStitcher(true)));
-
-		Exception serviceException = null;
-		try {
-			final ServiceFactory factory = new ServiceFactory();
-			final OMEXMLService service = factory.getInstance(OMEXMLService.class);
-			reader.setMetadataStore(service.createOMEXMLMetadata());
-		}
-		catch (final DependencyException e) {
-			serviceException = e;
-		}
-		catch (final ServiceException e) {
-			serviceException = e;
-		}
-
-		if (serviceException != null) {
-			System.err.println("Could not construct OMEXMLMetadataStore");
-			if (VisBioFrame.DEBUG) serviceException.printStackTrace();
-			return;
-		}
-
-		// determine number of images per source file
-		status(1, numTasks, "Initializing dataset");
-		try {
-			reader.setId(pattern);
+		// initialize data reader, reusing one opened ahead of time if possible
+		final Dataset source = data == null ? this : data;
+		BufferedImage img = null;
+		synchronized (source) {
+			reader = source.preparedReader;
+			img = source.preparedImage;
+			source.preparedReader = null;
+			source.preparedImage = null;
 		}
-		catch (final Exception exc) {
-			System.err.println("Could not initialize the dataset. '" + pattern +
-				"' may be corrupt or invalid.");
-			if (VisBioFrame.DEBUG) exc.printStackTrace();
-			return;
+		if (reader == null) {
+			status(1, numTasks, "Initializing dataset");
+			reader = openReader(!lazy);
+			if (reader == null) return;
+			img = readFirstImage(reader);
 		}
 
 		final int[] cLen = getChannelDimLengths(reader);
@@ -486,21 +603,7 @@ public class Dataset extends ImageTransform {
 		System.arraycopy(cTypes, 0, dims, 2, cTypes.length);
 		makeLabels();
 
-		// load first image for analysis
-		status(2, numTasks, "Reading first image");
-		BufferedImage img = null;
-		try {
-			img = reader.openImage(0);
-		}
-		catch (final IOException exc) {
-			img = null;
-		}
-		catch (final FormatException exc) {
-			img = null;
-		}
-		catch (final NullPointerException exc) {
-			img = null;
-		}
+		// analyze first image
 		if (img == null) {
 			System.err.println("Could not read the first image. '" + pattern +
 				"' may be corrupt or invalid.");
@@ -541,9 +644,7 @@ public class Dataset extends ImageTransform {
 		final RealTupleType domain = ftype.getDomain();
 		spatial = domain.getRealComponents();
 
-		// construct metadata controls
 		status(3, numTasks, "Finishing");
-		controls = new DatasetWidget(this);
 
 		// construct thumbnail handler
 		String path = new File(pattern).getParent();
@@ -553,6 +654,28 @@ public class Dataset extends ImageTransform {
 		status(5, numTasks, "Done");
 	}
 
+	/**
+	 * Called when this object is being discarded in favor of another object with
+	 * a matching state.
+	 */
+	@Override
+	public void discard() {
+		super.discard();
+		final BufferedImageReader r;
+		synchronized (this) {
+			r = preparedReader;
+			preparedReader = null;
+			preparedImage = null;
+		}
+		if (r == null) return;
+		try {
+			r.close();
+		}
+		catch (final IOException exc) {
+			if (VisBioFrame.DEBUG) exc.printStackTrace();
+		}
+	}
+
 	// -- Saveable API methods --
 
 	/** Writes the current state to the given DOM element ("DataTransforms"). */
@@ -587,6 +710,109 @@ public class Dataset extends ImageTransform {
 		return index;
 	}
 
+	/**
+	 * Gets the reader with fully parsed metadata, opening it first if this
+	 * dataset was opened lazily. Falls back to the data reader if the metadata
+	 * cannot be parsed.
+	 */
+	private BufferedImageReader getMetadataReader() {
+		if (!lazy) return reader;
+		synchronized (metaLock) {
+			if (metaReader != null) return metaReader;
+			BufferedImageReader r = openReader(true);
+			if (r == null) r = reader;
+			else {
+				// keep the parsed metadata, but release the open files
+				try {
+					r.close(true);
+				}
+				catch (final IOException exc) {
+					if (VisBioFrame.DEBUG) exc.printStackTrace();
+				}
+			}
+			metaReader = r;
+			return r;
+		}
+	}
+
+	/**
+	 * Constructs a data reader and initializes it with the dataset's pattern.
+	 * A reader with full metadata is memoized for faster reopening; otherwise,
+	 * only the minimum metadata needed to read pixels is parsed.
+	 *
+	 * @return the initialized reader, or null if it could not be initialized
+	 */
+	private BufferedImageReader openReader(final boolean full) {
+		if (!full) {
+			final BufferedImageReader r =
+				new BufferedImageReader(new ChannelSeparator(new FileStitcher(true)));
+			r.setMetadataOptions(new DefaultMetadataOptions(MetadataLevel.MINIMUM));
+			return initReader(r) ? r : null;
+		}
+		final BufferedImageReader r =
+			new BufferedImageReader(new Memoizer(new ChannelSeparator(
+				new FileStitcher(true)), MEMO_MIN_ELAPSED));
+
+		Exception serviceException = null;
+		try {
+			final ServiceFactory factory = new ServiceFactory();
+			final OMEXMLService service = factory.getInstance(OMEXMLService.class);
+			r.setMetadataStore(service.createOMEXMLMetadata());
+		}
+		catch (final DependencyException e) {
+			serviceException = e;
+		}
+		catch (final ServiceException e) {
+			serviceException = e;
+		}
+
+		if (serviceException != null) {
+			System.err.println("Could not construct OMEXMLMetadataStore");
+			if (VisBioFrame.DEBUG) serviceException.printStackTrace();
+			return null;
+		}
+		return initReader(r) ? r : null;
+	}
+
+	/**
+	 * Initializes the given reader with the dataset's pattern, returning false
+	 * on failure.
+	 */
+	private boolean initReader(final BufferedImageReader r) {
+		// determine number of images per source file
+		try {
+			r.setId(pattern);
+		}
+		catch (final Exception exc) {
+			System.err.println("Could not initialize the dataset. '" + pattern +
+				"' may be corrupt or invalid.");
+			if (VisBioFrame.DEBUG) exc.printStackTrace();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Reads the first image from the given reader, or null on failure. Only a
+	 * single pixel is read when opening lazily, since the image serves just to
+	 * determine the pixel type.
+	 */
+	private BufferedImage readFirstImage(final BufferedImageReader r) {
+		status(2, 4, "Reading first image");
+		try {
+			return lazy ? r.openImage(0, 0, 0, 1, 1) : r.openImage(0);
+		}
+		catch (final IOException exc) {
+			return null;
+		}
+		catch (final FormatException exc) {
+			return null;
+		}
+		catch (final NullPointerException exc) {
+			return null;
+		}
+	}
+
 	/** Notifies constructor task listener of a status update. */
 	private void status(final int current, final int max, final String message) {
 		if (listener == null) return;
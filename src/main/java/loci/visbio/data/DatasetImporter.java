@@ -0,0 +1,319 @@
+/*
+ * #%L
+ * VisBio application for visualization of multidimensional biological
+ * image data.
+ * %%
+ * Copyright (C) 2002 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+
+package loci.visbio.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Hashtable;
+import java.util.Vector;
+
+import loci.formats.FilePattern;
+import loci.formats.FormatException;
+import loci.visbio.BioTask;
+
+/**
+ * DatasetImporter opens many datasets at once, such as the wells of a plate.
+ * The given files, directories and file patterns are first grouped into file
+ * patterns, then a dataset is opened for each distinct pattern. Both steps are
+ * spread over a bounded pool of worker threads, and report their combined
+ * progress through a single optional {@link BioTask}; with no task, the import
+ * runs headless.
+ */
+public class DatasetImporter {
+
+	// -- Constants --
+
+	/** Maximum number of worker threads. */
+	public static final int MAX_THREADS = 8;
+
+	// -- Fields --
+
+	/** Whether datasets defer parsing of their metadata. */
+	protected boolean lazy;
+
+	/** Lock guarding progress and calls to {@link #opened(Dataset)}. */
+	protected Object lock = new Object();
+
+	/** Number of items finished in the current step. */
+	protected int finished;
+
+	// -- Constructor --
+
+	/**
+	 * Constructs a dataset importer.
+	 * 
+	 * @param lazy Whether datasets should defer parsing of their metadata.
+	 */
+	public DatasetImporter(final boolean lazy) {
+		this.lazy = lazy;
+	}
+
+	// -- DatasetImporter API methods --
+
+	/**
+	 * Groups the given files, directories and file patterns into file patterns,
+	 * and opens a dataset for each.
+	 * 
+	 * @param task task for reporting progress, or null if running headless
+	 * @return the datasets opened successfully, in pattern order
+	 */
+	public Dataset[] importDatasets(final String[] ids, final BioTask task) {
+		final String[] patterns = findPatterns(ids, task);
+		if (task != null && task.isStopped()) return new Dataset[0];
+		return openDatasets(patterns, task);
+	}
+
+	/**
+	 * Groups the given files, directories and file patterns into distinct file
+	 * patterns. Directories contribute the files they contain, and ids naming no
+	 * existing file are taken to be patterns already.
+	 * 
+	 * @param task task for reporting progress, or null if running headless
+	 */
+	public String[] findPatterns(final String[] ids, final BioTask task) {
+		final String[] files = expand(ids);
+		final String[] found = new String[files.length];
+		run(files.length, "Grouping files", task, new Step() {
+
+			@Override
+			public void run(final int i) {
+				final File file = new File(files[i]);
+				if (!file.exists()) found[i] = files[i];
+				else {
+					found[i] = FilePattern.findPattern(file);
+					if (found[i] == null) found[i] = file.getAbsolutePath();
+				}
+			}
+		});
+
+		// several files usually share a pattern
+		final Vector patterns = new Vector();
+		final Hashtable seen = new Hashtable();
+		for (int i = 0; i < found.length; i++) {
+			if (found[i] == null || seen.containsKey(found[i])) continue;
+			seen.put(found[i], found[i]);
+			patterns.add(found[i]);
+		}
+		final String[] s = new String[patterns.size()];
+		patterns.copyInto(s);
+		return s;
+	}
+
+	/**
+	 * Opens a dataset for each of the given file patterns, calling
+	 * {@link #opened(Dataset)} as each one becomes ready.
+	 * 
+	 * @param task task for reporting progress, or null if running headless
+	 * @return the datasets opened successfully, in pattern order
+	 */
+	public Dataset[] openDatasets(final String[] patterns, final BioTask task) {
+		final String[] names = makeNames(patterns);
+		final Dataset[] datasets = new Dataset[patterns.length];
+		run(patterns.length, "Opening datasets", task, new Step() {
+
+			@Override
+			public void run(final int i) {
+				final Dataset data = new Dataset(names[i], patterns[i], null, lazy);
+				if (!data.isValid()) {
+					System.err.println("Could not import " + patterns[i]);
+					try {
+						data.close();
+					}
+					catch (final FormatException exc) {
+						exc.printStackTrace();
+					}
+					catch (final IOException exc) {
+						exc.printStackTrace();
+					}
+					return;
+				}
+				datasets[i] = data;
+				synchronized (lock) {
+					opened(data);
+				}
+			}
+		});
+		final Vector v = new Vector();
+		for (int i = 0; i < datasets.length; i++) {
+			if (datasets[i] != null) v.add(datasets[i]);
+		}
+		final Dataset[] d = new Dataset[v.size()];
+		v.copyInto(d);
+		if (task != null) {
+			task.setStatus("Imported " + d.length + " of " + patterns.length);
+		}
+		return d;
+	}
+
+	// -- Internal DatasetImporter API methods --
+
+	/**
+	 * Called from a worker thread when a dataset has been opened. Calls are
+	 * never concurrent, but implementations that touch Swing components must
+	 * defer that work to the event dispatch thread. The default implementation
+	 * does nothing.
+	 */
+	protected void opened(final Dataset data) {}
+
+	/**
+	 * Gets the names already in use elsewhere, which new datasets must avoid.
+	 * The default implementation returns none.
+	 */
+	protected String[] getUsedNames() {
+		return new String[0];
+	}
+
+	// -- Helper methods --
+
+	/** Replaces directories among the given ids with the files they contain. */
+	private String[] expand(final String[] ids) {
+		final Vector v = new Vector();
+		for (int i = 0; i < ids.length; i++) {
+			final File file = new File(ids[i]);
+			if (!file.isDirectory()) {
+				v.add(ids[i]);
+				continue;
+			}
+			final File[] list = file.listFiles();
+			if (list == null) continue;
+			Arrays.sort(list);
+			for (int j = 0; j < list.length; j++) {
+				// skip subdirectories, hidden files and thumbnail caches
+				if (list[j].isDirectory() || list[j].isHidden()) continue;
+				if (list[j].getName().endsWith(".visbio")) continue;
+				v.add(list[j].getPath());
+			}
+		}
+		final String[] s = new String[v.size()];
+		v.copyInto(s);
+		return s;
+	}
+
+	/**
+	 * Chooses a distinct dataset name for each pattern, from its prefix where
+	 * possible, avoiding the names from {@link #getUsedNames()}.
+	 */
+	private String[] makeNames(final String[] patterns) {
+		final String[] names = new String[patterns.length];
+		final Hashtable used = new Hashtable();
+		final String[] taken = getUsedNames();
+		for (int i = 0; i < taken.length; i++)
+			used.put(taken[i], taken[i]);
+		for (int i = 0; i < patterns.length; i++) {
+			String name = new FilePattern(patterns[i]).getPrefix();
+			if (name == null || name.equals("") || used.containsKey(name)) {
+				name = new File(patterns[i]).getName();
+			}
+			if (used.containsKey(name)) {
+				int n = 2;
+				while (used.containsKey(name + "_" + n))
+					n++;
+				name = name + "_" + n;
+			}
+			used.put(name, name);
+			names[i] = name;
+		}
+		return names;
+	}
+
+	/**
+	 * Applies the given step to each of the given number of items, using a
+	 * bounded number of worker threads. Returns only once every worker has
+	 * finished, even if the calling thread is interrupted.
+	 */
+	private void run(final int count, final String message, final BioTask task,
+		final Step step)
+	{
+		synchronized (lock) {
+			finished = 0;
+		}
+		if (task != null) task.setStatus(0, count, message);
+		final int[] next = { 0 };
+		final boolean[] stopped = { false };
+		final Runnable worker = new Runnable() {
+
+			@Override
+			public void run() {
+				while (true) {
+					final int i;
+					synchronized (next) {
+						if (stopped[0] || next[0] >= count) break;
+						i = next[0]++;
+					}
+					if (task != null && task.isStopped()) break;
+					try {
+						step.run(i);
+					}
+					catch (final RuntimeException exc) {
+						// one bad item should not stop the rest of the import
+						exc.printStackTrace();
+					}
+					synchronized (lock) {
+						finished++;
+						if (task != null) task.setStatus(finished, count, message);
+					}
+				}
+			}
+		};
+		int numThreads = Runtime.getRuntime().availableProcessors();
+		if (numThreads > MAX_THREADS) numThreads = MAX_THREADS;
+		if (numThreads > count) numThreads = count;
+		final Thread[] threads = new Thread[numThreads];
+		for (int t = 0; t < numThreads; t++) {
+			threads[t] = new Thread(worker, "VisBio-ImportThread-" + t);
+			threads[t].start();
+		}
+		// if interrupted, hand out no more items, but still wait for the items in
+		// progress before the caller reads their results
+		boolean interrupted = false;
+		for (int t = 0; t < numThreads; t++) {
+			while (true) {
+				try {
+					threads[t].join();
+					break;
+				}
+				catch (final InterruptedException exc) {
+					interrupted = true;
+					synchronized (next) {
+						stopped[0] = true;
+					}
+				}
+			}
+		}
+		if (interrupted) Thread.currentThread().interrupt();
+	}
+
+	// -- Helper classes --
+
+	/** A unit of work applied to one item by a worker thread. */
+	private interface Step {
+
+		/** Processes the item at the given index. */
+		void run(int i);
+	}
+
+}
@@ -36,6 +36,7 @@ import javax.swing.JScrollPane;
 import javax.swing.JTabbedPane;
 import javax.swing.JTable;
 import javax.swing.JTree;
+import javax.swing.SwingUtilities;
 import javax.swing.table.DefaultTableModel;
 import javax.xml.parsers.ParserConfigurationException;
 
@@ -74,28 +75,20 @@ public class DatasetWidget extends JPanel {
 	/** Table model backing metadata table. */
 	protected DefaultTableModel metaTableModel;
 
+	/** Scroll pane containing OME-XML tree. */
+	protected JScrollPane scrollTree;
+
 	// -- Constructor --
 
-	/** Constructs widget for display of dataset's associated metadata. */
+	/**
+	 * Constructs widget for display of dataset's associated metadata. If the
+	 * dataset has not parsed its metadata yet, it is parsed in the background
+	 * and the widget filled in once done.
+	 */
 	public DatasetWidget(final Dataset dataset) {
 		super();
 		this.dataset = dataset;
 
-		// get dataset's metadata
-		metadata = dataset.getMetadata();
-
-		// sort metadata keys
-		if (metadata == null) keys = new String[0];
-		else {
-			final Enumeration e = metadata.keys();
-			final Vector v = new Vector();
-			while (e.hasMoreElements())
-				v.add(e.nextElement());
-			keys = new String[v.size()];
-			v.copyInto(keys);
-			Arrays.sort(keys);
-		}
-
 		// -- First tab --
 
 		// metadata table
@@ -107,9 +100,52 @@ public class DatasetWidget extends JPanel {
 		// -- Second tab --
 
 		// OME-XML tree
-		Document doc = null;
+		scrollTree = new JScrollPane();
+		SwingUtil.configureScrollPane(scrollTree);
+
+		// -- Main GUI --
+
+		// tabbed pane
+		final JTabbedPane tabbed = new JTabbedPane();
+		tabbed.addTab("Original metadata", scrollMetaTable);
+		tabbed.addTab("OME-XML", scrollTree);
+
+		// lay out components
+		setLayout(new BorderLayout());
+		add(tabbed);
+
+		if (dataset.isMetadataLoaded()) {
+			populate(dataset.getMetadata(), parseOMEXML());
+			return;
+		}
+
+		// parse metadata in a separate thread
+		scrollTree.setViewportView(new JTree(new Object[] { "Loading..." }));
+		new Thread("VisBio-MetadataThread-" + dataset.getName()) {
+
+			@Override
+			public void run() {
+				final Hashtable meta = dataset.getMetadata();
+				final Document doc = parseOMEXML();
+				SwingUtilities.invokeLater(new Runnable() {
+
+					@Override
+					public void run() {
+						populate(meta, doc);
+					}
+				});
+			}
+		}.start();
+	}
+
+	// -- Helper methods --
+
+	/** Parses the dataset's OME-XML, or returns null if there is none. */
+	private Document parseOMEXML() {
+		final String xml = dataset.getOMEXML();
+		if (xml == null) return null;
 		try {
-			doc = XMLTools.parseDOM(dataset.getOMEXML());
+			return XMLTools.parseDOM(xml);
 		}
 		catch (final ParserConfigurationException exc) {
 			if (VisBioFrame.DEBUG) exc.printStackTrace();
@@ -120,23 +156,24 @@ public class DatasetWidget extends JPanel {
 		catch (final IOException exc) {
 			if (VisBioFrame.DEBUG) exc.printStackTrace();
 		}
-		JTree xmlTree;
-		if (doc == null) xmlTree =
-			new JTree(new Object[] { "No OME-XML available" });
-		else xmlTree = XMLCellRenderer.makeJTree(doc);
-		final JScrollPane scrollTree = new JScrollPane(xmlTree);
-		SwingUtil.configureScrollPane(scrollTree);
-
-		// -- Main GUI --
+		return null;
+	}
 
-		// tabbed pane
-		final JTabbedPane tabbed = new JTabbedPane();
-		tabbed.addTab("Original metadata", scrollMetaTable);
-		tabbed.addTab("OME-XML", scrollTree);
+	/** Fills in the metadata table and OME-XML tree. */
+	private void populate(final Hashtable meta, final Document doc) {
+		metadata = meta;
 
-		// lay out components
-		setLayout(new BorderLayout());
-		add(tabbed);
+		// sort metadata keys
+		if (metadata == null) keys = new String[0];
+		else {
+			final Enumeration e = metadata.keys();
+			final Vector v = new Vector();
+			while (e.hasMoreElements())
+				v.add(e.nextElement());
+			keys = new String[v.size()];
+			v.copyInto(keys);
+			Arrays.sort(keys);
+		}
 
 		// populate metadata table
 		final int len = keys.length;
@@ -145,6 +182,12 @@ public class DatasetWidget extends JPanel {
 			metaTableModel.setValueAt(keys[i], i, 0);
 			metaTableModel.setValueAt(metadata.get(keys[i]), i, 1);
 		}
+
+		JTree xmlTree;
+		if (doc == null) xmlTree =
+			new JTree(new Object[] { "No OME-XML available" });
+		else xmlTree = XMLCellRenderer.makeJTree(doc);
+		scrollTree.setViewportView(xmlTree);
 	}
 
 }
@@ -142,6 +142,22 @@ public abstract class ImageTransform extends DataTransform {
 		return null;
 	}
 
+	/**
+	 * Obtains the given rectangular region of the image at the given dimensional
+	 * position. The default implementation crops the full image; transforms able
+	 * to read a region directly from their source should override it.
+	 */
+	public BufferedImage getImage(final int[] pos, final int x, final int y,
+		final int w, final int h)
+	{
+		final BufferedImage img = getImage(pos);
+		if (img == null) return null;
+		if (x == 0 && y == 0 && w == img.getWidth() && h == img.getHeight()) {
+			return img;
+		}
+		return img.getSubimage(x, y, w, h);
+	}
+
 	/** Gets physical image width in microns. */
 	public double getMicronWidth() {
 		return micronWidth;
@@ -31,6 +31,7 @@ import javax.swing.JOptionPane;
 
 import loci.visbio.state.Dynamic;
 import loci.visbio.state.SaveException;
+import loci.visbio.util.Profiler;
 import loci.visbio.util.XMLUtil;
 import loci.visbio.view.TransformLink;
 
@@ -158,7 +159,9 @@ public class ProjectionTransform extends ImageTransform {
 		final int[] npos = getParentPos(pos);
 		for (int i = 0; i < len; i++) {
 			npos[axis] = i;
+			final long t = Profiler.start();
 			final Data data = parent.getData(link, npos, dim, cache);
+			if (t != 0) Profiler.end(t, "getData", parent.getChainName());
 			if (data == null || !(data instanceof FlatField)) return null;
 			fields[i] = (FlatField) data;
 		}
@@ -230,7 +233,7 @@ public class ProjectionTransform extends ImageTransform {
 
 		computeLengths();
 
-		controls = new ProjectionWidget(this);
+		if (!isHeadless()) controls = new ProjectionWidget(this);
 		thumbs = new ThumbnailHandler(this, getCacheFilename());
 	}
 
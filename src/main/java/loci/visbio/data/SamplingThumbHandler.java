@@ -53,16 +53,11 @@ public class SamplingThumbHandler extends ThumbnailHandler {
 	protected FlatField computeThumb(final int[] pos) {
 		final DataSampling samp = (DataSampling) data;
 		final ThumbnailHandler th = samp.getParent().getThumbHandler();
-		if (th == null) return super.computeThumb(pos);
+		// parent thumbnails cover the whole image, so cannot serve a crop
+		if (th == null || samp.isCropped()) return super.computeThumb(pos);
 
-		final int[] min = samp.getMin();
-		final int[] step = samp.getStep();
 		final boolean[] range = samp.getRange();
-
-		final int[] p = new int[pos.length];
-		for (int i = 0; i < p.length; i++)
-			p[i] = min[i] + step[i] * pos[i] - 1;
-		final FlatField ff = th.getThumb(p);
+		final FlatField ff = th.getThumb(samp.getSourcePos(pos));
 		if (ff == null) return super.computeThumb(pos);
 
 		final float[] smin = { 0, 0 };
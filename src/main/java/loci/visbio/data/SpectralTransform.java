@@ -32,6 +32,7 @@ import javax.swing.JOptionPane;
 import loci.visbio.state.Dynamic;
 import loci.visbio.state.SaveException;
 import loci.visbio.util.ObjectUtil;
+import loci.visbio.util.Profiler;
 import loci.visbio.util.XMLUtil;
 import loci.visbio.view.TransformLink;
 
@@ -182,7 +183,9 @@ public class SpectralTransform extends ImageTransform implements
 	{
 		if (dim != 2) return null;
 
+		final long t = Profiler.start();
 		final Data data = parent.getData(link, pos, dim, cache);
+		if (t != 0) Profiler.end(t, "getData", parent.getChainName());
 		if (data == null || !(data instanceof FlatField)) return null;
 
 		return doWeightedMapping((FlatField) data, range, weights);
@@ -266,7 +269,7 @@ public class SpectralTransform extends ImageTransform implements
 			range[i] = RealType.getRealType(rangeLabels[i]);
 		}
 
-		controls = new SpectralWidget(this, rangeLabels);
+		if (!isHeadless()) controls = new SpectralWidget(this, rangeLabels);
 		thumbs = new ThumbnailHandler(this, getCacheFilename());
 	}
 
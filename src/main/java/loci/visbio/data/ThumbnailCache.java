@@ -26,12 +26,15 @@ package loci.visbio.data;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.util.Vector;
 
+import loci.visbio.util.Histogram;
 import visad.FlatField;
 import visad.VisADException;
 import visad.data.visad.BinaryReader;
@@ -52,6 +55,12 @@ public class ThumbnailCache {
 	/** Default cache file to use if supplied cache file is not available. */
 	private static final File DEFAULT_CACHE = new File("cache.visbio");
 
+	/**
+	 * Suffix appended to a thumbnail's id string to form the id of the
+	 * intensity statistics stored alongside it.
+	 */
+	protected static final String STATS_SUFFIX = "#stats";
+
 	// -- Fields --
 
 	/** File containing thumbnail cache data. */
@@ -133,7 +142,7 @@ public class ThumbnailCache {
 	// -- API methods --
 
 	/** Retrieves the thumbnail with the given id string from the disk cache. */
-	public FlatField retrieve(final String id) {
+	public synchronized FlatField retrieve(final String id) {
 		final long offset = getOffset(id);
 		if (offset < 0) return null;
 		try {
@@ -146,7 +155,7 @@ public class ThumbnailCache {
 	}
 
 	/** Stores the given thumbnail in the disk cache. */
-	public void store(final String id, final FlatField thumb) {
+	public synchronized void store(final String id, final FlatField thumb) {
 		// append thumbnail to the data file
 		try {
 			save(id, thumb);
@@ -156,8 +165,47 @@ public class ThumbnailCache {
 		}
 	}
 
+	/**
+	 * Retrieves the intensity statistics of the thumbnail with the given id
+	 * string from the disk cache, or null if none are stored.
+	 */
+	public synchronized Histogram retrieveStats(final String id) {
+		final long offset = getOffset(id + STATS_SUFFIX);
+		if (offset < 0) return null;
+		try {
+			final DataInputStream in =
+				new DataInputStream(new ByteArrayInputStream(loadBytes(offset)));
+			final Histogram stats = Histogram.read(in);
+			in.close();
+			return stats;
+		}
+		catch (final IOException exc) {
+			exc.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * Stores intensity statistics for the thumbnail with the given id string in
+	 * the disk cache.
+	 */
+	public synchronized void storeStats(final String id,
+		final Histogram stats)
+	{
+		try {
+			final ByteArrayOutputStream bout = new ByteArrayOutputStream();
+			final DataOutputStream out = new DataOutputStream(bout);
+			stats.write(out);
+			out.close();
+			saveBytes(id + STATS_SUFFIX, bout.toByteArray());
+		}
+		catch (final IOException exc) {
+			exc.printStackTrace();
+		}
+	}
+
 	/** Wipes the thumbnail disk cache. */
-	public void clear() {
+	public synchronized void clear() {
 		try {
 			file.delete();
 			file.createNewFile();
@@ -174,7 +222,13 @@ public class ThumbnailCache {
 
 	/** Gets the number of thumbnails in the disk cache. */
 	public int getThumbCount() {
-		return ids.size();
+		int count = 0;
+		final int size = ids.size();
+		for (int i = 0; i < size; i++) {
+			final String id = (String) ids.elementAt(i);
+			if (!id.endsWith(STATS_SUFFIX)) count++;
+		}
+		return count;
 	}
 
 	/** Gets the disk cache file. */
@@ -206,9 +260,6 @@ public class ThumbnailCache {
 	protected void save(final String id, final FlatField thumb)
 		throws IOException
 	{
-		final byte[] idBytes = id.getBytes();
-		final long offset = file.length();
-
 		// convert image data into byte array
 		final ByteArrayOutputStream bout = new ByteArrayOutputStream();
 		final BinaryWriter fout = new BinaryWriter(bout);
@@ -219,7 +270,15 @@ public class ThumbnailCache {
 			exc.printStackTrace();
 		}
 		fout.close();
-		final byte[] image = bout.toByteArray();
+		saveBytes(id, bout.toByteArray());
+	}
+
+	/** Saves the given bytes to the end of the cache file. */
+	protected void saveBytes(final String id, final byte[] bytes)
+		throws IOException
+	{
+		final byte[] idBytes = id.getBytes();
+		final long offset = file.length();
 
 		// add id/offset pair to the list
 		ids.add(id);
@@ -230,23 +289,14 @@ public class ThumbnailCache {
 		raf.seek(offset);
 		raf.writeInt(idBytes.length);
 		raf.write(idBytes);
-		raf.writeInt(image.length);
-		raf.write(image);
+		raf.writeInt(bytes.length);
+		raf.write(bytes);
 		raf.close();
 	}
 
 	/** Loads the data object at the given byte offset of the cache file. */
 	protected FlatField load(final long offset) throws IOException {
-		final RandomAccessFile raf = new RandomAccessFile(file, "r");
-		raf.seek(offset);
-		final int idLen = raf.readInt();
-		raf.skipBytes(idLen); // skip id string
-
-		// read in image bytes
-		final int length = raf.readInt();
-		final byte[] bytes = new byte[length];
-		raf.readFully(bytes);
-		raf.close();
+		final byte[] bytes = loadBytes(offset);
 
 		// convert image bytes to FlatField object
 		final BinaryReader fin = new BinaryReader(new ByteArrayInputStream(bytes));
@@ -265,4 +315,19 @@ public class ThumbnailCache {
 		return thumb;
 	}
 
+	/** Loads the bytes stored at the given byte offset of the cache file. */
+	protected byte[] loadBytes(final long offset) throws IOException {
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		raf.seek(offset);
+		final int idLen = raf.readInt();
+		raf.skipBytes(idLen); // skip id string
+
+		// read in stored bytes
+		final int length = raf.readInt();
+		final byte[] bytes = new byte[length];
+		raf.readFully(bytes);
+		raf.close();
+		return bytes;
+	}
+
 }
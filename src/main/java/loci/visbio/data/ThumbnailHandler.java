@@ -30,6 +30,8 @@ import loci.formats.FormatTools;
 import loci.visbio.BioTask;
 import loci.visbio.TaskManager;
 import loci.visbio.util.DataUtil;
+import loci.visbio.util.Histogram;
+import loci.visbio.util.Profiler;
 import visad.Data;
 import visad.FlatField;
 import visad.FunctionType;
@@ -41,6 +43,11 @@ import visad.VisADException;
  */
 public class ThumbnailHandler implements Runnable, TransformListener {
 
+	// -- Constants --
+
+	/** Number of histogram bins kept per channel of each plane's statistics. */
+	public static final int STATS_BINS = 256;
+
 	// -- Fields --
 
 	/** Data transform on which this thumbnail handler operates. */
@@ -53,6 +60,12 @@ public class ThumbnailHandler implements Runnable, TransformListener {
 	/** Thumbnail data computed from data transform. */
 	protected FlatField[] thumbs;
 
+	/** Intensity statistics of each plane, gathered alongside thumbnails. */
+	protected Histogram[] stats;
+
+	/** Statistics aggregated over all planes, or null if out of date. */
+	protected Histogram globalStats;
+
 	/** Thumbnail disk cache for faster thumbnail retrieval. */
 	protected ThumbnailCache cache;
 
@@ -100,6 +113,59 @@ public class ThumbnailHandler implements Runnable, TransformListener {
 		if (ndx >= 0 && ndx < thumbs.length) thumbs[ndx] = thumb;
 	}
 
+	/**
+	 * Gets intensity statistics for the plane at the given dimensional position,
+	 * or null if they have not been gathered yet.
+	 */
+	public Histogram getStats(final int[] pos) {
+		final int ndx = FormatTools.positionToRaster(data.getLengths(), pos);
+		return ndx >= 0 && ndx < stats.length ? stats[ndx] : null;
+	}
+
+	/** Sets intensity statistics for the plane at the given position. */
+	public void setStats(final int[] pos, final Histogram h) {
+		final int ndx = FormatTools.positionToRaster(data.getLengths(), pos);
+		if (ndx >= 0 && ndx < stats.length) {
+			stats[ndx] = h;
+			globalStats = null;
+		}
+	}
+
+	/**
+	 * Gets intensity statistics aggregated over every plane whose statistics
+	 * have been gathered, or null if there are none yet.
+	 */
+	public Histogram getGlobalStats() {
+		Histogram h = globalStats;
+		if (h == null) {
+			h = Histogram.merge((Histogram[]) stats.clone(), STATS_BINS);
+			globalStats = h;
+		}
+		return h;
+	}
+
+	/**
+	 * Gets intensity statistics aggregated over the planes along the given axis
+	 * through the specified position, or null if there are none yet.
+	 */
+	public Histogram getAxisStats(final int[] pos, final int axis) {
+		final int[] lengths = data.getLengths();
+		if (axis < 0 || axis >= lengths.length) return getStats(pos);
+		final int[] p = (int[]) pos.clone();
+		final Histogram[] h = new Histogram[lengths[axis]];
+		for (int i = 0; i < h.length; i++) {
+			p[axis] = i;
+			h[i] = getStats(p);
+		}
+		return Histogram.merge(h, STATS_BINS);
+	}
+
+	/** Computes intensity statistics for the given plane. */
+	public Histogram makeStats(final Data d) {
+		if (d == null || !(d instanceof FlatField)) return null;
+		return Histogram.compute((FlatField) d, STATS_BINS);
+	}
+
 	/** Sets resolution of computed thumbnails. */
 	public void setResolution(final int[] res) {
 		resolution = res;
@@ -151,6 +217,8 @@ public class ThumbnailHandler implements Runnable, TransformListener {
 			on = oldOn;
 		}
 		thumbs = new FlatField[FormatTools.getRasterLength(data.getLengths())];
+		stats = new Histogram[thumbs.length];
+		globalStats = null;
 		count = 0;
 		if (on) startGeneration();
 	}
@@ -167,15 +235,30 @@ public class ThumbnailHandler implements Runnable, TransformListener {
 		return cache;
 	}
 
+	/** Gets the number of thumbnails, one per dimensional position. */
+	public int getThumbCount() {
+		return thumbs.length;
+	}
+
+	/**
+	 * Generates the thumbnail and intensity statistics at the given raster
+	 * index, if not already present, storing them in the disk cache. Different
+	 * indices may be generated from several threads at once, as in batch mode.
+	 */
+	public void generate(final int i) {
+		loadThumb(i);
+	}
+
 	// -- Internal ThumbnailHandler API methods --
 
-	/** Computes the ith thumbnail. */
+	/** Computes the ith thumbnail and its plane's intensity statistics. */
 	protected void loadThumb(final int i) {
 		if (thumbs[i] != null) return;
+		final long t = Profiler.start();
 
 		final int[] lengths = data.getLengths();
-		final String id =
-			data.getCacheId(FormatTools.rasterToPosition(lengths, i), global);
+		final int[] pos = FormatTools.rasterToPosition(lengths, i);
+		final String id = data.getCacheId(pos, global);
 
 		// attempt to grab thumbnail from the disk cache
 		boolean cached = false;
@@ -184,25 +267,40 @@ public class ThumbnailHandler implements Runnable, TransformListener {
 			if (ff != null) {
 				thumbs[i] = ff;
 				cached = true;
+				if (stats[i] == null) setStats(pos, cache.retrieveStats(id));
 			}
 		}
 
 		if (!cached) {
 			// compute thumbnail from data object
-			thumbs[i] = computeThumb(FormatTools.rasterToPosition(lengths, i));
+			thumbs[i] = computeThumb(pos);
 			if (cache != null && thumbs[i] != null) cache.store(id, thumbs[i]);
 		}
+		if (stats[i] == null && thumbs[i] != null) {
+			// statistics are missing from older caches, or were not computed with
+			// the thumbnail; estimate them from the thumbnail itself
+			setStats(pos, makeStats(thumbs[i]));
+			if (cache != null && stats[i] != null) cache.storeStats(id, stats[i]);
+		}
+		else if (!cached && cache != null && stats[i] != null) {
+			cache.storeStats(id, stats[i]);
+		}
+		if (t != 0) Profiler.end(t, "loadThumb", data.getChainName());
 
 		count++;
 	}
 
 	/**
-	 * Computes a thumbnail for the given dimensional position. Subclasses may
-	 * override this method to provide custom or more efficient thumbnail creation
-	 * behavior.
+	 * Computes a thumbnail for the given dimensional position, gathering the
+	 * plane's intensity statistics from the full-resolution data on the way.
+	 * Subclasses may override this method to provide custom or more efficient
+	 * thumbnail creation behavior.
 	 */
 	protected FlatField computeThumb(final int[] pos) {
+		final long t = Profiler.start();
 		final Data d = data.getData(null, pos, 2, null);
+		if (t != 0) Profiler.end(t, "getData", data.getChainName());
+		setStats(pos, makeStats(d));
 		return makeThumb(d);
 	}
 
@@ -24,6 +24,8 @@
 
 package loci.visbio.ext;
 
+import javax.swing.SwingUtilities;
+
 import loci.visbio.LogicManager;
 import loci.visbio.VisBioEvent;
 import loci.visbio.VisBioFrame;
@@ -70,11 +72,23 @@ public class ExtManager extends LogicManager {
 		final DataManager dm = (DataManager) bio.getManager(DataManager.class);
 		dm.registerDataType(ExternalProgram.class, "External program");
 
-		// MATLAB transform registration
+		// MATLAB transform registration, in the background since detecting
+		// MATLAB can take a long time
 		bio.setSplashStatus(null);
-		if (MatlabUtil.getMatlabVersion() != null) {
-			dm.registerDataType(MatlabFunction.class, "MATLAB function");
-		}
+		new Thread("VisBio-MatlabDetectionThread") {
+
+			@Override
+			public void run() {
+				if (MatlabUtil.getMatlabVersion() == null) return;
+				SwingUtilities.invokeLater(new Runnable() {
+
+					@Override
+					public void run() {
+						dm.registerDataType(MatlabFunction.class, "MATLAB function");
+					}
+				});
+			}
+		}.start();
 
 		// help window
 		bio.setSplashStatus(null);
@@ -34,6 +34,7 @@ import loci.visbio.data.ThumbnailHandler;
 import loci.visbio.data.TransformEvent;
 import loci.visbio.state.Dynamic;
 import loci.visbio.state.SaveException;
+import loci.visbio.util.Profiler;
 import loci.visbio.util.XMLUtil;
 import loci.visbio.view.TransformLink;
 
@@ -187,7 +188,9 @@ public abstract class ExternalFunction extends ImageTransform {
 	{
 		if (dim != 2) return null;
 
+		final long t = Profiler.start();
 		final Data data = parent.getData(link, pos, dim, cache);
+		if (t != 0) Profiler.end(t, "getData", parent.getChainName());
 		if (!(data instanceof FlatField)) return null;
 
 		return evaluate((FlatField) data, params);
@@ -267,7 +270,7 @@ public abstract class ExternalFunction extends ImageTransform {
 		}
 		setParameters(prms, false);
 
-		controls = new FunctionWidget(this);
+		if (!isHeadless()) controls = new FunctionWidget(this);
 		thumbs = new ThumbnailHandler(this, getCacheFilename());
 	}
 
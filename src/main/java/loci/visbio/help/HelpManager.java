@@ -30,6 +30,7 @@ import com.jgoodies.forms.layout.FormLayout;
 import com.jgoodies.looks.LookUtils;
 
 import java.awt.event.KeyEvent;
+import java.util.Vector;
 
 import javax.swing.ButtonGroup;
 import javax.swing.JMenuItem;
@@ -70,9 +71,12 @@ public class HelpManager extends LogicManager {
 
 	// -- Fields --
 
-	/** Help dialog for detailing basic program usage. */
+	/** Help dialog for detailing basic program usage, created on first use. */
 	protected HelpWindow helpWindow;
 
+	/** Help topics added before the help window was created. */
+	protected Vector pendingTopics = new Vector();
+
 	// -- Constructor --
 
 	/** Constructs an exit manager. */
@@ -84,7 +88,8 @@ public class HelpManager extends LogicManager {
 
 	/** Adds a new help topic. */
 	public void addHelpTopic(final String name, final String source) {
-		helpWindow.addTopic(name, source);
+		if (helpWindow == null) pendingTopics.add(new String[] { name, source });
+		else helpWindow.addTopic(name, source);
 	}
 
 	/**
@@ -191,11 +196,8 @@ public class HelpManager extends LogicManager {
 
 	/** Adds help-related GUI components to VisBio. */
 	private void doGUI() {
+		// help window is created on first use
 		bio.setSplashStatus("Initializing help logic");
-		helpWindow = new HelpWindow();
-		final WindowManager wm =
-			(WindowManager) bio.getManager(WindowManager.class);
-		wm.addWindow(helpWindow);
 
 		// help menu
 		bio.setSplashStatus(null);
@@ -232,13 +234,29 @@ public class HelpManager extends LogicManager {
 
 	private void makeVisPanel() {}
 
+	/** Gets the help window, creating it if necessary. */
+	private HelpWindow getHelpWindow() {
+		if (helpWindow == null) {
+			helpWindow = new HelpWindow();
+			for (int i = 0; i < pendingTopics.size(); i++) {
+				final String[] topic = (String[]) pendingTopics.elementAt(i);
+				helpWindow.addTopic(topic[0], topic[1]);
+			}
+			pendingTopics.removeAllElements();
+			final WindowManager wm =
+				(WindowManager) bio.getManager(WindowManager.class);
+			wm.addWindow(helpWindow);
+		}
+		return helpWindow;
+	}
+
 	// -- Menu commands --
 
 	/** Brings up a window detailing basic program usage. */
 	public void helpHelp() {
 		final WindowManager wm =
 			(WindowManager) bio.getManager(WindowManager.class);
-		wm.showWindow(helpWindow);
+		wm.showWindow(getHelpWindow());
 	}
 
 	/** Brings up VisBio's about dialog. */
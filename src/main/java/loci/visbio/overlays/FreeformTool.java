@@ -408,9 +408,15 @@ public class FreeformTool extends OverlayTool {
 		// This method combines freeforms f1 and f2 to make a new freeform f3.
 		if (!head) f2.reverseNodes();
 		final OverlayFreeform f3 = f1.connectTo(f2);
-		overlay.removeObject(f1);
-		overlay.removeObject(f2);
-		overlay.addObject(f3);
+		overlay.beginBatch();
+		try {
+			overlay.removeObject(f1);
+			overlay.removeObject(f2);
+			overlay.addObject(f3);
+		}
+		finally {
+			overlay.commitBatch();
+		}
 		freeform = f3; // store the new freeform
 	}
 
@@ -418,32 +424,27 @@ public class FreeformTool extends OverlayTool {
 	protected void eraseNearestNodeWithin(final float thresh, final float x,
 		final float y)
 	{
-		final Vector freefs = getFreeforms(true); // collect all other freeforms,
+		// compute closest node of closest freeform w/ respect to threshold,
 		// including the current one tracked by this tool
-		if (freefs.size() == 0) return;
-		// compute closest node of closest freeform w/ respect to threshold
-		double minDist = Double.POSITIVE_INFINITY;
-		int minIndex = -1;
-		OverlayFreeform closest = null;
-		for (int i = 0; i < freefs.size(); i++) {
-			final OverlayFreeform current = (OverlayFreeform) freefs.get(i);
-			final double[] distIndex = current.getNearestNode(x, y);
-			final double dist = distIndex[0];
-			final int index = (int) distIndex[1];
-			if (dist < thresh && dist < minDist) {
-				minDist = dist;
-				minIndex = index;
-				closest = current;
-			}
-		}
+		final OverlayIndex.NodeHit hit =
+			overlay.getNearestNode(overlay.getPos(), x, y, thresh,
+				OverlayFreeform.class);
 
 		// remove that node if it exists, possibly splitting the freeform
 		// in two.
-		if (closest != null) {
-			final OverlayFreeform[] children = closest.removeNode(minIndex);
-			// remove freeforms with 1 or 0 nodes that result
-			if (closest.getNumNodes() <= 1) overlay.removeObject(closest);
-			removeEmptyFreeforms(children);
+		if (hit != null) {
+			final OverlayFreeform closest = (OverlayFreeform) hit.obj;
+			final int minIndex = hit.node;
+			overlay.beginBatch();
+			try {
+				final OverlayFreeform[] children = closest.removeNode(minIndex);
+				// remove freeforms with 1 or 0 nodes that result
+				if (closest.getNumNodes() <= 1) overlay.removeObject(closest);
+				removeEmptyFreeforms(children);
+			}
+			finally {
+				overlay.commitBatch();
+			}
 		}
 	}
 
@@ -462,8 +463,14 @@ public class FreeformTool extends OverlayTool {
 	protected DistanceQuery getClosestFreeform(final DisplayImpl display,
 		final double dpx, final double dpy, final double thresh)
 	{
-		// returns only objects at the current dimensional position
-		final OverlayObject[] objects = overlay.getObjects();
+		// returns only objects at the current dimensional position that lie
+		// near the click; the domain radius is padded since the threshold is
+		// measured in pixels
+		final double[] d = CursorUtil.pixelToDomain(display, (int) dpx, (int) dpy);
+		final double radius = 2 * thresh * OverlayUtil.getMultiplier(display);
+		final OverlayObject[] objects =
+			overlay.getObjectsWithin(overlay.getPos(), (float) d[0], (float) d[1],
+				radius);
 		// Q: Hey, are all of these OverlayFreeforms?
 		// A: No, it returns OverlayObjects of all types
 
@@ -0,0 +1,694 @@
+/*
+ * #%L
+ * VisBio application for visualization of multidimensional biological
+ * image data.
+ * %%
+ * Copyright (C) 2002 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.visbio.overlays;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Hashtable;
+import java.util.Vector;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import loci.formats.FormatTools;
+import loci.poi.hssf.usermodel.HSSFCell;
+import loci.poi.hssf.usermodel.HSSFRichTextString;
+import loci.poi.hssf.usermodel.HSSFRow;
+import loci.poi.hssf.usermodel.HSSFSheet;
+import loci.poi.hssf.usermodel.HSSFWorkbook;
+import loci.visbio.BioTask;
+
+/**
+ * OverlayBatchMeasurer measures the intensity statistics of every area
+ * overlay at every dimensional position of an overlay transform, writing one
+ * row per overlay and channel to a CSV, TSV, XLS or XLSX file.
+ * <p>
+ * Positions are measured in parallel by a fixed number of worker threads.
+ * Planes are read from the parent transform one at a time, since image readers
+ * are not thread-safe, while ROIs are measured concurrently. Workers may run at
+ * most a small window of positions ahead of the writer, so memory use is
+ * bounded no matter how many positions there are. Progress and cancellation
+ * go through an optional {@link BioTask}; with no task, the measurement runs
+ * headless.
+ */
+public class OverlayBatchMeasurer {
+
+	// -- Fields --
+
+	/** Overlay transform whose overlays are measured. */
+	protected OverlayTransform trans;
+
+	/** Lock guarding the worker and writer state below. */
+	protected Object lock = new Object();
+
+	/** Next position to be claimed by a worker. */
+	protected int next;
+
+	/** Number of positions written so far. */
+	protected int written;
+
+	/** Measured positions awaiting the writer, keyed by raster index. */
+	protected Hashtable done = new Hashtable();
+
+	/** Whether the measurement has been aborted. */
+	protected boolean aborted;
+
+	/** Exception or error thrown by a worker thread, if any. */
+	protected Throwable failure;
+
+	// -- Constructor --
+
+	/** Constructs a batch measurer for the overlays of the given transform. */
+	public OverlayBatchMeasurer(final OverlayTransform trans) {
+		this.trans = trans;
+	}
+
+	// -- OverlayBatchMeasurer API methods --
+
+	/**
+	 * Measures all positions, writing the results to the given file in the
+	 * format indicated by its extension; see {@link #createWriter(File)}.
+	 *
+	 * @param task task for reporting progress, or null if running headless
+	 * @return the number of rows written
+	 */
+	public int measure(final File file, final BioTask task) throws IOException {
+		final RowWriter out = createWriter(file);
+		try {
+			return measure(out, task);
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Measures all positions, writing the results to the given row writer.
+	 *
+	 * @param task task for reporting progress, or null if running headless
+	 * @return the number of rows written
+	 */
+	public int measure(final RowWriter out, final BioTask task)
+		throws IOException
+	{
+		final String[] dims = trans.getDimTypes();
+		final int[] lengths = trans.getLengths();
+		final int[] positions;
+		synchronized (trans.overlays) {
+			positions = trans.overlays.getPositions();
+		}
+		final int numPositions = positions.length;
+
+		// header row
+		final Object[] header = new Object[dims.length + 4 +
+			OverlayMeasurer.STAT_TYPES.length];
+		int h = 0;
+		header[h++] = "Overlay";
+		for (int i = 0; i < dims.length; i++)
+			header[h++] = dims[i];
+		header[h++] = "Index";
+		header[h++] = "Group";
+		header[h++] = "Channel";
+		for (int i = 0; i < OverlayMeasurer.STAT_TYPES.length; i++) {
+			header[h++] = OverlayMeasurer.STAT_TYPES[i];
+		}
+		out.writeRow(header);
+
+		synchronized (lock) {
+			next = written = 0;
+			done.clear();
+			aborted = false;
+			failure = null;
+		}
+		if (task != null) {
+			task.setStoppable(true);
+			task.setStatus(0, numPositions, "Measuring overlays");
+		}
+
+		// start workers
+		int numThreads = Runtime.getRuntime().availableProcessors();
+		if (numThreads > numPositions) numThreads = numPositions;
+		final int window = 2 * numThreads;
+		final Runnable worker = new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					while (true) {
+						int p;
+						synchronized (lock) {
+							while (!aborted && next < numPositions &&
+								next >= written + window)
+							{
+								lock.wait();
+							}
+							if (aborted || next >= numPositions) return;
+							p = next++;
+						}
+						final Result result = measurePosition(positions[p]);
+						synchronized (lock) {
+							done.put(new Integer(p), result);
+							lock.notifyAll();
+						}
+					}
+				}
+				catch (final InterruptedException exc) {
+					abort();
+				}
+				catch (final Throwable t) {
+					// errors too, since the writer would otherwise wait forever
+					synchronized (lock) {
+						if (failure == null) failure = t;
+						aborted = true;
+						lock.notifyAll();
+					}
+				}
+			}
+		};
+		final Thread[] threads = new Thread[numThreads];
+		for (int t = 0; t < numThreads; t++) {
+			threads[t] = new Thread(worker, "VisBio-BatchMeasureThread-" + t);
+			threads[t].start();
+		}
+
+		// write results in position order as they become available
+		int rows = 0;
+		try {
+			for (int p = 0; p < numPositions; p++) {
+				Result result;
+				synchronized (lock) {
+					final Integer key = new Integer(p);
+					while (!aborted && !done.containsKey(key)) {
+						try {
+							lock.wait();
+						}
+						catch (final InterruptedException exc) {
+							Thread.currentThread().interrupt();
+							throw new InterruptedIOException("Measurement interrupted");
+						}
+					}
+					if (failure instanceof RuntimeException) {
+						throw (RuntimeException) failure;
+					}
+					if (failure instanceof Error) throw (Error) failure;
+					if (aborted) break;
+					result = (Result) done.remove(key);
+					written = p + 1;
+					lock.notifyAll();
+				}
+				rows +=
+					writeRows(out, result, FormatTools.rasterToPosition(lengths,
+						positions[p]));
+				if (task != null) {
+					task.setStatus(p + 1, numPositions, "Measured position " + (p + 1) +
+						"/" + numPositions);
+					if (task.isStopped()) abort();
+				}
+			}
+		}
+		finally {
+			abort();
+			// wait for the aborted workers even if interrupted, then restore the
+			// interrupt for the caller
+			boolean interrupted = false;
+			for (int t = 0; t < numThreads; t++) {
+				while (true) {
+					try {
+						threads[t].join();
+						break;
+					}
+					catch (final InterruptedException exc) {
+						interrupted = true;
+					}
+				}
+			}
+			if (interrupted) Thread.currentThread().interrupt();
+			trans.getMeasurer().releasePlane();
+		}
+		return rows;
+	}
+
+	// -- Helper methods --
+
+	/** Stops all worker threads. */
+	protected void abort() {
+		synchronized (lock) {
+			aborted = true;
+			lock.notifyAll();
+		}
+	}
+
+	/** Measures the area overlays at the given raster index. */
+	protected Result measurePosition(final int raster) {
+		final OverlayMeasurer measurer = trans.getMeasurer();
+		final Vector objs = new Vector(), indices = new Vector();
+		final OverlayStore overlays = trans.overlays;
+		synchronized (overlays) {
+			final int size = overlays.size(raster);
+			for (int i = 0; i < size; i++) {
+				final OverlayObject obj =
+					(OverlayObject) overlays.get(raster).elementAt(i);
+				if (!OverlayMeasurer.isMeasurable(obj)) continue;
+				objs.add(obj);
+				indices.add(new Integer(i));
+			}
+		}
+
+		final Result result = new Result(objs.size());
+		OverlayMeasurer.Plane plane = null;
+		for (int i = 0; i < result.objs.length; i++) {
+			final OverlayObject obj = (OverlayObject) objs.elementAt(i);
+			result.objs[i] = obj;
+			result.indices[i] = ((Integer) indices.elementAt(i)).intValue();
+			result.values[i] = measurer.getCached(obj);
+			if (result.values[i] != null) continue;
+			if (plane == null) {
+				plane = measurer.getPlane(raster);
+				if (plane == null) break;
+			}
+			final int revision = obj.getRevision();
+			result.values[i] =
+				OverlayMeasurer.measure(obj, plane.samples, plane.width, plane.height);
+			measurer.store(obj, revision, result.values[i]);
+		}
+		return result;
+	}
+
+	/** Writes the rows of a measured position. */
+	protected int writeRows(final RowWriter out, final Result result,
+		final int[] pos) throws IOException
+	{
+		int rows = 0;
+		for (int i = 0; i < result.objs.length; i++) {
+			final double[][] values = result.values[i];
+			if (values == null) continue;
+			final OverlayObject obj = result.objs[i];
+			for (int c = 0; c < values[0].length; c++) {
+				final Object[] row =
+					new Object[pos.length + 4 + OverlayMeasurer.STAT_TYPES.length];
+				int r = 0;
+				row[r++] = obj.toString();
+				// add 1 to shift indices for humans
+				for (int p = 0; p < pos.length; p++)
+					row[r++] = new Integer(pos[p] + 1);
+				row[r++] = new Integer(result.indices[i] + 1);
+				row[r++] = obj.getGroup() == null ? "" : obj.getGroup();
+				row[r++] = new Integer(c + 1);
+				for (int s = 0; s < values.length; s++)
+					row[r++] = new Double(values[s][c]);
+				out.writeRow(row);
+				rows++;
+			}
+		}
+		return rows;
+	}
+
+	// -- Utility methods --
+
+	/**
+	 * Creates a row writer for the given file. Files ending in .xlsx are
+	 * written as streaming spreadsheets, files ending in .xls as legacy
+	 * in-memory spreadsheets, files ending in .tsv or .txt as tab-separated
+	 * values, and all others as comma-separated values.
+	 */
+	public static RowWriter createWriter(final File file) throws IOException {
+		final String name = file.getName().toLowerCase();
+		if (name.endsWith(".xlsx")) return new XLSXWriter(file);
+		if (name.endsWith(".xls")) return new XLSWriter(file);
+		if (name.endsWith(".tsv") || name.endsWith(".txt")) {
+			return new CSVWriter(new FileWriter(file), '\t');
+		}
+		return new CSVWriter(new FileWriter(file));
+	}
+
+	// -- Helper classes --
+
+	/** Measurements of the area overlays at one position. */
+	protected static class Result {
+
+		protected OverlayObject[] objs;
+		protected int[] indices;
+		protected double[][][] values;
+
+		public Result(final int count) {
+			objs = new OverlayObject[count];
+			indices = new int[count];
+			values = new double[count][][];
+		}
+	}
+
+	/** A destination for rows of measurements. */
+	public interface RowWriter {
+
+		/** Writes a row of strings and numbers. */
+		void writeRow(Object[] row) throws IOException;
+
+		/** Finishes writing and releases any resources. */
+		void close() throws IOException;
+	}
+
+	/** Writes rows as comma-separated (or otherwise delimited) values. */
+	public static class CSVWriter implements RowWriter {
+
+		protected Writer out;
+		protected char separator;
+
+		public CSVWriter(final Writer out) {
+			this(out, ',');
+		}
+
+		public CSVWriter(final Writer out, final char separator) {
+			this.out = out instanceof BufferedWriter ? out : new BufferedWriter(out);
+			this.separator = separator;
+		}
+
+		@Override
+		public void writeRow(final Object[] row) throws IOException {
+			for (int i = 0; i < row.length; i++) {
+				if (i > 0) out.write(separator);
+				final Object o = row[i];
+				if (o instanceof Double) {
+					final double d = ((Double) o).doubleValue();
+					if (d == d) out.write(Double.toString(d));
+				}
+				else if (o instanceof Number) out.write(o.toString());
+				else if (o != null) out.write(quote(o.toString(), separator));
+			}
+			out.write('\n');
+		}
+
+		@Override
+		public void close() throws IOException {
+			out.close();
+		}
+
+		/** Quotes the given value if it contains special characters. */
+		protected static String quote(final String s, final char separator) {
+			if (s.indexOf(separator) < 0 && s.indexOf('"') < 0 &&
+				s.indexOf('\n') < 0)
+			{
+				return s;
+			}
+			final StringBuffer sb = new StringBuffer("\"");
+			for (int i = 0; i < s.length(); i++) {
+				final char ch = s.charAt(i);
+				if (ch == '"') sb.append('"');
+				sb.append(ch);
+			}
+			sb.append('"');
+			return sb.toString();
+		}
+	}
+
+	/** Writes rows to a .xls spreadsheet, starting new sheets as needed. */
+	public static class XLSWriter implements RowWriter {
+
+		/** Maximum number of rows in a .xls sheet. */
+		protected static final int MAX_ROWS = 65536;
+
+		protected File file;
+		protected HSSFWorkbook wb = new HSSFWorkbook();
+		protected HSSFSheet sheet;
+		protected Object[] header;
+		protected int rownum;
+
+		public XLSWriter(final File file) {
+			this.file = file;
+		}
+
+		@Override
+		public void writeRow(final Object[] row) throws IOException {
+			if (header == null) header = row;
+			if (sheet == null || rownum == MAX_ROWS) {
+				sheet = wb.createSheet();
+				rownum = 0;
+				if (row != header) write(header);
+			}
+			write(row);
+		}
+
+		@Override
+		public void close() throws IOException {
+			final FileOutputStream fout = new FileOutputStream(file);
+			try {
+				wb.write(fout);
+			}
+			finally {
+				fout.close();
+			}
+		}
+
+		/** Writes a row to the current sheet. */
+		protected void write(final Object[] row) {
+			final HSSFRow r = sheet.createRow(rownum++);
+			for (int i = 0; i < row.length; i++) {
+				final Object o = row[i];
+				if (o == null) continue;
+				final HSSFCell c = r.createCell((short) i);
+				if (o instanceof Number) {
+					final double d = ((Number) o).doubleValue();
+					if (d == d) c.setCellValue(d);
+				}
+				else c.setCellValue(new HSSFRichTextString(o.toString()));
+			}
+		}
+	}
+
+	/**
+	 * Writes rows to a .xlsx spreadsheet without holding them in memory. Each
+	 * row is serialized as soon as it is written and flushed through a fixed
+	 * size buffer to a temporary sheet file, so memory use is bounded no matter
+	 * how many rows there are; the spreadsheet package is assembled from the
+	 * sheet files on close. Strings are written inline rather than through a
+	 * shared string table, which would need to be held in memory. New sheets
+	 * are started as needed.
+	 */
+	public static class XLSXWriter implements RowWriter {
+
+		/** Maximum number of rows in a .xlsx sheet. */
+		protected static final int MAX_ROWS = 1048576;
+
+		/** Size of the sheet file buffers, in bytes. */
+		protected static final int BUFFER_SIZE = 1 << 16;
+
+		protected static final String XML_HEADER =
+			"<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n";
+		protected static final String MAIN_NS =
+			"http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+		protected static final String REL_NS =
+			"http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+		protected static final String PACKAGE_REL_NS =
+			"http://schemas.openxmlformats.org/package/2006/relationships";
+		protected static final String CONTENT_TYPE =
+			"application/vnd.openxmlformats-officedocument.spreadsheetml.";
+
+		protected File file;
+		protected Vector sheets = new Vector();
+		protected Writer sheet;
+		protected Object[] header;
+		protected int rownum;
+		protected StringBuffer sb = new StringBuffer();
+
+		public XLSXWriter(final File file) {
+			this.file = file;
+		}
+
+		@Override
+		public void writeRow(final Object[] row) throws IOException {
+			if (header == null) header = row;
+			if (sheet == null || rownum == MAX_ROWS) {
+				startSheet();
+				if (row != header) write(header);
+			}
+			write(row);
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				if (sheets.size() == 0) startSheet();
+				finishSheet();
+				final ZipOutputStream zip =
+					new ZipOutputStream(new FileOutputStream(file));
+				try {
+					writePackage(zip);
+				}
+				finally {
+					zip.close();
+				}
+			}
+			finally {
+				for (int i = 0; i < sheets.size(); i++) {
+					((File) sheets.elementAt(i)).delete();
+				}
+				sheets.clear();
+			}
+		}
+
+		/** Finishes the current sheet, if any, and starts a new one. */
+		protected void startSheet() throws IOException {
+			finishSheet();
+			final File tmp = File.createTempFile("visbio-sheet", ".xml");
+			tmp.deleteOnExit();
+			sheets.add(tmp);
+			sheet =
+				new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp),
+					"UTF-8"), BUFFER_SIZE);
+			sheet.write(XML_HEADER);
+			sheet.write("<worksheet xmlns=\"" + MAIN_NS + "\"><sheetData>\n");
+			rownum = 0;
+		}
+
+		/** Finishes the current sheet, if any. */
+		protected void finishSheet() throws IOException {
+			if (sheet == null) return;
+			sheet.write("</sheetData></worksheet>\n");
+			sheet.close();
+			sheet = null;
+		}
+
+		/** Writes a row to the current sheet. */
+		protected void write(final Object[] row) throws IOException {
+			rownum++;
+			sb.setLength(0);
+			sb.append("<row r=\"").append(rownum).append("\">");
+			for (int i = 0; i < row.length; i++) {
+				final Object o = row[i];
+				if (o == null) continue;
+				if (o instanceof Number) {
+					final double d = ((Number) o).doubleValue();
+					if (Double.isNaN(d) || Double.isInfinite(d)) continue;
+					sb.append("<c r=\"");
+					appendColumn(sb, i);
+					sb.append(rownum).append("\"><v>").append(o).append("</v></c>");
+				}
+				else {
+					sb.append("<c r=\"");
+					appendColumn(sb, i);
+					sb.append(rownum).append("\" t=\"inlineStr\"><is>");
+					sb.append("<t xml:space=\"preserve\">");
+					appendEscaped(sb, o.toString());
+					sb.append("</t></is></c>");
+				}
+			}
+			sb.append("</row>\n");
+			sheet.write(sb.toString());
+		}
+
+		/** Writes the spreadsheet package, copying in the sheet files. */
+		protected void writePackage(final ZipOutputStream zip) throws IOException
+		{
+			final int count = sheets.size();
+			final StringBuffer types = new StringBuffer(XML_HEADER);
+			types.append("<Types xmlns=\"http://schemas.openxmlformats.org/" +
+				"package/2006/content-types\">");
+			types.append("<Default Extension=\"rels\" ContentType=\"" +
+				"application/vnd.openxmlformats-package.relationships+xml\"/>");
+			types.append("<Default Extension=\"xml\" ContentType=\"" +
+				"application/xml\"/>");
+			types.append("<Override PartName=\"/xl/workbook.xml\" ContentType=\"" +
+				CONTENT_TYPE + "sheet.main+xml\"/>");
+			final StringBuffer workbook = new StringBuffer(XML_HEADER);
+			workbook.append("<workbook xmlns=\"" + MAIN_NS + "\" xmlns:r=\"" +
+				REL_NS + "\"><sheets>");
+			final StringBuffer rels = new StringBuffer(XML_HEADER);
+			rels.append("<Relationships xmlns=\"" + PACKAGE_REL_NS + "\">");
+			for (int i = 1; i <= count; i++) {
+				types.append("<Override PartName=\"/xl/worksheets/sheet" + i +
+					".xml\" ContentType=\"" + CONTENT_TYPE + "worksheet+xml\"/>");
+				workbook.append("<sheet name=\"Sheet" + i + "\" sheetId=\"" + i +
+					"\" r:id=\"rId" + i + "\"/>");
+				rels.append("<Relationship Id=\"rId" + i + "\" Type=\"" + REL_NS +
+					"/worksheet\" Target=\"worksheets/sheet" + i + ".xml\"/>");
+			}
+			types.append("</Types>");
+			workbook.append("</sheets></workbook>");
+			rels.append("</Relationships>");
+
+			writeEntry(zip, "[Content_Types].xml", types.toString());
+			writeEntry(zip, "_rels/.rels", XML_HEADER + "<Relationships xmlns=\"" +
+				PACKAGE_REL_NS + "\"><Relationship Id=\"rId1\" Type=\"" + REL_NS +
+				"/officeDocument\" Target=\"xl/workbook.xml\"/></Relationships>");
+			writeEntry(zip, "xl/workbook.xml", workbook.toString());
+			writeEntry(zip, "xl/_rels/workbook.xml.rels", rels.toString());
+			final byte[] buf = new byte[BUFFER_SIZE];
+			for (int i = 0; i < count; i++) {
+				zip.putNextEntry(new ZipEntry("xl/worksheets/sheet" + (i + 1) +
+					".xml"));
+				final InputStream in =
+					new FileInputStream((File) sheets.elementAt(i));
+				try {
+					while (true) {
+						final int n = in.read(buf);
+						if (n < 0) break;
+						zip.write(buf, 0, n);
+					}
+				}
+				finally {
+					in.close();
+				}
+				zip.closeEntry();
+			}
+		}
+
+		/** Writes a package entry with the given contents. */
+		protected static void writeEntry(final ZipOutputStream zip,
+			final String name, final String contents) throws IOException
+		{
+			zip.putNextEntry(new ZipEntry(name));
+			zip.write(contents.getBytes("UTF-8"));
+			zip.closeEntry();
+		}
+
+		/** Appends the spreadsheet column name (A, B, ..., AA, ...) of an index. */
+		protected static void appendColumn(final StringBuffer sb, final int col) {
+			if (col >= 26) appendColumn(sb, col / 26 - 1);
+			sb.append((char) ('A' + col % 26));
+		}
+
+		/** Appends the given text, escaped for XML. */
+		protected static void appendEscaped(final StringBuffer sb, final String s)
+		{
+			for (int i = 0; i < s.length(); i++) {
+				final char ch = s.charAt(i);
+				if (ch == '&') sb.append("&amp;");
+				else if (ch == '<') sb.append("&lt;");
+				else if (ch == '>') sb.append("&gt;");
+				else if (ch >= ' ' || ch == '\t' || ch == '\n' || ch == '\r') {
+					sb.append(ch);
+				}
+				// drop other control characters, which XML cannot represent
+			}
+		}
+	}
+
+}
@@ -52,7 +52,8 @@ public class OverlayBox extends OverlayObject {
 	protected static final String AREA = "Area";
 	protected static final String PERIM = "Perimeter";
 	protected static final String[] STAT_TYPES = { COORDS, CTR, WD, HT, AREA,
-		PERIM };
+		PERIM, OverlayMeasurer.COUNT, OverlayMeasurer.MEAN, OverlayMeasurer.MIN,
+		OverlayMeasurer.MAX, OverlayMeasurer.SUM, OverlayMeasurer.STD };
 
 	// -- Constructors --
 
@@ -187,6 +188,9 @@ public class OverlayBox extends OverlayObject {
 		else if (name.equals(PERIM)) {
 			return "" + perim;
 		}
+		else if (OverlayMeasurer.isIntensityStat(name)) {
+			return overlay.getMeasurer().getStat(this, name);
+		}
 		else return "No such statistic for this overlay type";
 	}
 
@@ -205,7 +209,7 @@ public class OverlayBox extends OverlayObject {
 		return "Box " + COORDS + " = (" + x1 + ", " + y1 + ")-(" + x2 + ", " + y2 +
 			")\n" + CTR + " = (" + centerX + ", " + centerY + ")\n" + WD + " = " +
 			width + "; " + HT + " = " + height + "\n" + AREA + " = " + area + "; " +
-			PERIM + " = " + perim;
+			PERIM + " = " + perim + overlay.getMeasurer().getStatistics(this);
 	}
 
 	/** True iff this overlay has an endpoint coordinate pair. */
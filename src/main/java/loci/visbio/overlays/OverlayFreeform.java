@@ -30,6 +30,13 @@ package loci.visbio.overlays;
 
 public class OverlayFreeform extends OverlayNodedObject {
 
+	// -- Static Fields --
+
+	/** The names of the statistics this object reports. */
+	protected static final String[] STAT_TYPES = { BOUNDS, NODES, LENGTH,
+		OverlayMeasurer.COUNT, OverlayMeasurer.MEAN, OverlayMeasurer.MIN,
+		OverlayMeasurer.MAX, OverlayMeasurer.SUM, OverlayMeasurer.STD };
+
 	// -- Constructors --
 
 	/** Constructs an uninitialized freeform. */
@@ -50,8 +57,31 @@ public class OverlayFreeform extends OverlayNodedObject {
 		super(overlay, nodes);
 	}
 
+	// -- Static methods --
+
+	/** Returns the names of the statistics this object reports. */
+	public static String[] getStatTypes() {
+		return STAT_TYPES;
+	}
+
 	// -- OverlayObject API methods --
 
+	/** Returns a specific statistic of this object. */
+	@Override
+	public String getStat(final String name) {
+		if (OverlayMeasurer.isIntensityStat(name)) {
+			return overlay.getMeasurer().getStat(this, name);
+		}
+		return super.getStat(name);
+	}
+
+	/** Retrieves useful statistics about this overlay. */
+	@Override
+	public String getStatistics() {
+		return super.getStatistics().trim() +
+			overlay.getMeasurer().getStatistics(this);
+	}
+
 	// -- Internal OverlayObject API methods --
 
 	// -- Object API methods --
@@ -82,7 +82,7 @@ public final class OverlayIO {
 	// -- OverlayIO API methods --
 
 	/** Reads the overlays from the given reader. */
-	public static Vector<OverlayObject>[] loadOverlays(final BufferedReader in,
+	public static OverlayStore loadOverlays(final BufferedReader in,
 		final OverlayTransform trans) throws IOException
 	{
 		final String[] dims = trans.getDimTypes();
@@ -90,7 +90,7 @@ public final class OverlayIO {
 		final JComponent owner = trans.getControls();
 
 		// stores all overlays
-		Vector<OverlayObject>[] loadedOverlays = null;
+		OverlayStore loadedOverlays = null;
 		boolean foundOverlays = false;
 
 		// tracks addresses of stored freeforms
@@ -177,10 +177,8 @@ public final class OverlayIO {
 					}
 
 					// initialize replacement overlay lists
-					loadedOverlays = new Vector[FormatTools.getRasterLength(lengths)];
-					for (int i = 0; i < loadedOverlays.length; i++) {
-						loadedOverlays[i] = new Vector<OverlayObject>();
-					}
+					loadedOverlays =
+						new OverlayStore(FormatTools.getRasterLength(lengths));
 
 				}
 				else if (state == NODES) {
@@ -312,7 +310,7 @@ public final class OverlayIO {
 					// this error should never fire--will be caught above ("is coordinate
 					// w/in range?")
 					/*
-					if (r < 0 || r >= loadedOverlays.length) {
+					if (r < 0 || r >= loadedOverlays.getLength()) {
 					  displayErrorMsg(owner, lineNum, "could not reconstruct overlay:
 					  invalid dimensional position");
 					  return null;
@@ -333,7 +331,7 @@ public final class OverlayIO {
 					obj.selected = false;
 
 					// add overlay to list
-					loadedOverlays[r].add(obj);
+					loadedOverlays.getOrCreate(r).add(obj);
 					foundOverlays = true;
 				}
 				else if (state == NODES) {
@@ -397,7 +395,8 @@ public final class OverlayIO {
 	{
 		final String[] dims = trans.getDimTypes();
 		final int[] lengths = trans.getLengths();
-		final Vector[] overlays = trans.overlays;
+		final OverlayStore overlays = trans.overlays;
+		final int[] positions = overlays.getPositions();
 		int freeformCount = 0;
 		int polylineCount = 0;
 
@@ -423,15 +422,17 @@ public final class OverlayIO {
 		out.println("x1\ty1\tx2\ty2\ttext\tcolor\tfilled\tgroup\tnotes");
 
 		// overlays table
-		for (int i = 0; i < overlays.length; i++) {
+		for (int q = 0; q < positions.length; q++) {
+			final int i = positions[q];
 			final int[] pos = FormatTools.rasterToPosition(lengths, i);
 			final StringBuffer sb = new StringBuffer();
 			// add 1 to shift indices for humans
 			for (int p = 0; p < pos.length; p++)
 				sb.append((pos[p] + 1) + "\t");
 			final String posString = sb.toString();
-			for (int j = 0; j < overlays[i].size(); j++) {
-				final OverlayObject obj = (OverlayObject) overlays[i].elementAt(j);
+			final Vector objs = overlays.get(i);
+			for (int j = 0; j < objs.size(); j++) {
+				final OverlayObject obj = (OverlayObject) objs.elementAt(j);
 
 				if (obj instanceof OverlayLine) lines.add(obj);
 				if (obj instanceof OverlayFreeform) freeforms.add(obj);
@@ -468,6 +469,7 @@ public final class OverlayIO {
 		// print stats by object type
 		final Vector[] vectors =
 			{ lines, freeforms, markers, texts, ovals, boxes, arrows, polylines };
+		OverlayStreamIO.measureSelectedStats(trans);
 		final String[] titles = OverlayUtil.getOverlayTypes();
 		for (int v = 0; v < vectors.length; v++) {
 			if (vectors[v].size() > 0) {
@@ -477,17 +479,10 @@ public final class OverlayIO {
 					final OverlayObject obj = (OverlayObject) vectors[v].get(i);
 					final int index = i + 1;
 					out.println("# " + titles[v] + " " + index);
-					final String[] stats = OverlayUtil.getStatTypes(titles[v]);
-					final OptionManager om =
-						(OptionManager) VisBioFrame.getVisBio().getManager(
-							OptionManager.class);
+					// print selected stats only
+					final String[] stats = OverlayStreamIO.getSelectedStats(titles[v]);
 					for (int j = 0; j < stats.length; j++) {
-						final String name = titles[v] + "." + stats[j];
-						final BooleanOption option = (BooleanOption) om.getOption(name);
-						// print if option is selected
-						if (option.getValue()) {
-							out.println("#\t" + stats[j] + "\t" + obj.getStat(stats[j]));
-						}
+						out.println("#\t" + stats[j] + "\t" + obj.getStat(stats[j]));
 					}
 				}
 			}
@@ -527,12 +522,17 @@ public final class OverlayIO {
 		}
 	}
 
-	/** Saves overlays to a .xls workbook. */
+	/**
+	 * Saves overlays to a .xls workbook, built entirely in memory and limited
+	 * to 65536 rows. Use {@link OverlayStreamIO#exportRows} to export large
+	 * overlay sets.
+	 */
 	public static HSSFWorkbook exportOverlays(final OverlayTransform overlay) {
 		final String[] dims = overlay.getDimTypes();
 		final int[] lengths = overlay.getLengths();
 
-		final Vector[] overlays = overlay.overlays;
+		final OverlayStore overlays = overlay.overlays;
+		final int[] positions = overlays.getPositions();
 
 		final Vector lines = new Vector();
 		final Vector markers = new Vector();
@@ -612,15 +612,16 @@ public final class OverlayIO {
 		}
 
 		// overlays table
-		for (int i = 0; i < overlays.length; i++) {
-			final int[] pos = FormatTools.rasterToPosition(lengths, i);
+		for (int q = 0; q < positions.length; q++) {
+			final int[] pos = FormatTools.rasterToPosition(lengths, positions[q]);
+			final Vector objs = overlays.get(positions[q]);
 
-			for (int j = 0; j < overlays[i].size(); j++) {
+			for (int j = 0; j < objs.size(); j++) {
 				cellnum = 0;
 				// make new row
 				r = s.createRow(++rownum);
 
-				final OverlayObject obj = (OverlayObject) overlays[i].elementAt(j);
+				final OverlayObject obj = (OverlayObject) objs.elementAt(j);
 
 				// a 'rider' to this loop: keep track of noded objects
 				if (obj instanceof OverlayLine) lines.add(obj);
@@ -720,6 +721,7 @@ public final class OverlayIO {
 		// write overlay statistics
 		final Vector[] vectors =
 			{ lines, freeforms, markers, texts, ovals, boxes, arrows, polylines };
+		OverlayStreamIO.measureSelectedStats(overlay);
 		final String[] titles = OverlayUtil.getOverlayTypes();
 		for (int v = 0; v < vectors.length; v++) {
 			if (vectors[v].size() > 0) {
@@ -0,0 +1,517 @@
+/*
+ * #%L
+ * VisBio application for visualization of multidimensional biological
+ * image data.
+ * %%
+ * Copyright (C) 2002 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.visbio.overlays;
+
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.Vector;
+
+/**
+ * OverlayIndex is a uniform grid spatial index over the overlay objects at a
+ * single dimensional position, used to accelerate hit-testing. Each object is
+ * filed under every grid cell its bounding box touches, and the nodes of noded
+ * objects are additionally filed individually, so that nearest-object,
+ * nearest-node, radius and rectangle queries only examine nearby candidates.
+ * Objects that change are marked stale and reindexed lazily on the next query.
+ */
+public class OverlayIndex {
+
+	// -- Constants --
+
+	/** Objects whose bounds span more cells than this are kept in one list. */
+	protected static final int MAX_SPAN = 256;
+
+	// -- Fields --
+
+	/** Origin of the grid, in domain coordinates. */
+	protected float originX, originY;
+
+	/** Size of a grid cell, in domain coordinates. */
+	protected float cellW, cellH;
+
+	/** Number of grid columns and rows. */
+	protected int cols, rows;
+
+	/** Objects filed under each grid cell. */
+	protected Vector[] objCells;
+
+	/** Node entries (entry id, node index pairs) filed under each grid cell. */
+	protected int[][] nodeCells;
+
+	/** Number of ints used in each node cell. */
+	protected int[] nodeCounts;
+
+	/** Objects too large to file cell by cell. */
+	protected Vector large = new Vector();
+
+	/** Index entries for each object, keyed by object. */
+	protected Hashtable entries = new Hashtable();
+
+	/** Index entries by entry id. */
+	protected Entry[] slots = new Entry[16];
+
+	/** Next unused entry id. */
+	protected int nextId;
+
+	/** Objects changed since they were last indexed. */
+	protected Vector stale = new Vector();
+
+	/** Shared table mapping each indexed object to its index, or null. */
+	protected Hashtable owners;
+
+	// -- Constructor --
+
+	/**
+	 * Constructs a spatial index spanning the given domain extents, divided into
+	 * the given number of cells along the longer axis. Objects outside the
+	 * extents are still indexed, in the border cells.
+	 */
+	public OverlayIndex(final float minX, final float minY, final float maxX,
+		final float maxY, final int divisions)
+	{
+		final float w = Math.max(maxX - minX, 1);
+		final float h = Math.max(maxY - minY, 1);
+		final float cell = Math.max(w, h) / Math.max(divisions, 1);
+		originX = minX;
+		originY = minY;
+		cols = Math.max((int) Math.ceil(w / cell), 1);
+		rows = Math.max((int) Math.ceil(h / cell), 1);
+		cellW = w / cols;
+		cellH = h / rows;
+		objCells = new Vector[cols * rows];
+		nodeCells = new int[cols * rows][];
+		nodeCounts = new int[cols * rows];
+	}
+
+	/**
+	 * Constructs a spatial index spanning the given domain extents, which
+	 * records each object it holds in the given table, so that the owner of a
+	 * changed object can be found without asking every index.
+	 */
+	public OverlayIndex(final float minX, final float minY, final float maxX,
+		final float maxY, final int divisions, final Hashtable owners)
+	{
+		this(minX, minY, maxX, maxY, divisions);
+		this.owners = owners;
+	}
+
+	// -- OverlayIndex API methods --
+
+	/** Adds an overlay object to the index. */
+	public synchronized void add(final OverlayObject obj) {
+		if (entries.containsKey(obj)) return;
+		final int id = nextId++;
+		if (id >= slots.length) {
+			final Entry[] s = new Entry[2 * slots.length];
+			System.arraycopy(slots, 0, s, 0, slots.length);
+			slots = s;
+		}
+		final Entry entry = new Entry(obj, id);
+		slots[id] = entry;
+		entries.put(obj, entry);
+		if (owners != null) owners.put(obj, this);
+		file(entry);
+	}
+
+	/** Removes an overlay object from the index. */
+	public synchronized void remove(final OverlayObject obj) {
+		final Entry entry = (Entry) entries.remove(obj);
+		if (entry == null) return;
+		unfile(entry);
+		slots[entry.id] = null;
+		stale.remove(obj);
+		if (owners != null && owners.get(obj) == this) owners.remove(obj);
+	}
+
+	/**
+	 * Marks an overlay object as changed, so that it is reindexed before the next
+	 * query. Does nothing if the object is not in this index. This method locks
+	 * only the stale list, not the index, since objects report changes while
+	 * holding their own locks.
+	 */
+	public void update(final OverlayObject obj) {
+		synchronized (stale) {
+			final Entry entry = (Entry) entries.get(obj);
+			if (entry == null || entry.stale) return;
+			entry.stale = true;
+			stale.add(obj);
+		}
+	}
+
+	/** Removes all objects from the index. */
+	public synchronized void clear() {
+		if (owners != null) {
+			final Enumeration e = entries.keys();
+			while (e.hasMoreElements()) {
+				final Object obj = e.nextElement();
+				if (owners.get(obj) == this) owners.remove(obj);
+			}
+		}
+		entries.clear();
+		stale.removeAllElements();
+		large.removeAllElements();
+		for (int i = 0; i < objCells.length; i++) {
+			objCells[i] = null;
+			nodeCells[i] = null;
+			nodeCounts[i] = 0;
+		}
+		slots = new Entry[16];
+		nextId = 0;
+	}
+
+	/** Gets the number of objects in the index. */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Gets the overlay object nearest to the given point, as measured by
+	 * {@link OverlayObject#getDistance}, or null if no object lies within the
+	 * given radius.
+	 */
+	public synchronized OverlayObject getNearest(final float x, final float y,
+		final double radius)
+	{
+		refresh();
+		OverlayObject nearest = null;
+		double min = radius;
+		final Vector candidates = getCandidates(x, y, radius);
+		for (int i = 0; i < candidates.size(); i++) {
+			final Entry entry = (Entry) candidates.elementAt(i);
+			if (entry.distanceToBounds(x, y) >= min) continue;
+			final double d = entry.obj.getDistance(x, y);
+			if (d < min) {
+				min = d;
+				nearest = entry.obj;
+			}
+		}
+		return nearest;
+	}
+
+	/**
+	 * Gets all overlay objects whose distance to the given point, as measured by
+	 * {@link OverlayObject#getDistance}, is less than the given radius.
+	 */
+	public synchronized OverlayObject[] getWithin(final float x, final float y,
+		final double radius)
+	{
+		refresh();
+		final Vector hits = new Vector();
+		final Vector candidates = getCandidates(x, y, radius);
+		for (int i = 0; i < candidates.size(); i++) {
+			final Entry entry = (Entry) candidates.elementAt(i);
+			if (entry.distanceToBounds(x, y) >= radius) continue;
+			if (entry.obj.getDistance(x, y) < radius) hits.add(entry.obj);
+		}
+		final OverlayObject[] objs = new OverlayObject[hits.size()];
+		hits.copyInto(objs);
+		return objs;
+	}
+
+	/**
+	 * Gets all overlay objects whose bounding boxes intersect the given
+	 * rectangle.
+	 */
+	public synchronized OverlayObject[] getIntersecting(final float x1,
+		final float y1, final float x2, final float y2)
+	{
+		refresh();
+		final float xmin = Math.min(x1, x2), xmax = Math.max(x1, x2);
+		final float ymin = Math.min(y1, y2), ymax = Math.max(y1, y2);
+		final Vector hits = new Vector();
+		final Vector candidates = getCandidates(xmin, ymin, xmax, ymax);
+		for (int i = 0; i < candidates.size(); i++) {
+			final Entry entry = (Entry) candidates.elementAt(i);
+			if (entry.xmax < xmin || entry.xmin > xmax || entry.ymax < ymin ||
+				entry.ymin > ymax) continue;
+			hits.add(entry.obj);
+		}
+		final OverlayObject[] objs = new OverlayObject[hits.size()];
+		hits.copyInto(objs);
+		return objs;
+	}
+
+	/**
+	 * Finds the node nearest to the given point among all noded objects of the
+	 * given type (or any noded object, if type is null), subject to the given
+	 * radius.
+	 *
+	 * @return a NodeHit describing the nearest node, or null if no node lies
+	 *         within the radius
+	 */
+	public synchronized NodeHit getNearestNode(final float x, final float y,
+		final double radius, final Class type)
+	{
+		refresh();
+		final int c1 = col(x - radius), c2 = col(x + radius);
+		final int r1 = row(y - radius), r2 = row(y + radius);
+		Entry best = null;
+		int bestNode = -1;
+		double min = radius * radius;
+		for (int r = r1; r <= r2; r++) {
+			for (int c = c1; c <= c2; c++) {
+				final int cell = r * cols + c;
+				final int[] list = nodeCells[cell];
+				final int count = nodeCounts[cell];
+				for (int i = 0; i < count; i += 2) {
+					final Entry entry = slots[list[i]];
+					if (type != null && !type.isInstance(entry.obj)) continue;
+					final int node = list[i + 1];
+					final double dx = entry.nodes[0][node] - x;
+					final double dy = entry.nodes[1][node] - y;
+					final double d = dx * dx + dy * dy;
+					if (d < min) {
+						min = d;
+						best = entry;
+						bestNode = node;
+					}
+				}
+			}
+		}
+		if (best == null) return null;
+		return new NodeHit((OverlayNodedObject) best.obj, bestNode, Math
+			.sqrt(min));
+	}
+
+	// -- Helper methods --
+
+	/** Reindexes all objects that changed since the last query. */
+	protected void refresh() {
+		while (true) {
+			final Entry entry;
+			synchronized (stale) {
+				if (stale.isEmpty()) break;
+				entry = (Entry) entries.get(stale.remove(0));
+				if (entry == null) continue;
+				// clear the flag first, so changes made while measuring are not lost
+				entry.stale = false;
+			}
+			unfile(entry);
+			entry.measure();
+			file(entry);
+		}
+	}
+
+	/** Files the given entry under the grid cells it touches. */
+	protected void file(final Entry entry) {
+		entry.c1 = col(entry.xmin);
+		entry.c2 = col(entry.xmax);
+		entry.r1 = row(entry.ymin);
+		entry.r2 = row(entry.ymax);
+		final int span = (entry.c2 - entry.c1 + 1) * (entry.r2 - entry.r1 + 1);
+		entry.large = span > MAX_SPAN;
+		if (entry.large) large.add(entry);
+		else {
+			for (int r = entry.r1; r <= entry.r2; r++) {
+				for (int c = entry.c1; c <= entry.c2; c++) {
+					final int cell = r * cols + c;
+					if (objCells[cell] == null) objCells[cell] = new Vector(4);
+					objCells[cell].add(entry);
+				}
+			}
+		}
+		if (entry.nodes == null) return;
+		for (int n = 0; n < entry.numNodes; n++) {
+			final int cell = row(entry.nodes[1][n]) * cols + col(entry.nodes[0][n]);
+			int[] list = nodeCells[cell];
+			final int count = nodeCounts[cell];
+			if (list == null) list = nodeCells[cell] = new int[8];
+			else if (count + 2 > list.length) {
+				final int[] l = new int[2 * list.length];
+				System.arraycopy(list, 0, l, 0, count);
+				list = nodeCells[cell] = l;
+			}
+			list[count] = entry.id;
+			list[count + 1] = n;
+			nodeCounts[cell] = count + 2;
+		}
+	}
+
+	/** Removes the given entry from the grid cells it was filed under. */
+	protected void unfile(final Entry entry) {
+		if (entry.large) large.remove(entry);
+		else {
+			for (int r = entry.r1; r <= entry.r2; r++) {
+				for (int c = entry.c1; c <= entry.c2; c++) {
+					final Vector v = objCells[r * cols + c];
+					if (v != null) v.remove(entry);
+				}
+			}
+		}
+		if (entry.nodes == null) return;
+		// nodes lie within the bounding box, so only those cells need scanning
+		for (int r = entry.r1; r <= entry.r2; r++) {
+			for (int c = entry.c1; c <= entry.c2; c++) {
+				final int cell = r * cols + c;
+				final int[] list = nodeCells[cell];
+				final int count = nodeCounts[cell];
+				int j = 0;
+				for (int i = 0; i < count; i += 2) {
+					if (list[i] == entry.id) continue;
+					list[j++] = list[i];
+					list[j++] = list[i + 1];
+				}
+				nodeCounts[cell] = j;
+			}
+		}
+	}
+
+	/** Gets the entries filed near the given point, within the given radius. */
+	protected Vector getCandidates(final float x, final float y,
+		final double radius)
+	{
+		return getCandidates((float) (x - radius), (float) (y - radius),
+			(float) (x + radius), (float) (y + radius));
+	}
+
+	/** Gets the entries filed in cells touching the given rectangle. */
+	protected Vector getCandidates(final float xmin, final float ymin,
+		final float xmax, final float ymax)
+	{
+		final Vector v = new Vector(large);
+		final int c1 = col(xmin), c2 = col(xmax);
+		final int r1 = row(ymin), r2 = row(ymax);
+		final Hashtable seen = new Hashtable();
+		for (int r = r1; r <= r2; r++) {
+			for (int c = c1; c <= c2; c++) {
+				final Vector cell = objCells[r * cols + c];
+				if (cell == null) continue;
+				for (int i = 0; i < cell.size(); i++) {
+					final Object entry = cell.elementAt(i);
+					if (seen.put(entry, entry) == null) v.add(entry);
+				}
+			}
+		}
+		return v;
+	}
+
+	/** Gets the grid column containing the given X coordinate. */
+	protected int col(final double x) {
+		final int c = (int) Math.floor((x - originX) / cellW);
+		return c < 0 ? 0 : c >= cols ? cols - 1 : c;
+	}
+
+	/** Gets the grid row containing the given Y coordinate. */
+	protected int row(final double y) {
+		final int r = (int) Math.floor((y - originY) / cellH);
+		return r < 0 ? 0 : r >= rows ? rows - 1 : r;
+	}
+
+	// -- Helper classes --
+
+	/** An overlay object with its indexed bounds and nodes. */
+	protected static class Entry {
+
+		/** The indexed object. */
+		protected OverlayObject obj;
+
+		/** Unique id of this entry within the index. */
+		protected int id;
+
+		/** Bounding box of the object. */
+		protected float xmin, ymin, xmax, ymax;
+
+		/** Copy of the object's nodes, if it is a noded object. */
+		protected float[][] nodes;
+
+		/** Number of nodes. */
+		protected int numNodes;
+
+		/** Range of cells the object is filed under. */
+		protected int c1, c2, r1, r2;
+
+		/** Whether the object is filed in the list of large objects. */
+		protected boolean large;
+
+		/** Whether the object changed since it was last filed. */
+		protected volatile boolean stale;
+
+		/** Constructs an index entry for the given object. */
+		protected Entry(final OverlayObject obj, final int id) {
+			this.obj = obj;
+			this.id = id;
+			measure();
+		}
+
+		/** Recomputes the bounds and nodes of the indexed object. */
+		protected void measure() {
+			if (obj instanceof OverlayNodedObject) {
+				nodes = ((OverlayNodedObject) obj).getNodes();
+				numNodes = nodes[0].length;
+				if (numNodes > 0) {
+					xmin = xmax = nodes[0][0];
+					ymin = ymax = nodes[1][0];
+					for (int i = 1; i < numNodes; i++) {
+						if (nodes[0][i] < xmin) xmin = nodes[0][i];
+						if (nodes[0][i] > xmax) xmax = nodes[0][i];
+						if (nodes[1][i] < ymin) ymin = nodes[1][i];
+						if (nodes[1][i] > ymax) ymax = nodes[1][i];
+					}
+					return;
+				}
+			}
+			final float x1 = obj.getX(), y1 = obj.getY();
+			final float x2 = obj.hasEndpoint2() ? obj.getX2() : x1;
+			final float y2 = obj.hasEndpoint2() ? obj.getY2() : y1;
+			xmin = Math.min(x1, x2);
+			xmax = Math.max(x1, x2);
+			ymin = Math.min(y1, y2);
+			ymax = Math.max(y1, y2);
+		}
+
+		/**
+		 * Computes the distance from the given point to this entry's bounding
+		 * box, a lower bound on the distance to the object itself.
+		 */
+		protected double distanceToBounds(final double x, final double y) {
+			final double dx = x < xmin ? xmin - x : x > xmax ? x - xmax : 0;
+			final double dy = y < ymin ? ymin - y : y > ymax ? y - ymax : 0;
+			return Math.sqrt(dx * dx + dy * dy);
+		}
+	}
+
+	/** The result of a nearest-node query. */
+	public static class NodeHit {
+
+		/** The noded object owning the node. */
+		public OverlayNodedObject obj;
+
+		/** Index of the node within the object's node array. */
+		public int node;
+
+		/** Distance from the query point to the node. */
+		public double dist;
+
+		/** Constructs a nearest-node query result. */
+		public NodeHit(final OverlayNodedObject obj, final int node,
+			final double dist)
+		{
+			this.obj = obj;
+			this.node = node;
+			this.dist = dist;
+		}
+	}
+
+}
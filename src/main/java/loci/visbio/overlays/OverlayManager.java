@@ -24,6 +24,8 @@
 
 package loci.visbio.overlays;
 
+import java.util.Vector;
+
 import loci.visbio.LogicManager;
 import loci.visbio.VisBioEvent;
 import loci.visbio.VisBioFrame;
@@ -37,6 +39,17 @@ import loci.visbio.state.SpreadsheetLaunchOption;
  */
 public class OverlayManager extends LogicManager {
 
+	// -- Fields --
+
+	/** Names of the per-type overlay statistics, as "type.statistic". */
+	protected String[] statNames;
+
+	/** Statistic of each of the per-type overlay statistics. */
+	protected String[] statTypes;
+
+	/** Path to the default spreadsheet application, or "" if unknown. */
+	protected String spreadsheetPath;
+
 	// -- Constructor --
 
 	/** Constructs a window manager. */
@@ -56,6 +69,35 @@ public class OverlayManager extends LogicManager {
 		}
 	}
 
+	/**
+	 * Loads the overlay classes to list their statistics, and looks for the
+	 * default spreadsheet application.
+	 */
+	@Override
+	public void prepare() {
+		final Vector names = new Vector(), types = new Vector();
+		final String[] overlayTypes = OverlayUtil.getOverlayTypes();
+		for (int i = 0; i < overlayTypes.length; i++) {
+			final String[] stats = OverlayUtil.getStatTypes(overlayTypes[i]);
+			for (int j = 0; j < stats.length; j++) {
+				names.add(overlayTypes[i] + "." + stats[j]);
+				types.add(stats[j]);
+			}
+		}
+		final String[] n = new String[names.size()], t = new String[types.size()];
+		names.copyInto(n);
+		types.copyInto(t);
+
+		String path = "";
+		try {
+			path = SpreadsheetLauncher.getDefaultApplicationPath();
+		}
+		catch (final SpreadsheetLaunchException ex) {}
+		spreadsheetPath = path;
+		statTypes = t;
+		statNames = n;
+	}
+
 	/** Gets the number of tasks required to initialize this logic manager. */
 	@Override
 	public int getTasks() {
@@ -72,25 +114,19 @@ public class OverlayManager extends LogicManager {
 		dm.registerDataType(OverlayTransform.class, "Overlays");
 
 		// register Overlay options
+		if (statNames == null) prepare();
 		final OptionManager om =
 			(OptionManager) bio.getManager(OptionManager.class);
-		final String[] overlayTypes = OverlayUtil.getOverlayTypes();
-		for (int i = 0; i < overlayTypes.length; i++) {
-			final String[] statTypes = OverlayUtil.getStatTypes(overlayTypes[i]);
-			for (int j = 0; j < statTypes.length; j++) {
-				final String name = overlayTypes[i] + "." + statTypes[j];
-				om.addBooleanOption("Overlays", name, '|', "Toggles whether the " +
-					name + " statistic is exported or saved", true);
-			}
+		for (int i = 0; i < statNames.length; i++) {
+			// intensity statistics read image planes, so are off by default
+			om.addBooleanOption("Overlays", statNames[i], '|',
+				"Toggles whether the " + statNames[i] + " statistic is exported or " +
+					"saved", !OverlayMeasurer.isIntensityStat(statTypes[i]));
 		}
 
 		// add option for launching spreadsheet automatically
-		String path = "";
-		try {
-			path = SpreadsheetLauncher.getDefaultApplicationPath();
-		}
-		catch (final SpreadsheetLaunchException ex) {}
-		om.addOption("General", new SpreadsheetLaunchOption('s', path, true));
+		om.addOption("General", new SpreadsheetLaunchOption('s', spreadsheetPath,
+			true));
 
 		// help window
 		bio.setSplashStatus(null);
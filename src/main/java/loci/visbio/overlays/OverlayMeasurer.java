@@ -0,0 +1,635 @@
+/*
+ * #%L
+ * VisBio application for visualization of multidimensional biological
+ * image data.
+ * %%
+ * Copyright (C) 2002 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.visbio.overlays;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.rmi.RemoteException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Vector;
+import java.util.WeakHashMap;
+
+import javax.swing.SwingUtilities;
+
+import loci.formats.FormatTools;
+import loci.visbio.VisBioFrame;
+import loci.visbio.data.ImageTransform;
+import visad.Data;
+import visad.FlatField;
+import visad.GriddedSet;
+import visad.VisADException;
+
+/**
+ * OverlayMeasurer computes per-channel intensity statistics of the parent
+ * image plane inside area overlays (boxes, ovals and freeforms). Each ROI is
+ * rasterized with scanline filling directly onto the plane's primitive sample
+ * arrays. Results are cached per overlay until the overlay or the parent data
+ * changes, and {@link #measureAll()} measures all stale ROIs of each plane in
+ * parallel. Since measuring reads an image plane, requests made on the event
+ * dispatch thread are served from the cache only, with missing measurements
+ * computed in the background.
+ */
+public class OverlayMeasurer {
+
+	// -- Constants --
+
+	/** The names of the intensity statistics. */
+	public static final String COUNT = "Pixel Count";
+	public static final String MEAN = "Mean Intensity";
+	public static final String MIN = "Min Intensity";
+	public static final String MAX = "Max Intensity";
+	public static final String SUM = "Integrated Intensity";
+	public static final String STD = "Intensity Std Dev";
+	public static final String[] STAT_TYPES = { COUNT, MEAN, MIN, MAX, SUM,
+		STD };
+
+	/** Placeholder reported for a statistic still being measured. */
+	public static final String MEASURING = "measuring...";
+
+	/** Indices into the measured values for each statistic. */
+	protected static final int COUNT_NDX = 0, MEAN_NDX = 1, MIN_NDX = 2,
+			MAX_NDX = 3, SUM_NDX = 4, STD_NDX = 5;
+
+	// -- Fields --
+
+	/** Overlay transform whose overlays are measured. */
+	protected OverlayTransform trans;
+
+	/** Cached measurements, keyed on overlay object. */
+	protected Map cache = new WeakHashMap();
+
+	/** Raster index of the most recently loaded plane. */
+	protected int lastRaster = -1;
+
+	/** Most recently loaded plane. */
+	protected Plane lastPlane;
+
+	/** Overlays awaiting measurement in the background. */
+	protected Vector pending = new Vector();
+
+	/** Thread measuring pending overlays, or null if there is none. */
+	protected Thread measureThread;
+
+	// -- Constructor --
+
+	/** Constructs a measurer for the overlays of the given transform. */
+	public OverlayMeasurer(final OverlayTransform trans) {
+		this.trans = trans;
+	}
+
+	// -- OverlayMeasurer API methods --
+
+	/**
+	 * Gets the given intensity statistic of the given overlay, formatted as a
+	 * single value, or a parenthesized list with one value per channel. On the
+	 * event dispatch thread, an overlay without a current measurement is queued
+	 * for measurement in the background and reported as {@link #MEASURING}.
+	 */
+	public String getStat(final OverlayObject obj, final String name) {
+		if (SwingUtilities.isEventDispatchThread() && !isCurrent(obj)) {
+			if (!isMeasurable(obj)) return OverlayIO.NOT_APPLICABLE;
+			measureLater(obj);
+			return MEASURING;
+		}
+		final double[][] values = measure(obj);
+		if (values == null) return OverlayIO.NOT_APPLICABLE;
+		int ndx = -1;
+		if (name.equals(COUNT)) ndx = COUNT_NDX;
+		else if (name.equals(MEAN)) ndx = MEAN_NDX;
+		else if (name.equals(MIN)) ndx = MIN_NDX;
+		else if (name.equals(MAX)) ndx = MAX_NDX;
+		else if (name.equals(SUM)) ndx = SUM_NDX;
+		else if (name.equals(STD)) ndx = STD_NDX;
+		else return "No such statistic for this overlay type";
+		final double[] v = values[ndx];
+		final StringBuffer sb = new StringBuffer();
+		if (v.length > 1) sb.append("(");
+		for (int c = 0; c < v.length; c++) {
+			if (c > 0) sb.append(", ");
+			if (ndx == COUNT_NDX) sb.append((long) v[c]);
+			else sb.append((float) v[c]);
+		}
+		if (v.length > 1) sb.append(")");
+		return sb.toString();
+	}
+
+	/**
+	 * Gets the intensity statistics of the given overlay as lines of
+	 * "name = value" text, for the overlay statistics panel.
+	 */
+	public String getStatistics(final OverlayObject obj) {
+		final StringBuffer sb = new StringBuffer();
+		for (int i = 0; i < STAT_TYPES.length; i++) {
+			sb.append("\n");
+			sb.append(STAT_TYPES[i]);
+			sb.append(" = ");
+			sb.append(getStat(obj, STAT_TYPES[i]));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Gets the intensity statistics of the given overlay, indexed first by
+	 * statistic (in {@link #STAT_TYPES} order) and then by channel, or null if
+	 * the overlay cannot be measured.
+	 */
+	public double[][] measure(final OverlayObject obj) {
+		if (!isMeasurable(obj)) return null;
+		final int revision = obj.getRevision();
+		synchronized (this) {
+			final Entry e = (Entry) cache.get(obj);
+			if (e != null && e.revision == revision) return e.values;
+		}
+		final int raster = trans.getRasterIndex(obj);
+		final Plane plane = raster < 0 ? null : getPlane(raster);
+		// a failed measurement is cached too, so it is not retried until the
+		// overlay or the parent data changes
+		final double[][] values = plane == null ? null : measure(obj,
+			plane.samples, plane.width, plane.height);
+		store(obj, revision, values);
+		return values;
+	}
+
+	/**
+	 * Measures all overlays whose cached measurements are out of date, loading
+	 * each plane once and measuring the ROIs within a plane in parallel.
+	 */
+	public void measureAll() {
+		final OverlayStore overlays = trans.overlays;
+		final int[] positions;
+		synchronized (overlays) {
+			positions = overlays.getPositions();
+		}
+		for (int q = 0; q < positions.length; q++) {
+			final int r = positions[q];
+			final Vector stale = new Vector();
+			synchronized (overlays) {
+				final Vector objs = overlays.get(r);
+				for (int i = 0; objs != null && i < objs.size(); i++) {
+					final OverlayObject obj = (OverlayObject) objs.elementAt(i);
+					if (isMeasurable(obj) && !isCurrent(obj)) stale.add(obj);
+				}
+			}
+			if (stale.size() == 0) continue;
+			final OverlayObject[] objs = new OverlayObject[stale.size()];
+			stale.copyInto(objs);
+			final Plane plane = getPlane(r);
+			if (plane == null) {
+				for (int i = 0; i < objs.length; i++) {
+					store(objs[i], objs[i].getRevision(), null);
+				}
+				continue;
+			}
+			measureParallel(objs, plane);
+		}
+		// release plane memory once a full measurement pass is done
+		releasePlane();
+	}
+
+	/**
+	 * Gets the cached intensity statistics of the given overlay, or null if
+	 * there is no up-to-date measurement.
+	 */
+	public synchronized double[][] getCached(final OverlayObject obj) {
+		final Entry e = (Entry) cache.get(obj);
+		return e != null && e.revision == obj.getRevision() ? e.values : null;
+	}
+
+	/** Releases the most recently loaded plane. */
+	public synchronized void releasePlane() {
+		lastRaster = -1;
+		lastPlane = null;
+	}
+
+	/** Discards all cached measurements and planes. */
+	public synchronized void clear() {
+		cache.clear();
+		pending.removeAllElements();
+		releasePlane();
+	}
+
+	// -- Static utility methods --
+
+	/** Gets whether the given statistic is an intensity statistic. */
+	public static boolean isIntensityStat(final String name) {
+		for (int i = 0; i < STAT_TYPES.length; i++) {
+			if (STAT_TYPES[i].equals(name)) return true;
+		}
+		return false;
+	}
+
+	/** Gets whether any of the given statistics is an intensity statistic. */
+	public static boolean hasIntensityStat(final String[] names) {
+		for (int i = 0; i < names.length; i++) {
+			if (isIntensityStat(names[i])) return true;
+		}
+		return false;
+	}
+
+	/** Gets whether the given overlay encloses an area that can be measured. */
+	public static boolean isMeasurable(final OverlayObject obj) {
+		return obj instanceof OverlayBox || obj instanceof OverlayOval ||
+			obj instanceof OverlayFreeform;
+	}
+
+	/**
+	 * Computes the intensity statistics of the given overlay over the given
+	 * plane, whose samples are indexed [channel][y * width + x].
+	 */
+	public static double[][] measure(final OverlayObject obj,
+		final float[][] samples, final int width, final int height)
+	{
+		final int numChannels = samples.length;
+		final double[][] values = new double[STAT_TYPES.length][numChannels];
+		final int[] spans = scan(obj, width, height);
+
+		for (int c = 0; c < numChannels; c++) {
+			final float[] band = samples[c];
+			long count = 0;
+			double sum = 0, sumSq = 0;
+			float min = Float.POSITIVE_INFINITY, max = Float.NEGATIVE_INFINITY;
+			for (int s = 0; s < spans.length; s += 3) {
+				final int offset = spans[s] * width;
+				final int end = offset + spans[s + 2];
+				for (int i = offset + spans[s + 1]; i <= end; i++) {
+					final float v = band[i];
+					if (v != v) continue; // skip missing (NaN) values
+					count++;
+					sum += v;
+					sumSq += (double) v * v;
+					if (v < min) min = v;
+					if (v > max) max = v;
+				}
+			}
+			// missing values count toward no statistic, including the pixel count
+			values[COUNT_NDX][c] = count;
+			values[SUM_NDX][c] = sum;
+			if (count == 0) {
+				values[MEAN_NDX][c] = values[MIN_NDX][c] = values[MAX_NDX][c] =
+					values[STD_NDX][c] = Double.NaN;
+				continue;
+			}
+			final double mean = sum / count;
+			values[MEAN_NDX][c] = mean;
+			values[MIN_NDX][c] = min;
+			values[MAX_NDX][c] = max;
+			final double var =
+				count > 1 ? (sumSq - sum * mean) / (count - 1) : 0;
+			values[STD_NDX][c] = var > 0 ? Math.sqrt(var) : 0;
+		}
+		return values;
+	}
+
+	/**
+	 * Rasterizes the given overlay onto a plane of the given size, with pixel
+	 * centers at integer coordinates.
+	 *
+	 * @return horizontal pixel spans, as (row, first column, last column)
+	 *         triples
+	 */
+	public static int[] scan(final OverlayObject obj, final int width,
+		final int height)
+	{
+		final SpanBuffer spans = new SpanBuffer();
+		if (obj instanceof OverlayBox) {
+			scanBox(obj.x1, obj.y1, obj.x2, obj.y2, width, height, spans);
+		}
+		else if (obj instanceof OverlayOval) {
+			scanOval(obj.x1, obj.y1, obj.x2, obj.y2, width, height, spans);
+		}
+		else if (obj instanceof OverlayNodedObject) {
+			scanPolygon(((OverlayNodedObject) obj).getNodes(), width, height, spans);
+		}
+		return spans.toArray();
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Gets whether the cached measurement of the given overlay is current,
+	 * including a current record that the overlay could not be measured.
+	 */
+	protected synchronized boolean isCurrent(final OverlayObject obj) {
+		final Entry e = (Entry) cache.get(obj);
+		return e != null && e.revision == obj.getRevision();
+	}
+
+	/**
+	 * Queues the given overlay for measurement on a background thread, which
+	 * refreshes the overlay controls once the queue is empty.
+	 */
+	protected synchronized void measureLater(final OverlayObject obj) {
+		if (pending.contains(obj)) return;
+		pending.add(obj);
+		if (measureThread != null) return;
+		measureThread = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				while (true) {
+					final OverlayObject next;
+					synchronized (OverlayMeasurer.this) {
+						if (pending.isEmpty()) {
+							measureThread = null;
+							break;
+						}
+						next = (OverlayObject) pending.remove(0);
+					}
+					try {
+						measure(next);
+					}
+					catch (final RuntimeException exc) {
+						store(next, next.getRevision(), null);
+						if (VisBioFrame.DEBUG) exc.printStackTrace();
+					}
+				}
+				SwingUtilities.invokeLater(new Runnable() {
+
+					@Override
+					public void run() {
+						final OverlayWidget controls = (OverlayWidget) trans.getControls();
+						if (controls != null) controls.refreshWidgetComponents();
+					}
+				});
+			}
+		}, "VisBio-MeasureThread");
+		measureThread.start();
+	}
+
+	/** Caches the given measurement. */
+	protected synchronized void store(final OverlayObject obj,
+		final int revision, final double[][] values)
+	{
+		cache.put(obj, new Entry(revision, values));
+	}
+
+	/** Measures the given overlays of a single plane using worker threads. */
+	protected void measureParallel(final OverlayObject[] objs,
+		final Plane plane)
+	{
+		final int[] next = { 0 };
+		final Runnable worker = new Runnable() {
+
+			@Override
+			public void run() {
+				while (true) {
+					int i;
+					synchronized (next) {
+						if (next[0] >= objs.length) return;
+						i = next[0]++;
+					}
+					final int revision = objs[i].getRevision();
+					store(objs[i], revision, measure(objs[i], plane.samples,
+						plane.width, plane.height));
+				}
+			}
+		};
+		int numThreads = Runtime.getRuntime().availableProcessors();
+		if (numThreads > objs.length) numThreads = objs.length;
+		if (numThreads <= 1) {
+			worker.run();
+			return;
+		}
+		final Thread[] threads = new Thread[numThreads - 1];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread(worker, "VisBio-MeasureThread-" + t);
+			threads[t].start();
+		}
+		worker.run();
+		for (int t = 0; t < threads.length; t++) {
+			try {
+				threads[t].join();
+			}
+			catch (final InterruptedException exc) {}
+		}
+	}
+
+	/** Gets the samples of the parent plane at the given raster index. */
+	protected Plane getPlane(final int raster) {
+		synchronized (this) {
+			if (raster == lastRaster && lastPlane != null) return lastPlane;
+		}
+		final ImageTransform it = (ImageTransform) trans.getParent();
+		final int[] pos = FormatTools.rasterToPosition(trans.getLengths(), raster);
+		final Plane plane;
+		// image readers are not thread-safe; read one plane at a time
+		synchronized (it) {
+			plane = readPlane(it, pos);
+		}
+		if (plane == null) return null;
+		synchronized (this) {
+			lastRaster = raster;
+			lastPlane = plane;
+		}
+		return plane;
+	}
+
+	/** Reads the samples of the given image plane. */
+	protected static Plane readPlane(final ImageTransform it, final int[] pos) {
+		final BufferedImage img = it.getImage(pos);
+		if (img != null) {
+			final Raster r = img.getRaster();
+			final int w = img.getWidth(), h = img.getHeight();
+			final float[][] samples = new float[r.getNumBands()][];
+			for (int b = 0; b < samples.length; b++) {
+				samples[b] = r.getSamples(0, 0, w, h, b, (float[]) null);
+			}
+			return new Plane(samples, w, h);
+		}
+		try {
+			final Data data = it.getData(null, pos, 2, null);
+			if (data instanceof FlatField) {
+				final FlatField ff = (FlatField) data;
+				final int[] len = ((GriddedSet) ff.getDomainSet()).getLengths();
+				return new Plane(ff.getFloats(false), len[0], len[1]);
+			}
+		}
+		catch (final VisADException exc) {
+			if (VisBioFrame.DEBUG) exc.printStackTrace();
+		}
+		catch (final RemoteException exc) {
+			if (VisBioFrame.DEBUG) exc.printStackTrace();
+		}
+		return null;
+	}
+
+	/** Rasterizes a box with the given corners. */
+	protected static void scanBox(final float x1, final float y1,
+		final float x2, final float y2, final int width, final int height,
+		final SpanBuffer spans)
+	{
+		final int xs = Math.max(0, (int) Math.ceil(Math.min(x1, x2)));
+		final int xe = Math.min(width - 1, (int) Math.floor(Math.max(x1, x2)));
+		final int ys = Math.max(0, (int) Math.ceil(Math.min(y1, y2)));
+		final int ye = Math.min(height - 1, (int) Math.floor(Math.max(y1, y2)));
+		if (xs > xe) return;
+		for (int y = ys; y <= ye; y++)
+			spans.add(y, xs, xe);
+	}
+
+	/** Rasterizes an oval inscribed in the box with the given corners. */
+	protected static void scanOval(final float x1, final float y1,
+		final float x2, final float y2, final int width, final int height,
+		final SpanBuffer spans)
+	{
+		final double cx = (x1 + x2) / 2.0, cy = (y1 + y2) / 2.0;
+		final double rx = Math.abs(x2 - x1) / 2.0, ry = Math.abs(y2 - y1) / 2.0;
+		if (rx == 0 || ry == 0) return;
+		final int ys = Math.max(0, (int) Math.ceil(cy - ry));
+		final int ye = Math.min(height - 1, (int) Math.floor(cy + ry));
+		for (int y = ys; y <= ye; y++) {
+			final double dy = (y - cy) / ry;
+			final double t = 1 - dy * dy;
+			if (t < 0) continue;
+			final double half = rx * Math.sqrt(t);
+			final int xs = Math.max(0, (int) Math.ceil(cx - half));
+			final int xe = Math.min(width - 1, (int) Math.floor(cx + half));
+			if (xs <= xe) spans.add(y, xs, xe);
+		}
+	}
+
+	/**
+	 * Rasterizes the closed polygon with the given vertices using an active
+	 * edge list and the even-odd rule.
+	 */
+	protected static void scanPolygon(final float[][] nodes, final int width,
+		final int height, final SpanBuffer spans)
+	{
+		final int n = nodes[0].length;
+		if (n < 3) return;
+
+		// build edge table, skipping horizontal edges
+		final double[] edgeX = new double[n], edgeY = new double[n];
+		final double[] slope = new double[n];
+		final int[] lastRow = new int[n];
+		final int[] bucket = new int[height], link = new int[n];
+		Arrays.fill(bucket, -1);
+		for (int i = 0; i < n; i++) {
+			final int j = i == n - 1 ? 0 : i + 1;
+			float xa = nodes[0][i], ya = nodes[1][i];
+			float xb = nodes[0][j], yb = nodes[1][j];
+			if (ya == yb) continue;
+			if (ya > yb) {
+				float t = xa;
+				xa = xb;
+				xb = t;
+				t = ya;
+				ya = yb;
+				yb = t;
+			}
+			// edge covers rows y with ya <= y < yb
+			final int first = Math.max(0, (int) Math.ceil(ya));
+			final int last = Math.min(height - 1, (int) Math.ceil(yb) - 1);
+			if (first > last) continue;
+			edgeX[i] = xa;
+			edgeY[i] = ya;
+			slope[i] = (xb - xa) / (double) (yb - ya);
+			lastRow[i] = last;
+			link[i] = bucket[first];
+			bucket[first] = i;
+		}
+
+		final int[] active = new int[n];
+		final double[] xs = new double[n];
+		int numActive = 0;
+		for (int y = 0; y < height; y++) {
+			// add edges starting on this row
+			for (int e = bucket[y]; e >= 0; e = link[e])
+				active[numActive++] = e;
+			if (numActive == 0) continue;
+
+			// drop finished edges and compute crossings
+			int k = 0, numX = 0;
+			for (int a = 0; a < numActive; a++) {
+				final int e = active[a];
+				if (lastRow[e] < y) continue;
+				active[k++] = e;
+				xs[numX++] = edgeX[e] + (y - edgeY[e]) * slope[e];
+			}
+			numActive = k;
+			Arrays.sort(xs, 0, numX);
+
+			// fill between pairs of crossings, with x in [xl, xr)
+			for (int p = 0; p + 1 < numX; p += 2) {
+				final int xl = Math.max(0, (int) Math.ceil(xs[p]));
+				final int xr = Math.min(width - 1, (int) Math.ceil(xs[p + 1]) - 1);
+				if (xl <= xr) spans.add(y, xl, xr);
+			}
+		}
+	}
+
+	// -- Helper classes --
+
+	/** A cached measurement. */
+	protected static class Entry {
+
+		protected int revision;
+		protected double[][] values;
+
+		public Entry(final int revision, final double[][] values) {
+			this.revision = revision;
+			this.values = values;
+		}
+	}
+
+	/** Samples of one image plane. */
+	protected static class Plane {
+
+		protected float[][] samples;
+		protected int width, height;
+
+		public Plane(final float[][] samples, final int width, final int height) {
+			this.samples = samples;
+			this.width = width;
+			this.height = height;
+		}
+	}
+
+	/** Growable list of (row, first column, last column) span triples. */
+	protected static class SpanBuffer {
+
+		protected int[] spans = new int[3 * 64];
+		protected int size;
+
+		public void add(final int row, final int first, final int last) {
+			if (size + 3 > spans.length) {
+				final int[] s = new int[2 * spans.length];
+				System.arraycopy(spans, 0, s, 0, size);
+				spans = s;
+			}
+			spans[size++] = row;
+			spans[size++] = first;
+			spans[size++] = last;
+		}
+
+		public int[] toArray() {
+			final int[] s = new int[size];
+			System.arraycopy(spans, 0, s, 0, size);
+			return s;
+		}
+	}
+
+}
@@ -27,6 +27,7 @@ package loci.visbio.overlays;
 import java.awt.Color;
 import java.rmi.RemoteException;
 import java.util.Arrays;
+import java.util.Hashtable;
 
 import loci.visbio.util.MathUtil;
 import visad.DataImpl;
@@ -93,6 +94,12 @@ public abstract class OverlayNodedObject extends OverlayObject {
 	/** Radius in pixels of circle indicating a node is selected. */
 	protected static final float RADIUS = 3.0f;
 
+	/** Maximum distance in pixels of simplified nodes from the true curve. */
+	protected static final float DETAIL_TOLERANCE = 0.5f;
+
+	/** Minimum number of nodes for which simplified nodes are drawn. */
+	protected static final int MIN_DETAIL_NODES = 64;
+
 	// -- Fields --
 
 	/** Synchronization object for nodes array. */
@@ -116,6 +123,12 @@ public abstract class OverlayNodedObject extends OverlayObject {
 	/** Index of the highlighted node. */
 	protected int highlightIndex;
 
+	/** Simplified nodes for drawing, keyed by level of detail. */
+	protected Hashtable simplified = new Hashtable();
+
+	/** Revision for which the simplified nodes were computed. */
+	protected int simplifiedRevision = -1;
+
 	// -- Constructors --
 
 	/** Constructs an uninitialized noded object. */
@@ -187,6 +200,28 @@ public abstract class OverlayNodedObject extends OverlayObject {
 	/** Gets VisAD data object representing this overlay. */
 	@Override
 	public DataImpl getData() {
+		return getData(FULL_DETAIL);
+	}
+
+	/**
+	 * Gets the level of detail at which to draw this object on a display with
+	 * the given multiplier. Level n means the nodes are simplified to within
+	 * 2^n domain units of the true curve, where 2^n is the largest power of two
+	 * no greater than the pixel tolerance in domain units. Zoom factors within
+	 * a factor of two of each other thus share a level. Short curves, and
+	 * curves still being drawn, are drawn in full detail.
+	 */
+	@Override
+	public int getDetailLevel(final float multiplier) {
+		if (isDrawing() || !(multiplier > 0)) return FULL_DETAIL;
+		if (getNumNodes() < MIN_DETAIL_NODES) return FULL_DETAIL;
+		return (int) Math.floor(Math.log(DETAIL_TOLERANCE * multiplier) /
+			Math.log(2));
+	}
+
+	/** Gets VisAD data object representing this overlay at a level of detail. */
+	@Override
+	public DataImpl getData(final int level) {
 		if (!hasData()) return null;
 
 		final RealTupleType domain = overlay.getDomainType();
@@ -197,9 +232,17 @@ public abstract class OverlayNodedObject extends OverlayObject {
 		// ******************************************************************
 		SampledSet fieldSet = null;
 		try {
-			synchronized (nodesSync) {
+			if (level == FULL_DETAIL) {
+				synchronized (nodesSync) {
+					fieldSet =
+						new Gridded2DSet(domain, nodes, maxNodes, null, null, null, false);
+				}
+			}
+			else {
+				final float[][] samples = getSimplifiedNodes(level);
 				fieldSet =
-					new Gridded2DSet(domain, nodes, maxNodes, null, null, null, false);
+					new Gridded2DSet(domain, samples, samples[0].length, null, null,
+						null, false);
 			}
 
 			// I've written !isDrawing() to prevent a manifold dimension mismatch
@@ -367,12 +410,14 @@ public abstract class OverlayNodedObject extends OverlayObject {
 		// new Exception().printStackTrace();
 		highlightNode = true;
 		highlightIndex = i;
+		invalidate();
 	}
 
 	/** Turn off node highlighting. */
 	public void turnOffHighlighting() {
 		highlightNode = false;
 		highlightIndex = -1;
+		invalidate();
 	}
 
 	/** Returns coordinates of node at given index in the node array. */
@@ -402,6 +447,39 @@ public abstract class OverlayNodedObject extends OverlayObject {
 		}
 	}
 
+	/**
+	 * Gets the nodes to draw on a display with the given multiplier: the
+	 * simplified nodes for the corresponding level of detail, or a copy of all
+	 * nodes if the object is drawn in full detail. Editing and statistics
+	 * always use the full nodes.
+	 */
+	public float[][] getDisplayNodes(final float multiplier) {
+		final int level = getDetailLevel(multiplier);
+		return level == FULL_DETAIL ? getNodes() : getSimplifiedNodes(level);
+	}
+
+	/**
+	 * Gets the nodes simplified to the given level of detail. The simplified
+	 * nodes are cached per level until the object changes, and must not be
+	 * modified.
+	 */
+	public float[][] getSimplifiedNodes(final int level) {
+		synchronized (nodesSync) {
+			final int rev = revision;
+			if (simplifiedRevision != rev) {
+				simplified.clear();
+				simplifiedRevision = rev;
+			}
+			final Integer key = new Integer(level);
+			float[][] s = (float[][]) simplified.get(key);
+			if (s == null) {
+				s = MathUtil.simplify(nodes, numNodes, (float) Math.pow(2, level));
+				simplified.put(key, s);
+			}
+			return s;
+		}
+	}
+
 	/** Returns the number of real nodes in the array. */
 	public int getNumNodes() {
 		synchronized (nodesSync) {
@@ -446,6 +524,7 @@ public abstract class OverlayNodedObject extends OverlayObject {
 		// same as super
 		this.x1 = x1;
 		this.y1 = y1;
+		invalidate();
 	}
 
 	/** Sets the node array to that provided--for loading from saved. */
@@ -457,6 +536,7 @@ public abstract class OverlayNodedObject extends OverlayObject {
 		}
 		computeLength();
 		updateBoundingBox();
+		invalidate();
 	}
 
 	/**
@@ -480,6 +560,7 @@ public abstract class OverlayNodedObject extends OverlayObject {
 		this.y1 = ymin;
 		this.x2 = xmax;
 		this.y2 = ymax;
+		invalidate();
 	}
 
 	/** Gets length of curve. */
@@ -560,6 +641,7 @@ public abstract class OverlayNodedObject extends OverlayObject {
 					Arrays.fill(nodes[1], numNodes, maxNodes, y);
 				}
 			}
+			invalidate();
 		}
 	}
 
@@ -589,6 +671,7 @@ public abstract class OverlayNodedObject extends OverlayObject {
 				Arrays.fill(nodes[0], numNodes, maxNodes, x);
 				Arrays.fill(nodes[1], numNodes++, maxNodes, y);
 				// i.e., set all remaining nodes (as per maxNodes) to next node coords
+				invalidate();
 			}
 		}
 	}
@@ -662,6 +745,7 @@ public abstract class OverlayNodedObject extends OverlayObject {
 		nodes[0][index] = x;
 		nodes[1][index] = y;
 		numNodes++;
+		invalidate();
 	}
 
 	/** Deletes a range of nodes from the node array. */
@@ -684,6 +768,7 @@ public abstract class OverlayNodedObject extends OverlayObject {
 				numNodes -= victims;
 				maxNodes -= victims;
 				nodes = newNodes;
+				invalidate();
 			}
 			else {
 				// System.out.println("deleteBetween(int, int) out of bounds error");
@@ -716,6 +801,7 @@ public abstract class OverlayNodedObject extends OverlayObject {
 				numNodes -= 1 + offset;
 				maxNodes = numNodes;
 				nodes = newNodes;
+				invalidate();
 			}
 		}
 	}
@@ -787,6 +873,7 @@ public abstract class OverlayNodedObject extends OverlayObject {
 			}
 			nodes = temp;
 		}
+		invalidate();
 	}
 
 	/** Deletes buffer nodes from the tail of the node array. */
@@ -813,6 +900,7 @@ public abstract class OverlayNodedObject extends OverlayObject {
 			nodes = a2;
 			maxNodes = newLength;
 		}
+		invalidate();
 	}
 
 	// -- Helper methods --
@@ -870,22 +958,28 @@ public abstract class OverlayNodedObject extends OverlayObject {
 			}
 		} // end synchronized
 
-		if (f1Nodes != null) {
-			f1 = new OverlayFreeform(overlay, f1Nodes);
-			overlay.addObject(f1);
-			f1.setSelected(false);
-			f1.setDrawing(false);
+		overlay.beginBatch();
+		try {
+			if (f1Nodes != null) {
+				f1 = new OverlayFreeform(overlay, f1Nodes);
+				overlay.addObject(f1);
+				f1.setSelected(false);
+				f1.setDrawing(false);
+			}
+			if (f2Nodes != null) {
+				f2 = new OverlayFreeform(overlay, f2Nodes);
+				overlay.addObject(f2);
+				f2.setSelected(false);
+				f2.setDrawing(false);
+			}
+
+			// dispose of original freeform
+			overlay.removeObject(this);
 		}
-		if (f2Nodes != null) {
-			f2 = new OverlayFreeform(overlay, f2Nodes);
-			overlay.addObject(f2);
-			f2.setSelected(false);
-			f2.setDrawing(false);
+		finally {
+			overlay.commitBatch();
 		}
 
-		// dispose of original freeform
-		overlay.removeObject(this);
-
 		return new OverlayFreeform[] { f1, f2 };
 	}
 
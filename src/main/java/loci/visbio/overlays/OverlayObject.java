@@ -25,7 +25,9 @@
 package loci.visbio.overlays;
 
 import java.awt.Color;
+import java.util.Hashtable;
 
+import loci.visbio.view.TransformLink;
 import visad.DataImpl;
 
 /**
@@ -41,6 +43,9 @@ public abstract class OverlayObject {
 
 	protected static final Color GLOW_COLOR = Color.YELLOW;
 
+	/** Level of detail at which an overlay is drawn in full. */
+	public static final int FULL_DETAIL = Integer.MIN_VALUE;
+
 	// -- Fields --
 
 	/** Associated overlay transform. */
@@ -85,6 +90,42 @@ public abstract class OverlayObject {
 	/** Number of horizontal and vertical dividing lines for selection grid. */
 	protected int horizGridCount, vertGridCount;
 
+	/**
+	 * Revision counter, incremented whenever the geometry, color or selection
+	 * state of this overlay changes.
+	 */
+	protected volatile int revision;
+
+	/** Synchronization object for cached data. */
+	protected Object cacheSync = new Object();
+
+	/** Cached VisAD data object representing this overlay. */
+	protected DataImpl cachedData;
+
+	/** Revision for which the cached VisAD data object was computed. */
+	protected int dataRevision = -1;
+
+	/** Cached VisAD data objects at reduced levels of detail, keyed by level. */
+	protected Hashtable detailData = new Hashtable();
+
+	/** Revision for which the reduced detail data objects were computed. */
+	protected int detailRevision = -1;
+
+	/** Cached selection layer for this overlay. */
+	protected DataImpl cachedLayer;
+
+	/** Revision for which the cached selection layer was computed. */
+	protected int layerRevision = -1;
+
+	/** Link for which the cached selection layer was computed. */
+	protected TransformLink layerLink;
+
+	/** Whether the cached selection layer is an outline layer. */
+	protected boolean layerOutline;
+
+	/** Display multiplier for which the cached selection layer was computed. */
+	protected float layerMultiplier;
+
 	// -- Constructor --
 
 	/** Constructs an overlay. */
@@ -110,6 +151,101 @@ public abstract class OverlayObject {
 	/** Gets a specific overlay statistic. */
 	public abstract String getStat(String name);
 
+	/**
+	 * Gets VisAD data object representing this overlay, recomputing it only if
+	 * the overlay has changed since the last call.
+	 */
+	public DataImpl getCachedData() {
+		synchronized (cacheSync) {
+			final int rev = revision;
+			if (dataRevision != rev) {
+				cachedData = getData();
+				dataRevision = rev;
+			}
+			return cachedData;
+		}
+	}
+
+	/**
+	 * Gets VisAD data object representing this overlay at the level of detail
+	 * suitable for a display with the given multiplier, recomputing it only if
+	 * the overlay has changed since it was last computed at that level.
+	 *
+	 * @see OverlayUtil#getMultiplier
+	 */
+	public DataImpl getCachedData(final float multiplier) {
+		final int level = getDetailLevel(multiplier);
+		if (level == FULL_DETAIL) return getCachedData();
+		synchronized (cacheSync) {
+			final int rev = revision;
+			if (detailRevision != rev) {
+				detailData.clear();
+				detailRevision = rev;
+			}
+			final Integer key = new Integer(level);
+			DataImpl data = (DataImpl) detailData.get(key);
+			if (data == null) {
+				data = getData(level);
+				if (data != null) detailData.put(key, data);
+			}
+			return data;
+		}
+	}
+
+	/**
+	 * Gets the level of detail at which to draw this overlay on a display with
+	 * the given multiplier. Overlays are drawn in full detail by default.
+	 */
+	public int getDetailLevel(final float multiplier) {
+		return FULL_DETAIL;
+	}
+
+	/**
+	 * Gets VisAD data object representing this overlay at the given level of
+	 * detail. Overlays are drawn in full detail by default.
+	 */
+	public DataImpl getData(final int level) {
+		return getData();
+	}
+
+	/**
+	 * Gets the selection layer for this overlay, recomputing it only if the
+	 * overlay, link, layer type or display multiplier has changed since the last
+	 * call.
+	 */
+	public DataImpl getCachedSelectionLayer(final TransformLink link,
+		final boolean outline, final float multiplier)
+	{
+		synchronized (cacheSync) {
+			final int rev = revision;
+			if (layerRevision != rev || layerLink != link ||
+				layerOutline != outline || layerMultiplier != multiplier)
+			{
+				cachedLayer = OverlayUtil.getSelectionLayer(this, link, outline);
+				layerRevision = rev;
+				layerLink = link;
+				layerOutline = outline;
+				layerMultiplier = multiplier;
+			}
+			return cachedLayer;
+		}
+	}
+
+	/**
+	 * Marks this overlay as changed, so that its cached data and selection layer
+	 * are recomputed the next time they are requested, and its entries in the
+	 * overlay transform's spatial indices are refreshed.
+	 */
+	public void invalidate() {
+		revision++;
+		if (overlay != null) overlay.objectChanged(this);
+	}
+
+	/** Gets the current revision of this overlay. */
+	public int getRevision() {
+		return revision;
+	}
+
 	/** Retrieves useful statistics about this overlay. */
 	public String getStatistics() {
 		String name = getClass().getName();
@@ -150,12 +286,14 @@ public abstract class OverlayObject {
 	public void setX(final float x1) {
 		if (!hasEndpoint()) return;
 		this.x1 = x1;
+		invalidate();
 	}
 
 	/** Changes Y coordinate of the overlay's first endpoint. */
 	public void setY(final float y1) {
 		if (!hasEndpoint()) return;
 		this.y1 = y1;
+		invalidate();
 	}
 
 	/** Changes coordinates of the overlay's first endpoint. */
@@ -163,6 +301,7 @@ public abstract class OverlayObject {
 		if (!hasEndpoint()) return;
 		this.x1 = x1;
 		this.y1 = y1;
+		invalidate();
 	}
 
 	/** Gets X coordinate of the overlay's first endpoint. */
@@ -179,12 +318,14 @@ public abstract class OverlayObject {
 	public void setX2(final float x2) {
 		if (!hasEndpoint2()) return;
 		this.x2 = x2;
+		invalidate();
 	}
 
 	/** Changes Y coordinate of the overlay's second endpoint. */
 	public void setY2(final float y2) {
 		if (!hasEndpoint2()) return;
 		this.y2 = y2;
+		invalidate();
 	}
 
 	/** Changes coordinates of the overlay's second endpoint. */
@@ -192,6 +333,7 @@ public abstract class OverlayObject {
 		if (!hasEndpoint2()) return;
 		this.x2 = x2;
 		this.y2 = y2;
+		invalidate();
 	}
 
 	/** Gets X coordinate of the overlay's second endpoint. */
@@ -208,6 +350,7 @@ public abstract class OverlayObject {
 	public void setText(final String text) {
 		if (!hasText()) return;
 		this.text = text;
+		invalidate();
 	}
 
 	/** Gets text to render. */
@@ -217,7 +360,9 @@ public abstract class OverlayObject {
 
 	/** Sets color of this overlay. */
 	public void setColor(final Color c) {
+		if (c == null ? color == null : c.equals(color)) return;
 		color = c;
+		invalidate();
 	}
 
 	/** Gets color of this overlay. */
@@ -227,7 +372,9 @@ public abstract class OverlayObject {
 
 	/** Sets whether overlay is solid. */
 	public void setFilled(final boolean filled) {
-		if (canBeFilled()) this.filled = filled;
+		if (!canBeFilled() || this.filled == filled) return;
+		this.filled = filled;
+		invalidate();
 	}
 
 	/** Gets whether overlay is solid. */
@@ -265,7 +412,9 @@ public abstract class OverlayObject {
 
 	/** Sets whether this overlay is currently selected. */
 	public void setSelected(final boolean selected) {
+		if (this.selected == selected) return;
 		this.selected = selected;
+		invalidate();
 	}
 
 	/** Gets whether this overlay is currently selected. */
@@ -275,6 +424,7 @@ public abstract class OverlayObject {
 
 	/** Sets whether this overlay is still being initially drawn. */
 	public void setDrawing(final boolean drawing) {
+		if (this.drawing != drawing) invalidate();
 		this.drawing = drawing;
 		overlay.setTextDrawn(!drawing);
 	}
@@ -292,5 +442,6 @@ public abstract class OverlayObject {
 		x2 = Math.max(x2, x);
 		y1 = Math.min(y1, y);
 		y2 = Math.max(y2, y);
+		invalidate();
 	}
 }// end class
@@ -54,7 +54,9 @@ public class OverlayOval extends OverlayObject {
 	public static final String ECC = "Eccentricity";
 	public static final String CIRC = "Circumference (approximate)";
 	protected static final String[] STAT_TYPES = { COORDS, CTR, RAD, MAJ, MIN,
-		AREA, ECC, CIRC };
+		AREA, ECC, CIRC, OverlayMeasurer.COUNT, OverlayMeasurer.MEAN,
+		OverlayMeasurer.MIN, OverlayMeasurer.MAX, OverlayMeasurer.SUM,
+		OverlayMeasurer.STD };
 
 	// -- Constants --
 
@@ -263,6 +265,9 @@ public class OverlayOval extends OverlayObject {
 		else if (name.equals(CIRC)) {
 			return "" + circum;
 		}
+		else if (OverlayMeasurer.isIntensityStat(name)) {
+			return overlay.getMeasurer().getStat(this, name);
+		}
 		else return "No such statistic for this overlay type";
 	}
 
@@ -299,7 +304,7 @@ public class OverlayOval extends OverlayObject {
 			centerX + ", " + centerY + ")\n" + RAD + " = (" + radiusX + ", " +
 			radiusY + ")\n" + MAJ + " = " + major + "; " + MIN + " = " + minor +
 			"\n" + AREA + " = " + area + "; " + ECC + " = " + eccen + "\n" + CIRC +
-			" = " + circum;
+			" = " + circum + overlay.getMeasurer().getStatistics(this);
 	}
 
 	/** True iff this overlay has an endpoint coordinate pair. */
@@ -0,0 +1,255 @@
+/*
+ * #%L
+ * VisBio application for visualization of multidimensional biological
+ * image data.
+ * %%
+ * Copyright (C) 2002 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.visbio.overlays;
+
+import java.util.Arrays;
+import java.util.Vector;
+
+/**
+ * OverlayStore holds the lists of overlay objects at each dimensional position
+ * of an overlay transform, keyed by raster index. Only occupied positions take
+ * up space: the lists live in an open addressing hash table with primitive
+ * int keys, so a transform with millions of positions but only a few hundred
+ * annotated ones stays small, and iteration visits only the occupied
+ * positions.
+ * <p>
+ * OverlayStore is not synchronized; callers synchronize on the store itself.
+ */
+public class OverlayStore {
+
+	// -- Constants --
+
+	/** Marker for an empty hash table slot. */
+	private static final int EMPTY = -1;
+
+	/** Initial capacity of the hash table; always a power of two. */
+	private static final int INITIAL_CAPACITY = 16;
+
+	// -- Fields --
+
+	/** Number of dimensional positions (the raster length). */
+	protected int length;
+
+	/** Raster indices of occupied slots, or EMPTY. */
+	protected int[] keys;
+
+	/** Overlay lists of occupied slots. */
+	protected Vector[] values;
+
+	/** Number of occupied slots. */
+	protected int count;
+
+	// -- Constructor --
+
+	/** Constructs an empty store with the given number of positions. */
+	public OverlayStore(final int length) {
+		this.length = length;
+		clear();
+	}
+
+	// -- OverlayStore API methods --
+
+	/** Gets the number of dimensional positions. */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * Sets the number of dimensional positions, discarding the overlays at any
+	 * positions beyond the new length.
+	 */
+	public void setLength(final int length) {
+		if (length < this.length) {
+			final int[] positions = getPositions();
+			for (int i = 0; i < positions.length; i++) {
+				if (positions[i] >= length) remove(positions[i]);
+			}
+		}
+		this.length = length;
+	}
+
+	/** Gets the number of positions with a list of overlays. */
+	public int getPositionCount() {
+		return count;
+	}
+
+	/**
+	 * Gets the raster indices of all positions with a list of overlays, in
+	 * ascending order.
+	 */
+	public int[] getPositions() {
+		final int[] positions = new int[count];
+		int c = 0;
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != EMPTY) positions[c++] = keys[i];
+		}
+		Arrays.sort(positions);
+		return positions;
+	}
+
+	/** Gets the overlays at the given position, or null if there are none. */
+	public Vector get(final int ndx) {
+		final int slot = find(ndx);
+		return slot < 0 ? null : values[slot];
+	}
+
+	/** Gets the number of overlays at the given position. */
+	public int size(final int ndx) {
+		final Vector v = get(ndx);
+		return v == null ? 0 : v.size();
+	}
+
+	/** Gets the overlays at the given position, creating the list if needed. */
+	public Vector getOrCreate(final int ndx) {
+		if (ndx < 0 || ndx >= length) {
+			throw new IndexOutOfBoundsException("Invalid position: " + ndx);
+		}
+		int slot = find(ndx);
+		if (slot >= 0) return values[slot];
+		if (2 * (count + 1) > keys.length) rehash(2 * keys.length);
+		slot = ~find(ndx);
+		keys[slot] = ndx;
+		values[slot] = new Vector();
+		count++;
+		return values[slot];
+	}
+
+	/** Replaces the overlays at the given position. */
+	public void put(final int ndx, final Vector v) {
+		if (v == null || v.isEmpty()) remove(ndx);
+		else {
+			final Vector list = getOrCreate(ndx);
+			list.clear();
+			list.addAll(v);
+		}
+	}
+
+	/** Discards the list of overlays at the given position if it is empty. */
+	public void compact(final int ndx) {
+		final Vector v = get(ndx);
+		if (v != null && v.isEmpty()) remove(ndx);
+	}
+
+	/** Discards the overlays at the given position. */
+	public void remove(final int ndx) {
+		int slot = find(ndx);
+		if (slot < 0) return;
+		keys[slot] = EMPTY;
+		values[slot] = null;
+		count--;
+
+		// shift back following entries of the probe sequence
+		final int mask = keys.length - 1;
+		int next = (slot + 1) & mask;
+		while (keys[next] != EMPTY) {
+			final int home = hash(keys[next]) & mask;
+			// move the entry if its home slot is not between slot and next
+			if (slot <= next ? (home <= slot || home > next)
+				: (home <= slot && home > next))
+			{
+				keys[slot] = keys[next];
+				values[slot] = values[next];
+				keys[next] = EMPTY;
+				values[next] = null;
+				slot = next;
+			}
+			next = (next + 1) & mask;
+		}
+	}
+
+	/** Gets the position of the given overlay, or -1 if it is not present. */
+	public int indexOf(final OverlayObject obj) {
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != EMPTY && values[i].contains(obj)) return keys[i];
+		}
+		return -1;
+	}
+
+	/** Gets the total number of overlays at all positions. */
+	public int getObjectCount() {
+		int total = 0;
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != EMPTY) total += values[i].size();
+		}
+		return total;
+	}
+
+	/**
+	 * Replaces the length and all overlays of this store with those of the
+	 * given store, whose overlay lists are taken over rather than copied.
+	 */
+	public void setAll(final OverlayStore store) {
+		length = store.length;
+		keys = (int[]) store.keys.clone();
+		values = (Vector[]) store.values.clone();
+		count = store.count;
+	}
+
+	/** Discards all overlays. */
+	public void clear() {
+		keys = new int[INITIAL_CAPACITY];
+		Arrays.fill(keys, EMPTY);
+		values = new Vector[INITIAL_CAPACITY];
+		count = 0;
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Finds the slot holding the given position. If the position is absent,
+	 * returns the bitwise complement of the slot where it would be stored.
+	 */
+	private int find(final int ndx) {
+		final int mask = keys.length - 1;
+		int slot = hash(ndx) & mask;
+		while (keys[slot] != EMPTY) {
+			if (keys[slot] == ndx) return slot;
+			slot = (slot + 1) & mask;
+		}
+		return ~slot;
+	}
+
+	/** Resizes the hash table to the given capacity. */
+	private void rehash(final int capacity) {
+		final int[] oldKeys = keys;
+		final Vector[] oldValues = values;
+		keys = new int[capacity];
+		Arrays.fill(keys, EMPTY);
+		values = new Vector[capacity];
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] == EMPTY) continue;
+			final int slot = ~find(oldKeys[i]);
+			keys[slot] = oldKeys[i];
+			values[slot] = oldValues[i];
+		}
+	}
+
+	/** Scrambles the bits of a raster index, since nearby indices are common. */
+	private static int hash(final int ndx) {
+		final int h = ndx * 0x9e3779b9;
+		return h ^ (h >>> 16);
+	}
+
+}
@@ -0,0 +1,879 @@
+/*
+ * #%L
+ * VisBio application for visualization of multidimensional biological
+ * image data.
+ * %%
+ * Copyright (C) 2002 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.visbio.overlays;
+
+import java.awt.Color;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.Date;
+import java.util.Vector;
+
+import loci.formats.FormatTools;
+import loci.visbio.BioTask;
+import loci.visbio.VisBio;
+import loci.visbio.VisBioFrame;
+import loci.visbio.overlays.OverlayBatchMeasurer.RowWriter;
+import loci.visbio.state.BooleanOption;
+import loci.visbio.state.OptionManager;
+import loci.visbio.util.ColorUtil;
+import loci.visbio.util.ObjectUtil;
+
+/**
+ * Streaming methods for reading and writing overlays in the overlay text
+ * format written by {@link OverlayIO}, plus a compact binary overlay format
+ * for fast round trips and a row-by-row spreadsheet export. Unlike the legacy OverlayIO methods, these parse each
+ * line with plain index scanning rather than regular expressions and
+ * tokenizers, reuse a single primitive node buffer, and write directly from
+ * the overlay lists without first sorting objects into per-type lists. Errors
+ * are reported as exceptions rather than dialog boxes, so these methods may be
+ * used headless.
+ */
+public final class OverlayStreamIO {
+
+	// -- Constants --
+
+	/** Magic number identifying binary overlay files ("VBOV"). */
+	public static final int BINARY_MAGIC = 0x56424f56;
+
+	/**
+	 * Version of the binary overlay format. Version 1 stored strings with
+	 * writeUTF, which limits them to 64 KB; version 2 stores each string as an
+	 * int byte length followed by its UTF-8 bytes.
+	 */
+	public static final int BINARY_VERSION = 2;
+
+	/** File extension for binary overlay files. */
+	public static final String BINARY_EXTENSION = "vbo";
+
+	/** Size of the I/O buffers, in bytes. */
+	protected static final int BUFFER_SIZE = 1 << 16;
+
+	/** Number of non-dimensional fields in the overlay table. */
+	protected static final int FIELD_COUNT = 10;
+
+	/** String indicating a given field is not applicable to an overlay. */
+	protected static final String NOT_APPLICABLE = OverlayIO.NOT_APPLICABLE;
+
+	/** Line prefix of noded object node list headers. */
+	protected static final String[] NODE_HEADERS = { "# Freeform ",
+		"# Polyline " };
+
+	// -- Constructor --
+
+	private OverlayStreamIO() {}
+
+	// -- Text format methods --
+
+	/**
+	 * Reads overlays in the overlay text format from the given reader.
+	 *
+	 * @return the overlays at each dimensional position of the given transform
+	 * @throws IOException if the file cannot be read or is invalid
+	 */
+	public static OverlayStore readText(final Reader reader,
+		final OverlayTransform trans) throws IOException
+	{
+		final BufferedReader in =
+			reader instanceof BufferedReader ? (BufferedReader) reader
+				: new BufferedReader(reader, BUFFER_SIZE);
+		final String[] dims = trans.getDimTypes();
+		final int[] lengths = trans.getLengths();
+		final int numFields = lengths.length + FIELD_COUNT;
+
+		OverlayStore loaded = null;
+		boolean foundOverlays = false;
+
+		// noded objects awaiting node lists, in table order
+		final Vector noded = new Vector();
+		int nodedRestored = 0;
+		boolean inNodes = false, inList = false;
+
+		// node buffer, reused for every noded object
+		float[] xs = new float[256], ys = new float[256];
+		int numNodes = 0;
+
+		final int[] tabs = new int[numFields + 1];
+		final int[] pos = new int[lengths.length];
+		int lineNum = 0;
+		while (true) {
+			final String line = in.readLine();
+			if (line == null) break;
+			lineNum++;
+			final String trim = line.trim();
+
+			if (loaded == null) {
+				// waiting for the table header
+				if (trim.length() == 0 || trim.startsWith("#")) continue;
+				if (!trim.startsWith("Overlay")) {
+					throw error(lineNum, "invalid line before overlay data");
+				}
+				final int count = split(line, tabs);
+				if (count < FIELD_COUNT) {
+					throw error(lineNum, "insufficient column headings");
+				}
+				final int numDims = count - FIELD_COUNT;
+				final int[] theLengths = new int[numDims];
+				final String[] theDims = new String[numDims];
+				for (int i = 0; i < numDims; i++) {
+					final String s = field(line, tabs, i + 1);
+					final int left = s.lastIndexOf(" (");
+					final int right = s.lastIndexOf(")");
+					try {
+						theLengths[i] = Integer.parseInt(s.substring(left + 2, right));
+						theDims[i] = s.substring(0, left);
+					}
+					catch (final IndexOutOfBoundsException exc) {}
+					catch (final NumberFormatException exc) {}
+				}
+				if (!ObjectUtil.arraysEqual(dims, theDims)) {
+					throw error(lineNum, "dimensional axis types do not match");
+				}
+				if (!ObjectUtil.arraysEqual(lengths, theLengths)) {
+					throw error(lineNum, "dimensional axis lengths do not match");
+				}
+				loaded = new OverlayStore(FormatTools.getRasterLength(lengths));
+				continue;
+			}
+
+			if (trim.length() == 0) continue;
+
+			if (isNodeHeader(trim)) {
+				// finish the previous node list
+				if (inList) {
+					setNodes((OverlayNodedObject) noded.elementAt(nodedRestored++), xs,
+						ys, numNodes);
+					numNodes = 0;
+				}
+				if (nodedRestored >= noded.size()) {
+					throw error(lineNum, "more \"Noded Object\" (Freeforms, " +
+						"Polylines) node lists than Noded Objects (" + noded.size() +
+						") specified in table");
+				}
+				inNodes = inList = true;
+				continue;
+			}
+
+			if (inNodes) {
+				// node list section
+				final char c = trim.charAt(0);
+				if (c == '#' || c == 'X' || c == 'x') continue;
+				int sep = 0;
+				while (sep < trim.length() && !Character.isWhitespace(trim.charAt(sep)))
+				{
+					sep++;
+				}
+				if (sep == trim.length()) {
+					throw error(lineNum, "invalid line in freeform node lists");
+				}
+				float x, y;
+				try {
+					x = Float.parseFloat(trim.substring(0, sep));
+					y = Float.parseFloat(trim.substring(sep + 1).trim());
+				}
+				catch (final NumberFormatException exc) {
+					throw error(lineNum, "invalid line in freeform node lists");
+				}
+				if (numNodes == xs.length) {
+					final float[] nx = new float[2 * numNodes];
+					final float[] ny = new float[2 * numNodes];
+					System.arraycopy(xs, 0, nx, 0, numNodes);
+					System.arraycopy(ys, 0, ny, 0, numNodes);
+					xs = nx;
+					ys = ny;
+				}
+				xs[numNodes] = x;
+				ys[numNodes] = y;
+				numNodes++;
+				continue;
+			}
+
+			// overlay table section
+			if (trim.startsWith("#")) continue;
+			final int count = split(line, tabs);
+			final String type = field(line, tabs, 0);
+			final OverlayObject obj = newOverlay(type, trans);
+			if (obj == null) {
+				if (OverlayUtil.getStatTypes(type) == null) {
+					throw error(lineNum, "invalid line in overlay table");
+				}
+				continue;
+			}
+			if (count != numFields) {
+				throw error(lineNum, "line in data table has an insufficient " +
+					"number of fields (" + count + " instead of " + numFields + ")");
+			}
+
+			for (int i = 0; i < pos.length; i++) {
+				int p = -1;
+				try {
+					p = Integer.parseInt(field(line, tabs, i + 1));
+				}
+				catch (final NumberFormatException exc) {}
+				if (p <= 0 || p > lengths[i]) {
+					throw error(lineNum, "line has an invalid dimensional position");
+				}
+				// dimensional positions are indexed from 1 in the file
+				pos[i] = p - 1;
+			}
+
+			int f = pos.length + 1;
+			try {
+				obj.x1 = parseCoord(field(line, tabs, f++));
+				obj.y1 = parseCoord(field(line, tabs, f++));
+				obj.x2 = parseCoord(field(line, tabs, f++));
+				obj.y2 = parseCoord(field(line, tabs, f++));
+			}
+			catch (final NumberFormatException exc) {
+				throw error(lineNum, "line has invalid coordinate values");
+			}
+			obj.text = field(line, tabs, f++);
+			try {
+				obj.color = ColorUtil.hexToColor(field(line, tabs, f++));
+			}
+			catch (final NumberFormatException exc) {
+				// skip overlays with unparseable colors, as OverlayIO does
+				continue;
+			}
+			obj.filled = field(line, tabs, f++).equalsIgnoreCase("true");
+			obj.group = field(line, tabs, f++);
+			obj.notes = field(line, tabs, f++).trim();
+			obj.drawing = false;
+			obj.selected = false;
+
+			if (obj instanceof OverlayNodedObject) noded.add(obj);
+			loaded.getOrCreate(FormatTools.positionToRaster(lengths, pos)).add(obj);
+			foundOverlays = true;
+		}
+
+		if (!foundOverlays) throw error(lineNum, "no overlays found");
+		if (inList) {
+			setNodes((OverlayNodedObject) noded.elementAt(nodedRestored++), xs, ys,
+				numNodes);
+		}
+		if (nodedRestored < noded.size()) {
+			throw error(lineNum, "missing node lists for one or more Freeforms");
+		}
+		trans.setTextDrawn(true);
+		return loaded;
+	}
+
+	/** Writes the overlays of the given transform in the overlay text format. */
+	public static void writeText(final Writer writer,
+		final OverlayTransform trans) throws IOException
+	{
+		final Writer out =
+			writer instanceof BufferedWriter ? writer : new BufferedWriter(writer,
+				BUFFER_SIZE);
+		final String[] dims = trans.getDimTypes();
+		final int[] lengths = trans.getLengths();
+		final OverlayStore overlays = trans.overlays;
+		final int[] positions;
+		final OverlayObject[][] objects;
+		synchronized (overlays) {
+			positions = overlays.getPositions();
+			objects = copyObjects(overlays, positions);
+		}
+		final String nl = System.getProperty("line.separator");
+
+		// file header
+		out.write("# " + VisBio.TITLE + " " + VisBio.VERSION +
+			" overlay file written " + new Date() + nl + nl);
+
+		// table header
+		out.write("Overlay\t");
+		for (int p = 0; p < lengths.length; p++) {
+			out.write(dims[p] + " (" + lengths[p] + ")\t");
+		}
+		out.write("x1\ty1\tx2\ty2\ttext\tcolor\tfilled\tgroup\tnotes" + nl);
+
+		// overlays table
+		final StringBuffer sb = new StringBuffer();
+		for (int q = 0; q < positions.length; q++) {
+			final OverlayObject[] objs = objects[q];
+			final int size = objs.length;
+			final int[] pos = FormatTools.rasterToPosition(lengths, positions[q]);
+			sb.setLength(0);
+			// add 1 to shift indices for humans
+			for (int p = 0; p < pos.length; p++)
+				sb.append(pos[p] + 1).append('\t');
+			final String posString = sb.toString();
+			for (int j = 0; j < size; j++) {
+				final OverlayObject obj = objs[j];
+				out.write(obj.toString());
+				out.write('\t');
+				out.write(posString);
+				out.write(obj.hasEndpoint() ? Float.toString(obj.x1) : NOT_APPLICABLE);
+				out.write('\t');
+				out.write(obj.hasEndpoint() ? Float.toString(obj.y1) : NOT_APPLICABLE);
+				out.write('\t');
+				out.write(obj.hasEndpoint2() ? Float.toString(obj.x2) : NOT_APPLICABLE);
+				out.write('\t');
+				out.write(obj.hasEndpoint2() ? Float.toString(obj.y2) : NOT_APPLICABLE);
+				out.write('\t');
+				out.write(obj.hasText() ? obj.text : NOT_APPLICABLE);
+				out.write('\t');
+				out.write(ColorUtil.colorToHex(obj.color));
+				out.write('\t');
+				out.write(obj.canBeFilled() ? "" + obj.filled : NOT_APPLICABLE);
+				out.write('\t');
+				out.write(clean(obj.group));
+				out.write('\t');
+				out.write(clean(obj.notes));
+				out.write(nl);
+			}
+		}
+
+		// print stats by object type, one pass over the overlays per type
+		measureSelectedStats(trans);
+		final String[] titles = OverlayUtil.getOverlayTypes();
+		for (int v = 0; v < titles.length; v++) {
+			final String[] stats = getSelectedStats(titles[v]);
+			int index = 0;
+			for (int q = 0; q < positions.length; q++) {
+				final OverlayObject[] objs = objects[q];
+				for (int j = 0; j < objs.length; j++) {
+					final OverlayObject obj = objs[j];
+					if (!titles[v].equals(obj.toString())) continue;
+					if (index == 0) {
+						out.write(nl + "# " + titles[v] + " Statistics" + nl);
+					}
+					out.write("# " + titles[v] + " " + ++index + nl);
+					for (int s = 0; s < stats.length; s++) {
+						out.write("#\t" + stats[s] + "\t" + obj.getStat(stats[s]) + nl);
+					}
+				}
+			}
+		}
+
+		// nodes of noded objects, one node per line, freeforms first
+		for (int t = 0; t < NODE_HEADERS.length; t++) {
+			final Class type = t == 0 ? OverlayFreeform.class : OverlayPolyline.class;
+			int k = 0;
+			for (int q = 0; q < positions.length; q++) {
+				final OverlayObject[] objs = objects[q];
+				for (int j = 0; j < objs.length; j++) {
+					final Object o = objs[j];
+					if (!type.isInstance(o)) continue;
+					final OverlayNodedObject ono = (OverlayNodedObject) o;
+					out.write(nl + NODE_HEADERS[t] + ++k + " nodes:" + nl);
+					out.write("X\tY" + nl);
+					final float[][] nodes = ono.getNodes();
+					for (int n = 0; n < nodes[0].length; n++) {
+						out.write(Float.toString(nodes[0][n]));
+						out.write('\t');
+						out.write(Float.toString(nodes[1][n]));
+						out.write(nl);
+					}
+				}
+			}
+		}
+		out.flush();
+	}
+
+	// -- Spreadsheet export methods --
+
+	/**
+	 * Exports the overlays of the given transform to the given file, in the
+	 * spreadsheet layout of {@link OverlayIO#exportOverlays}. The file format
+	 * is chosen from the file extension, as in
+	 * {@link OverlayBatchMeasurer#createWriter(File)}; .xlsx, .csv and .tsv
+	 * files are streamed to disk as rows are produced.
+	 *
+	 * @param task task for reporting progress, or null if running headless
+	 * @return the number of overlays exported
+	 */
+	public static int exportRows(final File file, final OverlayTransform trans,
+		final BioTask task) throws IOException
+	{
+		final RowWriter out = OverlayBatchMeasurer.createWriter(file);
+		try {
+			return exportRows(out, trans, task);
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Exports the overlays of the given transform to the given row writer, in
+	 * the spreadsheet layout of {@link OverlayIO#exportOverlays}. Rows are
+	 * produced directly from the overlay lists, one pass per overlay type for
+	 * the statistics and nodes sections, so no intermediate lists are built.
+	 *
+	 * @param task task for reporting progress, or null if running headless
+	 * @return the number of overlays exported
+	 */
+	public static int exportRows(final RowWriter out,
+		final OverlayTransform trans, final BioTask task) throws IOException
+	{
+		final String[] dims = trans.getDimTypes();
+		final int[] lengths = trans.getLengths();
+		final OverlayStore overlays = trans.overlays;
+		final int[] positions;
+		final OverlayObject[][] objects;
+		synchronized (overlays) {
+			positions = overlays.getPositions();
+			objects = copyObjects(overlays, positions);
+		}
+		final String[] titles = OverlayUtil.getOverlayTypes();
+		// progress: overlays table, each type's statistics, nodes
+		final int steps = positions.length * (titles.length + 2);
+		int step = 0;
+		if (task != null) task.setStatus(0, steps, "Exporting overlays");
+		final Object[] blank = new Object[0];
+
+		// file header
+		out.writeRow(new Object[] { VisBio.TITLE + " " + VisBio.VERSION +
+			" overlay file written " + new Date() });
+
+		// table header
+		final String[] colHeaders =
+			{ "x1", "y1", "x2", "y2", "text", "color", "filled", "group", "notes" };
+		final Object[] row = new Object[1 + lengths.length + colHeaders.length];
+		int r = 0;
+		row[r++] = "Overlay";
+		for (int p = 0; p < lengths.length; p++) {
+			row[r++] = dims[p] + " (" + lengths[p] + ")";
+		}
+		for (int i = 0; i < colHeaders.length; i++)
+			row[r++] = colHeaders[i];
+		out.writeRow(row);
+
+		// overlays table
+		int count = 0;
+		for (int q = 0; q < positions.length; q++) {
+			final OverlayObject[] objs = objects[q];
+			final int[] pos = FormatTools.rasterToPosition(lengths, positions[q]);
+			for (int j = 0; j < objs.length; j++) {
+				final OverlayObject obj = objs[j];
+				r = 0;
+				row[r++] = obj.toString();
+				// add 1 to shift indices for humans
+				for (int p = 0; p < pos.length; p++)
+					row[r++] = new Integer(pos[p] + 1);
+				row[r++] = obj.hasEndpoint() ? (Object) new Float(obj.x1)
+					: NOT_APPLICABLE;
+				row[r++] = obj.hasEndpoint() ? (Object) new Float(obj.y1)
+					: NOT_APPLICABLE;
+				row[r++] = obj.hasEndpoint2() ? (Object) new Float(obj.x2)
+					: NOT_APPLICABLE;
+				row[r++] = obj.hasEndpoint2() ? (Object) new Float(obj.y2)
+					: NOT_APPLICABLE;
+				row[r++] = obj.hasText() ? obj.text : NOT_APPLICABLE;
+				row[r++] = ColorUtil.colorToHex(obj.color);
+				row[r++] = obj.canBeFilled() ? "" + obj.filled : NOT_APPLICABLE;
+				row[r++] = clean(obj.group);
+				row[r++] = clean(obj.notes);
+				out.writeRow(row);
+				count++;
+			}
+			if (task != null) {
+				if (task.isStopped()) return count;
+				task.setStatus(++step, steps);
+			}
+		}
+
+		// statistics by object type, one pass over the overlays per type
+		measureSelectedStats(trans);
+		for (int v = 0; v < titles.length; v++) {
+			final String[] stats = getSelectedStats(titles[v]);
+			int index = 0;
+			for (int q = 0; q < positions.length; q++) {
+				final OverlayObject[] objs = objects[q];
+				for (int j = 0; j < objs.length; j++) {
+					final OverlayObject obj = objs[j];
+					if (!titles[v].equals(obj.toString())) continue;
+					if (index == 0) {
+						out.writeRow(blank);
+						out.writeRow(new Object[] { titles[v] + " Statistics" });
+					}
+					out.writeRow(new Object[] { titles[v] + " " + ++index });
+					for (int s = 0; s < stats.length; s++) {
+						out.writeRow(new Object[] { null, stats[s],
+							obj.getStat(stats[s]) });
+					}
+				}
+				if (task != null) {
+					if (task.isStopped()) return count;
+					task.setStatus(++step, steps);
+				}
+			}
+		}
+
+		// nodes of noded objects, freeforms first
+		out.writeRow(blank);
+		final Object[] xy = new Object[2];
+		for (int t = 0; t < NODE_HEADERS.length; t++) {
+			final Class type = t == 0 ? OverlayFreeform.class : OverlayPolyline.class;
+			int k = 0;
+			for (int q = 0; q < positions.length; q++) {
+				final OverlayObject[] objs = objects[q];
+				for (int j = 0; j < objs.length; j++) {
+					final Object o = objs[j];
+					if (!type.isInstance(o)) continue;
+					final OverlayNodedObject ono = (OverlayNodedObject) o;
+					out.writeRow(new Object[] { ono + " " + ++k });
+					out.writeRow(new Object[] { "X", "Y" });
+					final float[][] nodes = ono.getNodes();
+					for (int n = 0; n < nodes[0].length; n++) {
+						xy[0] = new Float(nodes[0][n]);
+						xy[1] = new Float(nodes[1][n]);
+						out.writeRow(xy);
+					}
+					out.writeRow(blank);
+				}
+				if (task != null) {
+					if (task.isStopped()) return count;
+					if (t == NODE_HEADERS.length - 1) task.setStatus(++step, steps);
+				}
+			}
+		}
+		return count;
+	}
+
+	// -- Binary format methods --
+
+	/**
+	 * Reads overlays in the binary overlay format from the given stream.
+	 *
+	 * @return the overlays at each dimensional position of the given transform
+	 * @throws IOException if the file cannot be read or is invalid
+	 */
+	public static OverlayStore readBinary(final InputStream stream,
+		final OverlayTransform trans) throws IOException
+	{
+		final DataInputStream in =
+			new DataInputStream(new BufferedInputStream(stream, BUFFER_SIZE));
+		if (in.readInt() != BINARY_MAGIC) {
+			throw new IOException("Not a binary overlay file");
+		}
+		final int version = in.readInt();
+		if (version > BINARY_VERSION) {
+			throw new IOException("Unsupported binary overlay version: " + version);
+		}
+
+		final String[] dims = trans.getDimTypes();
+		final int[] lengths = trans.getLengths();
+		final int numDims = in.readInt();
+		final String[] theDims = new String[numDims];
+		final int[] theLengths = new int[numDims];
+		for (int i = 0; i < numDims; i++) {
+			theDims[i] = readString(in, version);
+			theLengths[i] = in.readInt();
+		}
+		if (!ObjectUtil.arraysEqual(dims, theDims)) {
+			throw new IOException("Dimensional axis types do not match");
+		}
+		if (!ObjectUtil.arraysEqual(lengths, theLengths)) {
+			throw new IOException("Dimensional axis lengths do not match");
+		}
+
+		final OverlayStore loaded =
+			new OverlayStore(FormatTools.getRasterLength(lengths));
+
+		final String[] types = OverlayUtil.getOverlayTypes();
+		byte[] bytes = new byte[8 * 256];
+		final int count = in.readInt();
+		for (int n = 0; n < count; n++) {
+			final int type = in.readByte();
+			final int raster = in.readInt();
+			if (type < 0 || type >= types.length) {
+				throw new IOException("Invalid overlay type code: " + type);
+			}
+			if (raster < 0 || raster >= loaded.getLength()) {
+				throw new IOException("Invalid dimensional position: " + raster);
+			}
+			final OverlayObject obj = newOverlay(types[type], trans);
+			obj.x1 = in.readFloat();
+			obj.y1 = in.readFloat();
+			obj.x2 = in.readFloat();
+			obj.y2 = in.readFloat();
+			obj.text = in.readBoolean() ? readString(in, version) : null;
+			obj.color = new Color(in.readInt(), true);
+			obj.filled = in.readBoolean();
+			obj.group = readString(in, version);
+			obj.notes = readString(in, version);
+			obj.drawing = false;
+			obj.selected = false;
+			if (obj instanceof OverlayNodedObject) {
+				final int numNodes = in.readInt();
+				final int numBytes = 8 * numNodes;
+				if (numBytes > bytes.length) bytes = new byte[numBytes];
+				in.readFully(bytes, 0, numBytes);
+				final FloatBuffer fb = ByteBuffer.wrap(bytes, 0, numBytes).asFloatBuffer();
+				final float[][] nodes = new float[2][numNodes];
+				fb.get(nodes[0]);
+				fb.get(nodes[1]);
+				((OverlayNodedObject) obj).setNodes(nodes);
+			}
+			loaded.getOrCreate(raster).add(obj);
+		}
+		trans.setTextDrawn(true);
+		return loaded;
+	}
+
+	/** Writes the overlays of the given transform in the binary format. */
+	public static void writeBinary(final OutputStream stream,
+		final OverlayTransform trans) throws IOException
+	{
+		final DataOutputStream out =
+			new DataOutputStream(new BufferedOutputStream(stream, BUFFER_SIZE));
+		final String[] dims = trans.getDimTypes();
+		final int[] lengths = trans.getLengths();
+		final OverlayStore overlays = trans.overlays;
+		final int[] positions;
+		final OverlayObject[][] objects;
+		synchronized (overlays) {
+			positions = overlays.getPositions();
+			objects = copyObjects(overlays, positions);
+		}
+		final String[] types = OverlayUtil.getOverlayTypes();
+
+		out.writeInt(BINARY_MAGIC);
+		out.writeInt(BINARY_VERSION);
+		out.writeInt(lengths.length);
+		for (int i = 0; i < lengths.length; i++) {
+			writeString(out, dims[i]);
+			out.writeInt(lengths[i]);
+		}
+
+		int count = 0;
+		for (int q = 0; q < positions.length; q++)
+			count += objects[q].length;
+		out.writeInt(count);
+
+		byte[] bytes = new byte[8 * 256];
+		for (int q = 0; q < positions.length; q++) {
+			final int i = positions[q];
+			final OverlayObject[] objs = objects[q];
+			for (int j = 0; j < objs.length; j++) {
+				final OverlayObject obj = objs[j];
+				final String name = obj.toString();
+				int type = -1;
+				for (int t = 0; t < types.length && type < 0; t++) {
+					if (types[t].equals(name)) type = t;
+				}
+				if (type < 0) throw new IOException("Unknown overlay type: " + name);
+				out.writeByte(type);
+				out.writeInt(i);
+				out.writeFloat(obj.x1);
+				out.writeFloat(obj.y1);
+				out.writeFloat(obj.x2);
+				out.writeFloat(obj.y2);
+				out.writeBoolean(obj.text != null);
+				if (obj.text != null) writeString(out, obj.text);
+				out.writeInt(obj.color == null ? 0 : obj.color.getRGB());
+				out.writeBoolean(obj.filled);
+				writeString(out, obj.group == null ? "" : obj.group);
+				writeString(out, obj.notes == null ? "" : obj.notes);
+				if (obj instanceof OverlayNodedObject) {
+					final float[][] nodes = ((OverlayNodedObject) obj).getNodes();
+					final int numNodes = nodes[0].length;
+					final int numBytes = 8 * numNodes;
+					if (numBytes > bytes.length) bytes = new byte[numBytes];
+					final FloatBuffer fb =
+						ByteBuffer.wrap(bytes, 0, numBytes).asFloatBuffer();
+					fb.put(nodes[0]);
+					fb.put(nodes[1]);
+					out.writeInt(numNodes);
+					out.write(bytes, 0, numBytes);
+				}
+			}
+		}
+		out.flush();
+	}
+
+	// -- Utility methods --
+
+	/**
+	 * Instantiates an overlay object of the given type (e.g., "Freeform"), or
+	 * returns null if the type is unknown. Unlike
+	 * {@link OverlayIO#createOverlay}, this does not use reflection.
+	 */
+	public static OverlayObject newOverlay(final String type,
+		final OverlayTransform trans)
+	{
+		if (type.equals("Line")) return new OverlayLine(trans);
+		if (type.equals("Freeform")) return new OverlayFreeform(trans);
+		if (type.equals("Marker")) return new OverlayMarker(trans);
+		if (type.equals("Text")) return new OverlayText(trans);
+		if (type.equals("Oval")) return new OverlayOval(trans);
+		if (type.equals("Box")) return new OverlayBox(trans);
+		if (type.equals("Arrow")) return new OverlayArrow(trans);
+		if (type.equals("Polyline")) return new OverlayPolyline(trans);
+		return null;
+	}
+
+	/**
+	 * Gets the statistics of the given overlay type selected for saving in the
+	 * options. If VisBio is not running (e.g., in batch mode), all statistics
+	 * are selected.
+	 */
+	public static String[] getSelectedStats(final String type) {
+		final String[] stats = OverlayUtil.getStatTypes(type);
+		final VisBioFrame bio = VisBioFrame.getVisBio();
+		final OptionManager om =
+			bio == null ? null : (OptionManager) bio.getManager(OptionManager.class);
+		if (om == null) return stats;
+		final Vector v = new Vector();
+		for (int i = 0; i < stats.length; i++) {
+			final BooleanOption option =
+				(BooleanOption) om.getOption(type + "." + stats[i]);
+			if (option == null || option.getValue()) v.add(stats[i]);
+		}
+		final String[] selected = new String[v.size()];
+		v.copyInto(selected);
+		return selected;
+	}
+
+	/**
+	 * Computes intensity statistics of all overlays up front, in parallel, if
+	 * any intensity statistics are selected for saving.
+	 */
+	public static void measureSelectedStats(final OverlayTransform trans) {
+		final String[] types = OverlayUtil.getOverlayTypes();
+		for (int i = 0; i < types.length; i++) {
+			if (OverlayMeasurer.hasIntensityStat(getSelectedStats(types[i]))) {
+				trans.getMeasurer().measureAll();
+				return;
+			}
+		}
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Copies the overlays at the given positions, so they can be written while
+	 * the user goes on editing. The caller must hold the store's lock.
+	 */
+	private static OverlayObject[][] copyObjects(final OverlayStore overlays,
+		final int[] positions)
+	{
+		final OverlayObject[][] objects = new OverlayObject[positions.length][];
+		for (int q = 0; q < positions.length; q++) {
+			final Vector objs = overlays.get(positions[q]);
+			objects[q] = new OverlayObject[objs == null ? 0 : objs.size()];
+			if (objs != null) objs.copyInto(objects[q]);
+		}
+		return objects;
+	}
+
+	/** Writes a string of any length as its UTF-8 byte count and bytes. */
+	private static void writeString(final DataOutputStream out, final String s)
+		throws IOException
+	{
+		final byte[] b = s.getBytes("UTF-8");
+		out.writeInt(b.length);
+		out.write(b);
+	}
+
+	/** Reads a string written by the given version of the binary format. */
+	private static String readString(final DataInputStream in,
+		final int version) throws IOException
+	{
+		if (version < 2) return in.readUTF();
+		final int len = in.readInt();
+		if (len < 0) throw new IOException("Invalid string length: " + len);
+		final byte[] b = new byte[len];
+		in.readFully(b);
+		return new String(b, "UTF-8");
+	}
+
+	/**
+	 * Records the offsets of the tab-separated fields of the given line. The
+	 * returned array holds the index of each field's terminating tab, with the
+	 * final field terminated by the end of the line.
+	 *
+	 * @return the number of fields, or tabs.length + 1 if there are too many
+	 */
+	private static int split(final String line, final int[] tabs) {
+		int count = 0;
+		int ndx = line.indexOf('\t');
+		while (ndx >= 0) {
+			if (count == tabs.length - 1) return tabs.length + 1;
+			tabs[count++] = ndx;
+			ndx = line.indexOf('\t', ndx + 1);
+		}
+		tabs[count++] = line.length();
+		return count;
+	}
+
+	/** Gets the given tab-separated field, after a call to split. */
+	private static String field(final String line, final int[] tabs,
+		final int f)
+	{
+		final int start = f == 0 ? 0 : tabs[f - 1] + 1;
+		return line.substring(start, tabs[f]);
+	}
+
+	/** Parses a coordinate value, which may be "N/A". */
+	private static float parseCoord(final String s) {
+		return s.equals(NOT_APPLICABLE) ? Float.NaN : Float.parseFloat(s);
+	}
+
+	/** Whether the given line is the header of a node list. */
+	private static boolean isNodeHeader(final String line) {
+		if (!line.endsWith(" nodes:")) return false;
+		for (int i = 0; i < NODE_HEADERS.length; i++) {
+			if (line.startsWith(NODE_HEADERS[i])) return true;
+		}
+		return false;
+	}
+
+	/** Assigns the first numNodes buffered nodes to the given object. */
+	private static void setNodes(final OverlayNodedObject ono, final float[] xs,
+		final float[] ys, final int numNodes)
+	{
+		final float[][] nodes = new float[2][numNodes];
+		System.arraycopy(xs, 0, nodes[0], 0, numNodes);
+		System.arraycopy(ys, 0, nodes[1], 0, numNodes);
+		ono.setNodes(nodes);
+	}
+
+	/** Replaces tabs in the given string with spaces. */
+	private static String clean(final String s) {
+		if (s == null) return "";
+		return s.indexOf('\t') < 0 ? s : s.replace('\t', ' ');
+	}
+
+	/** Constructs an exception describing an invalid overlay file. */
+	private static IOException error(final int line, final String msg) {
+		return new IOException("Invalid overlay file: " + msg +
+			" (error in line " + line + ")");
+	}
+
+}
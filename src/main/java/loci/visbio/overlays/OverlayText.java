@@ -96,6 +96,7 @@ public class OverlayText extends OverlayObject {
 		final FontMetrics fm = overlay.getFontMetrics();
 		x2 = x1 + mw * fm.stringWidth(text);
 		y2 = y1 + mh * fm.getHeight();
+		invalidate();
 	}
 
 	// -- OverlayObject API methods --
@@ -27,19 +27,30 @@ package loci.visbio.overlays;
 import java.awt.Color;
 import java.awt.Font;
 import java.awt.FontMetrics;
+import java.awt.Graphics;
 import java.awt.event.InputEvent;
 import java.awt.event.KeyEvent;
+import java.awt.image.BufferedImage;
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.rmi.RemoteException;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Vector;
 
 import javax.swing.JComponent;
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
 
 import loci.formats.FormatTools;
 import loci.poi.hssf.usermodel.HSSFWorkbook;
+import loci.visbio.BioTask;
+import loci.visbio.VisBioFrame;
 import loci.visbio.data.DataCache;
 import loci.visbio.data.DataManager;
 import loci.visbio.data.DataTransform;
@@ -116,17 +127,44 @@ public class OverlayTransform extends DataTransform implements
 	/** String indicating a given field is not applicable to an overlay. */
 	protected static final String NOT_APPLICABLE = "N/A";
 
+	/** Number of spatial index cells along the longer image axis. */
+	protected static final int INDEX_DIVISIONS = 64;
+
+	/** Maximum number of dimensional positions whose spatial index is kept. */
+	protected static final int MAX_INDICES = 4;
+
 	// -- Fields --
 
 	/** Controls for creating overlays. */
 	protected OverlayWidget controls;
 
-	/** List of overlays for each dimensional position. */
-	protected Vector[] overlays;
+	/** Lists of overlays at each occupied dimensional position. */
+	protected OverlayStore overlays;
 
 	/** Current dimensional position. */
 	protected int[] pos;
 
+	/**
+	 * Spatial indices of overlays, keyed by raster index of position, for the
+	 * most recently queried positions only.
+	 */
+	protected LinkedHashMap indices = new LinkedHashMap(16, 0.75f, true) {
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry eldest) {
+			if (size() <= MAX_INDICES) return false;
+			// release the evicted index's objects from the owner table
+			((OverlayIndex) eldest.getValue()).clear();
+			return true;
+		}
+	};
+
+	/** Spatial index holding each indexed overlay object, keyed by object. */
+	protected Hashtable owners = new Hashtable();
+
+	/** Intensity statistics engine for this transform's overlays. */
+	protected OverlayMeasurer measurer;
+
 	/** MathType for Text mappings. */
 	protected TextType textType;
 
@@ -151,6 +189,18 @@ public class OverlayTransform extends DataTransform implements
 	/** Dimensional position of overlays stored in the clipboard. */
 	protected int[] clipboardPos = null;
 
+	/** Lock guarding the batch state below. */
+	protected Object batchLock = new Object();
+
+	/** Depth of nested overlay batches in progress. */
+	protected int batchDepth;
+
+	/** Whether a data change notification is pending until batch commit. */
+	protected boolean batchChanged;
+
+	/** Whether an overlay list refresh is pending until batch commit. */
+	protected boolean batchRefresh;
+
 	/** Transient Select Box, if active. */
 	protected TransientSelectBox selectBox;
 
@@ -185,6 +235,58 @@ public class OverlayTransform extends DataTransform implements
 
 	// -- OverlayTransform API methods --
 
+	/**
+	 * Begins a batch of overlay changes. Until the matching call to
+	 * {@link #commitBatch()}, data change notifications and overlay list
+	 * refreshes are deferred, then issued once when the outermost batch is
+	 * committed, so that each linked display rebuilds its overlays only once.
+	 * Batches may be nested. Callers should commit in a finally block:
+	 *
+	 * <pre>
+	 * overlay.beginBatch();
+	 * try {
+	 *   // add, remove or paste overlays
+	 * }
+	 * finally {
+	 *   overlay.commitBatch();
+	 * }
+	 * </pre>
+	 */
+	public void beginBatch() {
+		synchronized (batchLock) {
+			batchDepth++;
+		}
+	}
+
+	/**
+	 * Ends a batch of overlay changes. When the outermost batch ends, issues
+	 * one coalesced overlay list refresh and data change notification for all
+	 * changes made during the batch.
+	 *
+	 * @throws IllegalStateException if no batch is in progress
+	 */
+	public void commitBatch() {
+		final boolean changed, refresh;
+		synchronized (batchLock) {
+			if (batchDepth == 0) {
+				throw new IllegalStateException("No overlay batch in progress");
+			}
+			if (--batchDepth > 0) return;
+			changed = batchChanged;
+			refresh = batchRefresh;
+			batchChanged = batchRefresh = false;
+		}
+		if (refresh) refreshControls();
+		if (changed) notifyListeners(new TransformEvent(this));
+	}
+
+	/** Gets whether a batch of overlay changes is in progress. */
+	public boolean isBatching() {
+		synchronized (batchLock) {
+			return batchDepth > 0;
+		}
+	}
+
 	/** Adds an overlay object at the current dimensional position. */
 	public void addObject(final OverlayObject obj) {
 		addObject(obj, pos);
@@ -194,11 +296,13 @@ public class OverlayTransform extends DataTransform implements
 	public void addObject(final OverlayObject obj, final int[] pos) {
 		configureOverlay(obj);
 		final int ndx = FormatTools.positionToRaster(lengths, pos);
-		if (ndx < 0 || ndx >= overlays.length) return;
+		if (ndx < 0 || ndx >= overlays.getLength()) return;
 		synchronized (overlays) {
-			overlays[ndx].add(obj);
+			overlays.getOrCreate(ndx).add(obj);
+			final OverlayIndex index = (OverlayIndex) indices.get(new Integer(ndx));
+			if (index != null) index.add(obj);
 		}
-		if (ObjectUtil.arraysEqual(pos, this.pos)) controls.refreshListObjects();
+		if (ObjectUtil.arraysEqual(pos, this.pos)) refreshControls();
 		notifyListeners(new TransformEvent(this));
 	}
 
@@ -210,11 +314,16 @@ public class OverlayTransform extends DataTransform implements
 	/** Removes an overlay object at the given dimensional position. */
 	public void removeObject(final OverlayObject obj, final int[] pos) {
 		final int ndx = FormatTools.positionToRaster(lengths, pos);
-		if (ndx < 0 || ndx >= overlays.length) return;
+		if (ndx < 0 || ndx >= overlays.getLength()) return;
 		synchronized (overlays) {
-			overlays[ndx].remove(obj);
+			final Vector objs = overlays.get(ndx);
+			if (objs == null) return;
+			objs.remove(obj);
+			overlays.compact(ndx);
+			final OverlayIndex index = (OverlayIndex) indices.get(new Integer(ndx));
+			if (index != null) index.remove(obj);
 		}
-		if (ObjectUtil.arraysEqual(pos, this.pos)) controls.refreshListObjects();
+		if (ObjectUtil.arraysEqual(pos, this.pos)) refreshControls();
 		notifyListeners(new TransformEvent(this));
 	}
 
@@ -236,21 +345,26 @@ public class OverlayTransform extends DataTransform implements
 	/** Removes selected overlay objects at the given dimensional position. */
 	public void removeSelectedObjects(final int[] pos) {
 		final int ndx = FormatTools.positionToRaster(lengths, pos);
-		if (ndx < 0 || ndx >= overlays.length) return;
+		if (ndx < 0 || ndx >= overlays.getLength()) return;
 		boolean anyRemoved = false;
 		int i = 0;
 		synchronized (overlays) {
-			while (i < overlays[ndx].size()) {
-				final OverlayObject obj = (OverlayObject) overlays[ndx].elementAt(i);
+			final Vector objs = overlays.get(ndx);
+			if (objs == null) return;
+			final OverlayIndex index = (OverlayIndex) indices.get(new Integer(ndx));
+			while (i < objs.size()) {
+				final OverlayObject obj = (OverlayObject) objs.elementAt(i);
 				if (obj.isSelected()) {
-					overlays[ndx].removeElementAt(i);
+					objs.removeElementAt(i);
+					if (index != null) index.remove(obj);
 					anyRemoved = true;
 				}
 				else i++;
 			}
+			overlays.compact(ndx);
 		}
 		if (anyRemoved) {
-			if (ObjectUtil.arraysEqual(pos, this.pos)) controls.refreshListObjects();
+			if (ObjectUtil.arraysEqual(pos, this.pos)) refreshControls();
 			notifyListeners(new TransformEvent(this));
 		}
 	}
@@ -269,15 +383,19 @@ public class OverlayTransform extends DataTransform implements
 	 */
 	public void copySelectedObjects(final int[] pos) {
 		final int ndx = FormatTools.positionToRaster(lengths, pos);
-		if (ndx < 0 || ndx >= overlays.length) return;
+		if (ndx < 0 || ndx >= overlays.getLength()) return;
 		synchronized (overlays) {
 			clipboard.removeAllElements();
 			clipboardPos = pos;
-			for (int i = 0; i < overlays[ndx].size(); i++) {
-				final OverlayObject obj = (OverlayObject) overlays[ndx].elementAt(i);
+			final int size = overlays.size(ndx);
+			for (int i = 0; i < size; i++) {
+				final OverlayObject obj =
+					(OverlayObject) overlays.get(ndx).elementAt(i);
 				if (obj.isSelected()) clipboard.add(obj);
 			}
-			controls.refreshPasteComponent(!clipboard.isEmpty());
+			if (controls != null) {
+				controls.refreshPasteComponent(!clipboard.isEmpty());
+			}
 		}
 	}
 
@@ -289,9 +407,11 @@ public class OverlayTransform extends DataTransform implements
 	/** Pastes copied objects at the given dimensional position. */
 	public void pasteObjects(final int[] pos) {
 		final int ndx = FormatTools.positionToRaster(lengths, pos);
-		if (ndx < 0 || ndx >= overlays.length) return;
+		if (ndx < 0 || ndx >= overlays.getLength()) return;
 		synchronized (overlays) {
 			if (clipboard.isEmpty()) return;
+			final Vector objs = overlays.getOrCreate(ndx);
+			final OverlayIndex index = (OverlayIndex) indices.get(new Integer(ndx));
 			for (int i = 0; i < clipboard.size(); i++) {
 				final OverlayObject orig = (OverlayObject) clipboard.elementAt(i);
 				final OverlayObject obj =
@@ -308,17 +428,18 @@ public class OverlayTransform extends DataTransform implements
 				obj.drawing = false;
 				obj.selected = true;
 				if (obj instanceof OverlayText) ((OverlayText) obj).computeTextBounds();
-				overlays[ndx].add(obj);
+				objs.add(obj);
+				if (index != null) index.add(obj);
 			}
 		}
-		controls.refreshListObjects();
+		refreshControls();
 		notifyListeners(new TransformEvent(this));
 	}
 
 	/**
 	 * Distributes one object per dimensional position linearly between the
-	 * position of the overlay currently on the clipboard, and the one selected at
-	 * the current dimensional position. Since there are a number of criteria
+	 * position of the overlays currently on the clipboard, and the ones selected
+	 * at the current dimensional position. Since there are a number of criteria
 	 * necessary to perform this task properly, it returns an error string if
 	 * there was a problem, or null if the operation was successful.
 	 */
@@ -328,111 +449,119 @@ public class OverlayTransform extends DataTransform implements
 
 	/**
 	 * Distributes one object per dimensional position linearly between the
-	 * position of the overlay currently on the clipboard, and the one selected at
-	 * the given dimensional position. Since there are a number of criteria
+	 * position of the overlays currently on the clipboard, and the ones selected
+	 * at the given dimensional position. Each overlay on the clipboard is paired
+	 * with the selected overlay in the same list order, so whole sets of
+	 * tracings can be distributed at once. Since there are a number of criteria
 	 * necessary to perform this task properly, it returns an error string if
 	 * there was a problem, or null if the operation was successful.
+	 * <p>
+	 * The intermediate overlays are computed in parallel without holding the
+	 * overlay lock, then inserted as a single batch, firing one change event
+	 * and recording one undoable state. This method may be called from any
+	 * thread, and should be called off the event dispatch thread for large
+	 * distributions.
 	 */
 	public String distributeObjects(final int[] pos) {
-		int ndx = FormatTools.positionToRaster(lengths, pos);
-		if (ndx < 0 || ndx >= overlays.length) {
+		final int ndx = FormatTools.positionToRaster(lengths, pos);
+		if (ndx < 0 || ndx >= overlays.getLength()) {
 			return "Invalid dimensional position.";
 		}
 
+		final OverlayObject[] clips, sels;
+		final int[] clipPos;
 		synchronized (overlays) {
-			// grab overlay from the clipboard
-			final int size = clipboard.size();
-			if (size == 0) {
+			// grab overlays from the clipboard
+			if (clipboard.isEmpty()) {
 				return "You must first copy an overlay to the clipboard.";
 			}
-			else if (size > 1) {
-				return "There must not be multiple overlays on the clipboard.";
-			}
-			final OverlayObject clip = (OverlayObject) clipboard.firstElement();
-
-			// grab currently selected overlay
-			OverlayObject sel = null;
-			for (int i = 0; i < overlays[ndx].size(); i++) {
-				final OverlayObject obj = (OverlayObject) overlays[ndx].elementAt(i);
-				if (obj.isSelected()) {
-					if (sel != null) {
-						return "There must not be multiple overlays selected.";
-					}
-					sel = obj;
-				}
+			clips = new OverlayObject[clipboard.size()];
+			clipboard.copyInto(clips);
+			clipPos = clipboardPos;
+
+			// grab currently selected overlays
+			final Vector selected = new Vector();
+			final Vector objs = overlays.get(ndx);
+			for (int i = 0; objs != null && i < objs.size(); i++) {
+				final OverlayObject obj = (OverlayObject) objs.elementAt(i);
+				if (obj.isSelected()) selected.add(obj);
 			}
-			if (sel == null) return "There must be an overlay selected.";
+			sels = new OverlayObject[selected.size()];
+			selected.copyInto(sels);
+		}
+		if (sels.length == 0) return "There must be an overlay selected.";
+		if (sels.length != clips.length) {
+			return "The number of selected overlays must match "
+				+ "the number of overlays on the clipboard.";
+		}
 
-			// ensure matching types
-			if (!clip.getClass().equals(sel.getClass())) {
-				return "The overlay on the clipboard must "
-					+ "be the same kind as the selected overlay.";
+		// ensure matching types
+		for (int i = 0; i < clips.length; i++) {
+			if (!clips[i].getClass().equals(sels[i].getClass())) {
+				return "Each overlay on the clipboard must "
+					+ "be the same kind as the corresponding selected overlay.";
 			}
+		}
 
-			// check dimensional positions
-			if (pos.length != clipboardPos.length) return "Incompatible overlays.";
-			int diffIndex = -1;
-			for (int i = 0; i < pos.length; i++) {
-				if (pos[i] != clipboardPos[i]) {
-					if (diffIndex != -1) {
-						return "Dimensional positions of copied overlay and selected "
-							+ "overlay must not vary across multiple axes.";
-					}
-					diffIndex = i;
+		// check dimensional positions
+		if (pos.length != clipPos.length) return "Incompatible overlays.";
+		int diffIndex = -1;
+		for (int i = 0; i < pos.length; i++) {
+			if (pos[i] != clipPos[i]) {
+				if (diffIndex != -1) {
+					return "Dimensional positions of copied overlay and selected "
+						+ "overlay must not vary across multiple axes.";
 				}
+				diffIndex = i;
 			}
-			if (diffIndex == -1) {
-				return "Nothing to distribute -- copied overlay and selected overlay "
-					+ "have identical dimensional positions.";
-			}
-			int distance = pos[diffIndex] - clipboardPos[diffIndex];
-			final boolean reverse = distance < 0;
-			if (reverse) distance = -distance;
-			if (distance < 2) {
-				return "Nothing to distribute -- there are no frames between copied "
-					+ "overlay and selected overlay.";
-			}
+		}
+		if (diffIndex == -1) {
+			return "Nothing to distribute -- copied overlay and selected overlay "
+				+ "have identical dimensional positions.";
+		}
+		int distance = pos[diffIndex] - clipPos[diffIndex];
+		final boolean reverse = distance < 0;
+		if (reverse) distance = -distance;
+		if (distance < 2) {
+			return "Nothing to distribute -- there are no frames between copied "
+				+ "overlay and selected overlay.";
+		}
+
+		// compute intermediate overlays
+		final OverlayObject[][] created = interpolateObjects(clips, sels, distance);
 
-			// compile some information about the overlays
-			final String className = sel.getClass().getName();
-			final boolean filled = clip.filled && sel.filled;
-			final String group =
-				ObjectUtil.objectsEqual(clip.group, sel.group) ? clip.group : null;
-			final String notes =
-				ObjectUtil.objectsEqual(clip.notes, sel.notes) ? clip.notes : null;
-
-			// loop through intermediate dimensional positions
-			final int inc = reverse ? 1 : -1;
-			final int[] p = new int[pos.length];
-			System.arraycopy(pos, 0, p, 0, pos.length);
+		// insert intermediate overlays as a single batch
+		final int inc = reverse ? 1 : -1;
+		final int[] p = new int[pos.length];
+		System.arraycopy(pos, 0, p, 0, pos.length);
+		synchronized (overlays) {
 			for (int i = 1; i < distance; i++) {
 				p[diffIndex] = pos[diffIndex] + i * inc;
-				ndx = FormatTools.positionToRaster(lengths, p);
-
-				final OverlayObject obj = OverlayIO.createOverlay(className, this);
-
-				final float q = (float) i / distance;
-				obj.x1 = q * clip.x1 + (1 - q) * sel.x1;
-				obj.y1 = q * clip.y1 + (1 - q) * sel.y1;
-				obj.x2 = q * clip.x2 + (1 - q) * sel.x2;
-				obj.y2 = q * clip.y2 + (1 - q) * sel.y2;
-				obj.color =
-					new Color((int) (q * clip.color.getRed() + (1 - q) *
-						sel.color.getRed()), (int) (q * clip.color.getGreen() + (1 - q) *
-						sel.color.getGreen()), (int) (q * clip.color.getBlue() + (1 - q) *
-						sel.color.getBlue()));
-				obj.filled = filled;
-				obj.group = group;
-				obj.notes = notes;
-				obj.drawing = false;
-				obj.selected = false;
-				if (obj instanceof OverlayText) ((OverlayText) obj).computeTextBounds();
-
-				overlays[ndx].add(obj);
+				final int n = FormatTools.positionToRaster(lengths, p);
+				final Vector objs = overlays.getOrCreate(n);
+				final OverlayIndex index = (OverlayIndex) indices.get(new Integer(n));
+				for (int j = 0; j < created[i - 1].length; j++) {
+					final OverlayObject obj = created[i - 1][j];
+					if (obj == null) continue;
+					objs.add(obj);
+					if (index != null) index.add(obj);
+				}
 			}
 		}
 
 		notifyListeners(new TransformEvent(this));
+		final VisBioFrame bio = VisBioFrame.getVisBio();
+		if (bio != null) {
+			// distributing may run off the event thread
+			SwingUtilities.invokeLater(new Runnable() {
+
+				@Override
+				public void run() {
+					bio.generateEvent(bio.getManager(DataManager.class),
+						"distribute overlays of " + getName(), true);
+				}
+			});
+		}
 		return null;
 	}
 
@@ -444,17 +573,131 @@ public class OverlayTransform extends DataTransform implements
 	/** Gets the overlay objects at the given dimensional position. */
 	public OverlayObject[] getObjects(final int[] pos) {
 		final int ndx = FormatTools.positionToRaster(lengths, pos);
-		if (ndx < 0 || ndx >= overlays.length) return null;
-		final OverlayObject[] oo = new OverlayObject[overlays[ndx].size()];
-		overlays[ndx].copyInto(oo);
-		return oo;
+		if (ndx < 0 || ndx >= overlays.getLength()) return null;
+		synchronized (overlays) {
+			final Vector objs = overlays.get(ndx);
+			final OverlayObject[] oo =
+				new OverlayObject[objs == null ? 0 : objs.size()];
+			if (objs != null) objs.copyInto(oo);
+			return oo;
+		}
+	}
+
+	/**
+	 * Gets the spatial index of the overlay objects at the given dimensional
+	 * position, building it if necessary, or null if there are no overlays at
+	 * that position. Only the indices of a few recently queried positions are
+	 * kept.
+	 */
+	public OverlayIndex getIndex(final int[] pos) {
+		final int ndx = FormatTools.positionToRaster(lengths, pos);
+		if (ndx < 0 || ndx >= overlays.getLength()) return null;
+		final Integer key = new Integer(ndx);
+		synchronized (overlays) {
+			OverlayIndex index = (OverlayIndex) indices.get(key);
+			if (index == null) {
+				final Vector objs = overlays.get(ndx);
+				if (objs == null || objs.isEmpty()) return null;
+				index =
+					new OverlayIndex(0, 0, getScalingValueX(), getScalingValueY(),
+						INDEX_DIVISIONS, owners);
+				for (int i = 0; i < objs.size(); i++) {
+					index.add((OverlayObject) objs.elementAt(i));
+				}
+				indices.put(key, index);
+			}
+			return index;
+		}
+	}
+
+	/**
+	 * Gets the overlay object at the given dimensional position nearest to the
+	 * given point, or null if there is none within the given radius.
+	 */
+	public OverlayObject getNearestObject(final int[] pos, final float x,
+		final float y, final double radius)
+	{
+		final OverlayIndex index = getIndex(pos);
+		return index == null ? null : index.getNearest(x, y, radius);
+	}
+
+	/**
+	 * Gets the overlay objects at the given dimensional position lying within
+	 * the given radius of the given point.
+	 */
+	public OverlayObject[] getObjectsWithin(final int[] pos, final float x,
+		final float y, final double radius)
+	{
+		final OverlayIndex index = getIndex(pos);
+		return index == null ? null : index.getWithin(x, y, radius);
+	}
+
+	/**
+	 * Gets the overlay objects at the given dimensional position whose bounding
+	 * boxes intersect the given rectangle.
+	 */
+	public OverlayObject[] getObjectsIntersecting(final int[] pos,
+		final float x1, final float y1, final float x2, final float y2)
+	{
+		final OverlayIndex index = getIndex(pos);
+		return index == null ? null : index.getIntersecting(x1, y1, x2, y2);
+	}
+
+	/**
+	 * Gets the node nearest to the given point among the noded objects of the
+	 * given type at the given dimensional position, or null if there is none
+	 * within the given radius.
+	 */
+	public OverlayIndex.NodeHit getNearestNode(final int[] pos, final float x,
+		final float y, final double radius, final Class type)
+	{
+		final OverlayIndex index = getIndex(pos);
+		return index == null ? null : index.getNearestNode(x, y, radius, type);
+	}
+
+	/**
+	 * Notifies this transform that the given overlay object has changed, so
+	 * that the spatial index containing it is brought up to date.
+	 */
+	public void objectChanged(final OverlayObject obj) {
+		final OverlayIndex index = (OverlayIndex) owners.get(obj);
+		if (index != null) index.update(obj);
+	}
+
+	/**
+	 * Gets the raster index of the dimensional position containing the given
+	 * overlay object, or -1 if the object is not part of this transform.
+	 */
+	public int getRasterIndex(final OverlayObject obj) {
+		synchronized (overlays) {
+			return overlays.indexOf(obj);
+		}
+	}
+
+	/** Gets the engine computing intensity statistics within overlays. */
+	public synchronized OverlayMeasurer getMeasurer() {
+		if (measurer == null) measurer = new OverlayMeasurer(this);
+		return measurer;
+	}
+
+	/**
+	 * Measures the intensity statistics of all area overlays at every
+	 * dimensional position, writing the results to the given .csv or .xls file.
+	 *
+	 * @param task task for reporting progress, or null if running headless
+	 * @return the number of rows written
+	 */
+	public int measureAllPositions(final File file, final BioTask task)
+		throws IOException
+	{
+		return new OverlayBatchMeasurer(this).measure(file, task);
 	}
 
 	/** Sets transform's current dimensional position. */
 	public void setPos(final int[] pos) {
 		if (ObjectUtil.arraysEqual(this.pos, pos)) return;
 		this.pos = pos;
-		controls.refreshListObjects();
+		if (controls != null) controls.refreshListObjects();
 	}
 
 	/** Gets transform's current dimensional position. */
@@ -464,23 +707,45 @@ public class OverlayTransform extends DataTransform implements
 
 	/** Reads the overlays from the given reader. */
 	public void loadOverlays(final BufferedReader in) throws IOException {
-		final Vector[] loadedOverlays = OverlayIO.loadOverlays(in, this);
-		if (loadedOverlays == null) return;
-		overlays = loadedOverlays;
-		controls.refreshListObjects();
-		notifyListeners(new TransformEvent(this));
+		setOverlays(OverlayStreamIO.readText(in, this));
 	}
 
 	/** Writes the overlays to the given writer. */
-	public void saveOverlays(final PrintWriter out) {
-		OverlayIO.saveOverlays(out, this);
+	public void saveOverlays(final PrintWriter out) throws IOException {
+		OverlayStreamIO.writeText(out, this);
 	}
 
-	/** Exports the overlays as .xls to the given output file. */
+	/** Reads the overlays in binary format from the given stream. */
+	public void loadOverlaysBinary(final InputStream in) throws IOException {
+		setOverlays(OverlayStreamIO.readBinary(in, this));
+	}
+
+	/** Writes the overlays in binary format to the given stream. */
+	public void saveOverlaysBinary(final OutputStream out) throws IOException {
+		OverlayStreamIO.writeBinary(out, this);
+	}
+
+	/**
+	 * Exports the overlays as an in-memory .xls workbook, which is limited to
+	 * 65536 rows.
+	 */
 	public HSSFWorkbook exportOverlays() {
 		return OverlayIO.exportOverlays(this);
 	}
 
+	/**
+	 * Exports the overlays to the given file, in a format chosen from the file
+	 * extension (.xlsx, .xls, .csv or .tsv).
+	 *
+	 * @param task task for reporting progress, or null if running headless
+	 * @return the number of overlays exported
+	 */
+	public int exportOverlays(final File file, final BioTask task)
+		throws IOException
+	{
+		return OverlayStreamIO.exportRows(file, this, task);
+	}
+
 	/** Gets domain type (XY). */
 	public RealTupleType getDomainType() {
 		final ImageTransform it = (ImageTransform) parent;
@@ -607,6 +872,24 @@ public class OverlayTransform extends DataTransform implements
 
 	// -- DataTransform API methods --
 
+	/**
+	 * Sends a transform event to all listeners. Data change events sent while a
+	 * batch of overlay changes is in progress are deferred until the batch is
+	 * committed.
+	 */
+	@Override
+	public void notifyListeners(final TransformEvent e) {
+		if (e.getId() == TransformEvent.DATA_CHANGED) {
+			synchronized (batchLock) {
+				if (batchDepth > 0) {
+					batchChanged = true;
+					return;
+				}
+			}
+		}
+		super.notifyListeners(e);
+	}
+
 	/**
 	 * Retrieves the data corresponding to the given dimensional position, for the
 	 * given display dimensionality.
@@ -629,9 +912,10 @@ public class OverlayTransform extends DataTransform implements
 			return null;
 		}
 		final int q = FormatTools.positionToRaster(lengths, pos);
-		if (q < 0 || q >= overlays.length) return null;
+		if (q < 0 || q >= overlays.getLength()) return null;
 		synchronized (overlays) {
-			final int size = overlays[q].size();
+			final Vector objs = overlays.get(q);
+			final int size = objs == null ? 0 : objs.size();
 			DataImpl selectData = null;
 			FieldImpl rgbField = null, txtField = null;
 			try {
@@ -639,7 +923,7 @@ public class OverlayTransform extends DataTransform implements
 					// compute number of selected objects, text objects
 					int rgbSize = 0, txtSize = 0, sel = 0, outline = 0;
 					for (int i = 0; i < size; i++) {
-						final OverlayObject obj = (OverlayObject) overlays[q].elementAt(i);
+						final OverlayObject obj = (OverlayObject) objs.elementAt(i);
 						if (obj.hasText()) {
 							if (drawText || obj.isSelected()) txtSize++;
 							else outline++;
@@ -649,6 +933,7 @@ public class OverlayTransform extends DataTransform implements
 						if (obj.isSelected() && !obj.isDrawing()) sel++;
 					}
 					final RealType index = RealType.getRealType("overlay_index");
+					final float mult = OverlayUtil.getMultiplier(display);
 
 					// compile standard objects into RGB field
 					if (rgbSize > 0 || sel > 0 || outline > 0) {
@@ -661,30 +946,31 @@ public class OverlayTransform extends DataTransform implements
 						// compute overlay data for each non-text object
 						for (int i = 0, c = 0; i < size && c < rgbSize; i++) {
 							final OverlayObject obj =
-								(OverlayObject) overlays[q].elementAt(i);
+								(OverlayObject) objs.elementAt(i);
 							// rescale object if appropriate
 							// (currently applies only to OverlayMarkers)
-							if (obj.isScalable()) obj.rescale(OverlayUtil
-								.getMultiplier(display));
+							if (obj.isScalable()) obj.rescale(mult);
 							if (obj.hasText()) continue;
-							rgbField.setSample(c++, obj.getData(), false);
+							// reuse cached data for objects that have not changed,
+							// at a level of detail suited to the current zoom
+							rgbField.setSample(c++, obj.getCachedData(mult), false);
 						}
 						// compute selection grid for each selected object
 						for (int i = 0, c = 0; i < size && c < sel; i++) {
 							final OverlayObject obj =
-								(OverlayObject) overlays[q].elementAt(i);
+								(OverlayObject) objs.elementAt(i);
 							if (!obj.isSelected() || obj.isDrawing()) continue;
 							final DataImpl layer =
-								OverlayUtil.getSelectionLayer(obj, link, false);
+								obj.getCachedSelectionLayer(link, false, mult);
 							rgbField.setSample(rgbSize + c++, layer, false);
 						}
 						// compute outline grid for each invisible text object
 						for (int i = 0, c = 0; i < size && c < outline; i++) {
 							final OverlayObject obj =
-								(OverlayObject) overlays[q].elementAt(i);
+								(OverlayObject) objs.elementAt(i);
 							if (!obj.hasText() || obj.isSelected()) continue;
 							final DataImpl layer =
-								OverlayUtil.getSelectionLayer(obj, link, true);
+								obj.getCachedSelectionLayer(link, true, mult);
 							rgbField.setSample(rgbSize + sel + c++, layer, false);
 						}
 					}
@@ -700,9 +986,9 @@ public class OverlayTransform extends DataTransform implements
 						int c = 0;
 						for (int i = 0; i < size && c < txtSize; i++) {
 							final OverlayObject obj =
-								(OverlayObject) overlays[q].elementAt(i);
+								(OverlayObject) objs.elementAt(i);
 							if (!obj.hasText() || !drawText) continue;
-							txtField.setSample(c++, obj.getData(), false);
+							txtField.setSample(c++, obj.getCachedData(), false);
 						}
 					}
 				}
@@ -810,14 +1096,20 @@ public class OverlayTransform extends DataTransform implements
 		// obtain new font metrics
 		// HACK - always use metrics for font size 11, since it seems to work well
 		fontMetrics =
-			controls.getFontMetrics(new Font(font.getName(), font.getStyle(), 11));
+			makeFontMetrics(new Font(font.getName(), font.getStyle(), 11));
 
 		// recompute grid boxes for text overlays
 		// 4/24 removed computeGridParameters method
-		for (int j = 0; j < overlays.length; j++) {
-			for (int i = 0; i < overlays[j].size(); i++) {
-				final OverlayObject obj = (OverlayObject) overlays[j].get(i);
-				if (obj instanceof OverlayText) ((OverlayText) obj).computeTextBounds();
+		synchronized (overlays) {
+			final int[] positions = overlays.getPositions();
+			for (int j = 0; j < positions.length; j++) {
+				final Vector objs = overlays.get(positions[j]);
+				for (int i = 0; i < objs.size(); i++) {
+					final OverlayObject obj = (OverlayObject) objs.get(i);
+					if (obj instanceof OverlayText) {
+						((OverlayText) obj).computeTextBounds();
+					}
+				}
 			}
 		}
 
@@ -828,7 +1120,7 @@ public class OverlayTransform extends DataTransform implements
 	@Override
 	public void displayChanged(final DisplayEvent e) {
 		final int id = e.getId();
-		final OverlayTool tool = controls.getActiveTool();
+		final OverlayTool tool = controls == null ? null : controls.getActiveTool();
 		final DisplayImpl display = (DisplayImpl) e.getDisplay();
 
 		if (tool != null) {
@@ -886,8 +1178,9 @@ public class OverlayTransform extends DataTransform implements
 			else {
 				// update selected text objects
 				final int ndx = FormatTools.positionToRaster(lengths, pos);
-				if (ndx < 0 || ndx >= overlays.length) return;
-				final Vector objs = overlays[ndx];
+				if (ndx < 0 || ndx >= overlays.getLength()) return;
+				final Vector objs = overlays.get(ndx);
+				if (objs == null) return;
 				boolean changed = false;
 				for (int i = 0; i < objs.size(); i++) {
 					final OverlayObject oo = (OverlayObject) objs.elementAt(i);
@@ -962,9 +1255,8 @@ public class OverlayTransform extends DataTransform implements
 		makeLabels();
 
 		final int len = FormatTools.getRasterLength(lengths);
-		final Vector[] v = new Vector[len];
-		int minLen = 0;
-		if (overlays != null) {
+		if (overlays == null) overlays = new OverlayStore(len);
+		else {
 			// CTR - This logic is simplistic and will result in erroneous behavior
 			// should a transform with multiple dimensional axes suffer a length
 			// alteration along its axes. That is, the rasterization will probably be
@@ -976,16 +1268,18 @@ public class OverlayTransform extends DataTransform implements
 			// new lengths arrays, and act appropriately, but for now we simply
 			// preserve as many overlays as possible. If the dimensional axes have
 			// been significantly altered, too bad.
-			minLen = overlays.length < len ? overlays.length : len;
-			System.arraycopy(overlays, 0, v, 0, minLen);
+			synchronized (overlays) {
+				overlays.setLength(len);
+			}
+		}
+		synchronized (overlays) {
+			indices.clear();
+			owners.clear();
 		}
-		for (int i = minLen; i < len; i++)
-			v[i] = new Vector();
-		overlays = v;
 		pos = new int[lengths.length];
 
-		controls = new OverlayWidget(this);
-		fontMetrics = controls.getFontMetrics(font);
+		if (!isHeadless()) controls = new OverlayWidget(this);
+		fontMetrics = makeFontMetrics(font);
 	}
 
 	/**
@@ -1003,12 +1297,50 @@ public class OverlayTransform extends DataTransform implements
 		final int id = e.getId();
 		if (id == TransformEvent.DATA_CHANGED) {
 			initState(null);
+			getMeasurer().clear();
+			// parent types may have changed; discard all cached overlay data
+			synchronized (overlays) {
+				final int[] positions = overlays.getPositions();
+				for (int j = 0; j < positions.length; j++) {
+					final Vector objs = overlays.get(positions[j]);
+					for (int i = 0; i < objs.size(); i++) {
+						((OverlayObject) objs.elementAt(i)).invalidate();
+					}
+				}
+			}
 			notifyListeners(new TransformEvent(this));
 		}
 	}
 
 	// -- Helper methods --
 
+	/**
+	 * Refreshes the overlay list of the controls, or defers the refresh if a
+	 * batch of overlay changes is in progress.
+	 */
+	protected void refreshControls() {
+		synchronized (batchLock) {
+			if (batchDepth > 0) {
+				batchRefresh = true;
+				return;
+			}
+		}
+		if (controls != null) controls.refreshListObjects();
+	}
+
+	/**
+	 * Gets metrics for the given font from the controls, or from an offscreen
+	 * image when running headless without controls.
+	 */
+	protected FontMetrics makeFontMetrics(final Font f) {
+		if (controls != null) return controls.getFontMetrics(f);
+		final Graphics g =
+			new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB).getGraphics();
+		final FontMetrics fm = g.getFontMetrics(f);
+		g.dispose();
+		return fm;
+	}
+
 	/** Configures the given overlay to match the current settings. */
 	protected void configureOverlay(final OverlayObject obj) {
 		final OverlayWidget panel = (OverlayWidget) getControls();
@@ -1018,6 +1350,121 @@ public class OverlayTransform extends DataTransform implements
 		obj.setNotes(panel.getNotes());
 	}
 
+	/**
+	 * Computes the overlays interpolated between each pair of clipboard and
+	 * selected overlays, at each step between them. Steps are divided among
+	 * worker threads.
+	 *
+	 * @return the interpolated overlays, indexed by step minus one and pair
+	 */
+	protected OverlayObject[][] interpolateObjects(final OverlayObject[] clips,
+		final OverlayObject[] sels, final int distance)
+	{
+		final OverlayObject[][] created = new OverlayObject[distance - 1][];
+		int numThreads = Runtime.getRuntime().availableProcessors();
+		if (numThreads > distance - 1) numThreads = distance - 1;
+		final RuntimeException[] failure = new RuntimeException[1];
+		final Thread[] threads = new Thread[numThreads];
+		for (int t = 0; t < numThreads; t++) {
+			final int first = t + 1, step = numThreads;
+			threads[t] = new Thread("VisBio-DistributeThread-" + t) {
+
+				@Override
+				public void run() {
+					try {
+						for (int i = first; i < distance; i += step) {
+							final float q = (float) i / distance;
+							final OverlayObject[] objs = new OverlayObject[clips.length];
+							for (int j = 0; j < clips.length; j++) {
+								objs[j] = interpolate(clips[j], sels[j], q);
+							}
+							created[i - 1] = objs;
+						}
+					}
+					catch (final RuntimeException exc) {
+						synchronized (failure) {
+							if (failure[0] == null) failure[0] = exc;
+						}
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (int t = 0; t < numThreads; t++) {
+			try {
+				threads[t].join();
+			}
+			catch (final InterruptedException exc) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		if (failure[0] != null) throw failure[0];
+		for (int i = 0; i < created.length; i++) {
+			if (created[i] == null) created[i] = new OverlayObject[0];
+		}
+		return created;
+	}
+
+	/**
+	 * Creates an overlay the given fraction of the way from the selected overlay
+	 * to the clipboard overlay. Noded overlays with equal numbers of nodes have
+	 * their nodes interpolated as well.
+	 *
+	 * @return the new overlay, or null if it could not be created
+	 */
+	protected OverlayObject interpolate(final OverlayObject clip,
+		final OverlayObject sel, final float q)
+	{
+		final OverlayObject obj =
+			OverlayIO.createOverlay(sel.getClass().getName(), this);
+		if (obj == null) return null;
+		obj.x1 = q * clip.x1 + (1 - q) * sel.x1;
+		obj.y1 = q * clip.y1 + (1 - q) * sel.y1;
+		obj.x2 = q * clip.x2 + (1 - q) * sel.x2;
+		obj.y2 = q * clip.y2 + (1 - q) * sel.y2;
+		obj.color =
+			new Color((int) (q * clip.color.getRed() + (1 - q) * sel.color.getRed()),
+				(int) (q * clip.color.getGreen() + (1 - q) * sel.color.getGreen()),
+				(int) (q * clip.color.getBlue() + (1 - q) * sel.color.getBlue()));
+		obj.filled = clip.filled && sel.filled;
+		obj.group =
+			ObjectUtil.objectsEqual(clip.group, sel.group) ? clip.group : null;
+		obj.notes =
+			ObjectUtil.objectsEqual(clip.notes, sel.notes) ? clip.notes : null;
+		obj.drawing = false;
+		obj.selected = false;
+		if (obj instanceof OverlayNodedObject) {
+			final float[][] cn = ((OverlayNodedObject) clip).getNodes();
+			final float[][] sn = ((OverlayNodedObject) sel).getNodes();
+			if (cn[0].length == sn[0].length && cn[0].length > 0) {
+				final float[][] nodes = new float[2][cn[0].length];
+				for (int d = 0; d < 2; d++) {
+					for (int n = 0; n < nodes[d].length; n++) {
+						nodes[d][n] = q * cn[d][n] + (1 - q) * sn[d][n];
+					}
+				}
+				((OverlayNodedObject) obj).setNodes(nodes);
+			}
+		}
+		if (obj instanceof OverlayText) ((OverlayText) obj).computeTextBounds();
+		return obj;
+	}
+
+	/**
+	 * Replaces all overlays with the given newly loaded ones. The store itself
+	 * is kept, since other threads lock on it.
+	 */
+	protected void setOverlays(final OverlayStore loadedOverlays) {
+		synchronized (overlays) {
+			overlays.setAll(loadedOverlays);
+			indices.clear();
+			owners.clear();
+		}
+		getMeasurer().clear();
+		refreshControls();
+		notifyListeners(new TransformEvent(this));
+	}
+
 	/**
 	 * Updates the dimensional position based on the current state of the given
 	 * display.
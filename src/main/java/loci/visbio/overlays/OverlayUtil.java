@@ -121,7 +121,7 @@ public final class OverlayUtil {
 		if (overlayType.equals("Arrow")) statTypes = OverlayArrow.getStatTypes();
 		else if (overlayType.equals("Box")) statTypes = OverlayBox.getStatTypes();
 		else if (overlayType.equals("Freeform")) statTypes =
-			OverlayNodedObject.getStatTypes();
+			OverlayFreeform.getStatTypes();
 		else if (overlayType.equals("Line")) statTypes = OverlayLine.getStatTypes();
 		else if (overlayType.equals("Marker")) statTypes =
 			OverlayMarker.getStatTypes();
@@ -531,12 +531,16 @@ public final class OverlayUtil {
 		// each segment of the freeform or polyline, and an additional Gridded2DSet
 		// for the circle.
 
-		final float delta = GLOW_WIDTH * getMultiplier(link);
-		final float[][] nodes = ono.getNodes();
-		final int numNodes = ono.getNumNodes();
+		final float mult = getMultiplier(link);
+		final float delta = GLOW_WIDTH * mult;
+		// highlight the same simplified curve that is drawn
+		final float[][] nodes = ono.getDisplayNodes(mult);
 		final boolean hlt = ono.isHighlightNode();
 		int hltIndex = 0;
 		if (hlt) hltIndex = ono.getHighlightedNodeIndex();
+		// the highlighted index refers to the full node array, so the circle
+		// deliberately marks the real node the mouse tools will edit, which may
+		// lie slightly off the simplified curve drawn at coarse zoom levels
 		final float[] c = ono.getNodeCoords(hltIndex);
 
 		// arc and width params
@@ -37,6 +37,7 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
@@ -58,6 +59,7 @@ import javax.swing.JScrollPane;
 import javax.swing.JTextArea;
 import javax.swing.JTextField;
 import javax.swing.JToggleButton;
+import javax.swing.SwingUtilities;
 import javax.swing.Timer;
 import javax.swing.border.EtchedBorder;
 import javax.swing.event.DocumentEvent;
@@ -67,7 +69,8 @@ import javax.swing.event.ListSelectionListener;
 import javax.swing.text.Document;
 
 import loci.formats.gui.ExtensionFileFilter;
-import loci.poi.hssf.usermodel.HSSFWorkbook;
+import loci.visbio.BioTask;
+import loci.visbio.TaskManager;
 import loci.visbio.VisBioFrame;
 import loci.visbio.data.TransformEvent;
 import loci.visbio.data.TransformListener;
@@ -127,6 +130,9 @@ public class OverlayWidget extends JPanel implements ActionListener,
 	/** File chooser for exporting overlays to .xls format. */
 	protected JFileChooser overlayXLSBox;
 
+	/** File chooser for saving measurements of all positions. */
+	protected JFileChooser overlayMeasureBox;
+
 	/** Text field indicating current font. */
 	protected JTextField currentFont;
 
@@ -163,6 +169,9 @@ public class OverlayWidget extends JPanel implements ActionListener,
 	/** Button for exporting overlays to .xls on disk. */
 	protected JButton export;
 
+	/** Button for measuring overlays at all positions. */
+	protected JButton measure;
+
 	// -- GUI components - overlay-specific --
 
 	/** Text fields for (X, Y) coordinate pairs. */
@@ -215,20 +224,40 @@ public class OverlayWidget extends JPanel implements ActionListener,
 
 		// file chooser for loading overlays
 		overlayLoadBox = new JFileChooser();
+		overlayLoadBox.addChoosableFileFilter(new ExtensionFileFilter(
+			new String[] { OverlayStreamIO.BINARY_EXTENSION },
+			"Overlay binary files"));
 		overlayLoadBox.addChoosableFileFilter(new ExtensionFileFilter(
 			new String[] { "txt" }, "Overlay text files"));
 
 		// file chooser for saving overlays
 		overlaySaveBox = new JFileChooser();
+		overlaySaveBox.addChoosableFileFilter(new ExtensionFileFilter(
+			new String[] { OverlayStreamIO.BINARY_EXTENSION },
+			"Overlay binary files"));
 		overlaySaveBox.addChoosableFileFilter(new ExtensionFileFilter(
 			new String[] { "txt" }, "Overlay text files"));
 		overlaySaveBox.setAccessory(new StatsOptionsPane());
 
 		overlayXLSBox = new JFileChooser();
 		overlayXLSBox.addChoosableFileFilter(new ExtensionFileFilter(
-			new String[] { "xls" }, "Overlay spreadsheet files"));
+			new String[] { "xls" }, "Overlay legacy spreadsheet files"));
+		overlayXLSBox.addChoosableFileFilter(new ExtensionFileFilter(
+			new String[] { "tsv" }, "Overlay TSV files"));
+		overlayXLSBox.addChoosableFileFilter(new ExtensionFileFilter(
+			new String[] { "csv" }, "Overlay CSV files"));
+		overlayXLSBox.addChoosableFileFilter(new ExtensionFileFilter(
+			new String[] { "xlsx" }, "Overlay spreadsheet files"));
 		overlayXLSBox.setAccessory(new StatsOptionsPane());
 
+		overlayMeasureBox = new JFileChooser();
+		overlayMeasureBox.addChoosableFileFilter(new ExtensionFileFilter(
+			new String[] { "xls" }, "Measurement legacy spreadsheet files"));
+		overlayMeasureBox.addChoosableFileFilter(new ExtensionFileFilter(
+			new String[] { "xlsx" }, "Measurement spreadsheet files"));
+		overlayMeasureBox.addChoosableFileFilter(new ExtensionFileFilter(
+			new String[] { "csv" }, "Measurement CSV files"));
+
 		// current font text field
 		currentFont = new JTextField();
 		currentFont.setEditable(false);
@@ -361,6 +390,13 @@ public class OverlayWidget extends JPanel implements ActionListener,
 		if (!LAFUtil.isMacLookAndFeel()) export.setMnemonic('e');
 		export.setToolTipText("Exports overlays to a .xls file on disk");
 
+		// overlay measurement button
+		measure = new JButton("Measure all...");
+		measure.addActionListener(this);
+		if (!LAFUtil.isMacLookAndFeel()) measure.setMnemonic('m');
+		measure.setToolTipText("Measures intensities within overlays at all " +
+			"positions and saves them to disk");
+
 		// lay out components
 		setLayout(new BorderLayout());
 		final FormLayout layout =
@@ -410,7 +446,7 @@ public class OverlayWidget extends JPanel implements ActionListener,
 			paste, dist }), cc.xyw(1, row, 9, "center, center"));
 		row += 2;
 		builder.add(ButtonBarFactory.buildCenteredBar(new JButton[] { load, save,
-			export }), cc.xyw(1, row, 9, "center, center"));
+			export, measure }), cc.xyw(1, row, 9, "center, center"));
 		row += 2;
 		builder.addSeparator("Statistics", cc.xyw(1, row, 9));
 		row += 2;
@@ -729,20 +765,47 @@ public class OverlayWidget extends JPanel implements ActionListener,
 		else if (src == copy) overlay.copySelectedObjects();
 		else if (src == paste) overlay.pasteObjects();
 		else if (src == dist) {
-			final String err = overlay.distributeObjects();
-			if (err != null) {
-				JOptionPane.showMessageDialog(this, err, "Cannot distribute overlays",
-					JOptionPane.ERROR_MESSAGE);
-			}
+			// distribute off the event thread, since it may create many overlays
+			final int[] pos = overlay.getPos();
+			new Thread("VisBio-DistributeOverlaysThread-" + overlay.getName()) {
+
+				@Override
+				public void run() {
+					String err;
+					try {
+						err = overlay.distributeObjects(pos);
+					}
+					catch (final RuntimeException exc) {
+						if (VisBioFrame.DEBUG) exc.printStackTrace();
+						err = "Error distributing overlays: " + exc.getMessage();
+					}
+					if (err != null) showErrorLater(err, "Cannot distribute overlays");
+				}
+			}.start();
 		}
 		else if (src == load) {
 			final int rval = overlayLoadBox.showOpenDialog(this);
 			if (rval != JFileChooser.APPROVE_OPTION) return;
 			final File file = overlayLoadBox.getSelectedFile();
 			try {
-				final BufferedReader fin = new BufferedReader(new FileReader(file));
-				overlay.loadOverlays(fin);
-				fin.close();
+				if (isBinary(file)) {
+					final FileInputStream fin = new FileInputStream(file);
+					try {
+						overlay.loadOverlaysBinary(fin);
+					}
+					finally {
+						fin.close();
+					}
+				}
+				else {
+					final BufferedReader fin = new BufferedReader(new FileReader(file));
+					try {
+						overlay.loadOverlays(fin);
+					}
+					finally {
+						fin.close();
+					}
+				}
 			}
 			catch (final IOException exc) {
 				JOptionPane.showMessageDialog(this, "Error loading overlay file " +
@@ -765,9 +828,24 @@ public class OverlayWidget extends JPanel implements ActionListener,
 			final File file = overlaySaveBox.getSelectedFile();
 			statsPane.saveSettings();
 			try {
-				final PrintWriter fout = new PrintWriter(new FileWriter(file));
-				overlay.saveOverlays(fout);
-				fout.close();
+				if (isBinary(file)) {
+					final FileOutputStream fout = new FileOutputStream(file);
+					try {
+						overlay.saveOverlaysBinary(fout);
+					}
+					finally {
+						fout.close();
+					}
+				}
+				else {
+					final PrintWriter fout = new PrintWriter(new FileWriter(file));
+					try {
+						overlay.saveOverlays(fout);
+					}
+					finally {
+						fout.close();
+					}
+				}
 			}
 			catch (final IOException exc) {
 				JOptionPane.showMessageDialog(this, "Error saving overlay file " +
@@ -775,6 +853,40 @@ public class OverlayWidget extends JPanel implements ActionListener,
 					JOptionPane.ERROR_MESSAGE);
 			}
 		}
+		else if (src == measure) {
+			// set default filename to a reasonable default
+			String defaultName = overlay.getParent().getName();
+			defaultName = defaultName.replaceAll("[^\\w]", ""); // sanitize name
+			overlayMeasureBox.setSelectedFile(new File(defaultName + ".csv"));
+
+			final int rval = overlayMeasureBox.showSaveDialog(this);
+			if (rval != JFileChooser.APPROVE_OPTION) return;
+			final File file = overlayMeasureBox.getSelectedFile();
+			final TaskManager tm =
+				(TaskManager) VisBioFrame.getVisBio().getManager(TaskManager.class);
+			final BioTask task =
+				tm.createTask("Measure " + overlay.getName() + " overlays");
+			new Thread("VisBio-MeasureOverlaysThread-" + overlay.getName()) {
+
+				@Override
+				public void run() {
+					try {
+						overlay.measureAllPositions(file, task);
+					}
+					catch (final IOException exc) {
+						showErrorLater("Error saving measurements to " + file + ": " +
+							exc.getMessage(), "Cannot measure overlays");
+					}
+					catch (final RuntimeException exc) {
+						showErrorLater("Error measuring overlays: " + exc.getMessage(),
+							"Cannot measure overlays");
+					}
+					finally {
+						task.setCompleted();
+					}
+				}
+			}.start();
+		}
 		else if (src == export) {
 			final StatsOptionsPane statsPane =
 				(StatsOptionsPane) overlayXLSBox.getAccessory();
@@ -783,24 +895,38 @@ public class OverlayWidget extends JPanel implements ActionListener,
 			// set default filename to a reasonable default
 			String defaultName = overlay.getParent().getName();
 			defaultName = defaultName.replaceAll("[^\\w]", ""); // sanitize name
-			overlayXLSBox.setSelectedFile(new File(defaultName + ".xls"));
+			overlayXLSBox.setSelectedFile(new File(defaultName + ".xlsx"));
 
 			final int rval = overlayXLSBox.showDialog(this, "Export");
 			if (rval != JFileChooser.APPROVE_OPTION) return;
 			final File file = overlayXLSBox.getSelectedFile();
 			statsPane.saveSettings();
-			try {
-				final FileOutputStream fout = new FileOutputStream(file);
-				final HSSFWorkbook wb = overlay.exportOverlays();
-				wb.write(fout); // TODO use a task here... this can be slow for
-				// really big overlay sets
-				fout.close();
-				launchSpreadsheet(file);
-			}
-			catch (final IOException exc) {
-				// TODO add error message or something more sophisticated?
-				exc.printStackTrace();
-			}
+			final TaskManager tm =
+				(TaskManager) VisBioFrame.getVisBio().getManager(TaskManager.class);
+			final BioTask task =
+				tm.createTask("Export " + overlay.getName() + " overlays");
+			task.setStoppable(true);
+			new Thread("VisBio-ExportOverlaysThread-" + overlay.getName()) {
+
+				@Override
+				public void run() {
+					try {
+						overlay.exportOverlays(file, task);
+						if (!task.isStopped()) launchSpreadsheet(file);
+					}
+					catch (final IOException exc) {
+						showErrorLater("Error exporting overlays to " + file + ": " +
+							exc.getMessage(), "Cannot export overlays");
+					}
+					catch (final RuntimeException exc) {
+						showErrorLater("Error exporting overlays: " + exc.getMessage(),
+							"Cannot export overlays");
+					}
+					finally {
+						task.setCompleted();
+					}
+				}
+			}.start();
 		}
 	}
 
@@ -984,6 +1110,12 @@ public class OverlayWidget extends JPanel implements ActionListener,
 		if (!updateGUI) ignoreEvents = false;
 	}
 
+	/** Whether the given overlay file uses the binary overlay format. */
+	protected boolean isBinary(final File file) {
+		return file.getName().toLowerCase().endsWith(
+			"." + OverlayStreamIO.BINARY_EXTENSION);
+	}
+
 	/** Launches the spreadsheet. */
 	protected void launchSpreadsheet(final File file) {
 		final OptionManager om =
@@ -1002,9 +1134,26 @@ public class OverlayWidget extends JPanel implements ActionListener,
 		}
 	}
 
-	/** Displays an error message. */
+	/**
+	 * Displays an error message. Spreadsheets are also launched from the export
+	 * thread, so the message is shown on the event dispatch thread.
+	 */
 	protected void displayErrorMessage(final String message) {
-		JOptionPane.showMessageDialog(this, message,
-			"Could not launch spreadsheet", JOptionPane.ERROR_MESSAGE);
+		showErrorLater(message, "Could not launch spreadsheet");
+	}
+
+	/**
+	 * Displays an error message on the event dispatch thread, for use by
+	 * background threads.
+	 */
+	protected void showErrorLater(final String message, final String title) {
+		SwingUtilities.invokeLater(new Runnable() {
+
+			@Override
+			public void run() {
+				JOptionPane.showMessageDialog(OverlayWidget.this, message, title,
+					JOptionPane.ERROR_MESSAGE);
+			}
+		});
 	}
 }
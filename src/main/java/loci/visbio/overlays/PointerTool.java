@@ -25,6 +25,8 @@
 package loci.visbio.overlays;
 
 import java.awt.event.InputEvent;
+import java.util.Enumeration;
+import java.util.Hashtable;
 import java.util.Vector;
 
 import loci.visbio.data.TransformEvent;
@@ -51,21 +53,17 @@ public class PointerTool extends OverlayTool {
 	/** Array of OverlayObjects at current dimensional position. */
 	protected OverlayObject[] objs;
 
-	/**
-	 * Array of the bounds of the OverlayObjects at the current dimensional
-	 * position.
-	 */
-	protected float[][] bounds;
+	/** Objects that were selected at time of mouse press. */
+	protected Hashtable selected;
 
-	/** Array of whether objects are selected at time of mouse press. */
-	protected boolean[] selected;
+	/** Objects whose selection state the selection box has changed. */
+	protected Hashtable touched;
 
 	// -- Constructor --
 
 	/** Constructs an overlay manipulation tool. */
 	public PointerTool(final OverlayTransform overlay) {
 		super(overlay, "Pointer", "Pointer", "pointer.png");
-		bounds = null;
 	}
 
 	// -- OverlayTool API methods --
@@ -80,32 +78,22 @@ public class PointerTool extends OverlayTool {
 
 		final DisplayImpl display = (DisplayImpl) e.getDisplay();
 
-		// pick nearest object
 		objs = overlay.getObjects(pos);
-		bounds = new float[objs.length][4];
-		selected = new boolean[objs.length];
-		grabbed = new Vector(objs.length);
-
-		double dist = Double.POSITIVE_INFINITY;
-		int ndx = -1;
-		for (int i = 0; i < objs.length; i++) {
-			final double d = objs[i].getDistance(dx, dy);
-			if (d < dist) {
-				dist = d;
-				ndx = i;
-			}
-		}
+		if (objs == null) objs = new OverlayObject[0];
+		grabbed = new Vector();
 
 		// Factor 8.5 obtained through trail and error.
 		final double threshold = 8.5f * OverlayUtil.getMultiplier(display);
 
-		if (dist < threshold) {
-			if (shift) objs[ndx].setSelected(true);
-			else if (ctrl) {
-				objs[ndx].setSelected(ctrl ? !objs[ndx].isSelected() : true);
-			}
+		// pick nearest object, querying the spatial index
+		final OverlayObject nearest =
+			overlay.getNearestObject(pos, dx, dy, threshold);
+
+		if (nearest != null) {
+			if (shift) nearest.setSelected(true);
+			else if (ctrl) nearest.setSelected(!nearest.isSelected());
 			else {
-				if (objs[ndx].isSelected()) {
+				if (nearest.isSelected()) {
 					// grab all selected objects
 					for (int i = 0; i < objs.length; i++) {
 						if (objs[i].isSelected()) grabbed.add(objs[i]);
@@ -118,7 +106,7 @@ public class PointerTool extends OverlayTool {
 					// select this object and deselect all others
 					for (int i = 0; i < objs.length; i++)
 						objs[i].setSelected(false);
-					objs[ndx].setSelected(true);
+					nearest.setSelected(true);
 				}
 			}
 		}
@@ -129,25 +117,11 @@ public class PointerTool extends OverlayTool {
 					objs[i].setSelected(false);
 			}
 
-			// assemble array of objects' bounding boxes
+			// track initial selection state of all objs here
+			selected = new Hashtable();
+			touched = new Hashtable();
 			for (int i = 0; i < objs.length; i++) {
-				final float[] bound = new float[4];
-				bound[0] = objs[i].getX();
-				bound[1] = objs[i].getY();
-				if (objs[i].hasEndpoint2()) {
-					bound[2] = objs[i].getX2();
-					bound[3] = objs[i].getY2();
-				}
-				else {
-					bound[2] = bound[0];
-					bound[3] = bound[1];
-				}
-				bounds[i] = bound;
-			}
-
-			// compile array tracking initial selection state of all objs here
-			for (int i = 0; i < objs.length; i++) {
-				selected[i] = objs[i].isSelected();
+				if (objs[i].isSelected()) selected.put(objs[i], objs[i]);
 			}
 
 			// instantiate selection box
@@ -165,9 +139,6 @@ public class PointerTool extends OverlayTool {
 	public void mouseUp(final DisplayEvent e, final int px, final int py,
 		final float dx, final float dy, final int[] pos, final int mods)
 	{
-		final boolean shift = (mods & InputEvent.SHIFT_MASK) != 0;
-		final boolean ctrl = (mods & InputEvent.CTRL_MASK) != 0;
-
 		// release any grabbed objects
 		if (!grabbed.isEmpty()) {
 			grabbed.clear();
@@ -176,6 +147,7 @@ public class PointerTool extends OverlayTool {
 		}
 		else if (select != null) {
 			select = null;
+			selected = touched = null;
 			overlay.removeTSB();
 			overlay.setTextDrawn(true);
 			overlay.notifyListeners(new TransformEvent(overlay));
@@ -209,110 +181,53 @@ public class PointerTool extends OverlayTool {
 			// extend selection box
 			select.setCorner(px, py);
 
-			// *******************************************************
+			// un-oriented (disoriented?) box coordinates
+			final double[][] c = select.getCornersDomain();
+
+			// only objects whose bounds intersect the box's extent can be inside
+			double cx1 = c[0][0], cy1 = c[0][1], cx2 = c[0][0], cy2 = c[0][1];
+			for (int j = 1; j < c.length; j++) {
+				cx1 = Math.min(cx1, c[j][0]);
+				cy1 = Math.min(cy1, c[j][1]);
+				cx2 = Math.max(cx2, c[j][0]);
+				cy2 = Math.max(cy2, c[j][1]);
+			}
+			final OverlayObject[] hits =
+				overlay.getObjectsIntersecting(pos, (float) cx1, (float) cy1,
+					(float) cx2, (float) cy2);
+
 			// select objects inside the box
-			for (int i = 0; i < bounds.length; i++) {
-				final float bx1, bx2, by1, by2;
-				final float tx1, tx2, ty1, ty2;
-				float ox1, ox2, oy1, oy2;
-
-				// object corners
-				ox1 = bounds[i][0];
-				oy1 = bounds[i][1];
-				ox2 = bounds[i][2];
-				oy2 = bounds[i][3];
-
-				// un-oriented (disoriented?) box coordinates
-				final double[][] c = select.getCornersDomain();
-
-				// selection box corners 'c'
-				/*
-				 * 0----1
-				 * |    |
-				 * |    |
-				 * 3----2
-				 */
-
-				// express object corners in terms of TSB edge vectors
-				// vector between corners 0 and 1
-				final double[] v1 = { c[1][0] - c[0][0], c[1][1] - c[0][1] };
-				// vector between corners 0 and 3
-				final double[] v2 = { c[3][0] - c[0][0], c[3][1] - c[0][1] };
-
-				// iterate through all 4 points of object bounding box
-				// and check whether they're inside selection area
-				boolean inside = true;
-				for (int j = 0; j < bounds[0].length && inside; j++) {
-					final int xndx = j < 2 ? 0 : 2;
-					final int yndx = j % 2 == 0 ? 1 : 3;
-					final double[] p = { bounds[i][xndx], bounds[i][yndx] };
-					// the above three lines iterate through the pairs (0,1),
-					// (0,3), (2,1), (2, 3) of bounds[i] over the
-					// duration of the loop
-
-					final double[] vp = { p[0] - c[0][0], p[1] - c[0][1] }; // vector from
-																																	// c(0)
-					// to p
-
-					// cos of angle btw. vectors v1 and vp
-					final double cos1 =
-						(vp[0] * v1[0] + vp[1] * v1[1]) /
-							(Math.sqrt(vp[0] * vp[0] + vp[1] * vp[1] + v1[0] * v1[0] + v1[1] *
-								v1[1]));
-
-					// cos of angle btw. v2 and vp
-					final double cos2 =
-						(vp[0] * v2[0] + vp[1] * v2[1]) /
-							(Math.sqrt(vp[0] * vp[0] + vp[1] * vp[1] + v2[0] * v2[0] + v2[1] *
-								v2[1]));
-
-					if (cos1 < 0 || cos2 < 0) inside = false;
-					else {
-						// determine projection of point on edge vectors
-						// if projection is longer than either edge vector,
-						// point is outside selection area
-						final double[] proj1 = MathUtil.getProjection(c[0], c[3], p, false);
-						final double[] proj2 = MathUtil.getProjection(c[0], c[1], p, false);
-
-						final double d1 = MathUtil.getDistance(proj1, c[0]);
-						final double d2 = MathUtil.getDistance(proj2, c[0]);
-
-						final double dv1 = MathUtil.getDistance(c[0], c[3]);
-						final double dv2 = MathUtil.getDistance(c[0], c[1]);
-
-						if (d1 > dv1 || d2 > dv2) inside = false;
-					}
-				} // end for
-
-				// code for dynamic list refresh
-				if (inside) {
-					if (ctrl && !shift) {
-						if (objs[i].isSelected() == selected[i]) {
-							objs[i].setSelected(!selected[i]);
-							selectionStateChanged = true;
-						}
-					}
-					else if (!objs[i].isSelected()) {
-						objs[i].setSelected(true);
+			final Hashtable inside = new Hashtable();
+			for (int i = 0; hits != null && i < hits.length; i++) {
+				final OverlayObject obj = hits[i];
+				if (!isInside(obj, c)) continue;
+				inside.put(obj, obj);
+				touched.put(obj, obj);
+				if (ctrl && !shift) {
+					final boolean was = selected.containsKey(obj);
+					if (obj.isSelected() == was) {
+						obj.setSelected(!was);
 						selectionStateChanged = true;
 					}
 				}
-				else {
-					if (shift || ctrl) {
-						if (objs[i].isSelected() != selected[i]) {
-							objs[i].setSelected(selected[i]);
-							selectionStateChanged = true;
-						}
-					}
-					else {
-						if (objs[i].isSelected()) {
-							objs[i].setSelected(false);
-							selectionStateChanged = true;
-						}
-					}
+				else if (!obj.isSelected()) {
+					obj.setSelected(true);
+					selectionStateChanged = true;
 				}
-			} // end for
-			// ****************************************************
+			}
+
+			// restore objects the box no longer covers; all other objects are
+			// still in their state from the time of the mouse press
+			final Enumeration en = touched.keys();
+			while (en.hasMoreElements()) {
+				final OverlayObject obj = (OverlayObject) en.nextElement();
+				if (inside.containsKey(obj)) continue;
+				final boolean state = (shift || ctrl) && selected.containsKey(obj);
+				if (obj.isSelected() != state) {
+					obj.setSelected(state);
+					selectionStateChanged = true;
+				}
+			}
 
 			if (selectionStateChanged) ((OverlayWidget) overlay.getControls())
 				.refreshListSelection();
@@ -320,4 +235,81 @@ public class PointerTool extends OverlayTool {
 			overlay.notifyListeners(new TransformEvent(overlay));
 		}
 	}
+
+	// -- Helper methods --
+
+	/**
+	 * Tests whether all four corners of the given object's bounding box lie
+	 * within the selection box with the given corners.
+	 */
+	protected boolean isInside(final OverlayObject obj, final double[][] c) {
+		// object corners
+		final float[] bound = new float[4];
+		bound[0] = obj.getX();
+		bound[1] = obj.getY();
+		if (obj.hasEndpoint2()) {
+			bound[2] = obj.getX2();
+			bound[3] = obj.getY2();
+		}
+		else {
+			bound[2] = bound[0];
+			bound[3] = bound[1];
+		}
+
+		// selection box corners 'c'
+		/*
+		 * 0----1
+		 * |    |
+		 * |    |
+		 * 3----2
+		 */
+
+		// express object corners in terms of TSB edge vectors
+		// vector between corners 0 and 1
+		final double[] v1 = { c[1][0] - c[0][0], c[1][1] - c[0][1] };
+		// vector between corners 0 and 3
+		final double[] v2 = { c[3][0] - c[0][0], c[3][1] - c[0][1] };
+
+		// iterate through all 4 points of object bounding box
+		// and check whether they're inside selection area
+		for (int j = 0; j < bound.length; j++) {
+			final int xndx = j < 2 ? 0 : 2;
+			final int yndx = j % 2 == 0 ? 1 : 3;
+			final double[] p = { bound[xndx], bound[yndx] };
+			// the above three lines iterate through the pairs (0,1),
+			// (0,3), (2,1), (2, 3) of bound over the duration of the loop
+
+			// vector from c(0) to p
+			final double[] vp = { p[0] - c[0][0], p[1] - c[0][1] };
+
+			// cos of angle btw. vectors v1 and vp
+			final double cos1 =
+				(vp[0] * v1[0] + vp[1] * v1[1]) /
+					(Math.sqrt(vp[0] * vp[0] + vp[1] * vp[1] + v1[0] * v1[0] + v1[1] *
+						v1[1]));
+
+			// cos of angle btw. v2 and vp
+			final double cos2 =
+				(vp[0] * v2[0] + vp[1] * v2[1]) /
+					(Math.sqrt(vp[0] * vp[0] + vp[1] * vp[1] + v2[0] * v2[0] + v2[1] *
+						v2[1]));
+
+			if (cos1 < 0 || cos2 < 0) return false;
+
+			// determine projection of point on edge vectors
+			// if projection is longer than either edge vector,
+			// point is outside selection area
+			final double[] proj1 = MathUtil.getProjection(c[0], c[3], p, false);
+			final double[] proj2 = MathUtil.getProjection(c[0], c[1], p, false);
+
+			final double d1 = MathUtil.getDistance(proj1, c[0]);
+			final double d2 = MathUtil.getDistance(proj2, c[0]);
+
+			final double dv1 = MathUtil.getDistance(c[0], c[3]);
+			final double dv2 = MathUtil.getDistance(c[0], c[1]);
+
+			if (d1 > dv1 || d2 > dv2) return false;
+		}
+		return true;
+	}
 }
@@ -137,8 +137,14 @@ public class PolylineTool extends OverlayTool {
 			else { // erase
 				// if node interior, create two new polylines
 				if (selectedNode > 0 && selectedNode < line.getNumNodes() - 1) {
-					split(line, selectedNode);
-					overlay.removeObject(line);
+					overlay.beginBatch();
+					try {
+						split(line, selectedNode);
+						overlay.removeObject(line);
+					}
+					finally {
+						overlay.commitBatch();
+					}
 					unselect();
 					mode = WAIT;
 				}
@@ -264,8 +270,14 @@ public class PolylineTool extends OverlayTool {
 			mode = WAIT;
 		}
 		if (mode == WAIT) {
-			final OverlayObject[] objects = overlay.getObjects();
-			final int[] ndxNode = getNearestNode(display, objects, px, py, THRESH);
+			// only polylines near the pointer can have a node within the
+			// threshold; the domain radius is padded since it is in pixels
+			final double radius = 2 * THRESH * OverlayUtil.getMultiplier(display);
+			final OverlayObject[] objects =
+				overlay.getObjectsWithin(pos, dx, dy, radius);
+			final int[] ndxNode =
+				objects == null ? null : getNearestNode(display, objects, px, py,
+					THRESH);
 
 			if (ndxNode != null) {
 				final int ndx = ndxNode[0];
@@ -41,12 +41,24 @@ package loci.visbio.state;
  * into data structures. The {@link loci.visbio.state.StateManager} class
  * contains the mergeStates static method, which performs this procedure on two
  * lists of dynamic objects.
+ * <p>
+ * To keep that procedure fast for long lists, each dynamic object also
+ * provides a match key: a cheap identity that any two matching objects share.
+ * Candidates are looked up by key, and only those sharing a key are tested
+ * with the full matches method.
  */
 public interface Dynamic {
 
 	/** Tests whether two dynamic objects are equivalent. */
 	boolean matches(Dynamic dyn);
 
+	/**
+	 * Gets a key identifying this object for matching purposes. If two objects
+	 * match, their keys must be equal according to equals and hashCode; objects
+	 * with equal keys need not match. The key may be null.
+	 */
+	Object getMatchKey();
+
 	/**
 	 * Tests whether the given dynamic object can be used as an argument to
 	 * initState, for initializing this dynamic object.
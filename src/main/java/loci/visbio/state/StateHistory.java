@@ -0,0 +1,288 @@
+/*
+ * #%L
+ * VisBio application for visualization of multidimensional biological
+ * image data.
+ * %%
+ * Copyright (C) 2002 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.visbio.state;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.Vector;
+
+import loci.visbio.util.XMLUtil;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * StateHistory is a compact undo/redo history of program states.
+ * <p>
+ * Each state document is split into fragments, one per top-level element
+ * (i.e., one per saveable logic manager), and each fragment is stored in
+ * serialized form. A fragment identical to the same fragment of the preceding
+ * state is shared rather than stored again, so each history entry costs only
+ * the fragments that actually changed. Full documents are rebuilt on demand
+ * when a state is undone or redone.
+ * <p>
+ * The history is capped by depth and by memory; when either cap is exceeded,
+ * the oldest entries are discarded first.
+ */
+public class StateHistory {
+
+	// -- Constants --
+
+	/** Default maximum number of states in the history. */
+	public static final int DEFAULT_MAX_DEPTH = 100;
+
+	/** Default maximum memory used by the history, in bytes. */
+	public static final long DEFAULT_MAX_MEMORY = 16L * 1024 * 1024;
+
+	// -- Fields --
+
+	/** History entries, oldest first. */
+	protected Vector entries = new Vector();
+
+	/** Index of the current state, or -1 if the history is empty. */
+	protected int current = -1;
+
+	/** Maximum number of states in the history. */
+	protected int maxDepth;
+
+	/** Maximum memory used by the history, in bytes. */
+	protected long maxMemory;
+
+	/** Approximate memory used by the history, in bytes. */
+	protected long memory;
+
+	// -- Constructors --
+
+	/** Constructs a history with the default caps. */
+	public StateHistory() {
+		this(DEFAULT_MAX_DEPTH, DEFAULT_MAX_MEMORY);
+	}
+
+	/** Constructs a history with the given depth and memory caps. */
+	public StateHistory(final int maxDepth, final long maxMemory) {
+		setLimits(maxDepth, maxMemory);
+	}
+
+	// -- StateHistory API methods --
+
+	/**
+	 * Sets the maximum number of states and the maximum memory in bytes used by
+	 * the history, trimming the oldest states if needed. The current state is
+	 * always kept.
+	 */
+	public synchronized void setLimits(final int maxDepth, final long maxMemory)
+	{
+		this.maxDepth = maxDepth < 1 ? 1 : maxDepth;
+		this.maxMemory = maxMemory;
+		trim();
+	}
+
+	/**
+	 * Adds the given state as the new current state, discarding any states that
+	 * could have been redone.
+	 */
+	public synchronized void push(final ProgramState state) {
+		// discard the states that could have been redone
+		for (int i = entries.size() - 1; i > current; i--) {
+			memory -= getEntry(i).getUniqueBytes(getEntry(i - 1));
+			entries.removeElementAt(i);
+		}
+		final Entry prev = current < 0 ? null : getEntry(current);
+		final Entry entry = new Entry(state, prev);
+		entries.add(entry);
+		memory += entry.getUniqueBytes(prev);
+		current++;
+		trim();
+	}
+
+	/** Discards all states. */
+	public synchronized void clear() {
+		entries.clear();
+		current = -1;
+		memory = 0;
+	}
+
+	/** Gets whether there is a state to undo to. */
+	public synchronized boolean canUndo() {
+		return current > 0;
+	}
+
+	/** Gets whether there is a state to redo to. */
+	public synchronized boolean canRedo() {
+		return current >= 0 && current < entries.size() - 1;
+	}
+
+	/**
+	 * Moves back to the previous state.
+	 *
+	 * @return the rebuilt previous state, or null if there is none
+	 */
+	public synchronized ProgramState undo() {
+		if (!canUndo()) return null;
+		current--;
+		return getCurrent();
+	}
+
+	/**
+	 * Moves forward to the next state.
+	 *
+	 * @return the rebuilt next state, or null if there is none
+	 */
+	public synchronized ProgramState redo() {
+		if (!canRedo()) return null;
+		current++;
+		return getCurrent();
+	}
+
+	/** Gets the rebuilt current state, or null if the history is empty. */
+	public synchronized ProgramState getCurrent() {
+		if (current < 0) return null;
+		return ((Entry) entries.elementAt(current)).toState();
+	}
+
+	/** Gets the message of the current state, or null if there is none. */
+	public synchronized String getCurrentMessage() {
+		return current < 0 ? null : ((Entry) entries.elementAt(current)).msg;
+	}
+
+	/** Gets the message of the state to redo to, or null if there is none. */
+	public synchronized String getRedoMessage() {
+		return canRedo() ? ((Entry) entries.elementAt(current + 1)).msg : null;
+	}
+
+	/** Gets the number of states in the history. */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/** Gets the approximate memory used by the history, in bytes. */
+	public synchronized long getMemoryUsage() {
+		return memory;
+	}
+
+	// -- Helper methods --
+
+	/** Discards the oldest states until the history is within its caps. */
+	protected void trim() {
+		while (current > 0 && (entries.size() > maxDepth || memory > maxMemory)) {
+			// the next entry no longer shares fragments with the discarded one
+			final Entry oldest = getEntry(0), next = getEntry(1);
+			memory -= oldest.getUniqueBytes(null);
+			memory += next.getUniqueBytes(null) - next.getUniqueBytes(oldest);
+			entries.removeElementAt(0);
+			current--;
+		}
+	}
+
+	/** Gets the history entry at the given index. */
+	protected Entry getEntry(final int i) {
+		return i < 0 ? null : (Entry) entries.elementAt(i);
+	}
+
+	// -- Helper classes --
+
+	/** A program state stored as a list of serialized fragments. */
+	protected static class Entry {
+
+		/** Message describing the action producing this state. */
+		protected String msg;
+
+		/** Name of the root element. */
+		protected String rootName;
+
+		/** Attribute names and values of the root element. */
+		protected String[] attrs;
+
+		/** Serialized top-level elements, possibly shared with the prior entry. */
+		protected byte[][] fragments;
+
+		/**
+		 * Splits the given state into fragments, sharing those identical to the
+		 * corresponding fragments of the given previous entry.
+		 */
+		public Entry(final ProgramState state, final Entry prev) {
+			msg = state.msg;
+			final Element root = state.state.getDocumentElement();
+			rootName = root.getTagName();
+			final NamedNodeMap map = root.getAttributes();
+			attrs = new String[2 * map.getLength()];
+			for (int i = 0; i < map.getLength(); i++) {
+				final Node attr = map.item(i);
+				attrs[2 * i] = attr.getNodeName();
+				attrs[2 * i + 1] = attr.getNodeValue();
+			}
+			final Vector v = new Vector();
+			final NodeList nodes = root.getChildNodes();
+			for (int i = 0; i < nodes.getLength(); i++) {
+				final Node node = nodes.item(i);
+				if (!(node instanceof Element)) continue;
+				byte[] bytes = XMLUtil.writeFragment((Element) node);
+				final int ndx = v.size();
+				if (prev != null && ndx < prev.fragments.length &&
+					Arrays.equals(bytes, prev.fragments[ndx]))
+				{
+					bytes = prev.fragments[ndx];
+				}
+				v.add(bytes);
+			}
+			fragments = new byte[v.size()][];
+			v.copyInto(fragments);
+		}
+
+		/** Rebuilds the full program state from the fragments. */
+		public ProgramState toState() {
+			final Document doc = XMLUtil.createDocument(rootName);
+			final Element root = doc.getDocumentElement();
+			for (int i = 0; i < attrs.length; i += 2) {
+				root.setAttribute(attrs[i], attrs[i + 1]);
+			}
+			for (int i = 0; i < fragments.length; i++) {
+				final Document frag =
+					XMLUtil.parseXML(new ByteArrayInputStream(fragments[i]));
+				if (frag == null) continue;
+				root.appendChild(doc.importNode(frag.getDocumentElement(), true));
+			}
+			return new ProgramState(msg, doc);
+		}
+
+		/** Gets the bytes used by fragments not shared with the given entry. */
+		public long getUniqueBytes(final Entry prev) {
+			long bytes = 0;
+			for (int i = 0; i < fragments.length; i++) {
+				if (prev != null && i < prev.fragments.length &&
+					prev.fragments[i] == fragments[i])
+				{
+					continue;
+				}
+				bytes += fragments[i].length;
+			}
+			return bytes;
+		}
+	}
+
+}
@@ -24,16 +24,29 @@
 
 package loci.visbio.state;
 
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 //import java.awt.event.KeyEvent;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
 import java.util.Arrays;
-import java.util.Stack;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.Vector;
 
 import javax.swing.JFileChooser;
 import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
 import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
 
 import loci.formats.gui.ExtensionFileFilter;
 import loci.visbio.ExitManager;
@@ -56,6 +69,24 @@ public class StateManager extends LogicManager {
 	/** Extension for VisBio state files. */
 	protected static final String STATE_EXTENSION = "xml";
 
+	/** String for undo history depth option. */
+	public static final String UNDO_DEPTH = "Undo history depth";
+
+	/** String for undo history memory option. */
+	public static final String UNDO_MEMORY = "Undo history memory";
+
+	/**
+	 * Quiet time after the last state change before a burst of changes is
+	 * captured as a single snapshot, in milliseconds.
+	 */
+	protected static final long SNAPSHOT_DELAY = 400;
+
+	/**
+	 * Maximum time a state change may wait before being captured, even during a
+	 * continuous burst of changes, in milliseconds.
+	 */
+	protected static final long SNAPSHOT_MAX_DELAY = 2000;
+
 	// -- Fields --
 
 	/** File chooser for state saves. */
@@ -70,14 +101,8 @@ public class StateManager extends LogicManager {
 	/** Temporary file for storing temporary state information. */
 	private final File stateFile;
 
-	/** Stack of old states for multiple undo. */
-	private Stack undoStates;
-
-	/** Current program state. */
-	private ProgramState currentState;
-
-	/** Stack of new states for multiple redo. */
-	private Stack redoStates;
+	/** History of program states for multiple undo and redo. */
+	private final StateHistory history = new StateHistory();
 
 	/** Initial program state. */
 	private ProgramState initialState;
@@ -88,6 +113,27 @@ public class StateManager extends LogicManager {
 	/** Has the user saved the most recent state? */
 	private boolean saved = true;
 
+	/** Lock guarding the snapshot state below. */
+	private final Object snapshotLock = new Object();
+
+	/** Timer capturing a burst of state changes, on the event thread. */
+	private final Timer snapshotTimer;
+
+	/** Background thread writing captured state snapshots. */
+	private Thread snapshotThread;
+
+	/** Message of the most recent state change not yet captured. */
+	private String pendingMsg;
+
+	/** Time of the first state change not yet captured. */
+	private long firstPending;
+
+	/** Captured snapshots waiting to be written, oldest first. */
+	private final LinkedList captured = new LinkedList();
+
+	/** Whether a snapshot is currently being written. */
+	private boolean writing;
+
 	// -- Constructors --
 
 	/** Constructs a VisBio state management object. */
@@ -99,6 +145,14 @@ public class StateManager extends LogicManager {
 	public StateManager(final VisBioFrame bio, final String stateFile) {
 		super(bio);
 		this.stateFile = new File(stateFile);
+		snapshotTimer = new Timer((int) SNAPSHOT_DELAY, new ActionListener() {
+
+			@Override
+			public void actionPerformed(final ActionEvent e) {
+				captureSnapshot();
+			}
+		});
+		snapshotTimer.setRepeats(false);
 	}
 
 	// -- StateManager API methods --
@@ -121,6 +175,7 @@ public class StateManager extends LogicManager {
 
 	/** Restores the current state from the given state file. */
 	public void restoreState(final File file) {
+		flushSnapshots();
 		try {
 			final Document doc = XMLUtil.parseXML(file);
 			restoreState(doc.getDocumentElement());
@@ -145,8 +200,8 @@ public class StateManager extends LogicManager {
 					JOptionPane.YES_NO_OPTION, JOptionPane.QUESTION_MESSAGE);
 			if (ans != JOptionPane.YES_OPTION) crashed = false;
 		}
-		saveState("", true, crashed); // compute currentState variable
-		initialState = currentState;
+		saveState("", true, crashed); // compute current state
+		initialState = history.getCurrent();
 		if (crashed) restoreState(stateFile);
 	}
 
@@ -166,8 +221,62 @@ public class StateManager extends LogicManager {
 		return true;
 	}
 
+	/**
+	 * Captures any pending state snapshot immediately, on the event dispatch
+	 * thread, then waits until all captured snapshots have been written.
+	 */
+	public void flushSnapshots() {
+		snapshotTimer.stop();
+		if (SwingUtilities.isEventDispatchThread()) captureSnapshot();
+		else {
+			try {
+				SwingUtilities.invokeAndWait(new Runnable() {
+
+					@Override
+					public void run() {
+						captureSnapshot();
+					}
+				});
+			}
+			catch (final InterruptedException exc) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			catch (final InvocationTargetException exc) {
+				exc.getCause().printStackTrace();
+			}
+		}
+		synchronized (snapshotLock) {
+			while (writing || snapshotThread != null && !captured.isEmpty()) {
+				try {
+					snapshotLock.wait();
+				}
+				catch (final InterruptedException exc) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+
 	/** Deletes VisBio state temp file. */
 	public void destroy() {
+		// stop the snapshot writer so it does not recreate the state file
+		snapshotTimer.stop();
+		Thread thread;
+		synchronized (snapshotLock) {
+			thread = snapshotThread;
+			snapshotThread = null;
+			pendingMsg = null;
+			captured.clear();
+			snapshotLock.notifyAll();
+		}
+		if (thread != null) {
+			try {
+				thread.join();
+			}
+			catch (final InterruptedException exc) {}
+		}
 		if (stateFile.exists()) {
 			if (!stateFile.delete()) {
 				System.err.println("Warning: unable to delete " + stateFile.getName());
@@ -220,20 +329,24 @@ public class StateManager extends LogicManager {
 
 	/** Undoes the last action taken. */
 	public void editUndo() {
-		if (undoStates.isEmpty()) return;
-		redoStates.push(currentState);
-		currentState = (ProgramState) undoStates.pop();
-		restoreState(currentState);
-		updateMenuItems();
+		flushSnapshots();
+		synchronized (this) {
+			final ProgramState state = history.undo();
+			if (state == null) return;
+			restoreState(state);
+			updateMenuItems();
+		}
 	}
 
 	/** Redoes the last action undone. */
 	public void editRedo() {
-		if (redoStates.isEmpty()) return;
-		undoStates.push(currentState);
-		currentState = (ProgramState) redoStates.pop();
-		restoreState(currentState);
-		updateMenuItems();
+		flushSnapshots();
+		synchronized (this) {
+			final ProgramState state = history.redo();
+			if (state == null) return;
+			restoreState(state);
+			updateMenuItems();
+		}
 	}
 
 	/** Resets the program to its initial state. */
@@ -243,6 +356,7 @@ public class StateManager extends LogicManager {
 				"Are you sure you want to reset VisBio to its initial state?",
 				"VisBio", JOptionPane.YES_NO_OPTION, JOptionPane.QUESTION_MESSAGE);
 		if (ans != JOptionPane.YES_OPTION) return;
+		flushSnapshots();
 		restoreState(initialState);
 		bio.generateEvent(this, "reset state", true);
 	}
@@ -284,6 +398,10 @@ public class StateManager extends LogicManager {
 		if (eventType == VisBioEvent.LOGIC_ADDED) {
 			final Object src = evt.getSource();
 			if (src == this) doGUI();
+			else if (src instanceof OptionManager) {
+				// option manager is added after this one
+				doOptions((OptionManager) src);
+			}
 			else if (src instanceof ExitManager) {
 				// HACK - make state logic menu items appears in the proper location
 
@@ -308,7 +426,7 @@ public class StateManager extends LogicManager {
 			}
 			else if (evt.isUndoable() && !restoring) {
 				saved = false;
-				saveState(evt.getMessage(), false, false);
+				scheduleSnapshot(evt.getMessage());
 			}
 		}
 	}
@@ -342,11 +460,34 @@ public class StateManager extends LogicManager {
 		  "loci.visbio.state.StateManager.editReset", 't');
 		bio.setMenuShortcut("Edit", "Reset", KeyEvent.VK_R);
 		*/
+	}
 
-		// undo logic variables
+	/** Adds undo history options to the given option manager. */
+	private void doOptions(final OptionManager om) {
 		bio.setSplashStatus(null);
-		undoStates = new Stack();
-		redoStates = new Stack();
+		om.addNumericOption("General", UNDO_DEPTH, "states",
+			"Adjusts the maximum number of states that can be undone",
+			StateHistory.DEFAULT_MAX_DEPTH);
+		om.addNumericOption("General", UNDO_MEMORY, "MB",
+			"Adjusts the maximum memory used to remember states for undo",
+			(int) (StateHistory.DEFAULT_MAX_MEMORY / 1024 / 1024));
+	}
+
+	/** Applies the undo history options to the undo history. */
+	private void updateHistoryLimits() {
+		final OptionManager om =
+			(OptionManager) bio.getManager(OptionManager.class);
+		if (om == null) return;
+		final NumericOption depth = (NumericOption) om.getOption(UNDO_DEPTH);
+		final NumericOption memory = (NumericOption) om.getOption(UNDO_MEMORY);
+		if (depth == null || memory == null) return;
+		int maxDepth = depth.getIntegerValue();
+		if (maxDepth <= 0) maxDepth = StateHistory.DEFAULT_MAX_DEPTH;
+		final double megabytes = memory.getFloatingValue();
+		final long maxMemory =
+			megabytes > 0 ? (long) (megabytes * 1024 * 1024)
+				: StateHistory.DEFAULT_MAX_MEMORY;
+		history.setLimits(maxDepth, maxMemory);
 	}
 
 	/** Restores the state from the given program state object. */
@@ -375,49 +516,201 @@ public class StateManager extends LogicManager {
 		return doc;
 	}
 
+	/**
+	 * Schedules a state snapshot. Bursts of state changes are coalesced into a
+	 * single snapshot, captured on the event dispatch thread once changes stop
+	 * for {@link #SNAPSHOT_DELAY} milliseconds, or at the latest
+	 * {@link #SNAPSHOT_MAX_DELAY} milliseconds after the first change.
+	 */
+	private void scheduleSnapshot(final String msg) {
+		synchronized (snapshotLock) {
+			final long now = System.currentTimeMillis();
+			if (pendingMsg == null) firstPending = now;
+			pendingMsg = msg;
+			final long delay =
+				Math.min(SNAPSHOT_DELAY, firstPending + SNAPSHOT_MAX_DELAY - now);
+			snapshotTimer.setInitialDelay((int) Math.max(delay, 0));
+			snapshotTimer.restart();
+		}
+	}
+
+	/**
+	 * Captures the pending state change, if any, as a DOM on the calling
+	 * thread, which should be the event dispatch thread, and queues it for the
+	 * background snapshot writer.
+	 */
+	private void captureSnapshot() {
+		final String msg;
+		synchronized (snapshotLock) {
+			msg = pendingMsg;
+			pendingMsg = null;
+		}
+		if (msg == null) return;
+		final ProgramState state = new ProgramState(msg, saveState());
+		synchronized (snapshotLock) {
+			captured.add(state);
+			if (snapshotThread == null) {
+				snapshotThread = new Thread(new Runnable() {
+
+					@Override
+					public void run() {
+						runSnapshots();
+					}
+				}, "VisBio-StateSnapshotThread");
+				snapshotThread.setDaemon(true);
+				snapshotThread.start();
+			}
+			snapshotLock.notifyAll();
+		}
+	}
+
+	/**
+	 * Main loop of the background snapshot writer, which writes captured
+	 * snapshots to the state file and the undo history.
+	 */
+	private void runSnapshots() {
+		final Thread me = Thread.currentThread();
+		while (true) {
+			final ProgramState state;
+			synchronized (snapshotLock) {
+				try {
+					while (snapshotThread == me && captured.isEmpty()) {
+						snapshotLock.wait();
+					}
+				}
+				catch (final InterruptedException exc) {
+					continue;
+				}
+				if (snapshotThread != me) return;
+				state = (ProgramState) captured.removeFirst();
+				writing = true;
+			}
+			try {
+				recordState(state, false, false);
+			}
+			finally {
+				synchronized (snapshotLock) {
+					writing = false;
+					snapshotLock.notifyAll();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes the given state to the VisBio state temp file. The state is first
+	 * written to a separate file and then renamed, so the state file is never
+	 * left partially written; if anything fails, the previous state file is
+	 * kept.
+	 */
+	private void writeStateFile(final Document doc) {
+		final File tmp = new File(stateFile.getPath() + ".part");
+		try {
+			final FileOutputStream out = new FileOutputStream(tmp);
+			try {
+				final Transformer idTransform =
+					TransformerFactory.newInstance().newTransformer();
+				idTransform.transform(new DOMSource(doc), new StreamResult(out));
+				out.write(System.getProperty("line.separator").getBytes());
+				out.flush();
+				out.getFD().sync();
+			}
+			finally {
+				out.close();
+			}
+		}
+		catch (final IOException exc) {
+			warnStateFile(tmp, exc);
+			return;
+		}
+		catch (final TransformerException exc) {
+			warnStateFile(tmp, exc);
+			return;
+		}
+
+		if (tmp.renameTo(stateFile)) return;
+
+		// some platforms cannot rename over an existing file, so move the old
+		// state file aside first, restoring it if the new one cannot take its place
+		final File old = new File(stateFile.getPath() + ".old");
+		old.delete();
+		if (stateFile.exists() && !stateFile.renameTo(old)) {
+			warnStateFile(tmp, null);
+			return;
+		}
+		if (tmp.renameTo(stateFile)) old.delete();
+		else {
+			old.renameTo(stateFile);
+			warnStateFile(tmp, null);
+		}
+	}
+
+	/**
+	 * Reports that the state file could not be written, discarding the given
+	 * partial file.
+	 */
+	private void warnStateFile(final File tmp, final Exception exc) {
+		System.err.println("Warning: unable to write " + stateFile.getName());
+		if (exc != null) exc.printStackTrace();
+		tmp.delete();
+	}
+
 	/** Saves the state to the undo stack and the VisBio state temp file. */
-	private void saveState(final String msg, final boolean init,
+	private synchronized void saveState(final String msg, final boolean init,
 		final boolean crashed)
 	{
 		// capture save state results to a DOM
-		final Document doc = saveState();
+		recordState(new ProgramState(msg, saveState()), init, crashed);
+	}
 
+	/** Writes a captured state to the undo stack and the state temp file. */
+	private synchronized void recordState(final ProgramState state,
+		final boolean init, final boolean crashed)
+	{
 		if (!crashed) {
 			// write captured results to the state file
-			XMLUtil.writeXML(stateFile, doc);
+			writeStateFile(state.state);
 		}
 
-		if (!init) {
-			// update multiple undo stacks
-			undoStates.push(currentState);
-			redoStates.removeAllElements();
-		}
-		currentState = new ProgramState(msg, doc);
+		// update multiple undo history
+		if (init) history.clear();
+		else updateHistoryLimits();
+		history.push(state);
 		updateMenuItems();
 	}
 
 	/** Updates the Edit menu's Undo and Redo menu items. */
 	private void updateMenuItems() {
 		/* CTR TODO fix state logic
-		if (undoStates.isEmpty()) {
+		if (!history.canUndo()) {
 		  editUndo.setText("Undo");
 		  editUndo.setEnabled(false);
 		}
 		else {
-		  editUndo.setText("Undo " + currentState.msg);
+		  editUndo.setText("Undo " + history.getCurrentMessage());
 		  editUndo.setEnabled(true);
 		}
-		if (redoStates.isEmpty()) {
+		if (!history.canRedo()) {
 		  editRedo.setText("Redo");
 		  editRedo.setEnabled(false);
 		}
 		else {
-		  editRedo.setText("Redo " + ((ProgramState) redoStates.peek()).msg);
+		  editRedo.setText("Redo " + history.getRedoMessage());
 		  editRedo.setEnabled(true);
 		}
 		*/
 	}
 
+	/** Gets the list of indices stored under the given key, creating it. */
+	private static LinkedList bucket(final HashMap map, final Object key) {
+		LinkedList list = (LinkedList) map.get(key);
+		if (list == null) {
+			list = new LinkedList();
+			map.put(key, list);
+		}
+		return list;
+	}
+
 	// -- Utility methods --
 
 	/**
@@ -431,8 +724,10 @@ public class StateManager extends LogicManager {
 	 * <li>If there are still leftover existing objects, discard them
 	 * <li>If there are still leftover read objects, initialize them
 	 * </ol>
-	 * See the {@link loci.visbio.state.Dynamic} documentation for more
-	 * information.
+	 * Candidate matches are looked up by {@link Dynamic#getMatchKey()}, and
+	 * leftover objects of the same class are tried first when reinitializing,
+	 * so merging takes roughly linear time in the lengths of the lists. See the
+	 * {@link loci.visbio.state.Dynamic} documentation for more information.
 	 */
 	public static void mergeStates(final Vector oldList, final Vector newList) {
 		final int osize = oldList.size();
@@ -442,13 +737,24 @@ public class StateManager extends LogicManager {
 		Arrays.fill(oldIndex, -1);
 		Arrays.fill(newIndex, -1);
 
+		// index old objects by match key
+		final HashMap oldByKey = new HashMap();
+		for (int o = 0; o < osize; o++) {
+			final Dynamic oldDyn = (Dynamic) oldList.elementAt(o);
+			bucket(oldByKey, oldDyn.getMatchKey()).add(new Integer(o));
+		}
+
 		// find all matches between the two lists
 		for (int n = 0; n < nsize; n++) {
 			final Dynamic newDyn = (Dynamic) newList.elementAt(n);
-			for (int o = 0; o < osize; o++) {
-				if (oldIndex[o] >= 0) continue;
+			final LinkedList candidates =
+				(LinkedList) oldByKey.get(newDyn.getMatchKey());
+			if (candidates == null) continue;
+			for (final Iterator iter = candidates.iterator(); iter.hasNext();) {
+				final int o = ((Integer) iter.next()).intValue();
 				final Dynamic oldDyn = (Dynamic) oldList.elementAt(o);
 				if (newDyn.matches(oldDyn)) {
+					iter.remove();
 					oldIndex[o] = n;
 					newIndex[n] = o;
 					// discard new object in favor of matching old one
@@ -459,22 +765,53 @@ public class StateManager extends LogicManager {
 			}
 		}
 
+		// index leftover new objects by class
+		final HashMap newByClass = new HashMap();
+		for (int n = 0; n < nsize; n++) {
+			if (newIndex[n] >= 0) continue;
+			final Dynamic newDyn = (Dynamic) newList.elementAt(n);
+			bucket(newByClass, newDyn.getClass()).add(new Integer(n));
+		}
+
 		// initialize states between overlapping leftover objects
 		for (int o = 0; o < osize; o++) {
 			if (oldIndex[o] >= 0) continue;
 			final Dynamic oldDyn = (Dynamic) oldList.elementAt(o);
-			for (int n = 0; n < nsize; n++) {
-				if (newIndex[n] >= 0) continue;
-				final Dynamic newDyn = (Dynamic) newList.elementAt(n);
-				if (!oldDyn.isCompatible(newDyn)) continue;
-				oldDyn.initState(newDyn);
-				oldIndex[o] = n;
-				newIndex[n] = o;
-				// discard new object in favor of reinitialized old one
-				newDyn.discard();
-				newList.setElementAt(oldDyn, n);
-				break;
+
+			// prefer leftover objects of the same class
+			int match = -1;
+			final LinkedList candidates =
+				(LinkedList) newByClass.get(oldDyn.getClass());
+			if (candidates != null) {
+				for (final Iterator iter = candidates.iterator(); iter.hasNext();) {
+					final int n = ((Integer) iter.next()).intValue();
+					if (!oldDyn.isCompatible((Dynamic) newList.elementAt(n))) continue;
+					iter.remove();
+					match = n;
+					break;
+				}
+			}
+			if (match < 0) {
+				// fall back to any compatible leftover object
+				for (int n = 0; n < nsize; n++) {
+					if (newIndex[n] >= 0) continue;
+					if (!oldDyn.isCompatible((Dynamic) newList.elementAt(n))) continue;
+					final LinkedList list =
+						(LinkedList) newByClass.get(newList.elementAt(n).getClass());
+					list.remove(new Integer(n));
+					match = n;
+					break;
+				}
 			}
+			if (match < 0) continue;
+
+			final Dynamic newDyn = (Dynamic) newList.elementAt(match);
+			oldDyn.initState(newDyn);
+			oldIndex[o] = match;
+			newIndex[match] = o;
+			// discard new object in favor of reinitialized old one
+			newDyn.discard();
+			newList.setElementAt(oldDyn, match);
 		}
 
 		// discard remaining old objects
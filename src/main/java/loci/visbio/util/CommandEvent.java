@@ -0,0 +1,97 @@
+/*
+ * #%L
+ * VisBio application for visualization of multidimensional biological
+ * image data.
+ * %%
+ * Copyright (C) 2002 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.visbio.util;
+
+/**
+ * An event indicating a local client sent a command to the instance server.
+ */
+public class CommandEvent {
+
+	// -- Fields --
+
+	/** The command name. */
+	protected String command;
+
+	/** The command's arguments. */
+	protected String[] args;
+
+	/** Whether the command's session has been authenticated. */
+	protected boolean authenticated;
+
+	// -- Constructor --
+
+	/** Constructs a command event from an unauthenticated session. */
+	public CommandEvent(final String command, final String[] args) {
+		this(command, args, false);
+	}
+
+	/** Constructs a command event. */
+	public CommandEvent(final String command, final String[] args,
+		final boolean authenticated)
+	{
+		this.command = command;
+		this.args = args;
+		this.authenticated = authenticated;
+	}
+
+	// -- CommandEvent API methods --
+
+	/** Gets the command name. */
+	public String getCommand() {
+		return command;
+	}
+
+	/** Gets the command's arguments. */
+	public String[] getArguments() {
+		return args;
+	}
+
+	/**
+	 * Gets whether the command's session has been authenticated with the
+	 * instance server's token.
+	 */
+	public boolean isAuthenticated() {
+		return authenticated;
+	}
+
+	/** Gets the number of arguments. */
+	public int getArgumentCount() {
+		return args.length;
+	}
+
+	/**
+	 * Gets the argument at the given index.
+	 * 
+	 * @throws IllegalArgumentException if there is no such argument
+	 */
+	public String getArgument(final int i) {
+		if (i >= args.length) {
+			throw new IllegalArgumentException("Missing argument #" + (i + 1) +
+				" to " + command);
+		}
+		return args[i];
+	}
+
+}
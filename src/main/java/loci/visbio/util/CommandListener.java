@@ -0,0 +1,41 @@
+/*
+ * #%L
+ * VisBio application for visualization of multidimensional biological
+ * image data.
+ * %%
+ * Copyright (C) 2002 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.visbio.util;
+
+/**
+ * A listener for commands sent to an instance server by a local client.
+ */
+public interface CommandListener {
+
+	/**
+	 * Used to execute a command received by the instance server.
+	 * 
+	 * @return a one-line result, or null if the command is not recognized
+	 * @throws IllegalArgumentException if the command's arguments are invalid,
+	 *           or it cannot be carried out
+	 */
+	String commandReceived(CommandEvent e);
+
+}
@@ -0,0 +1,405 @@
+/*
+ * #%L
+ * VisBio application for visualization of multidimensional biological
+ * image data.
+ * %%
+ * Copyright (C) 2002 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.visbio.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import visad.FlatField;
+import visad.VisADException;
+
+/**
+ * Per-channel intensity histograms of an image plane, computed in one parallel
+ * pass over its samples, from which color ranges can be derived directly.
+ */
+public class Histogram {
+
+	// -- Constants --
+
+	/** Default number of bins per channel. */
+	public static final int DEFAULT_BINS = 4096;
+
+	/** Minimum number of samples worth handing to a separate thread. */
+	protected static final int MIN_SAMPLES_PER_THREAD = 65536;
+
+	// -- Fields --
+
+	/** Bin counts for each channel. */
+	protected int[][] counts;
+
+	/** Number of valid (non-NaN) samples for each channel. */
+	protected long[] totals;
+
+	/** Minimum and maximum sample values for each channel. */
+	protected double[] min, max;
+
+	/** Sum of the valid sample values for each channel. */
+	protected double[] sums;
+
+	// -- Constructor --
+
+	/** Constructs a histogram from already tallied bins. */
+	protected Histogram(final int[][] counts, final long[] totals,
+		final double[] min, final double[] max, final double[] sums)
+	{
+		this.counts = counts;
+		this.totals = totals;
+		this.min = min;
+		this.max = max;
+		this.sums = sums;
+	}
+
+	// -- Histogram API methods --
+
+	/** Gets the number of channels. */
+	public int getChannelCount() {
+		return counts.length;
+	}
+
+	/** Gets the number of bins per channel. */
+	public int getBinCount() {
+		return counts.length == 0 ? 0 : counts[0].length;
+	}
+
+	/** Gets the number of samples in the given bin of the given channel. */
+	public int getCount(final int c, final int bin) {
+		return counts[c][bin];
+	}
+
+	/** Gets the number of valid samples in the given channel. */
+	public long getSampleCount(final int c) {
+		return totals[c];
+	}
+
+	/** Gets the smallest sample value of the given channel. */
+	public double getMin(final int c) {
+		return min[c];
+	}
+
+	/** Gets the largest sample value of the given channel. */
+	public double getMax(final int c) {
+		return max[c];
+	}
+
+	/** Gets the mean sample value of the given channel. */
+	public double getMean(final int c) {
+		return totals[c] == 0 ? Double.NaN : sums[c] / totals[c];
+	}
+
+	/**
+	 * Gets the value below which the given percentage of the channel's samples
+	 * fall, interpolating linearly within the bin containing it.
+	 */
+	public double getPercentile(final int c, final double percent) {
+		if (totals[c] == 0) return Double.NaN;
+		if (percent <= 0) return min[c];
+		if (percent >= 100) return max[c];
+		final int[] bins = counts[c];
+		final double rank = percent / 100 * totals[c];
+		final double width = (max[c] - min[c]) / bins.length;
+		long sum = 0;
+		for (int i = 0; i < bins.length; i++) {
+			final long next = sum + bins[i];
+			if (next >= rank && bins[i] > 0) {
+				final double q = (rank - sum) / bins[i];
+				final double value = min[c] + (i + q) * width;
+				return value > max[c] ? max[c] : value;
+			}
+			sum = next;
+		}
+		return max[c];
+	}
+
+	/**
+	 * Gets the color range for the given channel that clips the given
+	 * percentages of samples off the bottom and top of the histogram. Clipping
+	 * nothing yields the channel's minimum and maximum.
+	 */
+	public double[] getRange(final int c, final double loClip,
+		final double hiClip)
+	{
+		return new double[] { getPercentile(c, loClip),
+			getPercentile(c, 100 - hiClip) };
+	}
+
+	/** Writes this histogram to the given output. */
+	public void write(final DataOutput out) throws IOException {
+		final int channels = getChannelCount(), bins = getBinCount();
+		out.writeInt(channels);
+		out.writeInt(bins);
+		for (int c = 0; c < channels; c++) {
+			out.writeLong(totals[c]);
+			out.writeDouble(min[c]);
+			out.writeDouble(max[c]);
+			out.writeDouble(sums[c]);
+			for (int i = 0; i < bins; i++)
+				out.writeInt(counts[c][i]);
+		}
+	}
+
+	// -- Utility methods --
+
+	/**
+	 * Computes histograms for the range components of the given field, or
+	 * returns null if its samples cannot be obtained.
+	 */
+	public static Histogram compute(final FlatField ff, final int bins) {
+		float[][] samples;
+		try {
+			samples = ff.getFloats(false);
+		}
+		catch (final VisADException exc) {
+			exc.printStackTrace();
+			return null;
+		}
+		return samples == null ? null : compute(samples, bins);
+	}
+
+	/** Reads a histogram previously written with {@link #write}. */
+	public static Histogram read(final DataInput in) throws IOException {
+		final int channels = in.readInt(), bins = in.readInt();
+		if (channels < 0 || bins < 0) throw new IOException("Invalid histogram");
+		final int[][] counts = new int[channels][bins];
+		final long[] totals = new long[channels];
+		final double[] min = new double[channels];
+		final double[] max = new double[channels];
+		final double[] sums = new double[channels];
+		for (int c = 0; c < channels; c++) {
+			totals[c] = in.readLong();
+			min[c] = in.readDouble();
+			max[c] = in.readDouble();
+			sums[c] = in.readDouble();
+			for (int i = 0; i < bins; i++)
+				counts[c][i] = in.readInt();
+		}
+		return new Histogram(counts, totals, min, max, sums);
+	}
+
+	/**
+	 * Combines the given histograms into one spanning all of their samples,
+	 * with the given number of bins. Each source bin is tallied in the combined
+	 * bin containing its center. Null entries, and histograms whose channel
+	 * count differs from the first one, are skipped.
+	 *
+	 * @return the combined histogram, or null if there is nothing to combine
+	 */
+	public static Histogram merge(final Histogram[] h, final int bins) {
+		int channels = -1;
+		for (int i = 0; i < h.length && channels < 0; i++) {
+			if (h[i] != null) channels = h[i].getChannelCount();
+		}
+		if (channels < 0) return null;
+
+		final int[][] counts = new int[channels][bins];
+		final long[] totals = new long[channels];
+		final double[] min = new double[channels];
+		final double[] max = new double[channels];
+		final double[] sums = new double[channels];
+		for (int c = 0; c < channels; c++) {
+			double lo = Double.POSITIVE_INFINITY, hi = Double.NEGATIVE_INFINITY;
+			for (int i = 0; i < h.length; i++) {
+				if (h[i] == null || h[i].getChannelCount() != channels) continue;
+				if (h[i].totals[c] == 0) continue;
+				if (h[i].min[c] < lo) lo = h[i].min[c];
+				if (h[i].max[c] > hi) hi = h[i].max[c];
+			}
+			if (lo > hi) {
+				min[c] = max[c] = Double.NaN;
+				continue;
+			}
+			min[c] = lo;
+			max[c] = hi;
+			final double scale = hi > lo ? bins / (hi - lo) : 0;
+			for (int i = 0; i < h.length; i++) {
+				if (h[i] == null || h[i].getChannelCount() != channels) continue;
+				if (h[i].totals[c] == 0) continue;
+				final int[] src = h[i].counts[c];
+				final double width = (h[i].max[c] - h[i].min[c]) / src.length;
+				for (int j = 0; j < src.length; j++) {
+					if (src[j] == 0) continue;
+					final double v = h[i].min[c] + (j + 0.5) * width;
+					int bin = (int) ((v - lo) * scale);
+					if (bin >= bins) bin = bins - 1;
+					counts[c][bin] += src[j];
+				}
+				totals[c] += h[i].totals[c];
+				sums[c] += h[i].sums[c];
+			}
+		}
+		return new Histogram(counts, totals, min, max, sums);
+	}
+
+	/**
+	 * Computes a histogram with the given number of bins for each channel of the
+	 * given samples, dividing the samples between as many threads as there are
+	 * processors. NaN samples are ignored.
+	 */
+	public static Histogram compute(final float[][] samples, final int bins) {
+		final int channels = samples.length;
+		final int len = channels == 0 ? 0 : samples[0].length;
+		int numThreads = Runtime.getRuntime().availableProcessors();
+		if (numThreads > len / MIN_SAMPLES_PER_THREAD) {
+			numThreads = len / MIN_SAMPLES_PER_THREAD;
+		}
+		if (numThreads < 1) numThreads = 1;
+
+		// first pass - per-thread extrema
+		final float[][] lo = new float[numThreads][channels];
+		final float[][] hi = new float[numThreads][channels];
+		run(numThreads, len, new Pass() {
+
+			@Override
+			public void run(final int t, final int start, final int end) {
+				for (int c = 0; c < channels; c++) {
+					final float[] s = samples[c];
+					float l = Float.POSITIVE_INFINITY, h = Float.NEGATIVE_INFINITY;
+					for (int i = start; i < end; i++) {
+						final float v = s[i];
+						if (v < l) l = v;
+						if (v > h) h = v;
+					}
+					lo[t][c] = l;
+					hi[t][c] = h;
+				}
+			}
+		});
+		final double[] min = new double[channels];
+		final double[] max = new double[channels];
+		for (int c = 0; c < channels; c++) {
+			float l = Float.POSITIVE_INFINITY, h = Float.NEGATIVE_INFINITY;
+			for (int t = 0; t < numThreads; t++) {
+				if (lo[t][c] < l) l = lo[t][c];
+				if (hi[t][c] > h) h = hi[t][c];
+			}
+			min[c] = l;
+			max[c] = h;
+		}
+
+		// second pass - per-thread bin counts
+		final int[][][] partial = new int[numThreads][channels][bins];
+		final long[][] valid = new long[numThreads][channels];
+		final double[][] total = new double[numThreads][channels];
+		run(numThreads, len, new Pass() {
+
+			@Override
+			public void run(final int t, final int start, final int end) {
+				for (int c = 0; c < channels; c++) {
+					final float[] s = samples[c];
+					final int[] b = partial[t][c];
+					final double base = min[c];
+					final double scale =
+						max[c] > min[c] ? bins / (max[c] - min[c]) : 0;
+					long n = 0;
+					double sum = 0;
+					for (int i = start; i < end; i++) {
+						final float v = s[i];
+						if (v != v) continue; // NaN
+						int bin = (int) ((v - base) * scale);
+						if (bin >= bins) bin = bins - 1;
+						b[bin]++;
+						n++;
+						sum += v;
+					}
+					valid[t][c] = n;
+					total[t][c] = sum;
+				}
+			}
+		});
+
+		// merge partial results
+		final int[][] counts = partial[0];
+		final long[] totals = valid[0];
+		final double[] sums = total[0];
+		for (int t = 1; t < numThreads; t++) {
+			for (int c = 0; c < channels; c++) {
+				final int[] b = partial[t][c];
+				for (int i = 0; i < bins; i++)
+					counts[c][i] += b[i];
+				totals[c] += valid[t][c];
+				sums[c] += total[t][c];
+			}
+		}
+		for (int c = 0; c < channels; c++) {
+			if (totals[c] == 0) min[c] = max[c] = Double.NaN;
+		}
+		return new Histogram(counts, totals, min, max, sums);
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Executes the given pass over contiguous slices of the sample range, one
+	 * slice per thread, waiting for all threads to finish.
+	 */
+	protected static void run(final int numThreads, final int len,
+		final Pass pass)
+	{
+		if (numThreads == 1) {
+			pass.run(0, 0, len);
+			return;
+		}
+		final RuntimeException[] failure = new RuntimeException[1];
+		final Thread[] threads = new Thread[numThreads];
+		for (int t = 0; t < numThreads; t++) {
+			final int thread = t;
+			final int start = (int) ((long) len * t / numThreads);
+			final int end = (int) ((long) len * (t + 1) / numThreads);
+			threads[t] = new Thread("VisBio-HistogramThread-" + t) {
+
+				@Override
+				public void run() {
+					try {
+						pass.run(thread, start, end);
+					}
+					catch (final RuntimeException exc) {
+						synchronized (failure) {
+							if (failure[0] == null) failure[0] = exc;
+						}
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (int t = 0; t < numThreads; t++) {
+			try {
+				threads[t].join();
+			}
+			catch (final InterruptedException exc) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		if (failure[0] != null) throw failure[0];
+	}
+
+	// -- Helper classes --
+
+	/** One pass over a slice of the samples. */
+	protected interface Pass {
+
+		void run(int t, int start, int end);
+	}
+
+}
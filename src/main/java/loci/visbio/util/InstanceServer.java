@@ -25,12 +25,17 @@
 package loci.visbio.util;
 
 import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
 import java.util.Vector;
 
 /**
@@ -42,9 +47,52 @@ import java.util.Vector;
  * application instance. If unsuccessful (caught an exception), the application
  * should create an InstanceServer, thus becoming the active application
  * instance.
+ * <p>
+ * The server also accepts commands from local clients such as automation
+ * scripts, so that they can drive the running instance. A connection whose
+ * first line is not an argument count is a command session: each line holds a
+ * command name followed by its arguments, separated by spaces (with double
+ * quotes around arguments containing spaces), and is answered by one line,
+ * either "OK" followed by the command's result, or "ERROR" followed by a
+ * message. The session ends when the client sends "quit" or closes the
+ * connection. Commands are executed by the registered command listeners.
+ * <p>
+ * Each server has a random token, which the application may write to a file
+ * readable only by the user. A session becomes authenticated once the client
+ * sends "auth" followed by the token; command listeners should refuse commands
+ * that write files or otherwise act beyond the running instance unless the
+ * session is authenticated, since any local process may connect.
+ * <p>
+ * The server only listens on the loopback interface. The short spawn protocol
+ * is handled by the listening thread itself, while each command session gets a
+ * thread of its own, so that idle sessions never hold up newly spawned
+ * instances; the number of concurrent sessions is bounded.
  */
 public class InstanceServer implements Runnable {
 
+	// -- Constants --
+
+	/** Maximum number of concurrent command sessions. */
+	public static final int MAX_SESSIONS = 16;
+
+	/** Maximum number of connections waiting to be accepted. */
+	protected static final int BACKLOG = 16;
+
+	/** Time allowed for a new connection's first line, in milliseconds. */
+	protected static final int HANDSHAKE_TIMEOUT = 10 * 1000;
+
+	/** Time after which an idle command session is closed, in milliseconds. */
+	protected static final int IDLE_TIMEOUT = 5 * 60 * 1000;
+
+	/** Command ending a command session. */
+	public static final String QUIT = "quit";
+
+	/** Command authenticating a command session with the server's token. */
+	public static final String AUTH = "auth";
+
+	/** Number of random bytes in a token. */
+	protected static final int TOKEN_LENGTH = 16;
+
 	// -- Fields --
 
 	/** Server socket listening for client connections. */
@@ -53,6 +101,21 @@ public class InstanceServer implements Runnable {
 	/** List of application instance spawn listeners. */
 	protected Vector listeners;
 
+	/** List of command listeners. */
+	protected Vector commandListeners;
+
+	/** Connections of the command sessions currently being served. */
+	protected Vector active = new Vector();
+
+	/** Number of command sessions started, for naming their threads. */
+	protected int sessionCount;
+
+	/** Token authenticating command sessions. */
+	protected String token;
+
+	/** File to which the token was written, or null. */
+	protected File tokenFile;
+
 	/** Whether this instance server is still listening for spawn events. */
 	protected boolean alive = true;
 
@@ -79,17 +142,121 @@ public class InstanceServer implements Runnable {
 		socket.close();
 	}
 
+	/**
+	 * Sends the given command lines to an instance server running on the
+	 * specified port, in a single session, returning the server's reply to each.
+	 */
+	public static String[] sendCommands(final String[] commands, final int port)
+		throws IOException
+	{
+		final Socket socket = new Socket("localhost", port);
+		try {
+			final PrintWriter out =
+				new PrintWriter(new OutputStreamWriter(socket.getOutputStream()));
+			final BufferedReader in =
+				new BufferedReader(new InputStreamReader(socket.getInputStream()));
+			final String[] replies = new String[commands.length];
+			for (int i = 0; i < commands.length; i++) {
+				out.println(commands[i]);
+				out.flush();
+				replies[i] = in.readLine();
+				if (replies[i] == null) throw new IOException("Connection closed");
+			}
+			out.println(QUIT);
+			out.flush();
+			return replies;
+		}
+		finally {
+			socket.close();
+		}
+	}
+
+	/**
+	 * Splits a command line into its command name and arguments, at spaces
+	 * outside double quotes.
+	 */
+	public static String[] parseCommand(final String line) {
+		final Vector tokens = new Vector();
+		final StringBuffer sb = new StringBuffer();
+		boolean quoted = false, token = false;
+		for (int i = 0; i < line.length(); i++) {
+			final char c = line.charAt(i);
+			if (c == '"') {
+				quoted = !quoted;
+				token = true;
+			}
+			else if (!quoted && Character.isWhitespace(c)) {
+				if (token) tokens.add(sb.toString());
+				sb.setLength(0);
+				token = false;
+			}
+			else {
+				sb.append(c);
+				token = true;
+			}
+		}
+		if (token) tokens.add(sb.toString());
+		final String[] s = new String[tokens.size()];
+		tokens.copyInto(s);
+		return s;
+	}
+
 	// -- Constructor --
 
 	/** Creates a new instance server on the given port. */
 	public InstanceServer(final int port) throws IOException {
-		serverSocket = new ServerSocket(port, 1);
+		serverSocket =
+			new ServerSocket(port, BACKLOG, InetAddress.getByName("localhost"));
 		listeners = new Vector();
-		new Thread(this, "InstanceServer").start();
+		commandListeners = new Vector();
+		final byte[] bytes = new byte[TOKEN_LENGTH];
+		new SecureRandom().nextBytes(bytes);
+		final StringBuffer sb = new StringBuffer();
+		for (int i = 0; i < bytes.length; i++) {
+			sb.append(Integer.toHexString((bytes[i] & 0xff) | 0x100).substring(1));
+		}
+		token = sb.toString();
+		new Thread(this, "VisBio-InstanceServer").start();
 	}
 
 	// -- InstanceServer API methods --
 
+	/** Gets the port on which this instance server is listening. */
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	/** Gets the token authenticating command sessions. */
+	public String getToken() {
+		return token;
+	}
+
+	/**
+	 * Writes the token authenticating command sessions to the given file,
+	 * replacing it, and restricting it to be readable only by its owner. The
+	 * file is deleted when the server stops.
+	 */
+	public void writeToken(final File file) throws IOException {
+		file.delete();
+		if (!file.createNewFile()) throw new IOException("Cannot create " + file);
+		// restrict access before the token is written
+		file.setReadable(false, false);
+		file.setWritable(false, false);
+		if (!file.setReadable(true, true) || !file.setWritable(true, true)) {
+			file.delete();
+			throw new IOException("Cannot restrict access to " + file);
+		}
+		final FileWriter out = new FileWriter(file);
+		try {
+			out.write(token);
+			out.write("\n");
+		}
+		finally {
+			out.close();
+		}
+		tokenFile = file;
+	}
+
 	/** Adds an application instance spawn listener. */
 	public void addSpawnListener(final SpawnListener l) {
 		synchronized (listeners) {
@@ -104,14 +271,31 @@ public class InstanceServer implements Runnable {
 		}
 	}
 
-	/** Removes all application instance spawn listeners. */
+	/** Adds a command listener. */
+	public void addCommandListener(final CommandListener l) {
+		synchronized (commandListeners) {
+			commandListeners.addElement(l);
+		}
+	}
+
+	/** Removes a command listener. */
+	public void removeCommandListener(final CommandListener l) {
+		synchronized (commandListeners) {
+			commandListeners.removeElement(l);
+		}
+	}
+
+	/** Removes all application instance spawn and command listeners. */
 	public void removeAllListeners() {
 		synchronized (listeners) {
 			listeners.removeAllElements();
 		}
+		synchronized (commandListeners) {
+			commandListeners.removeAllElements();
+		}
 	}
 
-	/** Stops this instance server's thread. */
+	/** Stops this instance server's threads, closing any open connections. */
 	public void stop() {
 		alive = false;
 		try {
@@ -120,33 +304,24 @@ public class InstanceServer implements Runnable {
 		catch (final IOException exc) {
 			exc.printStackTrace();
 		}
+		if (tokenFile != null) tokenFile.delete();
+		synchronized (active) {
+			for (int i = 0; i < active.size(); i++)
+				close((Socket) active.elementAt(i));
+		}
 	}
 
 	// -- Runnable API methods --
 
 	/**
-	 * Listens for connections from newly spawned application instances and passes
-	 * their arguments to all registered listeners.
+	 * Listens for connections from newly spawned application instances and
+	 * local clients.
 	 */
 	@Override
 	public void run() {
 		while (alive) {
 			try {
-				final Socket socket = serverSocket.accept();
-				final BufferedReader in =
-					new BufferedReader(new InputStreamReader(socket.getInputStream()));
-				int numArgs = -1;
-				try {
-					final String line = in.readLine();
-					if (line != null) numArgs = Integer.parseInt(line);
-				}
-				catch (final NumberFormatException exc) {}
-				final String[] args = numArgs < 0 ? null : new String[numArgs];
-				for (int i = 0; i < numArgs; i++)
-					args[i] = in.readLine();
-				in.close();
-				socket.close();
-				notifyListeners(new SpawnEvent(args));
+				accept(serverSocket.accept());
 			}
 			catch (final IOException exc) {
 				if (alive) exc.printStackTrace();
@@ -156,6 +331,152 @@ public class InstanceServer implements Runnable {
 
 	// -- Helper methods --
 
+	/**
+	 * Reads the first line of a new connection, passing the arguments of a newly
+	 * spawned application instance to all registered spawn listeners, or
+	 * starting a session thread to execute the commands of a local client.
+	 */
+	protected void accept(final Socket socket) {
+		boolean session = false;
+		try {
+			socket.setSoTimeout(HANDSHAKE_TIMEOUT);
+			final BufferedReader in =
+				new BufferedReader(new InputStreamReader(socket.getInputStream()));
+			final String line = in.readLine();
+			int numArgs = -1;
+			try {
+				if (line != null) numArgs = Integer.parseInt(line.trim());
+			}
+			catch (final NumberFormatException exc) {
+				session = startSession(socket, in, line);
+				return;
+			}
+			final String[] args = numArgs < 0 ? null : new String[numArgs];
+			for (int i = 0; i < numArgs; i++)
+				args[i] = in.readLine();
+			notifyListeners(new SpawnEvent(args));
+		}
+		catch (final IOException exc) {
+			if (alive) exc.printStackTrace();
+		}
+		finally {
+			if (!session) close(socket);
+		}
+	}
+
+	/**
+	 * Starts a thread serving the command session on the given connection,
+	 * returning false if too many sessions are already open.
+	 */
+	protected boolean startSession(final Socket socket,
+		final BufferedReader in, final String line) throws IOException
+	{
+		final int n;
+		synchronized (active) {
+			n = alive && active.size() < MAX_SESSIONS ? sessionCount++ : -1;
+			if (n >= 0) active.add(socket);
+		}
+		if (n < 0) {
+			final PrintWriter out =
+				new PrintWriter(new OutputStreamWriter(socket.getOutputStream()));
+			out.println("ERROR Too many sessions");
+			out.flush();
+			return false;
+		}
+		final Thread thread = new Thread("VisBio-InstanceServer-Session-" + n) {
+
+			@Override
+			public void run() {
+				serve(socket, in, line);
+			}
+		};
+		thread.setDaemon(true);
+		thread.start();
+		return true;
+	}
+
+	/**
+	 * Serves a command session, executing each line sent by the client, starting
+	 * with the given one, until the client quits or the session times out.
+	 */
+	protected void serve(final Socket socket, final BufferedReader in,
+		String line)
+	{
+		try {
+			socket.setSoTimeout(IDLE_TIMEOUT);
+			final PrintWriter out =
+				new PrintWriter(new OutputStreamWriter(socket.getOutputStream()));
+			boolean authenticated = false;
+			while (line != null) {
+				final String[] tokens = parseCommand(line);
+				if (tokens.length > 0) {
+					if (tokens[0].equals(QUIT)) break;
+					if (tokens[0].equals(AUTH)) {
+						authenticated = tokens.length == 2 && isToken(tokens[1]);
+						out.println(authenticated ? "OK" : "ERROR Invalid token");
+					}
+					else {
+						final String[] args = new String[tokens.length - 1];
+						System.arraycopy(tokens, 1, args, 0, args.length);
+						out.println(execute(new CommandEvent(tokens[0], args,
+							authenticated)));
+					}
+					out.flush();
+				}
+				line = in.readLine();
+			}
+		}
+		catch (final IOException exc) {
+			if (alive) exc.printStackTrace();
+		}
+		finally {
+			synchronized (active) {
+				active.remove(socket);
+			}
+			close(socket);
+		}
+	}
+
+	/** Tests whether the given string is this server's token. */
+	protected boolean isToken(final String s) {
+		// compare in constant time, so the token cannot be guessed by timing
+		return MessageDigest.isEqual(token.getBytes(), s.getBytes());
+	}
+
+	/** Closes the given connection, ignoring any error. */
+	protected void close(final Socket socket) {
+		try {
+			socket.close();
+		}
+		catch (final IOException exc) {}
+	}
+
+	/**
+	 * Executes a command with the first command listener that recognizes it,
+	 * returning the reply line.
+	 */
+	protected String execute(final CommandEvent e) {
+		final CommandListener[] l;
+		synchronized (commandListeners) {
+			l = new CommandListener[commandListeners.size()];
+			commandListeners.copyInto(l);
+		}
+		try {
+			for (int i = 0; i < l.length; i++) {
+				final String result = l[i].commandReceived(e);
+				if (result == null) continue;
+				// keep the reply on one line
+				final String s = result.replace('\n', ' ').replace('\r', ' ');
+				return s.length() == 0 ? "OK" : "OK " + s;
+			}
+			return "ERROR Unknown command: " + e.getCommand();
+		}
+		catch (final RuntimeException exc) {
+			final String msg = exc.getMessage();
+			return "ERROR " + (msg == null ? exc.toString() : msg);
+		}
+	}
+
 	/**
 	 * Notifies application instance spawn listeners of a newly spawned
 	 * application instance.
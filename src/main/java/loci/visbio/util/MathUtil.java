@@ -534,4 +534,89 @@ public final class MathUtil {
 		return bisector;
 	}
 
+	/**
+	 * Simplifies a polyline using the Douglas-Peucker algorithm, keeping only
+	 * those points needed for the simplified polyline to stay within the given
+	 * tolerance of the original one. The first and last points are always kept.
+	 *
+	 * @param points Coordinates of the polyline, as {xs, ys}
+	 * @param count Number of points of the polyline to use
+	 * @param tolerance Maximum distance of any discarded point from the
+	 *          simplified polyline
+	 * @return Coordinates of the simplified polyline
+	 */
+	public static float[][] simplify(final float[][] points, final int count,
+		final float tolerance)
+	{
+		final boolean[] keep = new boolean[count];
+		int kept = 0;
+		if (count > 0) {
+			keep[0] = keep[count - 1] = true;
+			kept = count > 1 ? 2 : 1;
+		}
+		final double tol2 = (double) tolerance * tolerance;
+
+		// ranges of points still to be examined, as pairs of endpoint indices;
+		// an explicit stack avoids deep recursion on very long polylines
+		int[] stack = new int[64];
+		int top = 0;
+		if (count > 2) {
+			stack[top++] = 0;
+			stack[top++] = count - 1;
+		}
+		final float[] xs = points[0], ys = points[1];
+		while (top > 0) {
+			final int last = stack[--top];
+			final int first = stack[--top];
+			final double ax = xs[first], ay = ys[first];
+			final double dx = xs[last] - ax, dy = ys[last] - ay;
+			final double len2 = dx * dx + dy * dy;
+
+			// find the point farthest from the segment between the endpoints
+			double max = -1;
+			int index = -1;
+			for (int i = first + 1; i < last; i++) {
+				double px = xs[i] - ax, py = ys[i] - ay;
+				if (len2 > 0) {
+					double t = (px * dx + py * dy) / len2;
+					if (t < 0) t = 0;
+					else if (t > 1) t = 1;
+					px -= t * dx;
+					py -= t * dy;
+				}
+				final double d2 = px * px + py * py;
+				if (d2 > max) {
+					max = d2;
+					index = i;
+				}
+			}
+			if (max <= tol2) continue;
+
+			keep[index] = true;
+			kept++;
+			if (top + 4 > stack.length) {
+				final int[] newStack = new int[2 * stack.length];
+				System.arraycopy(stack, 0, newStack, 0, top);
+				stack = newStack;
+			}
+			if (index - first > 1) {
+				stack[top++] = first;
+				stack[top++] = index;
+			}
+			if (last - index > 1) {
+				stack[top++] = index;
+				stack[top++] = last;
+			}
+		}
+
+		final float[][] result = new float[2][kept];
+		for (int i = 0, c = 0; i < count; i++) {
+			if (!keep[i]) continue;
+			result[0][c] = xs[i];
+			result[1][c] = ys[i];
+			c++;
+		}
+		return result;
+	}
+
 }
@@ -0,0 +1,304 @@
+/*
+ * #%L
+ * VisBio application for visualization of multidimensional biological
+ * image data.
+ * %%
+ * Copyright (C) 2002 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.visbio.util;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.Vector;
+
+/**
+ * Profiler is a lightweight instrumentation layer for timing stages of VisBio's
+ * hot paths, such as reading images, computing transform data and burning
+ * full-resolution data into displays. Each timed stage is recorded as a span
+ * attributed to a transform chain; spans are kept in a ring buffer of recent
+ * events and in per-stage latency histograms. Profiling can be switched on and
+ * off at runtime, and costs a single field read per span while off. It starts
+ * enabled if the "visbio.profile" system property is "true".
+ * <p>
+ * Typical usage:
+ * <pre>
+ * final long t = Profiler.start();
+ * ... // timed work
+ * if (t != 0) Profiler.end(t, "stage", chainName);
+ * </pre>
+ */
+public final class Profiler {
+
+	// -- Constants --
+
+	/** Number of recent spans kept in the ring buffer. */
+	public static final int RECENT_SPANS = 4096;
+
+	/**
+	 * Number of histogram buckets per stage; bucket i counts spans lasting less
+	 * than 2^i microseconds (the last bucket counts everything longer).
+	 */
+	public static final int BUCKETS = 32;
+
+	// -- Static fields --
+
+	/** Whether spans are currently being recorded. */
+	private static volatile boolean enabled =
+		"true".equalsIgnoreCase(System.getProperty("visbio.profile"));
+
+	/** Lock guarding the recorded spans. */
+	private static final Object LOCK = new Object();
+
+	/** Ring buffer of recent span stages, chains and threads. */
+	private static final String[] recentStage = new String[RECENT_SPANS],
+		recentChain = new String[RECENT_SPANS],
+		recentThread = new String[RECENT_SPANS];
+
+	/** Ring buffer of recent span start times and durations, in nanoseconds. */
+	private static final long[] recentStart = new long[RECENT_SPANS],
+		recentNanos = new long[RECENT_SPANS];
+
+	/** Number of spans recorded since the last reset. */
+	private static long spans;
+
+	/** Statistics for each chain and stage, keyed by chain and stage. */
+	private static final Hashtable stats = new Hashtable();
+
+	// -- Constructor --
+
+	private Profiler() {}
+
+	// -- Utility methods --
+
+	/** Gets whether spans are currently being recorded. */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/** Switches span recording on or off. */
+	public static void setEnabled(final boolean on) {
+		enabled = on;
+	}
+
+	/**
+	 * Begins a span, returning its start time to pass to {@link #end}, or 0 if
+	 * profiling is off.
+	 */
+	public static long start() {
+		return enabled ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * Ends a span begun with {@link #start}, attributing it to the given stage
+	 * of the given transform chain. Does nothing if the span was begun while
+	 * profiling was off.
+	 */
+	public static void end(final long start, final String stage,
+		final String chain)
+	{
+		if (start == 0) return;
+		final long nanos = System.nanoTime() - start;
+		final String thread = Thread.currentThread().getName();
+		final String key = chain + "\t" + stage;
+		synchronized (LOCK) {
+			final int ndx = (int) (spans % RECENT_SPANS);
+			recentStage[ndx] = stage;
+			recentChain[ndx] = chain;
+			recentThread[ndx] = thread;
+			recentStart[ndx] = start;
+			recentNanos[ndx] = nanos;
+			spans++;
+
+			Stage s = (Stage) stats.get(key);
+			if (s == null) {
+				s = new Stage(chain, stage);
+				stats.put(key, s);
+			}
+			s.add(nanos);
+		}
+	}
+
+	/** Discards all recorded spans. */
+	public static void reset() {
+		synchronized (LOCK) {
+			spans = 0;
+			stats.clear();
+			Arrays.fill(recentStage, null);
+			Arrays.fill(recentChain, null);
+			Arrays.fill(recentThread, null);
+		}
+	}
+
+	/** Gets the number of spans recorded since the last reset. */
+	public static long getSpanCount() {
+		synchronized (LOCK) {
+			return spans;
+		}
+	}
+
+	/**
+	 * Gets the given percentile of the recorded durations of a stage, in
+	 * microseconds, as the upper bound of the histogram bucket containing it,
+	 * or -1 if the stage has not been recorded.
+	 */
+	public static long getPercentile(final String chain, final String stage,
+		final double percent)
+	{
+		synchronized (LOCK) {
+			final Stage s = (Stage) stats.get(chain + "\t" + stage);
+			return s == null ? -1 : s.getPercentile(percent);
+		}
+	}
+
+	/**
+	 * Prints a latency breakdown of every recorded stage, grouped by transform
+	 * chain. Times include nested stages: a transform's data request includes
+	 * the requests it makes to its parent.
+	 */
+	public static void dump(final PrintStream out) {
+		Stage[] s;
+		synchronized (LOCK) {
+			s = new Stage[stats.size()];
+			final Enumeration e = stats.elements();
+			for (int i = 0; i < s.length; i++)
+				s[i] = ((Stage) e.nextElement()).copy();
+		}
+		Arrays.sort(s);
+		out.println("-- latency breakdown (" + getSpanCount() + " spans, " +
+			"times in ms, percentiles are bucket upper bounds) --");
+		String chain = null;
+		for (int i = 0; i < s.length; i++) {
+			if (!s[i].chain.equals(chain)) {
+				chain = s[i].chain;
+				out.println(chain + ":");
+			}
+			out.println("  " + pad(s[i].stage, 16) + " n=" + s[i].count +
+				" mean=" + ms(s[i].total / s[i].count) + " p50=" +
+				ms(1000 * s[i].getPercentile(50)) + " p90=" +
+				ms(1000 * s[i].getPercentile(90)) + " p99=" +
+				ms(1000 * s[i].getPercentile(99)) + " max=" + ms(s[i].max));
+		}
+	}
+
+	/** Prints up to the given number of most recent spans, oldest first. */
+	public static void dumpRecent(final PrintStream out, final int count) {
+		final Vector lines = new Vector();
+		synchronized (LOCK) {
+			final long first = Math.max(Math.max(0, spans - RECENT_SPANS),
+				spans - count);
+			for (long i = first; i < spans; i++) {
+				final int ndx = (int) (i % RECENT_SPANS);
+				lines.add(recentStart[ndx] + " " + recentThread[ndx] + " " +
+					recentChain[ndx] + " " + recentStage[ndx] + " " +
+					ms(recentNanos[ndx]) + " ms");
+			}
+		}
+		out.println("-- recent spans (start ns, thread, chain, stage, time) --");
+		for (int i = 0; i < lines.size(); i++)
+			out.println(lines.elementAt(i));
+	}
+
+	// -- Helper methods --
+
+	/** Formats the given nanoseconds as milliseconds. */
+	private static String ms(final long nanos) {
+		final long micros = nanos / 1000;
+		final String frac = "00" + (micros % 1000);
+		return (micros / 1000) + "." + frac.substring(frac.length() - 3);
+	}
+
+	/** Pads the given string with spaces to the given length. */
+	private static String pad(final String s, final int len) {
+		final StringBuffer sb = new StringBuffer(s);
+		while (sb.length() < len)
+			sb.append(' ');
+		return sb.toString();
+	}
+
+	// -- Helper classes --
+
+	/** Latency statistics for one stage of one transform chain. */
+	private static class Stage implements Comparable {
+
+		/** Transform chain and stage name. */
+		private final String chain, stage;
+
+		/** Number of spans. */
+		private long count;
+
+		/** Total and longest duration, in nanoseconds. */
+		private long total, max;
+
+		/** Histogram of durations, by power of two microseconds. */
+		private long[] buckets = new long[BUCKETS];
+
+		private Stage(final String chain, final String stage) {
+			this.chain = chain;
+			this.stage = stage;
+		}
+
+		private void add(final long nanos) {
+			count++;
+			total += nanos;
+			if (nanos > max) max = nanos;
+			long micros = nanos / 1000;
+			int b = 0;
+			while (micros > 0 && b < BUCKETS - 1) {
+				micros >>= 1;
+				b++;
+			}
+			buckets[b]++;
+		}
+
+		/** Gets the upper bound, in microseconds, of the given percentile. */
+		private long getPercentile(final double percent) {
+			final double rank = percent / 100 * count;
+			long sum = 0;
+			for (int b = 0; b < BUCKETS; b++) {
+				sum += buckets[b];
+				if (sum >= rank && buckets[b] > 0) {
+					final long bound = 1L << b;
+					return b == BUCKETS - 1 || bound > max / 1000 ? Math.max(1,
+						(max + 999) / 1000) : bound;
+				}
+			}
+			return (max + 999) / 1000;
+		}
+
+		private Stage copy() {
+			final Stage s = new Stage(chain, stage);
+			s.count = count;
+			s.total = total;
+			s.max = max;
+			s.buckets = (long[]) buckets.clone();
+			return s;
+		}
+
+		@Override
+		public int compareTo(final Object o) {
+			final Stage s = (Stage) o;
+			final int c = chain.compareTo(s.chain);
+			return c != 0 ? c : stage.compareTo(s.stage);
+		}
+	}
+
+}
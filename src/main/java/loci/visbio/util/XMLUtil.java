@@ -38,6 +38,7 @@ import java.util.Vector;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Result;
 import javax.xml.transform.Source;
 import javax.xml.transform.Transformer;
@@ -70,7 +71,7 @@ public final class XMLUtil {
 	// -- Utility methods --
 
 	/** Creates a new DOM. */
-	public static Document createDocument(final String rootName) {
+	public static synchronized Document createDocument(final String rootName) {
 		if (docBuilder == null) {
 			try {
 				docBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
@@ -165,6 +166,26 @@ public final class XMLUtil {
 		}
 	}
 
+	/**
+	 * Writes the given DOM element and its children, without an XML
+	 * declaration, to a UTF-8 encoded byte array.
+	 */
+	public static byte[] writeFragment(final Element el) {
+		final ByteArrayOutputStream os = new ByteArrayOutputStream();
+		try {
+			final TransformerFactory transformFactory =
+				TransformerFactory.newInstance();
+			final Transformer idTransform = transformFactory.newTransformer();
+			idTransform.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+			idTransform.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+			idTransform.transform(new DOMSource(el), new StreamResult(os));
+		}
+		catch (final TransformerException exc) {
+			exc.printStackTrace();
+		}
+		return os.toByteArray();
+	}
+
 	/**
 	 * Appends a child element with the given name to the specified DOM element.
 	 */
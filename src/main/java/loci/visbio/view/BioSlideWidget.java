@@ -199,6 +199,11 @@ public class BioSlideWidget extends JPanel implements ActionListener,
 		return slider.getValue();
 	}
 
+	/** Sets the current slider value. */
+	public void setValue(final int value) {
+		slider.setValue(value);
+	}
+
 	/** Gets the slider component. */
 	public JSlider getSlider() {
 		return slider;
@@ -168,11 +168,8 @@ public class CaptureHandler implements Saveable {
 
 			@Override
 			public void run() {
-				final BufferedImageWriter writer = new BufferedImageWriter();
 				try {
-					writer.setId(id);
-					writer.savePlane(0, getSnapshot());
-					writer.close();
+					saveSnapshot(id);
 				}
 				catch (final FormatException exc) {
 					exc.printStackTrace();
@@ -184,6 +181,20 @@ public class CaptureHandler implements Saveable {
 		}.start();
 	}
 
+	/** Saves a snapshot of the display to the given TIFF or JPEG file. */
+	public void saveSnapshot(final String id) throws FormatException,
+		IOException
+	{
+		final BufferedImageWriter writer = new BufferedImageWriter();
+		try {
+			writer.setId(id);
+			writer.savePlane(0, getSnapshot());
+		}
+		finally {
+			writer.close();
+		}
+	}
+
 	/** Sends a snapshot of the display to ImageJ. */
 	public void sendToImageJ() {
 		new Thread("VisBio-SendToImageJThread-" + window.getName()) {
@@ -26,6 +26,7 @@ package loci.visbio.view;
 
 import java.rmi.RemoteException;
 import java.util.Arrays;
+import java.util.Hashtable;
 
 import loci.visbio.VisBioFrame;
 import loci.visbio.data.DataTransform;
@@ -36,12 +37,14 @@ import loci.visbio.util.ColorUtil;
 import loci.visbio.util.DataUtil;
 import loci.visbio.util.DialogPane;
 import loci.visbio.util.DisplayUtil;
+import loci.visbio.util.Histogram;
 import loci.visbio.util.ObjectUtil;
 import loci.visbio.util.XMLUtil;
 
 import org.w3c.dom.Element;
 
 import visad.BaseColorControl;
+import visad.Data;
 import visad.Display;
 import visad.DisplayImpl;
 import visad.DisplayRealType;
@@ -66,6 +69,9 @@ public class ColorHandler {
 	/** Starting opacity value. */
 	protected static final int NORMAL_OPACITY = 256;
 
+	/** Maximum number of plane histograms kept for reuse. */
+	protected static final int MAX_HISTOGRAMS = 256;
+
 	// -- Fields --
 
 	/** Associated link between data object and display. */
@@ -100,6 +106,14 @@ public class ColorHandler {
 	/** Color tables. */
 	protected float[][][] colorTables;
 
+	// -- Fields - autoscaling --
+
+	/** Histograms of previously displayed planes, keyed by position. */
+	protected Hashtable histograms = new Hashtable();
+
+	/** Histogram of the currently displayed plane, or null if unknown. */
+	protected Histogram histogram;
+
 	// -- Constructor --
 
 	/** Creates a color handler for the given transform link. */
@@ -272,8 +286,18 @@ public class ColorHandler {
 	public void setRanges(final double[] lo, final double[] hi,
 		final boolean[] fixed)
 	{
-		ColorUtil
-			.setColorRanges(getWindow().getDisplay(), getMaps(), lo, hi, fixed);
+		final ScalarMap[] maps = getMaps();
+		if (maps == null || lo.length != maps.length ||
+			hi.length != maps.length || fixed.length != maps.length)
+		{
+			return;
+		}
+		this.fixed = (boolean[]) fixed.clone();
+		final DisplayImpl display = getWindow().getDisplay();
+		for (int i = 0; i < maps.length; i++) {
+			if (!fixed[i] && applyHistogram(maps[i])) continue;
+			ColorUtil.setColorRange(display, maps[i], lo[i], hi[i], fixed[i]);
+		}
 	}
 
 	/** Updates color tables to those given. */
@@ -286,15 +310,57 @@ public class ColorHandler {
 			"color adjustment for " + window.getName(), true);
 	}
 
-	/** Recomputes autoscaled color range bounds. */
+	/**
+	 * Recomputes autoscaled color range bounds from the histogram of the
+	 * currently displayed plane, falling back to a display-wide autoscale for
+	 * any mapping the histogram does not cover.
+	 */
 	public void reAutoScale() {
 		if (fixed == null) return;
 		final DisplayImpl display = getWindow().getDisplay();
 		final ScalarMap[] maps = getMaps();
 		for (int i = 0; i < maps.length; i++) {
 			if (fixed[i]) continue;
-			ColorUtil.reAutoScale(display, maps[i]);
+			if (!applyHistogram(maps[i])) ColorUtil.reAutoScale(display, maps[i]);
+		}
+	}
+
+	/**
+	 * Recomputes autoscaled color range bounds for the given data, displayed at
+	 * the specified dimensional position. Depending on the autoscale scope
+	 * option, ranges come from statistics gathered with the thumbnails across
+	 * the animation axis or the whole dataset, which keeps them steady from
+	 * plane to plane, or from the histogram of the plane itself. Histograms of
+	 * full-resolution planes are cached by position, so revisiting a plane
+	 * costs nothing; thumbnails are cheap enough to histogram every time.
+	 *
+	 * @param data Data object being displayed, or null to reuse the cached
+	 *          histogram for the given position
+	 * @param pos Dimensional position of the data
+	 * @param thumb Whether the data is a thumbnail rather than the full plane
+	 */
+	public void reAutoScale(final Data data, final int[] pos,
+		final boolean thumb)
+	{
+		Histogram h = getScopeStats(pos);
+		if (h == null) {
+			final String key = ObjectUtil.arrayToString(pos);
+			h = thumb ? null : (Histogram) histograms.get(key);
+			if (h == null && data instanceof FlatField) {
+				h = Histogram.compute((FlatField) data, Histogram.DEFAULT_BINS);
+				if (h != null && !thumb) {
+					if (histograms.size() >= MAX_HISTOGRAMS) histograms.clear();
+					histograms.put(key, h);
+				}
+			}
 		}
+		histogram = h;
+		reAutoScale();
+	}
+
+	/** Discards cached histograms, e.g. when the transform's data change. */
+	public void clearHistograms() {
+		histograms.clear();
 	}
 
 	/** Gets brightness value. */
@@ -361,6 +427,10 @@ public class ColorHandler {
 	public boolean[] getFixed() {
 		final ScalarMap[] maps = getMaps();
 		if (maps == null) return fixed;
+		if (fixed != null && fixed.length == maps.length) {
+			// histogram autoscaling assigns ranges to maps that are not fixed
+			return (boolean[]) fixed.clone();
+		}
 		final boolean[] fix = new boolean[maps.length];
 		for (int i = 0; i < maps.length; i++)
 			fix[i] = !maps[i].isAutoScale();
@@ -511,4 +581,64 @@ public class ColorHandler {
 		}
 	}
 
+	// -- Helper methods --
+
+	/**
+	 * Gets the dataset-wide or per-axis statistics for the given position
+	 * according to the autoscale scope option, or null if ranges should be fit
+	 * to the plane alone or no statistics have been gathered yet.
+	 */
+	protected Histogram getScopeStats(final int[] pos) {
+		final DisplayManager dm =
+			(DisplayManager) getWindow().getVisBio().getManager(
+				DisplayManager.class);
+		final int scope =
+			dm == null ? DisplayManager.PLANE_SCOPE : dm.getAutoScaleScope();
+		if (scope == DisplayManager.PLANE_SCOPE) return null;
+		final DataTransform trans = link.getTransform();
+		final ThumbnailHandler th = trans.getThumbHandler();
+		if (th == null) return null;
+		if (scope == DisplayManager.DATASET_SCOPE) return th.getGlobalStats();
+		final TransformHandler handler = link.getHandler();
+		final int axis = handler.getAxis(trans, handler.getAnimationAxis());
+		return axis < 0 ? null : th.getAxisStats(pos, axis);
+	}
+
+	/**
+	 * Assigns the given mapping the color range derived from the current
+	 * histogram, clipped according to the autoscale saturation option.
+	 *
+	 * @return false if the histogram does not cover the mapping
+	 */
+	protected boolean applyHistogram(final ScalarMap map) {
+		final Histogram h = histogram;
+		final DataTransform trans = link.getTransform();
+		if (h == null || !(trans instanceof ImageTransform)) return false;
+		final RealType[] range = ((ImageTransform) trans).getRangeTypes();
+		if (h.getChannelCount() != range.length) return false;
+		int c = 0;
+		while (c < range.length && !range[c].equals(map.getScalar()))
+			c++;
+		if (c == range.length || h.getSampleCount(c) == 0) return false;
+
+		final DisplayManager dm =
+			(DisplayManager) getWindow().getVisBio().getManager(
+				DisplayManager.class);
+		final double clip = dm == null ? 0 : dm.getAutoScaleClip();
+		final double[] r = h.getRange(c, clip, clip);
+		if (r[1] <= r[0]) r[1] = r[0] + 1;
+		try {
+			map.setRange(r[0], r[1]);
+		}
+		catch (final VisADException exc) {
+			exc.printStackTrace();
+			return false;
+		}
+		catch (final RemoteException exc) {
+			exc.printStackTrace();
+			return false;
+		}
+		return true;
+	}
+
 }
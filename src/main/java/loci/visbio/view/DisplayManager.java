@@ -36,8 +36,11 @@ import loci.visbio.PanelManager;
 import loci.visbio.VisBioEvent;
 import loci.visbio.VisBioFrame;
 import loci.visbio.WindowManager;
+import loci.visbio.data.DataTransform;
 import loci.visbio.help.HelpManager;
 import loci.visbio.state.BooleanOption;
+import loci.visbio.state.ListOption;
+import loci.visbio.state.NumericOption;
 import loci.visbio.state.OptionManager;
 import loci.visbio.state.ResolutionToggleOption;
 import loci.visbio.state.SaveException;
@@ -80,6 +83,25 @@ public class DisplayManager extends LogicManager {
 	/** String for eye separation setting. */
 	public static final String EYE_DISTANCE = "Stereo eye separation";
 
+	/** Choices for the autoscale scope option. */
+	public static final String[] AUTOSCALE_SCOPES =
+		{ "Each plane", "Animation axis", "Whole dataset" };
+
+	/** Autoscale scope: color ranges fit the displayed plane alone. */
+	public static final int PLANE_SCOPE = 0;
+
+	/** Autoscale scope: color ranges fit all planes along the animation axis. */
+	public static final int AXIS_SCOPE = 1;
+
+	/** Autoscale scope: color ranges fit all planes of the dataset. */
+	public static final int DATASET_SCOPE = 2;
+
+	/** String for autoscale scope setting. */
+	public static final String AUTOSCALE_SCOPE = "Autoscale color ranges across";
+
+	/** String for autoscale saturation setting. */
+	public static final String AUTOSCALE_CLIP = "Autoscale saturation";
+
 	/** String for ImageJ quit warning. */
 	public static final String WARN_IMAGEJ =
 		"Warn about problem where quitting VisBio also quits ImageJ";
@@ -194,6 +216,35 @@ public class DisplayManager extends LogicManager {
 		return opt.getValue();
 	}
 
+	/**
+	 * Gets the percentage of samples clipped off each end of a histogram when
+	 * autoscaling color ranges, from VisBio options.
+	 */
+	public double getAutoScaleClip() {
+		final OptionManager om =
+			(OptionManager) bio.getManager(OptionManager.class);
+		final NumericOption opt = (NumericOption) om.getOption(AUTOSCALE_CLIP);
+		if (opt == null) return 0;
+		final double clip = opt.getFloatingValue();
+		return clip < 0 || clip != clip ? 0 : (clip > 50 ? 50 : clip);
+	}
+
+	/**
+	 * Gets which planes color ranges are autoscaled across (PLANE_SCOPE,
+	 * AXIS_SCOPE or DATASET_SCOPE), from VisBio options.
+	 */
+	public int getAutoScaleScope() {
+		final OptionManager om =
+			(OptionManager) bio.getManager(OptionManager.class);
+		final ListOption opt = (ListOption) om.getOption(AUTOSCALE_SCOPE);
+		if (opt == null) return PLANE_SCOPE;
+		final String value = opt.getValue();
+		for (int i = 0; i < AUTOSCALE_SCOPES.length; i++) {
+			if (AUTOSCALE_SCOPES[i].equals(value)) return i;
+		}
+		return PLANE_SCOPE;
+	}
+
 	/** Gets associated control panel. */
 	public DisplayControls getControls() {
 		return displayControls;
@@ -218,6 +269,18 @@ public class DisplayManager extends LogicManager {
 				for (int i = 0; i < dw.length; i++) {
 					if (!LookUtils.IS_OS_MAC) dw[i].setTransparencyMode(nice);
 					dw[i].set3DTexturing(texture3d);
+
+					// reapply histogram autoscaling with the current scope and saturation
+					final TransformHandler th = dw[i].getTransformHandler();
+					final DataTransform[] trans = th.getTransforms();
+					for (int j = 0; j < trans.length; j++) {
+						final TransformLink link = th.getLink(trans[j]);
+						final ColorHandler colorHandler =
+							link == null ? null : link.getColorHandler();
+						if (colorHandler != null) {
+							colorHandler.reAutoScale(null, th.getPos(trans[j]), false);
+						}
+					}
 				}
 			}
 		}
@@ -306,6 +369,12 @@ public class DisplayManager extends LogicManager {
 			"Toggles whether to use stereo displays if available", false);
 		om.addNumericOption("Visualization", EYE_DISTANCE, null,
 			"Adjusts eye separation for stereo displays", DEFAULT_EYE_SEPARATION);
+		om.addListOption("Visualization", AUTOSCALE_SCOPE,
+			"Chooses whether color autoscaling fits each plane, all planes "
+				+ "along the animation axis, or the whole dataset", AUTOSCALE_SCOPES);
+		om.addNumericOption("Visualization", AUTOSCALE_CLIP, "%",
+			"Adjusts percentage of darkest and brightest samples "
+				+ "saturated by color autoscaling", 0.0);
 		om.addBooleanOption("Warnings", WARN_IMAGEJ, 'i',
 			"Toggles whether VisBio displays a warning about "
 				+ "how quitting VisBio also quits ImageJ", true);
@@ -86,6 +86,12 @@ public class DisplayPosition implements Dynamic, Saveable {
 			ObjectUtil.arraysEqual(matrix, position.matrix);
 	}
 
+	/** Gets a key identifying this object for matching purposes: its name. */
+	@Override
+	public Object getMatchKey() {
+		return name;
+	}
+
 	/**
 	 * Tests whether the given dynamic object can be used as an argument to
 	 * initState, for initializing this dynamic object.
@@ -359,6 +359,12 @@ public class DisplayWindow extends JFrame implements ActionListener,
 			transformHandler.matches(window.transformHandler);
 	}
 
+	/** Gets a key identifying this object for matching purposes: its name. */
+	@Override
+	public Object getMatchKey() {
+		return name;
+	}
+
 	/**
 	 * Tests whether the given dynamic object can be used as an argument to
 	 * initState, for initializing this dynamic object.
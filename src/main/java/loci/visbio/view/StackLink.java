@@ -27,6 +27,7 @@ package loci.visbio.view;
 import java.rmi.RemoteException;
 import java.util.Vector;
 
+import loci.visbio.Telemetry;
 import loci.visbio.data.DataCache;
 import loci.visbio.data.DataTransform;
 import loci.visbio.data.ImageTransform;
@@ -623,6 +624,7 @@ public class StackLink extends TransformLink {
 	 */
 	@Override
 	protected synchronized void computeData(final boolean thumbs) {
+		final long start = System.currentTimeMillis();
 		final int[] pos = handler.getPos(trans);
 		final ThumbnailHandler th = trans.getThumbHandler();
 		final int len = references.size();
@@ -721,6 +723,7 @@ public class StackLink extends TransformLink {
 			clearWhenDone = true;
 		}
 		DisplayUtil.setDisplayDisabled(display, false);
+		if (!thumbs) Telemetry.burnedIn(System.currentTimeMillis() - start);
 	}
 
 	/** Gets 2D data from the specified data transform. */
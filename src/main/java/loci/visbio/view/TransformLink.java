@@ -28,6 +28,7 @@ import java.awt.Font;
 import java.rmi.RemoteException;
 import java.util.Vector;
 
+import loci.visbio.Telemetry;
 import loci.visbio.VisBioFrame;
 import loci.visbio.data.DataManager;
 import loci.visbio.data.DataTransform;
@@ -41,6 +42,7 @@ import loci.visbio.state.Saveable;
 import loci.visbio.util.DataUtil;
 import loci.visbio.util.DisplayUtil;
 import loci.visbio.util.ObjectUtil;
+import loci.visbio.util.Profiler;
 import loci.visbio.util.XMLUtil;
 
 import org.w3c.dom.Element;
@@ -102,6 +104,9 @@ public class TransformLink implements DisplayListener, Dynamic, Runnable,
 	/** Whether this link is still active. */
 	protected boolean alive = true;
 
+	/** Start of the profiled span from data assignment to rendering. */
+	protected volatile long renderStart;
+
 	/** Status message, to be displayed in bottom left corner. */
 	protected VisADException status;
 
@@ -271,6 +276,11 @@ public class TransformLink implements DisplayListener, Dynamic, Runnable,
 			doMessages(true);
 		}
 		else if (e.getId() == DisplayEvent.TRANSFORM_DONE) {
+			final long t = renderStart;
+			if (t != 0) {
+				renderStart = 0;
+				Profiler.end(t, "render", trans.getChainName());
+			}
 			if (clearWhenDone) {
 				setMessage(null);
 				clearWhenDone = false;
@@ -293,6 +303,16 @@ public class TransformLink implements DisplayListener, Dynamic, Runnable,
 			isVisible() == link.isVisible();
 	}
 
+	/**
+	 * Gets a key identifying this object for matching purposes: the key of
+	 * its linked transform.
+	 */
+	@Override
+	public Object getMatchKey() {
+		final DataTransform t = getTransform();
+		return t == null ? null : t.getMatchKey();
+	}
+
 	/**
 	 * Tests whether the given dynamic object can be used as an argument to
 	 * initState, for initializing this dynamic object.
@@ -416,7 +436,9 @@ public class TransformLink implements DisplayListener, Dynamic, Runnable,
 
 			// burn-in full resolution data
 			if (!alive) break;
+			final long t = Profiler.start();
 			computeData(false);
+			if (t != 0) Profiler.end(t, "burnIn", trans.getChainName());
 		}
 	}
 
@@ -453,6 +475,7 @@ public class TransformLink implements DisplayListener, Dynamic, Runnable,
 	public void transformChanged(final TransformEvent e) {
 		final int id = e.getId();
 		if (id == TransformEvent.DATA_CHANGED) {
+			if (colorHandler != null) colorHandler.clearHistograms();
 			doTransform(TransformHandler.MINIMUM_BURN_DELAY);
 		}
 		else if (id == TransformEvent.FONT_CHANGED) {
@@ -549,30 +572,41 @@ public class TransformLink implements DisplayListener, Dynamic, Runnable,
 			return;
 		}
 
+		final long t = Profiler.start();
 		final int[] pos = handler.getPos(trans);
 		// need to change pos[stackAxis] = -1
 		// pos[stackAxis] = -1;
 		final ThumbnailHandler th = trans.getThumbHandler();
 		final Data thumb = th == null ? null : th.getThumb(pos);
-		if (thumbs) setData(thumb);
+		if (thumbs) {
+			setData(thumb);
+			if (colorHandler != null) colorHandler.reAutoScale(thumb, pos, true);
+			if (t != 0) Profiler.end(t, "computeThumbs", trans.getChainName());
+		}
 		else {
+			final long start = System.currentTimeMillis();
 			setMessage("loading full-resolution data");
 			if (!ObjectUtil.arraysEqual(pos, cachedPos)) {
 				// for now, simply dump old full-resolution data
 				handler.getCache().dump(trans, cachedPos, null);
 			}
 			cachedPos = pos;
+			final long tt = Profiler.start();
 			final Data d =
 				dim == 3 ? trans.getData(this, pos, 3, handler.getCache())
 					: getImageData(pos);
+			if (tt != 0) Profiler.end(tt, "fetchData", trans.getChainName());
 			if (th != null && thumb == null) {
 				// fill in missing thumbnail
 				th.setThumb(pos, th.makeThumb(d));
+				if (th.getStats(pos) == null) th.setStats(pos, th.makeStats(d));
 			}
 			setMessage("burning in full-resolution data");
 			clearWhenDone = true;
 			setData(d);
-			if (colorHandler != null) colorHandler.reAutoScale();
+			if (colorHandler != null) colorHandler.reAutoScale(d, pos, false);
+			Telemetry.burnedIn(System.currentTimeMillis() - start);
+			if (t != 0) Profiler.end(t, "computeData", trans.getChainName());
 		}
 	}
 
@@ -613,8 +647,10 @@ public class TransformLink implements DisplayListener, Dynamic, Runnable,
 			final ImageTransform it = (ImageTransform) trans;
 			final FunctionType ftype = it.getType();
 			final Unit[] units = it.getImageUnits();
+			final long t = Profiler.start();
 			try {
 				d = DataUtil.switchType(ff, ftype, units);
+				if (t != 0) Profiler.end(t, "switchType", trans.getChainName());
 			}
 			catch (final VisADException exc) {
 				exc.printStackTrace();
@@ -623,8 +659,13 @@ public class TransformLink implements DisplayListener, Dynamic, Runnable,
 				exc.printStackTrace();
 			}
 		}
+		final long t = Profiler.start();
 		try {
 			dataRef.setData(d);
+			if (t != 0) {
+				Profiler.end(t, "setData", trans.getChainName());
+				renderStart = Profiler.start();
+			}
 		}
 		catch (final VisADException exc) {
 			exc.printStackTrace();
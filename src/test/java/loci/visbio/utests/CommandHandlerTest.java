@@ -0,0 +1,203 @@
+/*
+ * #%L
+ * VisBio application for visualization of multidimensional biological
+ * image data.
+ * %%
+ * Copyright (C) 2002 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+
+package loci.visbio.utests;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Vector;
+
+import loci.visbio.CommandHandler;
+import loci.visbio.Telemetry;
+import loci.visbio.data.DataTransform;
+import loci.visbio.data.Dataset;
+import loci.visbio.util.CommandEvent;
+import loci.visbio.util.InstanceServer;
+import loci.visbio.view.DisplayWindow;
+
+/**
+ * Unit tests for the CommandHandler class, executing commands against a
+ * headless list of data objects with no displays.
+ */
+public class CommandHandlerTest extends TempDirTestCase {
+
+	// -- Fields --
+
+	/** Command handler under test. */
+	protected CommandHandler handler;
+
+	/** Data objects added by the handler. */
+	protected Vector<DataTransform> data = new Vector<DataTransform>();
+
+	/** Fake file from which datasets are opened. */
+	protected File fake;
+
+	// -- TestCase API methods --
+
+	/** This method runs before each test. */
+	@Override
+	public void setUp() throws IOException {
+		super.setUp();
+		fake = new File(dir, "stack&sizeX=32&sizeY=24&sizeZ=3.fake");
+		fake.createNewFile();
+		handler = new CommandHandler(null) {
+
+			@Override
+			protected Vector<DataTransform> getDataList() {
+				return data;
+			}
+
+			@Override
+			protected DisplayWindow[] getDisplays() {
+				return new DisplayWindow[0];
+			}
+
+			@Override
+			protected boolean getLazyOpen() {
+				return true;
+			}
+
+			@Override
+			protected void addData(final DataTransform d) {
+				data.add(d);
+			}
+
+			@Override
+			protected Telemetry getTelemetry() {
+				return new Telemetry(null);
+			}
+		};
+	}
+
+	// -- CommandHandler Tests --
+
+	/** Tests listing data objects and displays. */
+	public void testList() {
+		assertEquals("data:; displays:", run("list", false));
+		run("open " + quote(fake), false);
+		assertEquals("data: " + fake.getName() + "; displays:", run("list",
+			false));
+	}
+
+	/** Tests opening valid and missing datasets. */
+	public void testOpen() {
+		assertEquals("stack", run("open " + quote(fake) + " stack", false));
+		assertEquals(1, data.size());
+		assertTrue(((Dataset) data.elementAt(0)).isValid());
+		assertEquals("stack", data.elementAt(0).getName());
+
+		final File missing = new File(dir, "missing.xyz");
+		assertError("Cannot open dataset: " + missing.getPath(), "open " +
+			quote(missing), false);
+		assertEquals(1, data.size());
+	}
+
+	/** Tests that commands given too few arguments report their usage. */
+	public void testUsage() {
+		assertError("Usage: open pattern [name]", "open", false);
+		assertError("Usage: pos display [axis=value ...]", "pos", false);
+		assertError("Usage: export data file [compression]", "export x", true);
+		assertError("Usage: snapshot display file", "snapshot", true);
+	}
+
+	/** Tests setting the positions of a missing display. */
+	public void testPos() {
+		assertError("No such display: view", "pos view Z=2", false);
+	}
+
+	/** Tests that export writes files only for authenticated sessions. */
+	public void testExport() {
+		run("open " + quote(fake) + " stack", false);
+		final File out = new File(dir, "out.tif");
+		try {
+			run("export stack " + quote(out), false);
+			fail("IllegalArgumentException expected");
+		}
+		catch (final IllegalArgumentException exc) {
+			assertTrue(exc.getMessage().startsWith("export requires "));
+		}
+		assertFalse(out.exists());
+
+		assertEquals("3 planes", run("export stack " + quote(out), true));
+		assertTrue(out.length() > 0);
+		assertError("No such data: other", "export other " + quote(out), true);
+	}
+
+	/** Tests that snapshots are only saved for authenticated sessions. */
+	public void testSnapshot() {
+		final File out = new File(dir, "snap.tif");
+		try {
+			run("snapshot view " + quote(out), false);
+			fail("IllegalArgumentException expected");
+		}
+		catch (final IllegalArgumentException exc) {
+			assertTrue(exc.getMessage().startsWith("snapshot requires "));
+		}
+		assertError("No such display: view", "snapshot view " + quote(out), true);
+	}
+
+	/** Tests telemetry and data statistics. */
+	public void testStats() {
+		assertTrue(run("stats", false).indexOf(" VisBio), ") > 0);
+		run("open " + quote(fake) + " stack", false);
+		assertNotNull(run("stats stack", false));
+		assertError("No such data: other", "stats other", false);
+	}
+
+	/** Tests that unknown commands are left to other listeners. */
+	public void testUnknown() {
+		assertNull(run("bogus", true));
+	}
+
+	// -- Helper methods --
+
+	/** Executes the given command line with the handler. */
+	protected String run(final String line, final boolean authenticated) {
+		final String[] tokens = InstanceServer.parseCommand(line);
+		final String[] args = new String[tokens.length - 1];
+		System.arraycopy(tokens, 1, args, 0, args.length);
+		return handler.commandReceived(new CommandEvent(tokens[0], args,
+			authenticated));
+	}
+
+	/** Asserts that the given command line fails with the given message. */
+	protected void assertError(final String message, final String line,
+		final boolean authenticated)
+	{
+		try {
+			run(line, authenticated);
+			fail("IllegalArgumentException expected");
+		}
+		catch (final IllegalArgumentException exc) {
+			assertEquals(message, exc.getMessage());
+		}
+	}
+
+	/** Quotes the path of the given file as a command argument. */
+	protected static String quote(final File file) {
+		return "\"" + file.getPath() + "\"";
+	}
+
+}
@@ -0,0 +1,173 @@
+/*
+ * #%L
+ * VisBio application for visualization of multidimensional biological
+ * image data.
+ * %%
+ * Copyright (C) 2002 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+
+package loci.visbio.utests;
+
+import java.util.Vector;
+
+import javax.swing.SwingUtilities;
+
+import junit.framework.TestCase;
+import loci.visbio.LogicManager;
+import loci.visbio.ManagerLoader;
+
+/**
+ * Unit tests for the ManagerLoader class, loading stub logic managers.
+ */
+public class ManagerLoaderTest extends TestCase {
+
+	// -- Fields --
+
+	/** Names of the managers prepared, in the order preparation finished. */
+	protected static Vector<String> prepared = new Vector<String>();
+
+	/** Names of the managers installed, in installation order. */
+	protected Vector<String> installed = new Vector<String>();
+
+	/** Whether every manager was installed on the event dispatch thread. */
+	protected boolean onEventThread = true;
+
+	// -- TestCase API methods --
+
+	/** This method runs before each test. */
+	@Override
+	public void setUp() {
+		prepared.removeAllElements();
+	}
+
+	// -- ManagerLoader Tests --
+
+	/**
+	 * Tests that managers are prepared after their dependencies and installed
+	 * in declaration order on the event dispatch thread.
+	 */
+	public void testLoad() {
+		final ManagerLoader loader = createLoader();
+		loader.add(new A(), null);
+		loader.add(new B(), new Class[] { A.class });
+		loader.add(new C(), null);
+		loader.add(new D(), new Class[] { B.class, C.class });
+		loader.load();
+
+		assertEquals(4, prepared.size());
+		assertTrue(prepared.indexOf("A") < prepared.indexOf("B"));
+		assertTrue(prepared.indexOf("B") < prepared.indexOf("D"));
+		assertTrue(prepared.indexOf("C") < prepared.indexOf("D"));
+		assertEquals("[A, B, C, D]", installed.toString());
+		assertTrue(onEventThread);
+		assertEquals(4, loader.getManagers().length);
+	}
+
+	/** Tests that an error while preparing a manager stops loading. */
+	public void testPrepareError() {
+		final ManagerLoader loader = createLoader();
+		loader.add(new A(), null);
+		loader.add(new Failing(), null);
+		loader.add(new C(), null);
+		try {
+			loader.load();
+			fail("RuntimeException expected");
+		}
+		catch (final RuntimeException exc) {
+			assertTrue(exc.getCause() instanceof IllegalStateException);
+		}
+		assertEquals("[A]", installed.toString());
+	}
+
+	/** Tests that dependencies must be declared first. */
+	public void testUndeclaredDependency() {
+		final ManagerLoader loader = createLoader();
+		loader.add(new A(), null);
+		try {
+			loader.add(new B(), new Class[] { C.class });
+			fail("IllegalArgumentException expected");
+		}
+		catch (final IllegalArgumentException exc) {
+			assertEquals(1, loader.getManagers().length);
+		}
+	}
+
+	// -- Helper methods --
+
+	/** Creates a loader recording installed managers instead of adding them. */
+	protected ManagerLoader createLoader() {
+		return new ManagerLoader(null) {
+
+			@Override
+			protected void install(final LogicManager lm) {
+				if (!SwingUtilities.isEventDispatchThread()) onEventThread = false;
+				installed.add(((Stub) lm).getName());
+			}
+		};
+	}
+
+	// -- Helper classes --
+
+	/** Logic manager recording when it has been prepared. */
+	protected static class Stub extends LogicManager {
+
+		/** Constructs a stub logic manager without a VisBio frame. */
+		public Stub() {
+			super(null);
+		}
+
+		/** Gets the simple name of this manager's class. */
+		public String getName() {
+			final String name = getClass().getName();
+			return name.substring(name.lastIndexOf("$") + 1);
+		}
+
+		/** Records that this manager has been prepared, after a short delay. */
+		@Override
+		public void prepare() {
+			try {
+				// give dependents a chance to start too early
+				Thread.sleep(20);
+			}
+			catch (final InterruptedException exc) {}
+			prepared.add(getName());
+		}
+	}
+
+	/** Stub logic managers of distinct classes. */
+	protected static class A extends Stub {}
+
+	protected static class B extends Stub {}
+
+	protected static class C extends Stub {}
+
+	protected static class D extends Stub {}
+
+	/** Logic manager that cannot be prepared. */
+	protected static class Failing extends Stub {
+
+		/** Fails to prepare this manager. */
+		@Override
+		public void prepare() {
+			throw new IllegalStateException("cannot prepare");
+		}
+	}
+
+}
@@ -0,0 +1,87 @@
+/*
+ * #%L
+ * VisBio application for visualization of multidimensional biological
+ * image data.
+ * %%
+ * Copyright (C) 2002 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.visbio.utests;
+
+import junit.framework.TestCase;
+import loci.visbio.Telemetry;
+
+/**
+ * Unit tests for the Telemetry class.
+ */
+public class TelemetryTest extends TestCase {
+
+	/** Tests nearest-rank percentiles. */
+	public void testPercentile() {
+		final long[] values = new long[100];
+		for (int i = 0; i < values.length; i++)
+			values[i] = 100 - i;
+		assertEquals(50, Telemetry.getPercentile(values, 50));
+		assertEquals(90, Telemetry.getPercentile(values, 90));
+		assertEquals(99, Telemetry.getPercentile(values, 99));
+		assertEquals(100, Telemetry.getPercentile(values, 100));
+		assertEquals(1, Telemetry.getPercentile(values, 0));
+		assertEquals(-1, Telemetry.getPercentile(new long[0], 50));
+	}
+
+	/** Tests that burn-in latencies are kept in a bounded ring buffer. */
+	public void testBurnIns() {
+		final Telemetry telemetry = new Telemetry(null);
+		telemetry.resetCounters();
+		assertEquals(-1, telemetry.getBurnInLatency50());
+		for (int i = 0; i < 2 * Telemetry.LATENCY_SAMPLES; i++) {
+			// early, slow burn-ins are overwritten by later, fast ones
+			Telemetry.burnedIn(i < Telemetry.LATENCY_SAMPLES ? 1000 : 10);
+		}
+		assertEquals(2 * Telemetry.LATENCY_SAMPLES, telemetry.getBurnInCount());
+		assertEquals(10, telemetry.getBurnInLatency99());
+	}
+
+	/** Tests cache and read counters. */
+	public void testCounters() {
+		final Telemetry telemetry = new Telemetry(null);
+		telemetry.resetCounters();
+		assertEquals(-1, telemetry.getDataCacheHitRatio(), 0);
+		Telemetry.cacheMiss();
+		Telemetry.cacheHit();
+		Telemetry.cacheHit();
+		Telemetry.cacheHit();
+		assertEquals(0.75, telemetry.getDataCacheHitRatio(), 0);
+
+		final long entries = telemetry.getDataCacheEntries();
+		final long bytes = telemetry.getDataCacheBytes();
+		Telemetry.cacheChanged(2, 4096);
+		Telemetry.cacheChanged(-1, -1024);
+		assertEquals(entries + 1, telemetry.getDataCacheEntries());
+		assertEquals(bytes + 3072, telemetry.getDataCacheBytes());
+
+		final int reads = telemetry.getReadsInFlight();
+		Telemetry.readStarted();
+		assertEquals(reads + 1, telemetry.getReadsInFlight());
+		Telemetry.readFinished();
+		assertEquals(reads, telemetry.getReadsInFlight());
+		assertTrue(telemetry.getThreadCount() > 0);
+	}
+
+}
@@ -0,0 +1,70 @@
+/*
+ * #%L
+ * VisBio application for visualization of multidimensional biological
+ * image data.
+ * %%
+ * Copyright (C) 2002 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+
+package loci.visbio.utests;
+
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+/**
+ * Base class for tests that need a scratch directory, which is created before
+ * and deleted after each test.
+ */
+public abstract class TempDirTestCase extends TestCase {
+
+	/** Scratch directory for the current test. */
+	protected File dir;
+
+	/** This method runs before each test. */
+	@Override
+	public void setUp() throws IOException {
+		dir = File.createTempFile("visbio-test", "");
+		if (!dir.delete() || !dir.mkdir()) {
+			throw new IOException("Cannot create " + dir);
+		}
+	}
+
+	/** This method runs after each test. */
+	@Override
+	public void tearDown() {
+		delete(dir);
+	}
+
+	// -- Helper methods --
+
+	/** Deletes the given file or directory tree. */
+	protected static void delete(final File file) {
+		final File[] files = file.listFiles();
+		if (files != null) {
+			for (int i = 0; i < files.length; i++) {
+				delete(files[i]);
+			}
+		}
+		file.delete();
+	}
+
+}
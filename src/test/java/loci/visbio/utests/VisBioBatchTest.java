@@ -0,0 +1,131 @@
+/*
+ * #%L
+ * VisBio application for visualization of multidimensional biological
+ * image data.
+ * %%
+ * Copyright (C) 2002 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.visbio.utests;
+
+import java.io.File;
+import java.io.FileWriter;
+
+import loci.visbio.VisBioBatch;
+import loci.visbio.data.DataTransform;
+import loci.visbio.data.Dataset;
+import loci.visbio.data.ProjectionTransform;
+import loci.visbio.state.SaveException;
+import loci.visbio.util.XMLUtil;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Tests a headless batch run over a projection of a Bio-Formats fake dataset.
+ */
+public class VisBioBatchTest extends TempDirTestCase {
+
+	/** Tests the job restores, thumbnails and exports without a display. */
+	public void testRun() throws Exception {
+		assertTrue(DataTransform.isHeadless());
+
+		// save a state with a fake 2x4 stack and its Z projection
+		final File fake =
+			new File(dir, "stack&sizeX=64&sizeY=48&sizeZ=4&sizeT=2.fake");
+		fake.createNewFile();
+		final Dataset data = new Dataset("stack", fake.getPath());
+		assertNull(data.getControls());
+		final ProjectionTransform proj = new ProjectionTransform(data, "proj", 1);
+		final Document doc = XMLUtil.createDocument("VisBio");
+		final Element el =
+			XMLUtil.createChild(doc.getDocumentElement(), "DataTransforms");
+		data.saveState(el);
+		proj.saveState(el);
+		XMLUtil.writeXML(new File(dir, "state.xml"), doc);
+
+		final File job = new File(dir, "job.xml");
+		final FileWriter out = new FileWriter(job);
+		out.write("<VisBioBatch state=\"state.xml\" threads=\"3\">\n" +
+			"  <Thumbnails resolution=\"32x24\"/>\n" +
+			"  <Export transform=\"proj\" file=\"out/proj_*.tif\"/>\n" +
+			"</VisBioBatch>\n");
+		out.close();
+
+		final VisBioBatch batch = new VisBioBatch(job);
+		assertEquals(0, batch.run());
+		assertEquals(2, batch.getTransforms().size());
+		assertSame(batch.getTransform("stack"), batch.getTransform("proj")
+			.getParent());
+		assertNotNull(batch.getTransform("stack").getThumbHandler().getThumb(
+			new int[] { 1, 3, 0 }));
+		assertNotNull(batch.getTransform("proj").getThumbHandler().getThumb(
+			new int[] { 1, 0 }));
+		assertTrue(new File(dir, "out/proj_1_1.tif").length() > 0);
+		assertTrue(new File(dir, "out/proj_2_1.tif").length() > 0);
+	}
+
+	/** Tests that a job naming a missing transform reports a failure. */
+	public void testMissingTransform() throws Exception {
+		final Document doc = XMLUtil.createDocument("VisBio");
+		XMLUtil.createChild(doc.getDocumentElement(), "DataTransforms");
+		XMLUtil.writeXML(new File(dir, "state.xml"), doc);
+		final File job = new File(dir, "job.xml");
+		final FileWriter out = new FileWriter(job);
+		out.write("<VisBioBatch state=\"state.xml\">\n" +
+			"  <Export transform=\"nothing\" file=\"x.tif\"/>\n" +
+			"</VisBioBatch>\n");
+		out.close();
+		assertEquals(1, new VisBioBatch(job).run());
+	}
+
+	/** Tests that a dataset which cannot be opened stops the restore. */
+	public void testMissingDataset() throws Exception {
+		final File fake = new File(dir, "gone&sizeX=8&sizeY=8.fake");
+		fake.createNewFile();
+		final Dataset data = new Dataset("gone", fake.getPath());
+		final Document doc = XMLUtil.createDocument("VisBio");
+		data.saveState(XMLUtil.createChild(doc.getDocumentElement(),
+			"DataTransforms"));
+		XMLUtil.writeXML(new File(dir, "state.xml"), doc);
+		fake.delete();
+
+		final VisBioBatch batch = new VisBioBatch(new File(dir, "state.xml"));
+		try {
+			batch.restore();
+			fail("SaveException expected");
+		}
+		catch (final SaveException exc) {
+			assertTrue(exc.getMessage().indexOf("gone") >= 0);
+		}
+	}
+
+	/** Tests labels of dimensional positions in export filenames. */
+	public void testPositionLabel() {
+		assertEquals("2_07", VisBioBatch.getPositionLabel(new int[] { 2, 12 }, 13));
+		assertEquals("1", VisBioBatch.getPositionLabel(new int[] { 5 }, 0));
+	}
+
+	/** Tests insertion of transform names into filenames. */
+	public void testInsertName() {
+		assertEquals("out_a_b.csv", VisBioBatch.insertName("out.csv", "a b"));
+		assertEquals("out_proj", VisBioBatch.insertName("out", "proj"));
+	}
+
+}
@@ -0,0 +1,129 @@
+/*
+ * #%L
+ * VisBio application for visualization of multidimensional biological
+ * image data.
+ * %%
+ * Copyright (C) 2002 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+
+package loci.visbio.utests.data;
+
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.WritableRaster;
+
+import junit.framework.TestCase;
+import loci.visbio.data.DataSampling;
+
+/**
+ * Unit tests for the DataSampling class.
+ */
+public class DataSamplingTest extends TestCase {
+
+	// -- DataSampling Tests --
+
+	/** Tests 2x decimation of a grayscale image. */
+	public void testDecimateGray() {
+		final BufferedImage img = makeGray(8, 6);
+		final BufferedImage d = DataSampling.decimate(img, 4, 3);
+		assertEquals(4, d.getWidth());
+		assertEquals(3, d.getHeight());
+		assertEquals(BufferedImage.TYPE_BYTE_GRAY, d.getType());
+		for (int y = 0; y < 3; y++) {
+			for (int x = 0; x < 4; x++) {
+				assertEquals(img.getRaster().getSample(2 * x, 2 * y, 0), d
+					.getRaster().getSample(x, y, 0));
+			}
+		}
+	}
+
+	/** Tests decimation of a cropped region of a packed RGB image. */
+	public void testDecimateRegion() {
+		final BufferedImage img =
+			new BufferedImage(9, 9, BufferedImage.TYPE_INT_RGB);
+		for (int y = 0; y < 9; y++) {
+			for (int x = 0; x < 9; x++)
+				img.setRGB(x, y, (x << 16) | (y << 8) | (x + y));
+		}
+		final BufferedImage region = img.getSubimage(3, 3, 6, 6);
+		final BufferedImage d = DataSampling.decimate(region, 2, 2);
+		for (int y = 0; y < 2; y++) {
+			for (int x = 0; x < 2; x++) {
+				assertEquals(region.getRGB(3 * x, 3 * y), d.getRGB(x, y));
+			}
+		}
+	}
+
+	/** Tests that floating point samples are copied exactly. */
+	public void testDecimateFloat() {
+		final ColorModel cm =
+			new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_GRAY),
+				false, false, Transparency.OPAQUE, DataBuffer.TYPE_FLOAT);
+		final WritableRaster r = cm.createCompatibleWritableRaster(6, 4);
+		for (int y = 0; y < 4; y++) {
+			for (int x = 0; x < 6; x++)
+				r.setSample(x, y, 0, x + y / 10f);
+		}
+		final BufferedImage img = new BufferedImage(cm, r, false, null);
+		final BufferedImage d = DataSampling.decimate(img, 3, 2);
+		assertEquals(DataBuffer.TYPE_FLOAT, d.getRaster().getTransferType());
+		for (int y = 0; y < 2; y++) {
+			for (int x = 0; x < 3; x++) {
+				assertEquals(r.getSampleFloat(2 * x, 2 * y, 0), d.getRaster()
+					.getSampleFloat(x, y, 0), 0);
+			}
+		}
+	}
+
+	/** Tests that an image already at the target resolution is reused. */
+	public void testSameSize() {
+		final BufferedImage img = makeGray(2, 2);
+		assertSame(img, DataSampling.decimate(img, 2, 2));
+	}
+
+	/** Tests that uneven steps and enlarging fall back to scaling. */
+	public void testScaleFallback() {
+		final BufferedImage img = makeGray(6, 6);
+		final BufferedImage down = DataSampling.decimate(img, 4, 4);
+		assertEquals(4, down.getWidth());
+		assertEquals(4, down.getHeight());
+		final BufferedImage up = DataSampling.decimate(img, 12, 9);
+		assertEquals(12, up.getWidth());
+		assertEquals(9, up.getHeight());
+	}
+
+	// -- Helper methods --
+
+	/** Creates a grayscale image with a distinct value at each pixel. */
+	private BufferedImage makeGray(final int w, final int h) {
+		final BufferedImage img =
+			new BufferedImage(w, h, BufferedImage.TYPE_BYTE_GRAY);
+		for (int y = 0; y < h; y++) {
+			for (int x = 0; x < w; x++)
+				img.getRaster().setSample(x, y, 0, y * w + x);
+		}
+		return img;
+	}
+
+}
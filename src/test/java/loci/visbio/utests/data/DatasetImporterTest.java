@@ -0,0 +1,141 @@
+/*
+ * #%L
+ * VisBio application for visualization of multidimensional biological
+ * image data.
+ * %%
+ * Copyright (C) 2002 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.visbio.utests.data;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Vector;
+
+import loci.visbio.data.Dataset;
+import loci.visbio.data.DatasetImporter;
+import loci.visbio.utests.TempDirTestCase;
+
+/**
+ * Unit tests for the DatasetImporter class, importing a directory of
+ * Bio-Formats fake files.
+ */
+public class DatasetImporterTest extends TempDirTestCase {
+
+	/** This method runs before each test. */
+	@Override
+	public void setUp() throws IOException {
+		super.setUp();
+
+		// three time points of one well, and two other wells
+		for (int t = 1; t <= 3; t++) {
+			new File(dir, "well" + t + "&sizeX=32&sizeY=32.fake").createNewFile();
+		}
+		new File(dir, "other&sizeX=16&sizeY=16&sizeZ=2.fake").createNewFile();
+		new File(dir, "third&sizeX=16&sizeY=16&sizeC=3.fake").createNewFile();
+
+		// a file no reader recognizes
+		final FileOutputStream out =
+			new FileOutputStream(new File(dir, "junk.xyz"));
+		out.write(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+		out.close();
+	}
+
+	/** Tests that files sharing a pattern are grouped together. */
+	public void testFindPatterns() {
+		final DatasetImporter importer = new DatasetImporter(true);
+		final String[] patterns =
+			importer.findPatterns(new String[] { dir.getPath() }, null);
+		assertEquals(4, patterns.length);
+		int grouped = 0;
+		for (int i = 0; i < patterns.length; i++) {
+			if (patterns[i].indexOf("well") >= 0) {
+				assertTrue(patterns[i].indexOf("well<1-3>&") >= 0);
+				grouped++;
+			}
+		}
+		assertEquals(1, grouped);
+	}
+
+	/** Tests that every readable pattern is opened, with a distinct name. */
+	public void testImport() {
+		final Vector opened = new Vector();
+		final DatasetImporter importer = new DatasetImporter(true) {
+
+			@Override
+			protected void opened(final Dataset data) {
+				opened.add(data);
+			}
+		};
+		final Dataset[] data =
+			importer.importDatasets(new String[] { dir.getPath() }, null);
+		assertEquals(3, data.length);
+		assertEquals(3, opened.size());
+		for (int i = 0; i < data.length; i++) {
+			assertTrue(data[i].isValid());
+			assertTrue(opened.contains(data[i]));
+			for (int j = 0; j < i; j++) {
+				assertFalse(data[i].getName().equals(data[j].getName()));
+			}
+		}
+	}
+
+	/** Tests that imported datasets avoid names already in use. */
+	public void testUsedNames() {
+		final DatasetImporter plain = new DatasetImporter(true);
+		final Dataset[] first =
+			plain.importDatasets(new String[] { dir.getPath() }, null);
+		final String[] used = new String[first.length];
+		for (int i = 0; i < used.length; i++)
+			used[i] = first[i].getName();
+
+		final DatasetImporter importer = new DatasetImporter(true) {
+
+			@Override
+			protected String[] getUsedNames() {
+				return used;
+			}
+		};
+		final Dataset[] data =
+			importer.importDatasets(new String[] { dir.getPath() }, null);
+		assertEquals(used.length, data.length);
+		for (int i = 0; i < data.length; i++) {
+			for (int j = 0; j < used.length; j++) {
+				assertFalse(data[i].getName().equals(used[j]));
+			}
+		}
+	}
+
+	/** Tests that an interrupted import still waits for its workers. */
+	public void testInterrupt() {
+		final DatasetImporter importer = new DatasetImporter(true);
+		final String[] patterns =
+			importer.findPatterns(new String[] { dir.getPath() }, null);
+		Thread.currentThread().interrupt();
+		final Dataset[] data = importer.openDatasets(patterns, null);
+		assertTrue(Thread.interrupted());
+		assertTrue(data.length <= 3);
+		for (int i = 0; i < data.length; i++) {
+			assertNotNull(data[i]);
+			assertTrue(data[i].isValid());
+		}
+	}
+
+}
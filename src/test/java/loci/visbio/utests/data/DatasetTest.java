@@ -0,0 +1,100 @@
+/*
+ * #%L
+ * VisBio application for visualization of multidimensional biological
+ * image data.
+ * %%
+ * Copyright (C) 2002 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+
+package loci.visbio.utests.data;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import loci.formats.FormatException;
+import loci.visbio.data.Dataset;
+import loci.visbio.utests.TempDirTestCase;
+
+/**
+ * Unit tests for the Dataset class, comparing lazily and eagerly opened
+ * Bio-Formats fake datasets.
+ */
+public class DatasetTest extends TempDirTestCase {
+
+	/** Fake file from which the datasets are opened. */
+	protected File fake;
+
+	/** This method runs before each test. */
+	@Override
+	public void setUp() throws IOException {
+		super.setUp();
+		fake =
+			new File(dir, "stack&sizeX=64&sizeY=48&sizeZ=3&sizeT=2&sizeC=2" +
+				"&pixelType=uint16.fake");
+		fake.createNewFile();
+	}
+
+	/** Tests that a lazy dataset has the same shape and pixels as an eager one. */
+	public void testLazyOpen() throws FormatException, IOException {
+		final Dataset eager = new Dataset("eager", fake.getPath());
+		final Dataset lazy = new Dataset("lazy", fake.getPath(), null, true);
+		try {
+			assertFalse(eager.isLazy());
+			assertTrue(lazy.isLazy());
+			assertTrue(Arrays.equals(eager.getLengths(), lazy.getLengths()));
+			assertTrue(Arrays.equals(eager.getDimTypes(), lazy.getDimTypes()));
+			assertEquals(eager.getImageWidth(), lazy.getImageWidth());
+			assertEquals(eager.getImageHeight(), lazy.getImageHeight());
+			assertEquals(eager.getFileFormat(), lazy.getFileFormat());
+			assertEquals(eager.getFilenames().length, lazy.getFilenames().length);
+
+			final int[] pos = { 1, 2, 1 };
+			final BufferedImage a = eager.getImage(pos);
+			final BufferedImage b = lazy.getImage(pos);
+			assertEquals(a.getType(), b.getType());
+			final int[] pa = a.getRaster().getPixels(0, 0, 64, 48, (int[]) null);
+			final int[] pb = b.getRaster().getPixels(0, 0, 64, 48, (int[]) null);
+			assertTrue(Arrays.equals(pa, pb));
+		}
+		finally {
+			eager.close();
+			lazy.close();
+		}
+	}
+
+	/** Tests that a lazy dataset parses its metadata on first request. */
+	public void testDeferredMetadata() throws FormatException, IOException {
+		final Dataset lazy = new Dataset("lazy", fake.getPath(), null, true);
+		try {
+			assertFalse(lazy.isMetadataLoaded());
+			assertNotNull(lazy.getMetadata());
+			assertTrue(lazy.isMetadataLoaded());
+			assertNotNull(lazy.getOMEXML());
+			assertNotNull(lazy.getOMEXMLRoot());
+			assertNull(lazy.getControls());
+		}
+		finally {
+			lazy.close();
+		}
+	}
+
+}
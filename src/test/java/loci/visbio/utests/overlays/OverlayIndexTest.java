@@ -0,0 +1,114 @@
+/*
+ * #%L
+ * VisBio application for visualization of multidimensional biological
+ * image data.
+ * %%
+ * Copyright (C) 2002 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.visbio.utests.overlays;
+
+import java.util.Hashtable;
+
+import junit.framework.TestCase;
+import loci.visbio.overlays.OverlayFreeform;
+import loci.visbio.overlays.OverlayIndex;
+import loci.visbio.overlays.OverlayObject;
+import loci.visbio.overlays.OverlayTransform;
+
+/**
+ * Tests the spatial index used for overlay hit-testing.
+ */
+public class OverlayIndexTest extends TestCase {
+
+	/** Overlay transform for test overlays. */
+	protected OverlayTransform ot;
+
+	/** Spatial index under test. */
+	protected OverlayIndex index;
+
+	/** Test freeforms. */
+	protected OverlayFreeform f, g;
+
+	/** This method runs before each test. */
+	@Override
+	public void setUp() {
+		final DummyImageTransform it = new DummyImageTransform(null, "image");
+		ot = new DummyOverlayTransform(it, "Howdy");
+		index = new OverlayIndex(0, 0, 100, 100, 10);
+		f = new OverlayFreeform(ot, new float[][] { { 10f, 20f, 30f },
+			{ 10f, 10f, 10f } });
+		g = new OverlayFreeform(ot, new float[][] { { 70f, 80f, 90f },
+			{ 70f, 80f, 90f } });
+		index.add(f);
+		index.add(g);
+	}
+
+	/** Tests nearest-object queries. */
+	public void testNearest() {
+		assertSame(f, index.getNearest(21f, 12f, 5));
+		assertSame(g, index.getNearest(79f, 81f, 5));
+		assertNull(index.getNearest(50f, 50f, 5));
+	}
+
+	/** Tests nearest-node queries. */
+	public void testNearestNode() {
+		final OverlayIndex.NodeHit hit =
+			index.getNearestNode(29f, 11f, 5, OverlayFreeform.class);
+		assertSame(f, hit.obj);
+		assertEquals(2, hit.node);
+		assertNull(index.getNearestNode(50f, 50f, 5, null));
+	}
+
+	/** Tests rectangle and radius queries. */
+	public void testRectangleAndRadius() {
+		OverlayObject[] objs = index.getIntersecting(0f, 0f, 50f, 50f);
+		assertEquals(1, objs.length);
+		assertSame(f, objs[0]);
+		objs = index.getIntersecting(0f, 0f, 100f, 100f);
+		assertEquals(2, objs.length);
+		objs = index.getWithin(15f, 15f, 6);
+		assertEquals(1, objs.length);
+	}
+
+	/** Tests that moved and removed objects are reindexed. */
+	public void testUpdateAndRemove() {
+		f.setCoords(f.getX() + 40f, f.getY() + 40f);
+		index.update(f);
+		assertNull(index.getNearest(20f, 10f, 5));
+		assertSame(f, index.getNearest(60f, 50f, 5));
+		index.remove(g);
+		assertNull(index.getNearest(80f, 80f, 5));
+		assertEquals(1, index.size());
+	}
+
+	/** Tests that the shared owner table tracks which index holds an object. */
+	public void testOwners() {
+		final Hashtable owners = new Hashtable();
+		final OverlayIndex owned = new OverlayIndex(0, 0, 100, 100, 10, owners);
+		owned.add(f);
+		owned.add(g);
+		assertSame(owned, owners.get(f));
+		owned.remove(f);
+		assertNull(owners.get(f));
+		owned.clear();
+		assertTrue(owners.isEmpty());
+	}
+
+}
@@ -0,0 +1,122 @@
+/*
+ * #%L
+ * VisBio application for visualization of multidimensional biological
+ * image data.
+ * %%
+ * Copyright (C) 2002 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.visbio.utests.overlays;
+
+import junit.framework.TestCase;
+import loci.visbio.overlays.OverlayBox;
+import loci.visbio.overlays.OverlayFreeform;
+import loci.visbio.overlays.OverlayMeasurer;
+import loci.visbio.overlays.OverlayOval;
+import loci.visbio.overlays.OverlayTransform;
+
+/**
+ * Tests the ROI rasterization and intensity statistics of OverlayMeasurer.
+ */
+public class OverlayMeasurerTest extends TestCase {
+
+	/** Plane width and height. */
+	protected static final int SIZE = 10;
+
+	/** Overlay transform for test overlays. */
+	protected OverlayTransform ot;
+
+	/** Two-channel plane; channel 0 is the x coordinate, channel 1 is 1. */
+	protected float[][] samples;
+
+	/** This method runs before each test. */
+	@Override
+	public void setUp() {
+		final DummyImageTransform it = new DummyImageTransform(null, "image");
+		ot = new DummyOverlayTransform(it, "Howdy");
+		samples = new float[2][SIZE * SIZE];
+		for (int y = 0; y < SIZE; y++) {
+			for (int x = 0; x < SIZE; x++) {
+				samples[0][y * SIZE + x] = x;
+				samples[1][y * SIZE + x] = 1;
+			}
+		}
+	}
+
+	/** Tests measurement of a box. */
+	public void testBox() {
+		final OverlayBox box = new OverlayBox(ot, 2f, 3f, 4f, 5f);
+		final double[][] v = OverlayMeasurer.measure(box, samples, SIZE, SIZE);
+		assertEquals(9, v[0][0], 0);
+		assertEquals(3, v[1][0], 1e-9);
+		assertEquals(2, v[2][0], 0);
+		assertEquals(4, v[3][0], 0);
+		assertEquals(27, v[4][0], 1e-9);
+		assertEquals(9, v[4][1], 1e-9);
+		assertEquals(0, v[5][1], 1e-9);
+	}
+
+	/** Tests that ROIs are clipped to the plane. */
+	public void testClipping() {
+		final OverlayBox box = new OverlayBox(ot, -5f, -5f, 20f, 20f);
+		final double[][] v = OverlayMeasurer.measure(box, samples, SIZE, SIZE);
+		assertEquals(SIZE * SIZE, v[0][0], 0);
+		assertEquals(4.5, v[1][0], 1e-9);
+	}
+
+	/** Tests rasterization of an oval. */
+	public void testOval() {
+		final OverlayOval oval = new OverlayOval(ot, 3f, 3f, 7f, 7f);
+		final int[] spans = OverlayMeasurer.scan(oval, SIZE, SIZE);
+		int count = 0;
+		for (int i = 0; i < spans.length; i += 3) {
+			final int y = spans[i];
+			for (int x = spans[i + 1]; x <= spans[i + 2]; x++) {
+				final int dx = x - 5, dy = y - 5;
+				assertTrue(dx * dx + dy * dy <= 4);
+				count++;
+			}
+		}
+		// pixel centers within a radius 2 circle
+		assertEquals(13, count);
+	}
+
+	/** Tests rasterization of a freeform polygon. */
+	public void testFreeform() {
+		final OverlayFreeform square =
+			new OverlayFreeform(ot, new float[][] { { 1.5f, 5.5f, 5.5f, 1.5f },
+				{ 1.5f, 1.5f, 5.5f, 5.5f } });
+		final double[][] v = OverlayMeasurer.measure(square, samples, SIZE, SIZE);
+		assertEquals(16, v[0][0], 0);
+		assertEquals(3.5, v[1][0], 1e-9);
+		assertEquals(2, v[2][0], 0);
+		assertEquals(5, v[3][0], 0);
+	}
+
+	/** Tests that missing values are left out of the count and the mean. */
+	public void testMissing() {
+		samples[0][3 * SIZE + 2] = Float.NaN;
+		final OverlayBox box = new OverlayBox(ot, 2f, 3f, 4f, 5f);
+		final double[][] v = OverlayMeasurer.measure(box, samples, SIZE, SIZE);
+		assertEquals(8, v[0][0], 0);
+		assertEquals(9, v[0][1], 0);
+		assertEquals(25 / 8.0, v[1][0], 1e-9);
+	}
+
+}
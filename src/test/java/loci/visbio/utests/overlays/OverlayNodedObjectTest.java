@@ -270,6 +270,28 @@ public class OverlayNodedObjectTest extends TestCase {
 		compareNodes(nodesExpected, nodes3);
 	}
 
+	// -- Revision Tests --
+
+	/** Tests that editing the node array marks the object as changed. */
+	public void testRevisionOnNodeEdit() {
+		int rev = f.getRevision();
+		f.setNextNode(3f, 3f);
+		assertTrue(f.getRevision() != rev);
+		rev = f.getRevision();
+		f.deleteNode(0);
+		assertTrue(f.getRevision() != rev);
+	}
+
+	/** Tests that redundant selection changes do not mark the object changed. */
+	public void testRevisionOnSelection() {
+		f.setSelected(true);
+		final int rev = f.getRevision();
+		f.setSelected(true);
+		assertEquals(rev, f.getRevision());
+		f.setSelected(false);
+		assertTrue(f.getRevision() != rev);
+	}
+
 	// -- Helpers --
 
 	/**
@@ -0,0 +1,140 @@
+/*
+ * #%L
+ * VisBio application for visualization of multidimensional biological
+ * image data.
+ * %%
+ * Copyright (C) 2002 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.visbio.utests.overlays;
+
+import java.util.HashMap;
+import java.util.Random;
+import java.util.Vector;
+
+import junit.framework.TestCase;
+import loci.visbio.overlays.OverlayStore;
+
+/**
+ * Tests the sparse per-position storage of overlay lists.
+ */
+public class OverlayStoreTest extends TestCase {
+
+	/** Store under test. */
+	protected OverlayStore store;
+
+	/** This method runs before each test. */
+	@Override
+	public void setUp() {
+		store = new OverlayStore(1000000);
+	}
+
+	/** Tests that only occupied positions are stored. */
+	public void testSparse() {
+		assertEquals(0, store.getPositionCount());
+		assertNull(store.get(5));
+		assertEquals(0, store.size(5));
+
+		store.getOrCreate(999999).add("a");
+		store.getOrCreate(5).add("b");
+		store.getOrCreate(5).add("c");
+		assertEquals(2, store.getPositionCount());
+		assertEquals(3, store.getObjectCount());
+		assertEquals(2, store.size(5));
+		final int[] positions = store.getPositions();
+		assertEquals(2, positions.length);
+		assertEquals(5, positions[0]);
+		assertEquals(999999, positions[1]);
+
+		store.get(5).clear();
+		store.compact(5);
+		assertNull(store.get(5));
+		assertEquals(1, store.getPositionCount());
+	}
+
+	/** Tests that shrinking the store discards positions beyond its length. */
+	public void testSetLength() {
+		store.getOrCreate(10).add("a");
+		store.getOrCreate(500).add("b");
+		store.setLength(100);
+		assertEquals(1, store.getPositionCount());
+		assertNull(store.get(500));
+		assertEquals(1, store.size(10));
+		try {
+			store.getOrCreate(500);
+			fail("Expected IndexOutOfBoundsException");
+		}
+		catch (final IndexOutOfBoundsException exc) {
+			// expected
+		}
+	}
+
+	/** Tests replacing the contents of a store with those of another. */
+	public void testSetAll() {
+		store.getOrCreate(3).add("a");
+		final OverlayStore loaded = new OverlayStore(50);
+		loaded.getOrCreate(40).add("b");
+		store.setAll(loaded);
+		assertEquals(50, store.getLength());
+		assertNull(store.get(3));
+		assertEquals(1, store.size(40));
+		store.getOrCreate(7).add("c");
+		assertNull(loaded.get(7));
+	}
+
+	/**
+	 * Tests a random sequence of insertions and removals against a reference
+	 * map, exercising table growth and removal from long probe sequences.
+	 */
+	public void testRandom() {
+		final HashMap ref = new HashMap();
+		final Random r = new Random(7);
+		for (int step = 0; step < 20000; step++) {
+			// clustered keys make probe sequences collide often
+			final int ndx = r.nextInt(4) == 0 ? r.nextInt(1000000) : r.nextInt(300);
+			final Integer key = new Integer(ndx);
+			if (r.nextInt(3) == 0) {
+				store.remove(ndx);
+				ref.remove(key);
+			}
+			else {
+				final Vector v = new Vector();
+				v.add(key);
+				store.put(ndx, v);
+				ref.put(key, v);
+			}
+			if (step % 1000 == 0) assertSameContents(ref);
+		}
+		assertSameContents(ref);
+	}
+
+	// -- Helper methods --
+
+	/** Asserts that the store holds exactly the lists in the given map. */
+	protected void assertSameContents(final HashMap ref) {
+		assertEquals(ref.size(), store.getPositionCount());
+		final int[] positions = store.getPositions();
+		for (int i = 0; i < positions.length; i++) {
+			final Vector expected = (Vector) ref.get(new Integer(positions[i]));
+			assertNotNull(expected);
+			assertEquals(expected, store.get(positions[i]));
+		}
+	}
+
+}
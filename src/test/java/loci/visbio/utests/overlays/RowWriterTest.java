@@ -0,0 +1,106 @@
+/*
+ * #%L
+ * VisBio application for visualization of multidimensional biological
+ * image data.
+ * %%
+ * Copyright (C) 2002 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.visbio.utests.overlays;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import junit.framework.TestCase;
+import loci.visbio.overlays.OverlayBatchMeasurer.CSVWriter;
+import loci.visbio.overlays.OverlayBatchMeasurer.RowWriter;
+import loci.visbio.overlays.OverlayBatchMeasurer.XLSXWriter;
+
+/**
+ * Tests the streaming row writers used for overlay export and measurement.
+ */
+public class RowWriterTest extends TestCase {
+
+	/** Tests that delimited values are quoted only when needed. */
+	public void testDelimited() throws IOException {
+		final StringWriter sw = new StringWriter();
+		final RowWriter out = new CSVWriter(sw, '\t');
+		out.writeRow(new Object[] { "a,b", "c\td", new Integer(1), null,
+			new Double(0.5) });
+		out.close();
+		assertEquals("a,b\t\"c\td\"\t1\t\t0.5\n", sw.toString());
+	}
+
+	/** Tests that the .xlsx package holds each row as it was written. */
+	public void testXLSX() throws IOException {
+		final File file = File.createTempFile("visbio-test", ".xlsx");
+		try {
+			final RowWriter out = new XLSXWriter(file);
+			out.writeRow(new Object[] { "Overlay", "x1 <&>" });
+			for (int i = 0; i < 1000; i++) {
+				out.writeRow(new Object[] { "Box", new Float(i), null,
+					new Double(Double.NaN) });
+			}
+			out.close();
+
+			final ZipFile zip = new ZipFile(file);
+			try {
+				assertNotNull(zip.getEntry("[Content_Types].xml"));
+				assertNotNull(zip.getEntry("xl/workbook.xml"));
+				final String sheet =
+					read(zip, zip.getEntry("xl/worksheets/sheet1.xml"));
+				assertTrue(sheet.indexOf("x1 &lt;&amp;&gt;") >= 0);
+				assertTrue(sheet.indexOf("<c r=\"B1001\"><v>999.0</v></c>") >= 0);
+				assertTrue(sheet.indexOf("<row r=\"1002\"") < 0);
+				assertTrue(sheet.indexOf("C2") < 0);
+				assertTrue(sheet.indexOf("D2") < 0);
+			}
+			finally {
+				zip.close();
+			}
+		}
+		finally {
+			file.delete();
+		}
+	}
+
+	// -- Helper methods --
+
+	/** Reads the given zip entry as a UTF-8 string. */
+	protected String read(final ZipFile zip, final ZipEntry entry)
+		throws IOException
+	{
+		final InputStream in = zip.getInputStream(entry);
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final byte[] buf = new byte[8192];
+		while (true) {
+			final int n = in.read(buf);
+			if (n < 0) break;
+			bytes.write(buf, 0, n);
+		}
+		in.close();
+		return bytes.toString("UTF-8");
+	}
+
+}
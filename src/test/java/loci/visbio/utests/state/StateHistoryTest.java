@@ -0,0 +1,181 @@
+/*
+ * #%L
+ * VisBio application for visualization of multidimensional biological
+ * image data.
+ * %%
+ * Copyright (C) 2002 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.visbio.utests.state;
+
+import java.util.Stack;
+
+import junit.framework.TestCase;
+import loci.visbio.state.ProgramState;
+import loci.visbio.state.StateHistory;
+import loci.visbio.util.XMLUtil;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Unit tests for the StateHistory class.
+ */
+public class StateHistoryTest extends TestCase {
+
+	// -- Admin. Methods --
+
+	/** Sets up the test fixture. */
+	@Override
+	protected void setUp() {
+		// nothing to do.
+	}
+
+	/** Tears down the test fixture. */
+	@Override
+	protected void tearDown() {
+		// nothing to do.
+	}
+
+	// -- Tests --
+
+	/**
+	 * Tests that a random sequence of pushes, undos and redos yields the same
+	 * states as the full-document undo and redo stacks StateHistory replaces.
+	 */
+	public void testRoundTrip() {
+		final StateHistory history = new StateHistory(1000, Long.MAX_VALUE);
+		final Stack undo = new Stack(), redo = new Stack();
+		ProgramState current = makeState(0);
+		history.push(current);
+
+		final java.util.Random r = new java.util.Random(42);
+		for (int step = 1; step < 300; step++) {
+			final int action = r.nextInt(4);
+			if (action == 0 && !undo.isEmpty()) {
+				redo.push(current);
+				current = (ProgramState) undo.pop();
+				assertTrue(history.canUndo());
+				assertSameState(current, history.undo());
+			}
+			else if (action == 1 && !redo.isEmpty()) {
+				undo.push(current);
+				current = (ProgramState) redo.pop();
+				assertTrue(history.canRedo());
+				assertSameState(current, history.redo());
+			}
+			else {
+				undo.push(current);
+				redo.removeAllElements();
+				current = makeState(step);
+				history.push(current);
+			}
+			assertEquals(!undo.isEmpty(), history.canUndo());
+			assertEquals(!redo.isEmpty(), history.canRedo());
+			assertEquals(current.msg, history.getCurrentMessage());
+		}
+	}
+
+	/** Tests that unchanged fragments are shared between states. */
+	public void testSharing() {
+		final StateHistory history = new StateHistory(1000, Long.MAX_VALUE);
+		history.push(makeState(0));
+		final long first = history.getMemoryUsage();
+		// only the "Changing" fragment differs between states
+		history.push(makeState(1));
+		final long second = history.getMemoryUsage() - first;
+		assertTrue(second > 0);
+		assertTrue(second < first / 2);
+	}
+
+	/** Tests that the oldest states are trimmed first. */
+	public void testLimits() {
+		final StateHistory history = new StateHistory(5, Long.MAX_VALUE);
+		for (int i = 0; i < 10; i++)
+			history.push(makeState(i));
+		assertEquals(5, history.size());
+		int undos = 0;
+		ProgramState state = null;
+		while (history.canUndo()) {
+			state = history.undo();
+			undos++;
+		}
+		assertEquals(4, undos);
+		assertSameState(makeState(5), state);
+
+		while (history.canRedo()) history.redo();
+		history.setLimits(5, 1);
+		assertEquals(1, history.size());
+		assertFalse(history.canUndo());
+		assertSameState(makeState(9), history.getCurrent());
+	}
+
+	/** Tests that the running memory total matches a history built afresh. */
+	public void testMemoryUsage() {
+		final StateHistory history = new StateHistory(4, Long.MAX_VALUE);
+		for (int i = 0; i < 10; i++) {
+			history.push(makeState(i));
+			// the next push discards the state that could have been redone
+			if (i % 3 == 2) history.undo();
+		}
+
+		// push the remaining states into a fresh history
+		while (history.canUndo())
+			history.undo();
+		final StateHistory fresh = new StateHistory(1000, Long.MAX_VALUE);
+		fresh.push(history.getCurrent());
+		while (history.canRedo())
+			fresh.push(history.redo());
+		assertEquals(4, history.size());
+		assertEquals(fresh.size(), history.size());
+		assertEquals(fresh.getMemoryUsage(), history.getMemoryUsage());
+
+		history.clear();
+		assertEquals(0, history.getMemoryUsage());
+	}
+
+	// -- Helper methods --
+
+	/** Builds a state with one large constant and one small changing part. */
+	protected ProgramState makeState(final int n) {
+		final Document doc = XMLUtil.createDocument("VisBio");
+		final Element root = doc.getDocumentElement();
+		final Element constant = XMLUtil.createChild(root, "Constant");
+		for (int i = 0; i < 50; i++) {
+			final Element child = XMLUtil.createChild(constant, "Item");
+			child.setAttribute("index", "" + i);
+			child.setAttribute("name", "Constant item number " + i);
+		}
+		final Element changing = XMLUtil.createChild(root, "Changing");
+		changing.setAttribute("value", "" + n);
+		XMLUtil.createText(changing, "state " + n);
+		return new ProgramState("action " + n, doc);
+	}
+
+	/** Asserts that the given states have the same message and document. */
+	protected void assertSameState(final ProgramState expected,
+		final ProgramState actual)
+	{
+		assertNotNull(actual);
+		assertEquals(expected.msg, actual.msg);
+		assertEquals(XMLUtil.writeXML(expected.state),
+			XMLUtil.writeXML(actual.state));
+	}
+
+}
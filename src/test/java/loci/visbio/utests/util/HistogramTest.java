@@ -0,0 +1,152 @@
+/*
+ * #%L
+ * VisBio application for visualization of multidimensional biological
+ * image data.
+ * %%
+ * Copyright (C) 2002 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.visbio.utests.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+import loci.visbio.util.Histogram;
+
+/**
+ * Unit tests for the Histogram class.
+ */
+public class HistogramTest extends TestCase {
+
+	// -- Constants --
+
+	/** Number of samples per channel; large enough to use several threads. */
+	public static final int SIZE = 1000000;
+
+	// -- Histogram Tests --
+
+	/** Tests minimum, maximum and sample counts. */
+	public void testExtrema() {
+		final float[][] samples = new float[2][SIZE];
+		for (int i = 0; i < SIZE; i++) {
+			samples[0][i] = i % 256;
+			samples[1][i] = -i;
+		}
+		samples[1][7] = Float.NaN;
+		final Histogram h = Histogram.compute(samples, 256);
+
+		assertEquals(2, h.getChannelCount());
+		assertEquals(256, h.getBinCount());
+		assertEquals(0, h.getMin(0), 0);
+		assertEquals(255, h.getMax(0), 0);
+		assertEquals(-(SIZE - 1), h.getMin(1), 0);
+		assertEquals(0, h.getMax(1), 0);
+		assertEquals(SIZE, h.getSampleCount(0));
+		assertEquals(SIZE - 1, h.getSampleCount(1));
+
+		long sum = 0;
+		for (int i = 0; i < h.getBinCount(); i++)
+			sum += h.getCount(0, i);
+		assertEquals(SIZE, sum);
+	}
+
+	/** Tests percentile clipping against a sorted copy of the samples. */
+	public void testPercentile() {
+		final float[][] samples = new float[1][SIZE];
+		for (int i = 0; i < SIZE; i++) {
+			samples[0][i] = (float) (1000 * Math.random());
+		}
+		samples[0][0] = -50000;
+		samples[0][1] = 50000;
+		final Histogram h = Histogram.compute(samples, Histogram.DEFAULT_BINS);
+
+		final double[] range = h.getRange(0, 0, 0);
+		assertEquals(-50000, range[0], 0);
+		assertEquals(50000, range[1], 0);
+
+		// outliers are clipped away
+		final float[] sorted = (float[]) samples[0].clone();
+		Arrays.sort(sorted);
+		final double[] clipped = h.getRange(0, 0.1, 0.1);
+		final double width = 100000.0 / Histogram.DEFAULT_BINS;
+		assertEquals(sorted[SIZE / 1000], clipped[0], width);
+		assertEquals(sorted[SIZE - SIZE / 1000], clipped[1], width);
+	}
+
+	/** Tests a channel with a single value. */
+	public void testConstant() {
+		final float[][] samples = new float[1][100];
+		Arrays.fill(samples[0], 3);
+		final Histogram h = Histogram.compute(samples, 16);
+		assertEquals(100, h.getCount(0, 0));
+		assertEquals(3, h.getPercentile(0, 50), 0);
+	}
+
+	/** Tests combining the histograms of several planes. */
+	public void testMerge() {
+		final Histogram[] h = new Histogram[3];
+		for (int p = 0; p < h.length; p++) {
+			final float[][] samples = new float[1][1000];
+			for (int i = 0; i < 1000; i++)
+				samples[0][i] = 100 * p + i % 100;
+			h[p] = Histogram.compute(samples, 100);
+		}
+		final Histogram all = Histogram.merge(new Histogram[] { h[0], null, h[1],
+			h[2] }, 300);
+
+		assertEquals(3000, all.getSampleCount(0));
+		assertEquals(0, all.getMin(0), 0);
+		assertEquals(299, all.getMax(0), 0);
+		assertEquals((h[0].getMean(0) + h[1].getMean(0) + h[2].getMean(0)) / 3,
+			all.getMean(0), 1e-9);
+		assertEquals(150, all.getPercentile(0, 50), 2);
+		assertNull(Histogram.merge(new Histogram[2], 10));
+	}
+
+	/** Tests writing and reading back a histogram. */
+	public void testReadWrite() throws IOException {
+		final float[][] samples = { { 1, 2, 3, 4 }, { 5, 5, Float.NaN, 9 } };
+		final Histogram h = Histogram.compute(samples, 8);
+		final ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		final DataOutputStream out = new DataOutputStream(bout);
+		h.write(out);
+		out.close();
+		final Histogram r =
+			Histogram.read(new DataInputStream(new ByteArrayInputStream(bout
+				.toByteArray())));
+
+		assertEquals(2, r.getChannelCount());
+		assertEquals(8, r.getBinCount());
+		assertEquals(2.5, r.getMean(0), 0);
+		assertEquals(19 / 3.0, r.getMean(1), 1e-9);
+		assertEquals(3, r.getSampleCount(1));
+		for (int c = 0; c < 2; c++) {
+			assertEquals(h.getMin(c), r.getMin(c), 0);
+			assertEquals(h.getMax(c), r.getMax(c), 0);
+			for (int i = 0; i < 8; i++)
+				assertEquals(h.getCount(c, i), r.getCount(c, i));
+		}
+	}
+
+}
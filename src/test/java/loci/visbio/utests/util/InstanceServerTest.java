@@ -0,0 +1,269 @@
+/*
+ * #%L
+ * VisBio application for visualization of multidimensional biological
+ * image data.
+ * %%
+ * Copyright (C) 2002 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+
+package loci.visbio.utests.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.util.Vector;
+
+import junit.framework.TestCase;
+import loci.visbio.util.CommandEvent;
+import loci.visbio.util.CommandListener;
+import loci.visbio.util.InstanceServer;
+import loci.visbio.util.SpawnEvent;
+import loci.visbio.util.SpawnListener;
+
+/**
+ * Unit tests for the InstanceServer class, driving a server on an ephemeral
+ * port with a local client.
+ */
+public class InstanceServerTest extends TestCase {
+
+	// -- Fields --
+
+	/** Server under test. */
+	protected InstanceServer server;
+
+	/** Arguments received by spawn events. */
+	protected Vector spawned = new Vector();
+
+	// -- TestCase API methods --
+
+	/**
+	 * Starts a server answering "echo", "lines", "sum" and "secure" commands.
+	 */
+	@Override
+	protected void setUp() throws IOException {
+		server = new InstanceServer(0);
+		server.addCommandListener(new CommandListener() {
+
+			@Override
+			public String commandReceived(final CommandEvent e) {
+				if (e.getCommand().equals("echo")) {
+					final StringBuffer sb = new StringBuffer();
+					for (int i = 0; i < e.getArgumentCount(); i++) {
+						if (i > 0) sb.append("|");
+						sb.append(e.getArgument(i));
+					}
+					return sb.toString();
+				}
+				if (e.getCommand().equals("lines")) return "a\nb";
+				if (e.getCommand().equals("secure")) {
+					return e.isAuthenticated() ? "yes" : "no";
+				}
+				if (e.getCommand().equals("sum")) {
+					final int a = Integer.parseInt(e.getArgument(0));
+					final int b = Integer.parseInt(e.getArgument(1));
+					return "" + (a + b);
+				}
+				return null;
+			}
+		});
+		server.addSpawnListener(new SpawnListener() {
+
+			@Override
+			public void instanceSpawned(final SpawnEvent e) {
+				synchronized (spawned) {
+					spawned.add(e.getArguments());
+					spawned.notifyAll();
+				}
+			}
+		});
+	}
+
+	/** Stops the server. */
+	@Override
+	protected void tearDown() {
+		server.stop();
+	}
+
+	// -- InstanceServer Tests --
+
+	/** Tests command replies within one session. */
+	public void testCommands() throws IOException {
+		final String[] replies =
+			InstanceServer.sendCommands(new String[] { "echo a \"b c\" d",
+				"sum 2 3", "echo", "lines" }, server.getPort());
+		assertEquals("OK a|b c|d", replies[0]);
+		assertEquals("OK 5", replies[1]);
+		assertEquals("OK", replies[2]);
+		assertEquals("OK a b", replies[3]);
+	}
+
+	/** Tests error replies for unknown commands and invalid arguments. */
+	public void testErrors() throws IOException {
+		final String[] replies =
+			InstanceServer.sendCommands(new String[] { "bogus", "sum 1",
+				"sum 1 x", "echo still alive" }, server.getPort());
+		assertEquals("ERROR Unknown command: bogus", replies[0]);
+		assertEquals("ERROR Missing argument #2 to sum", replies[1]);
+		assertTrue(replies[2].startsWith("ERROR "));
+		assertEquals("OK still|alive", replies[3]);
+	}
+
+	/** Tests that sessions are authenticated only by the server's token. */
+	public void testAuth() throws IOException {
+		final String[] replies =
+			InstanceServer.sendCommands(new String[] { "secure", "auth wrong",
+				"secure", "auth", "auth " + server.getToken(), "secure" }, server
+				.getPort());
+		assertEquals("OK no", replies[0]);
+		assertEquals("ERROR Invalid token", replies[1]);
+		assertEquals("OK no", replies[2]);
+		assertEquals("ERROR Invalid token", replies[3]);
+		assertEquals("OK", replies[4]);
+		assertEquals("OK yes", replies[5]);
+		final InstanceServer other = new InstanceServer(0);
+		other.stop();
+		assertFalse(server.getToken().equals(other.getToken()));
+	}
+
+	/** Tests that the token file holds the token until the server stops. */
+	public void testWriteToken() throws IOException {
+		final File file = File.createTempFile("visbio-token", "");
+		try {
+			server.writeToken(file);
+			assertTrue(file.canRead());
+			final BufferedReader in = new BufferedReader(new FileReader(file));
+			assertEquals(server.getToken(), in.readLine());
+			in.close();
+			server.stop();
+			assertFalse(file.exists());
+		}
+		finally {
+			file.delete();
+		}
+	}
+
+	/** Tests that spawned instances still pass their arguments. */
+	public void testSpawn() throws IOException, InterruptedException {
+		InstanceServer.sendArguments(new String[] { "x.tif", "y.tif" }, server
+			.getPort());
+		synchronized (spawned) {
+			final long end = System.currentTimeMillis() + 10000;
+			while (spawned.isEmpty() && System.currentTimeMillis() < end) {
+				spawned.wait(100);
+			}
+		}
+		assertEquals(1, spawned.size());
+		final String[] args = (String[]) spawned.elementAt(0);
+		assertEquals(2, args.length);
+		assertEquals("x.tif", args[0]);
+		assertEquals("y.tif", args[1]);
+	}
+
+	/**
+	 * Tests that open command sessions hold up neither spawned instances nor
+	 * each other, and that sessions beyond the limit are refused.
+	 */
+	public void testIdleSessions() throws IOException, InterruptedException {
+		final Socket[] sockets = new Socket[InstanceServer.MAX_SESSIONS + 1];
+		try {
+			for (int i = 0; i < sockets.length; i++) {
+				sockets[i] = new Socket("localhost", server.getPort());
+				final PrintWriter out =
+					new PrintWriter(new OutputStreamWriter(sockets[i]
+						.getOutputStream()));
+				final BufferedReader in =
+					new BufferedReader(new InputStreamReader(sockets[i]
+						.getInputStream()));
+				out.println("echo " + i);
+				out.flush();
+				if (i < InstanceServer.MAX_SESSIONS) {
+					assertEquals("OK " + i, in.readLine());
+				}
+				else assertEquals("ERROR Too many sessions", in.readLine());
+			}
+
+			InstanceServer.sendArguments(new String[] { "z.tif" }, server
+				.getPort());
+			synchronized (spawned) {
+				final long end = System.currentTimeMillis() + 10000;
+				while (spawned.isEmpty() && System.currentTimeMillis() < end) {
+					spawned.wait(100);
+				}
+			}
+			assertEquals(1, spawned.size());
+		}
+		finally {
+			for (int i = 0; i < sockets.length; i++) {
+				if (sockets[i] != null) sockets[i].close();
+			}
+		}
+	}
+
+	/** Tests several clients sending commands at once. */
+	public void testConcurrentClients() throws InterruptedException {
+		final int clients = InstanceServer.MAX_SESSIONS;
+		final String[][] replies = new String[clients][];
+		final Thread[] threads = new Thread[clients];
+		for (int t = 0; t < clients; t++) {
+			final int c = t;
+			threads[t] = new Thread("InstanceServerTest-" + t) {
+
+				@Override
+				public void run() {
+					final String[] cmds = new String[10];
+					for (int i = 0; i < cmds.length; i++)
+						cmds[i] = "sum " + c + " " + i;
+					try {
+						replies[c] = InstanceServer.sendCommands(cmds, server.getPort());
+					}
+					catch (final IOException exc) {
+						exc.printStackTrace();
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (int t = 0; t < clients; t++)
+			threads[t].join();
+		for (int t = 0; t < clients; t++) {
+			assertNotNull(replies[t]);
+			for (int i = 0; i < replies[t].length; i++) {
+				assertEquals("OK " + (t + i), replies[t][i]);
+			}
+		}
+	}
+
+	/** Tests splitting of command lines. */
+	public void testParseCommand() {
+		final String[] s = InstanceServer.parseCommand("  open \"a b.tif\" x \"\"");
+		assertEquals(4, s.length);
+		assertEquals("open", s[0]);
+		assertEquals("a b.tif", s[1]);
+		assertEquals("x", s[2]);
+		assertEquals("", s[3]);
+		assertEquals(0, InstanceServer.parseCommand("   ").length);
+	}
+
+}
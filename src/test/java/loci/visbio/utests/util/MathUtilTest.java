@@ -322,6 +322,43 @@ public class MathUtilTest extends TestCase {
 		assertEquals(z2e, z2, DELTA);
 	}
 
+	/** Tests MathUtil.simplify(). */
+	public void testSimplify() {
+		// collinear points collapse to the endpoints
+		final float[][] line = { { 0f, 1f, 2f, 3f, 4f }, { 0f, 0f, 0f, 0f, 0f } };
+		float[][] s = MathUtil.simplify(line, 5, 0.1f);
+		compareFloats(new float[] { 0f, 4f }, s[0], DELTA);
+
+		// a corner beyond the tolerance is kept
+		final float[][] corner = { { 0f, 1f, 2f, 2f, 2f }, { 0f, 0f, 0f, 1f, 2f } };
+		s = MathUtil.simplify(corner, 5, 0.1f);
+		compareFloats(new float[] { 0f, 2f, 2f }, s[0], DELTA);
+		compareFloats(new float[] { 0f, 0f, 2f }, s[1], DELTA);
+
+		// only the given number of points is used
+		s = MathUtil.simplify(corner, 3, 0.1f);
+		compareFloats(new float[] { 0f, 2f }, s[0], DELTA);
+
+		// a long noisy curve stays within the tolerance
+		final int count = 20000;
+		final float[][] curve = new float[2][count];
+		for (int i = 0; i < count; i++) {
+			curve[0][i] = i * 0.01f;
+			curve[1][i] = (float) Math.sin(i * 0.001) * 50f + (i % 2) * 0.05f;
+		}
+		final float tol = 0.5f;
+		s = MathUtil.simplify(curve, count, tol);
+		assertTrue(s[0].length < count / 10);
+		for (int i = 0, seg = 0; i < count; i++) {
+			while (seg < s[0].length - 2 && s[0][seg + 1] < curve[0][i]) seg++;
+			final float[][] segment =
+				{ { s[0][seg], s[0][seg + 1] }, { s[1][seg], s[1][seg + 1] } };
+			final double[] dsw =
+				MathUtil.getDistSegWt(segment, curve[0][i], curve[1][i]);
+			assertTrue(dsw[0] <= tol + 1e-3);
+		}
+	}
+
 	// -- Helper Methods --
 
 	/** Compares two arrays of floats, item-wise. */
@@ -0,0 +1,109 @@
+/*
+ * #%L
+ * VisBio application for visualization of multidimensional biological
+ * image data.
+ * %%
+ * Copyright (C) 2002 - 2014 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.visbio.utests.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import junit.framework.TestCase;
+import loci.visbio.util.Profiler;
+
+/**
+ * Unit tests for the Profiler class.
+ */
+public class ProfilerTest extends TestCase {
+
+	// -- Admin. Methods --
+
+	/** Sets up the test fixture. */
+	@Override
+	protected void setUp() {
+		Profiler.reset();
+	}
+
+	/** Tears down the test fixture. */
+	@Override
+	protected void tearDown() {
+		Profiler.setEnabled(false);
+		Profiler.reset();
+	}
+
+	// -- Profiler Tests --
+
+	/** Tests that nothing is recorded while profiling is off. */
+	public void testDisabled() {
+		Profiler.setEnabled(false);
+		final long t = Profiler.start();
+		assertEquals(0, t);
+		Profiler.end(t, "getData", "chain");
+		assertEquals(0, Profiler.getSpanCount());
+		assertEquals(-1, Profiler.getPercentile("chain", "getData", 50));
+	}
+
+	/** Tests span counting and histogram percentiles. */
+	public void testPercentiles() throws InterruptedException {
+		Profiler.setEnabled(true);
+		for (int i = 0; i < 9; i++) {
+			Profiler.end(Profiler.start(), "fast", "a > b");
+		}
+		final long t = Profiler.start();
+		Thread.sleep(20);
+		Profiler.end(t, "slow", "a > b");
+		assertEquals(10, Profiler.getSpanCount());
+
+		// fast spans take well under 20 ms; the slow one at least 20 ms
+		assertTrue(Profiler.getPercentile("a > b", "fast", 99) < 20000);
+		assertTrue(Profiler.getPercentile("a > b", "slow", 50) >= 20000);
+	}
+
+	/** Tests the latency breakdown and recent span dumps. */
+	public void testDump() {
+		Profiler.setEnabled(true);
+		for (int i = 0; i < Profiler.RECENT_SPANS + 10; i++) {
+			Profiler.end(Profiler.start(), "getImage", "dataset");
+		}
+		Profiler.end(Profiler.start(), "getData", "dataset > projection");
+
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final PrintStream out = new PrintStream(bytes);
+		Profiler.dump(out);
+		Profiler.dumpRecent(out, 5);
+		out.close();
+		final String s = bytes.toString();
+		assertTrue(s.indexOf("dataset:") >= 0);
+		assertTrue(s.indexOf("dataset > projection:") >= 0);
+		assertTrue(s.indexOf("n=" + (Profiler.RECENT_SPANS + 10)) >= 0);
+
+		// only the five most recent spans are listed
+		final int recent = s.indexOf("recent spans");
+		int lines = 0;
+		for (int i = s.indexOf('\n', recent) + 1; i > 0; i = s.indexOf('\n', i) + 1)
+		{
+			if (i < s.length()) lines++;
+		}
+		assertEquals(5, lines);
+	}
+
+}